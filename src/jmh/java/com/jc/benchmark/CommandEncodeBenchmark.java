@@ -0,0 +1,61 @@
+package com.jc.benchmark;
+
+import com.jc.netty.codec.ModbusCommandEncoder;
+import com.jc.netty.codec.ZhiqianCommandEncoder;
+import com.jc.utils.CRC16;
+import com.jc.utils.HexConvert;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 步进电机、继电器命令编码基准
+ * legacy开头的方法复现原来 String.format + 字符串CRC + hexStringToBytes + Unpooled.buffer 的路径作为对照
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandEncodeBenchmark {
+
+    private int pulses = 1600;
+
+    @Benchmark
+    public boolean legacyPulseCommand() {
+        String commandWithoutCRC = String.format("%02X", 3) + "060007" + String.format("%04X", pulses);
+        String command = commandWithoutCRC + CRC16.getModbusrtuString(commandWithoutCRC);
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeBytes(HexConvert.hexStringToBytes(command.replaceAll(" ", "")));
+        return buf.release();
+    }
+
+    @Benchmark
+    public boolean pulseCommand() {
+        return ModbusCommandEncoder.pulses(3, pulses).release();
+    }
+
+    @Benchmark
+    public boolean stopCommand() {
+        return ModbusCommandEncoder.stop(3).release();
+    }
+
+    @Benchmark
+    public boolean legacyRelayCommand() {
+        String hexString = Integer.toHexString(17).toUpperCase();
+        StringBuffer sb = new StringBuffer("48 3A 01 70 ");
+        sb.append(hexString);
+        sb.append(" 01 00 00 45 44");
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeBytes(HexConvert.hexStringToBytes(sb.toString().replaceAll(" ", "")));
+        return buf.release();
+    }
+
+    @Benchmark
+    public boolean relayCommand() {
+        return ZhiqianCommandEncoder.relaySwitch(17, true).release();
+    }
+}
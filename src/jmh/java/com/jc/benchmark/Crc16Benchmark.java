@@ -0,0 +1,70 @@
+package com.jc.benchmark;
+
+import com.jc.utils.CRC16;
+import com.jc.utils.HexConvert;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CRC16 基准
+ * bitwise为原getCRC的逐位算法，作为对照；getCRC3/validateCRC为保留的字符串接口；其余为查表引擎
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Crc16Benchmark {
+
+    /** 称重传感器应答帧（含CRC） */
+    private final byte[] weightReply = HexConvert.hexStringToBytes("01030400000613B85E");
+    /** 步进电机脉冲命令（不含CRC） */
+    private final byte[] pulseCommand = HexConvert.hexStringToBytes("030600070640");
+    private ByteBuf directReply;
+
+    @Setup
+    public void setup() {
+        directReply = Unpooled.directBuffer(weightReply.length).writeBytes(weightReply);
+    }
+
+    @TearDown
+    public void tearDown() {
+        directReply.release();
+    }
+
+    @Benchmark
+    public int bitwise() {
+        int crc = 0xFFFF;
+        for (byte b : pulseCommand) {
+            crc ^= b & 0xFF;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+        }
+        return crc;
+    }
+
+    @Benchmark
+    public String getCRC3() {
+        return CRC16.getCRC3(pulseCommand);
+    }
+
+    @Benchmark
+    public int crc16Array() {
+        return CRC16.crc16(pulseCommand, 0, pulseCommand.length);
+    }
+
+    @Benchmark
+    public boolean validateCRC() {
+        return CRC16.validateCRC(weightReply);
+    }
+
+    @Benchmark
+    public boolean checkDirectByteBuf() {
+        return CRC16.check(directReply, 0, weightReply.length);
+    }
+}
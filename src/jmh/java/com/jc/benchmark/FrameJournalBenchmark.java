@@ -0,0 +1,63 @@
+package com.jc.benchmark;
+
+import com.jc.netty.journal.FrameJournal;
+import com.jc.netty.journal.JournalRecord;
+import com.jc.utils.HexConvert;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 设备帧日志写入基准：一帧IO状态帧写入内存映射段的耗时
+ * legacyHexLog复现原来每帧 hexDump + 拼接日志行 的路径作为对照（不含日志框架本身的输出开销）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameJournalBenchmark {
+
+    private Path dir;
+    private FrameJournal journal;
+    private int deviceId;
+    private ByteBuf frame;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("journal-bench");
+        journal = new FrameJournal(true, dir, 64 * 1024 * 1024, 256L * 1024 * 1024, TimeUnit.HOURS.toNanos(1));
+        journal.open();
+        deviceId = journal.deviceId("1/io");
+        frame = PooledByteBufAllocator.DEFAULT.directBuffer(16);
+        frame.writeBytes(HexConvert.hexStringToBytes("483A0141050000000000000000C94544"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        frame.release();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public void append() {
+        journal.append(deviceId, JournalRecord.IN, frame);
+    }
+
+    @Benchmark
+    public String legacyHexLog() {
+        return "IO模块发送的HEX字符:" + ByteBufUtil.hexDump(frame).toUpperCase();
+    }
+}
@@ -0,0 +1,46 @@
+package com.jc.benchmark;
+
+import com.jc.netty.codec.ModbusFrame;
+import com.jc.netty.codec.ZhiqianFrame;
+import com.jc.service.impl.IODeviceService;
+import com.jc.utils.AnalysisOfReadingValuesOfWeighingSensorData;
+import com.jc.utils.SampleRingBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IO状态帧解析、称重读值解析基准
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameParseBenchmark {
+
+    /** 第1、2个引脚高电平，不触发碗限位停机 */
+    private final ZhiqianFrame statusFrame = new ZhiqianFrame(0x01, 0x41, new byte[]{0x05, 0, 0, 0, 0, 0, 0, 0});
+    private final IODeviceService ioDeviceService = new IODeviceService();
+    /** 01 03 04 00 00 06 13 B8 5E 解码后的帧 */
+    private final ModbusFrame weightFrame = new ModbusFrame(0x01, 0x03, new byte[]{0x04, 0x00, 0x00, 0x06, 0x13});
+    private final SampleRingBuffer weightSamples = new SampleRingBuffer(1024);
+
+    @Benchmark
+    public IODeviceService ioStatusFrame() {
+        ioDeviceService.handle(statusFrame);
+        return ioDeviceService;
+    }
+
+    @Benchmark
+    public long weighingParseHexString() {
+        return AnalysisOfReadingValuesOfWeighingSensorData.parseHexString("01 03 04 00 00 06 13 B8 5E");
+    }
+
+    @Benchmark
+    public SampleRingBuffer weighingFrameToRing() {
+        weightSamples.add(System.currentTimeMillis(), weightFrame.getInt(1));
+        return weightSamples;
+    }
+}
@@ -0,0 +1,36 @@
+package com.jc.benchmark;
+
+import com.jc.utils.HexConvert;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HexConvert 16进制字符串互转基准
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HexConvertBenchmark {
+
+    private final byte[] statusFrame = HexConvert.hexStringToBytes("483A0141050000000000000000C94544");
+    private final String statusHex = "483A01410500000000000000C94544";
+
+    @Benchmark
+    public String binaryToHexString() {
+        return HexConvert.BinaryToHexString(statusFrame);
+    }
+
+    @Benchmark
+    public String toHexString() {
+        return HexConvert.toHexString(statusFrame, 0, statusFrame.length);
+    }
+
+    @Benchmark
+    public byte[] hexStringToBytes() {
+        return HexConvert.hexStringToBytes(statusHex);
+    }
+}
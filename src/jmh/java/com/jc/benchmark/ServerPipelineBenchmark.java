@@ -0,0 +1,99 @@
+package com.jc.benchmark;
+
+import com.jc.netty.codec.ZhiqianFrameDecoder;
+import com.jc.netty.server.DeviceRegistry;
+import com.jc.netty.server.NettyServerHandler;
+import com.jc.service.impl.IODeviceService;
+import com.jc.utils.HexConvert;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IO模块状态帧经过 解码器 → NettyServerHandler → 通道属性中的设备驱动（IODeviceService） 的完整入站路径
+ * <p>
+ * 去掉通道的执行器属性，帧在当前线程上处理完，测的是事件循环线程和执行器线程的开销之和。
+ * ioStatusFrame每次发送相同的帧（空闲时的定时上报），ioStatusFrameChanging交替发送两种状态
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ServerPipelineBenchmark {
+
+    private static final String IO_IP = "192.168.1.3";
+
+    private DeviceRegistry registry;
+    private EmbeddedChannel channel;
+    private ByteBuf statusFrame;
+    private ByteBuf otherStatusFrame;
+    private boolean other;
+
+    @Setup
+    public void setup() {
+        IODeviceService ioDeviceService = new IODeviceService();
+        ReflectionTestUtils.setField(ioDeviceService, "ioIp", IO_IP);
+        registry = new DeviceRegistry(Collections.singletonList(ioDeviceService));
+        NettyServerHandler handler = new NettyServerHandler();
+
+        channel = new DeviceChannel(new InetSocketAddress(IO_IP, 50000), new ZhiqianFrameDecoder(), handler);
+        registry.resolve(channel);
+        channel.attr(DeviceRegistry.EXECUTOR).set(null);
+        byte[] bytes = HexConvert.hexStringToBytes("483A01410500000000000000C94544");
+        statusFrame = Unpooled.unreleasableBuffer(Unpooled.directBuffer(bytes.length).writeBytes(bytes));
+        byte[] otherBytes = HexConvert.hexStringToBytes("483A01410100000000000000C54544");
+        otherStatusFrame = Unpooled.unreleasableBuffer(Unpooled.directBuffer(otherBytes.length).writeBytes(otherBytes));
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        registry.shutdown();
+    }
+
+    @Benchmark
+    public EmbeddedChannel ioStatusFrame() {
+        channel.writeInbound(statusFrame.duplicate());
+        return channel;
+    }
+
+    @Benchmark
+    public EmbeddedChannel ioStatusFrameChanging() {
+        other = !other;
+        channel.writeInbound((other ? otherStatusFrame : statusFrame).duplicate());
+        return channel;
+    }
+
+    /**
+     * 远端地址为指定设备IP的EmbeddedChannel
+     */
+    static class DeviceChannel extends EmbeddedChannel {
+        private final SocketAddress remoteAddress;
+
+        DeviceChannel(SocketAddress remoteAddress, ChannelHandler... handlers) {
+            super(false, false);
+            this.remoteAddress = remoteAddress;
+            pipeline().addLast(handlers);
+            try {
+                register();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        protected SocketAddress remoteAddress0() {
+            return remoteAddress;
+        }
+    }
+}
@@ -1,20 +1,34 @@
 package com.jc;
 
+import com.jc.config.MachineScoped;
 import io.netty.channel.ChannelFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
-import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigurationExcludeFilter;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.context.TypeExcludeFilter;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
 import org.springframework.scheduling.annotation.EnableAsync;
 
 import javax.annotation.PostConstruct;
 import java.io.IOException;
 
-@SpringBootApplication(scanBasePackages = "com.jc")
+/**
+ * 标注{@link MachineScoped}的bean每台机器一份，不在根容器中扫描，见{@link com.jc.service.impl.MachineManager}
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@ComponentScan(basePackages = "com.jc", excludeFilters = {
+        @ComponentScan.Filter(type = FilterType.CUSTOM, classes = TypeExcludeFilter.class),
+        @ComponentScan.Filter(type = FilterType.CUSTOM, classes = AutoConfigurationExcludeFilter.class),
+        @ComponentScan.Filter(MachineScoped.class)})
 @EnableAsync
 @Slf4j
 @EnableCaching
@@ -61,9 +75,7 @@ public class Application {
                     e.printStackTrace();
                 }
             }));
-
-            // 阻塞直到服务器通道关闭
-            serverFuture.channel().closeFuture().sync();
+            // 不在此处阻塞等待服务器通道关闭，Netty与Tomcat的非守护线程会保持进程运行
         };
     }
 }
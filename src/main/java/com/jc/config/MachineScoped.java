@@ -0,0 +1,20 @@
+package com.jc.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 每台机器一份的bean
+ * <p>
+ * 标注的类不在根容器中创建，而是由{@link com.jc.service.impl.MachineManager}为每台机器建一个子容器分别创建，
+ * 其中的配置项（如IoIp）优先取machine.&lt;编号&gt;.IoIp，没有时取全局配置；
+ * 根容器中的bean（Netty服务器、控制器等）所有机器共用
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface MachineScoped {
+}
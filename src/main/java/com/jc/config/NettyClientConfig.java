@@ -1,18 +1,20 @@
 package com.jc.config;
 
-import com.jc.netty.client.NettyClientHandler;
-import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import com.jc.netty.client.RobotClient;
+import com.jc.netty.server.NettyTransport;
+import com.jc.service.impl.DocuService;
+import com.jc.service.impl.MachineManager.Machine;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 
-import javax.annotation.PreDestroy;
-
+/**
+ * 机器人客户端配置类
+ * 应用启动时连接机器人并保持长连接，每台机器连接自己的机器人
+ */
 @Configuration
+@MachineScoped
 public class NettyClientConfig {
 
     @Value("${ducoIp}")
@@ -21,37 +23,12 @@ public class NettyClientConfig {
     @Value("${ducoPort}")
     private int port;
 
-    private EventLoopGroup workerGroup;
-    private Channel channel;
-
-    @Bean
-    public Bootstrap bootstrap() {
-        workerGroup = new NioEventLoopGroup();
-        Bootstrap b = new Bootstrap();
-        b.group(workerGroup);
-        b.channel(NioSocketChannel.class);
-        b.option(ChannelOption.SO_KEEPALIVE, true);
-        b.handler(new ChannelInitializer<SocketChannel>() {
-            @Override
-            public void initChannel(SocketChannel ch) throws Exception {
-                ch.pipeline().addLast(new NettyClientHandler());
-            }
-        });
-
-        return b;
-    }
-
-    @PreDestroy
-    public void destroy() {
-        if (channel != null) {
-            channel.close();
-        }
-        workerGroup.shutdownGracefully();
-    }
-
-    public void connectAndSendData(String message) throws InterruptedException {
-        ChannelFuture f = bootstrap().connect(host, port).sync();
-        channel = f.channel();
-        NettyClientHandler.sendData(channel, message);
+    /**
+     * 机器人长连接客户端，没有对应命令的消息交给机器人服务处理；
+     * 使用机器的事件循环，与该机器的设备连接在同一个线程上，通道类型与服务器的传输一致
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public RobotClient robotClient(Machine machine, NettyTransport nettyTransport, @Lazy DocuService docuService) {
+        return new RobotClient(machine.getEventLoop(), nettyTransport.socketChannelClass(), host, port, docuService::handle);
     }
 }
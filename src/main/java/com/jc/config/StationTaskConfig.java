@@ -0,0 +1,130 @@
+package com.jc.config;
+
+import com.jc.entity.Bowl;
+import com.jc.entity.RobotResult;
+import com.jc.enums.Station;
+import com.jc.service.StationTask;
+import com.jc.service.impl.BowlService;
+import com.jc.service.impl.DocuService;
+import com.jc.service.impl.RelayDeviceService;
+import io.netty.util.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 转盘工位作业配置类
+ * <p>
+ * 放碗、取碗由机器人脚本完成，加调料工位由继电器出汤阀门完成。
+ * <p>
+ * 以下工位的设备还没有接入，只按配置的作业时长等待，不代表现场的实际作业，接入后替换对应的bean即可：
+ * <ul>
+ *     <li>放牛肉（{@link Station#MEAT}，{@code turntable.meatMs}）</li>
+ *     <li>加蒸汽（{@link Station#STEAM}，{@code turntable.steamMs}）</li>
+ * </ul>
+ */
+@Configuration
+@MachineScoped
+@Slf4j
+public class StationTaskConfig {
+
+    /**
+     * 放碗工位：升碗到位，机器人取碗后放到转盘上
+     */
+    @Bean
+    public StationTask placeBowlTask(BowlService bowlService, DocuService docuService,
+                                     @Value("${turntable.takeBowlScript:takeABowl.jspf}") String takeBowlScript,
+                                     @Value("${turntable.putBowlScript:putBowl.jspf}") String putBowlScript) {
+        return task(Station.PLACE_BOWL, bowl -> bowlService.continuousBowlCheck()
+                .thenCompose(r -> {
+                    if (!"ok".equals(r)) {
+                        throw new IllegalStateException(r);
+                    }
+                    return robot(docuService, takeBowlScript);
+                })
+                .thenCompose(v -> robot(docuService, putBowlScript)));
+    }
+
+    /**
+     * 取碗工位：机器人把碗从转盘上取下
+     */
+    @Bean
+    public StationTask pickupTask(DocuService docuService,
+                                  @Value("${turntable.pickupScript:outBowl.jspf}") String pickupScript) {
+        return task(Station.PICKUP, bowl -> robot(docuService, pickupScript));
+    }
+
+    /**
+     * 放牛肉工位：设备未接入，按时长等待
+     */
+    @Bean
+    public StationTask meatTask(Timer timer, @Value("${turntable.meatMs:5000}") long durationMs) {
+        return timed(timer, Station.MEAT, durationMs);
+    }
+
+    /**
+     * 加蒸汽工位：设备未接入，按时长等待
+     */
+    @Bean
+    public StationTask steamTask(Timer timer, @Value("${turntable.steamMs:5000}") long durationMs) {
+        return timed(timer, Station.STEAM, durationMs);
+    }
+
+    /**
+     * 加调料工位：打开出汤阀门，阀门到时由继电器模块自行关闭，等出汤结束后转盘才能转动
+     */
+    @Bean
+    public StationTask seasoningTask(RelayDeviceService relayDeviceService, Timer timer,
+                                     @Value("${turntable.seasoningMs:" + RelayDeviceService.SOUP_SECONDS * 1000 + "}") long durationMs) {
+        return task(Station.SEASONING, bowl -> {
+            relayDeviceService.dispenseSoup();
+            return delay(timer, durationMs);
+        });
+    }
+
+    /**
+     * 运行机器人脚本，脚本失败时以异常完成
+     */
+    private static CompletableFuture<Void> robot(DocuService docuService, String script) {
+        return docuService.runScript(script).thenAccept((RobotResult result) -> {
+            if (!result.isSuccess()) {
+                throw new IllegalStateException("机器人脚本" + script + "失败：" + result.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 按固定时长等待的作业，等待不占用线程
+     */
+    private static StationTask timed(Timer timer, Station station, long durationMs) {
+        return task(station, bowl -> delay(timer, durationMs));
+    }
+
+    /**
+     * 等待一段时间后完成，等待不占用线程
+     */
+    private static CompletableFuture<Void> delay(Timer timer, long durationMs) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        timer.newTimeout(t -> future.complete(null), durationMs, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    private static StationTask task(Station station, Function<Bowl, CompletableFuture<Void>> execute) {
+        return new StationTask() {
+            @Override
+            public Station station() {
+                return station;
+            }
+
+            @Override
+            public CompletableFuture<Void> execute(Bowl bowl) {
+                return execute.apply(bowl);
+            }
+        };
+    }
+}
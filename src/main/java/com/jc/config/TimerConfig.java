@@ -0,0 +1,34 @@
+package com.jc.config;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时器配置类
+ * 一台机器所有等待传感器信号的超时共用一个时间轮，避免每次等待占用一个线程；
+ * 每台机器一个时间轮，一台机器的超时回调不会推迟另一台机器的
+ */
+@Configuration
+@MachineScoped
+public class TimerConfig {
+
+    /** 时间轮刻度（毫秒），超时精度在一个刻度以内 */
+    private static final long TICK_DURATION_MS = 10L;
+
+    /**
+     * 机器共享的时间轮
+     *
+     * @param machineId 机器编号，用于线程名
+     * @return 时间轮，容器关闭时停止
+     */
+    @Bean(destroyMethod = "stop")
+    public Timer hashedWheelTimer(@Value("${machine.id}") String machineId) {
+        return new HashedWheelTimer(new DefaultThreadFactory("sensor-timer-" + machineId, true), TICK_DURATION_MS, TimeUnit.MILLISECONDS);
+    }
+}
@@ -5,14 +5,26 @@ public class Constants {
     public static final String RESET_COMMAND = "48 3A 01 52 00 00 00 00 00 00 00 00 D5 45 44";
     /** 睡眠时间（毫秒） */
     public static final long SLEEP_TIME_MS = 100L;
+    /** 等待传感器信号超时时间（毫秒） */
+    public static final long SIGNAL_TIMEOUT_MS = 30_000L;
     /** 最大步进电机编号 */
     public static final int MAX_MOTOR_NO = 4;
     /** 最大速度 */
     public static final int MAX_SPEED = 500;
     /** 碗控制器编号 */
     public static final int BOWL_CONTROLLER_NO = 2;
-    /** 传感器无值状态为2 */
-    public static final String NOT_INITIALIZED = "2";
+    /** 转盘步进电机编号 */
+    public static final int TURNTABLE_CONTROLLER_NO = 3;
+    /** 转盘原点传感器引脚 */
+    public static final int TURNTABLE_ORIGIN_PIN = 1;
+    /** 碗传感器引脚 */
+    public static final int BOWL_SENSOR_PIN = 2;
+    /** 碗轨道最低极限点传感器引脚 */
+    public static final int BOWL_LOWER_LIMIT_PIN = 3;
+    /** 碗轨道最高极限点传感器引脚 */
+    public static final int BOWL_UPPER_LIMIT_PIN = 4;
+    /** 转盘工位传感器引脚 */
+    public static final int TURNTABLE_STATION_PIN = 5;
     /** io传感器在redis存的key值 */
     public static final String IO_KEY = "io";
     /** io传感器在redis存的key值 */
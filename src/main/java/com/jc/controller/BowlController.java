@@ -4,59 +4,75 @@
 package com.jc.controller;
 
 import com.jc.service.impl.BowlService;
+import com.jc.entity.Job;
+import com.jc.service.impl.JobService;
+import com.jc.service.impl.MachineManager;
+import com.jc.service.impl.TotelService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
-@RequestMapping("bowl")
+@RequestMapping({"bowl", "machines/{machineId}/bowl"})
 public class BowlController {
 
     @Autowired
-    private BowlService bowlService;
+    private MachineManager machineManager;
+    @Autowired
+    private JobService jobService;
 
     /**
      * 连续出碗检查
      *
-     * @return 操作结果
+     * @param machineId 机器编号，不带时为第一台机器
+     * @return 202和作业，Location为作业的查询地址
      */
     @GetMapping("continuousBowlCheck")
-    public String continuousBowlCheck() {
-        bowlService.continuousBowlCheck();
-        return "ok";
+    public ResponseEntity<Job> continuousBowlCheck(@PathVariable(required = false) String machineId) {
+        TotelService totelService = machineManager.getBean(machineId, TotelService.class);
+        return JobController.accepted(jobService.submit(machineId, "continuousBowlCheck", 1, totelService::continuousBowlCheck));
     }
 
     /**
      * 碗上升
      *
+     * @param machineId 机器编号，不带时为第一台机器
      * @return 操作结果
      */
     @GetMapping("bowlRising")
-    public String bowlRising() {
-        return bowlService.bowlRising();
+    public CompletableFuture<String> bowlRising(@PathVariable(required = false) String machineId) {
+        return bowlService(machineId).bowlRising();
     }
 
     /**
      * 碗下降
      *
+     * @param machineId 机器编号，不带时为第一台机器
      * @return 操作结果
      */
     @GetMapping("bowlDescent")
-    public String bowlDescent() {
-        return bowlService.bowlDescent();
+    public CompletableFuture<String> bowlDescent(@PathVariable(required = false) String machineId) {
+        return bowlService(machineId).bowlDescent();
     }
 
     /**
      * 碗重置
      *
-     * @return 操作结果
+     * @param machineId 机器编号，不带时为第一台机器
+     * @return 202和作业，Location为作业的查询地址
      */
     @GetMapping("bowlReset")
-    public String bowlReset() {
-        new Thread(() -> {
-            bowlService.bowlReset();
-        }).start();
-        return "ok";
+    public ResponseEntity<Job> bowlReset(@PathVariable(required = false) String machineId) {
+        TotelService totelService = machineManager.getBean(machineId, TotelService.class);
+        return JobController.accepted(jobService.submit(machineId, "bowlReset", 1, totelService::bowlReset));
+    }
+
+    private BowlService bowlService(String machineId) {
+        return machineManager.getBean(machineId, BowlService.class);
     }
 }
@@ -0,0 +1,138 @@
+package com.jc.controller;
+
+import com.jc.entity.Job;
+import com.jc.service.impl.JobService;
+import com.jc.service.impl.MachineManager;
+import com.jc.service.impl.TotelService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+/**
+ * 后台作业控制器
+ * 提交运动流程后立即返回202和作业，Location为作业的查询地址；通过作业编号查询状态、进度，或取消作业。
+ * 路径不带机器编号时提交到第一台机器，列表为所有机器的作业
+ */
+@RestController
+@RequestMapping({"jobs", "machines/{machineId}/jobs"})
+public class JobController {
+
+    @Autowired
+    private MachineManager machineManager;
+    @Autowired
+    private JobService jobService;
+
+    /**
+     * 整机重置
+     */
+    @PostMapping("reset")
+    public ResponseEntity<Job> reset(@PathVariable(required = false) String machineId) {
+        return submit(machineId, "reset", TotelService.RESET_STEPS, TotelService::reset);
+    }
+
+    /**
+     * 取碗
+     */
+    @PostMapping("takeBowl")
+    public ResponseEntity<Job> takeBowl(@PathVariable(required = false) String machineId) {
+        return submit(machineId, "takeBowl", TotelService.TAKE_BOWL_STEPS, TotelService::takeBowl);
+    }
+
+    /**
+     * 放碗
+     */
+    @PostMapping("putBowl")
+    public ResponseEntity<Job> putBowl(@PathVariable(required = false) String machineId) {
+        return submit(machineId, "putBowl", 1, TotelService::putBowl);
+    }
+
+    /**
+     * 碗重置
+     */
+    @PostMapping("bowlReset")
+    public ResponseEntity<Job> bowlReset(@PathVariable(required = false) String machineId) {
+        return submit(machineId, "bowlReset", 1, TotelService::bowlReset);
+    }
+
+    /**
+     * 连续出碗检查
+     */
+    @PostMapping("continuousBowlCheck")
+    public ResponseEntity<Job> continuousBowlCheck(@PathVariable(required = false) String machineId) {
+        return submit(machineId, "continuousBowlCheck", 1, TotelService::continuousBowlCheck);
+    }
+
+    /**
+     * 转盘回原点
+     */
+    @PostMapping("turntableReset")
+    public ResponseEntity<Job> turntableReset(@PathVariable(required = false) String machineId) {
+        return submit(machineId, "turntableReset", 1, TotelService::turntableReset);
+    }
+
+    /**
+     * 转盘回原点后再转半圈
+     */
+    @PostMapping("feeding")
+    public ResponseEntity<Job> feeding(@PathVariable(required = false) String machineId) {
+        return submit(machineId, "feeding", 1, TotelService::feeding);
+    }
+
+    /**
+     * 执行中和最近结束的作业
+     */
+    @GetMapping
+    public List<Job> list(@PathVariable(required = false) String machineId) {
+        return jobService.list(machineId != null ? machineManager.get(machineId).getId() : null);
+    }
+
+    /**
+     * 作业的状态和进度
+     */
+    @GetMapping("{id}")
+    public Job get(@PathVariable(required = false) String machineId, @PathVariable String id) {
+        return job(machineId, id);
+    }
+
+    /**
+     * 取消作业，不再开始新步骤并停止流程用到的电机；已结束的作业不变
+     */
+    @DeleteMapping("{id}")
+    public Job cancel(@PathVariable(required = false) String machineId, @PathVariable String id) {
+        return jobService.cancel(job(machineId, id).getId());
+    }
+
+    private ResponseEntity<Job> submit(String machineId, String operation, int totalSteps,
+                                       BiFunction<TotelService, Job, CompletableFuture<String>> flow) {
+        TotelService totelService = machineManager.getBean(machineId, TotelService.class);
+        return accepted(jobService.submit(machineId, operation, totalSteps, j -> flow.apply(totelService, j)));
+    }
+
+    /**
+     * 202和作业，Location为作业的查询地址
+     */
+    static ResponseEntity<Job> accepted(Job job) {
+        return ResponseEntity.accepted().location(URI.create("/jobs/" + job.getId())).body(job);
+    }
+
+    /**
+     * 作业编号不属于路径中的机器时同样返回404
+     */
+    private Job job(String machineId, String id) {
+        Job job = jobService.get(id);
+        if (machineId != null && !machineManager.get(machineId).getId().equals(job.getMachineId())) {
+            throw new JobService.JobNotFoundException(id);
+        }
+        return job;
+    }
+}
@@ -0,0 +1,30 @@
+package com.jc.controller;
+
+import com.jc.service.impl.MachineManager;
+import com.jc.service.impl.MachineManager.Machine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 机器控制器，其他接口在路径前加machines/{机器编号}/即操作对应的机器
+ */
+@RestController
+public class MachineController {
+
+    @Autowired
+    private MachineManager machineManager;
+
+    /**
+     * 所有机器的编号
+     *
+     * @return 机器编号，第一台是路径不带机器编号时操作的机器
+     */
+    @GetMapping("machines")
+    public List<String> machines() {
+        return machineManager.getMachines().stream().map(Machine::getId).collect(Collectors.toList());
+    }
+}
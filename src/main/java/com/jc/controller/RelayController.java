@@ -1,26 +1,30 @@
 package com.jc.controller;
 
+import com.jc.service.impl.MachineManager;
 import com.jc.service.impl.RelayDeviceService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
- * 继电器控制器
+ * 继电器控制器，路径不带机器编号时为第一台机器
  */
 @RestController
+@RequestMapping({"", "machines/{machineId}"})
 public class RelayController {
 
     @Autowired
-    private RelayDeviceService relayDeviceService;
+    private MachineManager machineManager;
 
     /**
      * 关闭所有继电器
      */
     @GetMapping("closeAll")
-    public void closeAll() {
-        relayDeviceService.closeAll();
+    public void closeAll(@PathVariable(required = false) String machineId) {
+        relayDeviceService(machineId).closeAll();
     }
 
     /**
@@ -29,8 +33,8 @@ public class RelayController {
      * @param i 继电器编号
      */
     @GetMapping("open")
-    public void open(@RequestParam int i) {
-        relayDeviceService.relayOpening(i);
+    public void open(@PathVariable(required = false) String machineId, @RequestParam int i) {
+        relayDeviceService(machineId).relayOpening(i);
     }
 
     /**
@@ -39,20 +43,20 @@ public class RelayController {
      * @param i 继电器编号
      */
     @GetMapping("close")
-    public void close(@RequestParam int i) {
-        relayDeviceService.relayClosing(i);
+    public void close(@PathVariable(required = false) String machineId, @RequestParam int i) {
+        relayDeviceService(machineId).relayClosing(i);
     }
 
     /**
      * 打开所有继电器
      */
     @GetMapping("openAll")
-    public void openAll() {
-        relayDeviceService.openAll();
+    public void openAll(@PathVariable(required = false) String machineId) {
+        relayDeviceService(machineId).openAll();
     }
     @GetMapping("dispenseSoup")
-    public void dispenseSoup() {
-        relayDeviceService.dispenseSoup();
+    public void dispenseSoup(@PathVariable(required = false) String machineId) {
+        relayDeviceService(machineId).dispenseSoup();
     }
 
     /**
@@ -62,7 +66,11 @@ public class RelayController {
      * @param second 自动关闭的时间（秒）
      */
     @GetMapping("openClose")
-    public void openClose(@RequestParam int no, @RequestParam int second) {
-        relayDeviceService.openClose(no, second);
+    public void openClose(@PathVariable(required = false) String machineId, @RequestParam int no, @RequestParam int second) {
+        relayDeviceService(machineId).openClose(no, second);
+    }
+
+    private RelayDeviceService relayDeviceService(String machineId) {
+        return machineManager.getBean(machineId, RelayDeviceService.class);
     }
 }
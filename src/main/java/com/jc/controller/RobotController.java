@@ -0,0 +1,47 @@
+package com.jc.controller;
+
+import com.jc.entity.RobotResult;
+import com.jc.entity.ScriptStats;
+import com.jc.service.impl.DocuService;
+import com.jc.service.impl.MachineManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 机器人控制器，运行机器人脚本并查询脚本耗时，路径不带机器编号时为第一台机器
+ */
+@RestController
+@RequestMapping({"robot", "machines/{machineId}/robot"})
+public class RobotController {
+
+    @Autowired
+    private MachineManager machineManager;
+
+    /**
+     * 运行脚本，脚本结束后返回
+     *
+     * @param name 脚本名称，如takeABowl.jspf
+     * @return 执行结果
+     */
+    @GetMapping("run")
+    public CompletableFuture<RobotResult> run(@PathVariable(required = false) String machineId, @RequestParam String name) {
+        return machineManager.getBean(machineId, DocuService.class).runScript(name);
+    }
+
+    /**
+     * 每个脚本的耗时统计
+     *
+     * @return 耗时统计
+     */
+    @GetMapping("stats")
+    public Collection<ScriptStats> stats(@PathVariable(required = false) String machineId) {
+        return machineManager.getBean(machineId, DocuService.class).getScriptStats();
+    }
+}
@@ -0,0 +1,32 @@
+package com.jc.controller;
+
+import com.jc.service.impl.StatePushService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * 机器状态推送控制器，路径不带机器编号时为第一台机器
+ */
+@RestController
+@RequestMapping({"", "machines/{machineId}"})
+public class StateController {
+
+    @Autowired
+    private StatePushService statePushService;
+
+    /**
+     * 订阅机器状态，事件名为state，数据为变化的部分：sensors、relays、stations、orders
+     *
+     * @param machineId 机器编号，不带时为第一台机器
+     * @return 事件流
+     */
+    @GetMapping(value = "events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@PathVariable(required = false) String machineId) {
+        return statePushService.subscribe(machineId);
+    }
+}
@@ -3,53 +3,63 @@
  */
 package com.jc.controller;
 
+import com.jc.service.impl.MachineManager;
 import com.jc.service.impl.StepperMotorService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
-@RequestMapping("stepperMotor")
+@RequestMapping({"stepperMotor", "machines/{machineId}/stepperMotor"})
 public class StepperMotorController {
 
     @Autowired
-    private StepperMotorService stepperMotorService;
+    private MachineManager machineManager;
 
     /**
      * 启动步进电机
      *
+     * @param machineId          机器编号，不带时为第一台机器
      * @param no                 步进电机编号
      * @param positiveOrNegative 步进电机转动方向，true表示正转，false表示反转
      * @param numberOfPulses     脉冲数量
      * @return 返回操作结果
      */
     @GetMapping("startStepperMotor")
-    public String startStepperMotor(int no, Boolean positiveOrNegative, int numberOfPulses) {
-        return stepperMotorService.startStepperMotor(no, positiveOrNegative, numberOfPulses);
+    public CompletableFuture<String> startStepperMotor(@PathVariable(required = false) String machineId, int no, Boolean positiveOrNegative, int numberOfPulses) {
+        return stepperMotorService(machineId).startStepperMotor(no, positiveOrNegative, numberOfPulses);
     }
 
     /**
      * 修改步进电机速度
      *
+     * @param machineId 机器编号，不带时为第一台机器
      * @param no    步进电机编号
      * @param speed 步进电机速度
      * @return 返回操作结果
      */
     @GetMapping("modificationSpeed")
-    public String modificationSpeed(int no, int speed) {
-        return stepperMotorService.modificationSpeed(no, speed);
+    public CompletableFuture<String> modificationSpeed(@PathVariable(required = false) String machineId, int no, int speed) {
+        return stepperMotorService(machineId).modificationSpeed(no, speed);
     }
 
     /**
      * 停止步进电机
      *
+     * @param machineId 机器编号，不带时为第一台机器
      * @param no 步进电机编号
      * @return 返回操作结果
      */
     @GetMapping("stop")
-    public String stop(int no) {
-        stepperMotorService.stop(no);
-        return "ok";
+    public CompletableFuture<String> stop(@PathVariable(required = false) String machineId, int no) {
+        return stepperMotorService(machineId).stop(no);
+    }
+
+    private StepperMotorService stepperMotorService(String machineId) {
+        return machineManager.getBean(machineId, StepperMotorService.class);
     }
 }
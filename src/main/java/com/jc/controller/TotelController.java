@@ -1,67 +1,47 @@
 package com.jc.controller;
 
-import com.jc.config.NettyClientConfig;
-import com.jc.service.impl.BowlService;
-import com.jc.service.impl.TurntableService;
+import com.jc.entity.Job;
+import com.jc.service.impl.JobService;
+import com.jc.service.impl.MachineManager;
+import com.jc.service.impl.TotelService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+/**
+ * 整机流程控制器，路径不带机器编号时为第一台机器
+ * 流程作为后台作业执行，与{@link JobController}一样立即返回202和作业，Location为作业的查询地址；
+ * 流程中等待传感器、机器人脚本的时间比请求的异步超时长，不在请求里等作业结束
+ */
 @RestController
+@RequestMapping({"", "machines/{machineId}"})
 @Slf4j
 public class TotelController {
     @Autowired
-    NettyClientConfig nettyClientConfig;
+    MachineManager machineManager;
     @Autowired
-    BowlService bowlService;
-    @Autowired
-    TurntableService turntableService;
+    JobService jobService;
 
 
     @GetMapping("reset")
-    public String reset() throws Exception {
-        //机器人重置命令
-        new Thread(() -> {
-            try {
-                nettyClientConfig.connectAndSendData("run(reset.jspf)");
-                log.info("机器人重置命令");
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }).run();
-        //转盘重置
-        turntableService.turntableReset();
-        log.info("转盘重置");
-        //碗重置
-        bowlService.bowlReset();
-        log.info("碗重置");
-        return "ok";
+    public ResponseEntity<Job> reset(@PathVariable(required = false) String machineId) {
+        TotelService totelService = machineManager.getBean(machineId, TotelService.class);
+        return JobController.accepted(jobService.submit(machineId, "reset", TotelService.RESET_STEPS, totelService::reset));
     }
 
     @GetMapping("takeBowl")
-    public String takeBowl() {
-        // TODO: 2024/6/12 判断是否回原点、碗的状态、 
-        //升碗
-        new Thread(() -> {
-            bowlService.continuousBowlCheck();
-        }).run();
-        //向机器人发送取碗指令
-        try {
-            nettyClientConfig.connectAndSendData("run(takeABowl.jspf)");
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-        return "ok";
+    public ResponseEntity<Job> takeBowl(@PathVariable(required = false) String machineId) {
+        TotelService totelService = machineManager.getBean(machineId, TotelService.class);
+        return JobController.accepted(jobService.submit(machineId, "takeBowl", TotelService.TAKE_BOWL_STEPS, totelService::takeBowl));
     }
 
     @GetMapping("putBowl")
-    public String putBowl(){
-        try {
-            nettyClientConfig.connectAndSendData("run(putBowl.jspf)");
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-        return "ok";
+    public ResponseEntity<Job> putBowl(@PathVariable(required = false) String machineId) {
+        TotelService totelService = machineManager.getBean(machineId, TotelService.class);
+        return JobController.accepted(jobService.submit(machineId, "putBowl", 1, totelService::putBowl));
     }
 }
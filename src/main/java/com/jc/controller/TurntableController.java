@@ -1,25 +1,53 @@
 package com.jc.controller;
 
-import com.jc.service.impl.TurntableService;
+import com.jc.entity.Bowl;
+import com.jc.entity.Job;
+import com.jc.service.impl.JobService;
+import com.jc.service.impl.MachineManager;
+import com.jc.service.impl.TotelService;
+import com.jc.service.impl.TurntableScheduler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
-@RequestMapping("turntable")
+@RequestMapping({"turntable", "machines/{machineId}/turntable"})
 public class TurntableController {
 
     @Autowired
-    private TurntableService turntableService;
+    private MachineManager machineManager;
+    @Autowired
+    private JobService jobService;
 
     @GetMapping("reset")
-    public String reset() {
-        return turntableService.turntableReset();
+    public ResponseEntity<Job> reset(@PathVariable(required = false) String machineId) {
+        TotelService totelService = machineManager.getBean(machineId, TotelService.class);
+        return JobController.accepted(jobService.submit(machineId, "turntableReset", 1, totelService::turntableReset));
     }
 
     @GetMapping("feeding")
-    public String feeding() {
-        return turntableService.feeding();
+    public ResponseEntity<Job> feeding(@PathVariable(required = false) String machineId) {
+        TotelService totelService = machineManager.getBean(machineId, TotelService.class);
+        return JobController.accepted(jobService.submit(machineId, "feeding", 1, totelService::feeding));
+    }
+
+    /**
+     * 每个工位上的碗，没有碗的工位为null
+     */
+    @GetMapping("bowls")
+    public Bowl[] bowls(@PathVariable(required = false) String machineId) {
+        return machineManager.getBean(machineId, TurntableScheduler.class).getBowls();
+    }
+
+    /**
+     * 流水线故障排除后继续运转
+     */
+    @GetMapping("resume")
+    public String resume(@PathVariable(required = false) String machineId) {
+        machineManager.getBean(machineId, TurntableScheduler.class).resume();
+        return "ok";
     }
 }
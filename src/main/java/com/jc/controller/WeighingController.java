@@ -0,0 +1,73 @@
+package com.jc.controller;
+
+import com.jc.entity.WeightReading;
+import com.jc.entity.WeightWindow;
+import com.jc.service.impl.MachineManager;
+import com.jc.service.impl.Weighing;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 称重控制器，查询称重传感器的轮询读值，路径不带机器编号时为第一台机器，不指定秤时为第一个配置的秤；
+ * 秤不存在时返回404
+ */
+@RestController
+@RequestMapping({"weighing", "machines/{machineId}/weighing"})
+public class WeighingController {
+
+    @Autowired
+    private MachineManager machineManager;
+
+    /**
+     * 当前重量
+     *
+     * @param slave 秤的从站地址，不指定时为第一个配置的秤
+     * @return 最新读值，还没有读值时为空
+     */
+    @GetMapping("current")
+    public WeightReading current(@PathVariable(required = false) String machineId, @RequestParam(required = false) Integer slave) {
+        Weighing weighing = weighing(machineId);
+        return weighing.current(slave(weighing, slave));
+    }
+
+    /**
+     * 重量变化率
+     *
+     * @param slave    秤的从站地址，不指定时为第一个配置的秤
+     * @param windowMs 窗口长度（毫秒）
+     * @return 千克/秒
+     */
+    @GetMapping("rate")
+    public double rate(@PathVariable(required = false) String machineId, @RequestParam(required = false) Integer slave, @RequestParam(defaultValue = "1000") long windowMs) {
+        Weighing weighing = weighing(machineId);
+        return weighing.rate(slave(weighing, slave), windowMs);
+    }
+
+    /**
+     * 窗口内的读值
+     *
+     * @param slave    秤的从站地址，不指定时为第一个配置的秤
+     * @param windowMs 窗口长度（毫秒）
+     * @return 按时间从旧到新的读值
+     */
+    @GetMapping("window")
+    public WeightWindow window(@PathVariable(required = false) String machineId, @RequestParam(required = false) Integer slave, @RequestParam(defaultValue = "1000") long windowMs) {
+        Weighing weighing = weighing(machineId);
+        return weighing.window(slave(weighing, slave), windowMs);
+    }
+
+    private Weighing weighing(String machineId) {
+        return machineManager.getBean(machineId, Weighing.class);
+    }
+
+    /**
+     * 秤不存在或没有配置秤时抛出{@link Weighing.ScaleNotFoundException}，接口返回404
+     */
+    private static int slave(Weighing weighing, Integer slave) {
+        return slave != null ? slave : weighing.firstSlave();
+    }
+}
@@ -0,0 +1,55 @@
+package com.jc.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.jc.enums.Station;
+import lombok.Getter;
+
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 转盘上的一碗，从放碗工位进入、取碗工位离开
+ */
+@Getter
+public class Bowl {
+    // 编号
+    private final long id;
+    // 对应的订单
+    private final Order order;
+    // 下单时间（毫秒），之后可能还在订单队列中等待
+    private final long orderedAt;
+    // 进入放碗工位的时间（毫秒），还在订单队列中时为0
+    private volatile long placedAt;
+    // 已完成的工位
+    private final EnumSet<Station> completed = EnumSet.noneOf(Station.class);
+    // 取碗后完成
+    @JsonIgnore
+    private final CompletableFuture<Bowl> done = new CompletableFuture<>();
+
+    public Bowl(long id, Order order) {
+        this.id = id;
+        this.order = order;
+        this.orderedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 记下进入放碗工位的时间
+     */
+    public void placed() {
+        placedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 工位作业是否已完成
+     */
+    public synchronized boolean isCompleted(Station station) {
+        return completed.contains(station);
+    }
+
+    /**
+     * 标记工位作业完成
+     */
+    public synchronized void complete(Station station) {
+        completed.add(station);
+    }
+}
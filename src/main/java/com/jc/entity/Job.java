@@ -0,0 +1,147 @@
+package com.jc.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.jc.enums.JobState;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 后台作业，一次运动流程（重置、取碗等）的状态和进度
+ * <p>
+ * 流程由若干步骤组成，每个步骤是一个不阻塞线程的CompletableFuture；取消后不再开始新步骤，
+ * 并执行登记的取消动作（如停机），正在执行的步骤自然结束或超时
+ */
+@Getter
+public class Job {
+    /** 取消后作业的结果 */
+    public static final String CANCELLED_MESSAGE = "已取消";
+
+    // 作业编号
+    private final String id;
+    // 机器编号
+    private final String machineId;
+    // 操作名称，如reset
+    private final String operation;
+    // 总步骤数
+    private final int totalSteps;
+    // 创建时间（毫秒）
+    private final long createdAt;
+    // 状态
+    private volatile JobState state = JobState.RUNNING;
+    // 最近开始的步骤
+    private volatile String step;
+    // 结果，ok或失败原因
+    private volatile String result;
+    // 结束时间（毫秒），未结束为0
+    private volatile long finishedAt;
+
+    @Getter(AccessLevel.NONE)
+    private final CompletableFuture<String> future = new CompletableFuture<>();
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger completedSteps = new AtomicInteger();
+    @Getter(AccessLevel.NONE)
+    private final List<Runnable> cancelActions = new CopyOnWriteArrayList<>();
+
+    public Job(String id, String machineId, String operation, int totalSteps) {
+        this.id = id;
+        this.machineId = machineId;
+        this.operation = operation;
+        this.totalSteps = totalSteps;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 作业结束时完成，结果为ok、失败原因或{@link #CANCELLED_MESSAGE}，不会异常完成
+     */
+    @JsonIgnore
+    public CompletableFuture<String> getFuture() {
+        return future;
+    }
+
+    /**
+     * 已完成的步骤数
+     */
+    public int getCompletedSteps() {
+        return completedSteps.get();
+    }
+
+    /**
+     * 已执行的时间（毫秒）
+     */
+    public long getElapsedMs() {
+        return (finishedAt != 0 ? finishedAt : System.currentTimeMillis()) - createdAt;
+    }
+
+    /**
+     * 开始一个步骤，作业已取消时不再开始
+     *
+     * @param name   步骤名称
+     * @param action 启动步骤
+     * @return 步骤的结果，作业已取消时以{@link CancellationException}异常完成
+     */
+    public <T> CompletableFuture<T> step(String name, Supplier<CompletableFuture<T>> action) {
+        if (state != JobState.RUNNING) {
+            CompletableFuture<T> cancelled = new CompletableFuture<>();
+            cancelled.completeExceptionally(new CancellationException(CANCELLED_MESSAGE));
+            return cancelled;
+        }
+        step = name;
+        return action.get().whenComplete((r, e) -> completedSteps.incrementAndGet());
+    }
+
+    /**
+     * 登记取消时的动作，如停止电机
+     *
+     * @param action 取消动作
+     */
+    public void onCancel(Runnable action) {
+        cancelActions.add(action);
+    }
+
+    /**
+     * 流程结束
+     *
+     * @param result 流程结果，ok表示成功
+     * @param error  流程异常，没有异常为null
+     * @return 状态由执行中变为结束时返回true，已取消时返回false
+     */
+    public synchronized boolean finish(String result, Throwable error) {
+        if (state != JobState.RUNNING) {
+            return false;
+        }
+        Throwable cause = error != null && error.getCause() != null ? error.getCause() : error;
+        this.result = cause != null ? cause.getMessage() : result;
+        this.state = cause == null && "ok".equals(result) ? JobState.SUCCEEDED : JobState.FAILED;
+        this.finishedAt = System.currentTimeMillis();
+        future.complete(this.result);
+        return true;
+    }
+
+    /**
+     * 取消作业，执行登记的取消动作
+     *
+     * @return 状态由执行中变为已取消时返回true，已结束时返回false
+     */
+    public boolean cancel() {
+        synchronized (this) {
+            if (state != JobState.RUNNING) {
+                return false;
+            }
+            this.result = CANCELLED_MESSAGE;
+            this.state = JobState.CANCELLED;
+            this.finishedAt = System.currentTimeMillis();
+        }
+        for (Runnable action : cancelActions) {
+            action.run();
+        }
+        future.complete(CANCELLED_MESSAGE);
+        return true;
+    }
+}
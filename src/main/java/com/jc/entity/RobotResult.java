@@ -0,0 +1,20 @@
+package com.jc.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 机器人脚本执行结果
+ */
+@Data
+@AllArgsConstructor
+public class RobotResult {
+    // 脚本名称，如takeABowl.jspf
+    private String script;
+    // 是否执行完成
+    private boolean success;
+    // 失败原因或机器人返回的完成消息
+    private String message;
+    // 从发送命令到脚本结束的耗时（毫秒）
+    private long elapsedMs;
+}
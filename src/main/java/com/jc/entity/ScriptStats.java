@@ -0,0 +1,53 @@
+package com.jc.entity;
+
+import lombok.Getter;
+
+/**
+ * 单个机器人脚本的耗时统计
+ */
+@Getter
+public class ScriptStats {
+    // 脚本名称
+    private final String script;
+    // 成功执行次数
+    private long count;
+    // 失败次数
+    private long failures;
+    // 最近一次耗时（毫秒）
+    private long lastMs;
+    // 最短耗时（毫秒）
+    private long minMs = Long.MAX_VALUE;
+    // 最长耗时（毫秒）
+    private long maxMs;
+    // 总耗时（毫秒）
+    private long totalMs;
+
+    public ScriptStats(String script) {
+        this.script = script;
+    }
+
+    /**
+     * 记录一次执行结果
+     *
+     * @param result 执行结果
+     */
+    public synchronized void record(RobotResult result) {
+        if (!result.isSuccess()) {
+            failures++;
+            return;
+        }
+        long elapsed = result.getElapsedMs();
+        count++;
+        lastMs = elapsed;
+        totalMs += elapsed;
+        minMs = Math.min(minMs, elapsed);
+        maxMs = Math.max(maxMs, elapsed);
+    }
+
+    /**
+     * 平均耗时（毫秒）
+     */
+    public synchronized long getAverageMs() {
+        return count == 0 ? 0 : totalMs / count;
+    }
+}
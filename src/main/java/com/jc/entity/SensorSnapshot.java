@@ -0,0 +1,102 @@
+package com.jc.entity;
+
+import com.jc.enums.SignalLevel;
+
+/**
+ * IO模块32路传感器状态快照
+ * 不可变对象，第N个引脚对应mask的第N-1位，1为高电平
+ */
+public final class SensorSnapshot {
+    /** 引脚数量 */
+    public static final int PIN_COUNT = 32;
+    /** 还没有收到IO模块上报时的状态 */
+    public static final SensorSnapshot NOT_INITIALIZED = new SensorSnapshot(0L, 0, 0L);
+
+    /** 版本号，状态每变化一次加1，0表示未初始化 */
+    private final long version;
+    /** 32路引脚电平 */
+    private final int mask;
+    /** 产生该状态的帧到达时间（毫秒） */
+    private final long timestamp;
+
+    public SensorSnapshot(long version, int mask, long timestamp) {
+        this.version = version;
+        this.mask = mask;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * 引脚对应的位
+     *
+     * @param pin 引脚编号，从1开始
+     * @return 位掩码
+     */
+    public static int bit(int pin) {
+        if (pin < 1 || pin > PIN_COUNT) {
+            throw new IllegalArgumentException("引脚编号超出范围：" + pin);
+        }
+        return 1 << (pin - 1);
+    }
+
+    public boolean isInitialized() {
+        return version > 0;
+    }
+
+    /**
+     * 引脚是否为高电平
+     *
+     * @param pin 引脚编号，从1开始
+     * @return 高电平返回true
+     */
+    public boolean isHigh(int pin) {
+        return (mask & bit(pin)) != 0;
+    }
+
+    /**
+     * 引脚电平
+     *
+     * @param pin 引脚编号，从1开始
+     * @return 高低电平
+     */
+    public SignalLevel level(int pin) {
+        return isHigh(pin) ? SignalLevel.HIGH : SignalLevel.LOW;
+    }
+
+    /**
+     * 是否满足 (mask &amp; conditionMask) == value
+     *
+     * @param conditionMask 关心的引脚位
+     * @param value         期望值
+     * @return 满足返回true
+     */
+    public boolean matches(int conditionMask, int value) {
+        return isInitialized() && (mask & conditionMask) == value;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * 与原ioStatus相同的格式，如"1,0,0,..."，未初始化时为"2"
+     */
+    @Override
+    public String toString() {
+        if (!isInitialized()) {
+            return "2";
+        }
+        StringBuilder sb = new StringBuilder(PIN_COUNT * 2);
+        for (int i = 0; i < PIN_COUNT; i++) {
+            sb.append((mask >>> i & 1) != 0 ? SignalLevel.HIGH.getValue() : SignalLevel.LOW.getValue()).append(',');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,18 @@
+package com.jc.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 称重读值
+ */
+@Data
+@AllArgsConstructor
+public class WeightReading {
+    // 秤的从站地址
+    private int slave;
+    // 重量（千克）
+    private double weight;
+    // 读值时间（毫秒）
+    private long timestamp;
+}
@@ -0,0 +1,18 @@
+package com.jc.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 一段时间窗口内的称重读值，两个数组按下标一一对应
+ */
+@Data
+@AllArgsConstructor
+public class WeightWindow {
+    // 秤的从站地址
+    private int slave;
+    // 读值时间（毫秒），从旧到新
+    private long[] timestamps;
+    // 重量（千克）
+    private double[] weights;
+}
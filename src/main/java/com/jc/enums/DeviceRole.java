@@ -0,0 +1,22 @@
+package com.jc.enums;
+
+/**
+ * 连接到服务器的设备类型，按客户端IP区分，用作指标的device标签
+ */
+public enum DeviceRole {
+    IO("io"),
+    RELAY("relay"),
+    RS485("rs485"),
+    ROBOT("robot"),
+    UNKNOWN("unknown");
+
+    private final String tag;
+
+    DeviceRole(String tag) {
+        this.tag = tag;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+}
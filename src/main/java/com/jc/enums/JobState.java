@@ -0,0 +1,22 @@
+package com.jc.enums;
+
+/**
+ * 后台作业状态枚举类
+ */
+public enum JobState {
+    /** 执行中 */
+    RUNNING,
+    /** 结果为ok */
+    SUCCEEDED,
+    /** 结果不是ok或异常结束 */
+    FAILED,
+    /** 执行中被取消 */
+    CANCELLED;
+
+    /**
+     * 是否已结束
+     */
+    public boolean isFinished() {
+        return this != RUNNING;
+    }
+}
@@ -0,0 +1,37 @@
+package com.jc.enums;
+
+/**
+ * 转盘工位枚举类，按转盘转动方向从原点开始排列
+ */
+public enum Station {
+    PLACE_BOWL("放碗"),
+    IDLE("暂留空置"),
+    MEAT("放牛肉和菜"),
+    STEAM("加蒸汽"),
+    SEASONING("加汤和调料"),
+    PICKUP("取碗");
+
+    private final String description;
+
+    Station(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * 工位序号，从0开始
+     */
+    public int index() {
+        return ordinal();
+    }
+
+    /**
+     * 工位数量
+     */
+    public static int count() {
+        return values().length;
+    }
+}
@@ -1,34 +1,30 @@
 package com.jc.netty.client;
 
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
-import io.netty.channel.Channel;
+import com.jc.netty.codec.RobotLine;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.SimpleChannelInboundHandler;
+import lombok.extern.slf4j.Slf4j;
 
-public class NettyClientHandler extends ChannelInboundHandlerAdapter {
+/**
+ * 机器人客户端处理器，把解码后的每行应答交给{@link RobotClient}
+ */
+@Slf4j
+public class NettyClientHandler extends SimpleChannelInboundHandler<RobotLine> {
 
-    public static void sendData(Channel channel, String data) {
-        ByteBuf buf = Unpooled.buffer();
-        buf.writeBytes(data.getBytes());
-        channel.writeAndFlush(buf);
+    private final RobotClient robotClient;
+
+    public NettyClientHandler(RobotClient robotClient) {
+        this.robotClient = robotClient;
     }
 
     @Override
-    public void channelRead(ChannelHandlerContext ctx, Object msg) {
-        // 读取服务端响应
-        ByteBuf buf = (ByteBuf) msg;
-        byte[] data = new byte[buf.readableBytes()];
-        buf.readBytes(data);
-        String response = new String(data);
-        System.out.println("Server response: " + response);
-        ctx.close(); // 关闭连接
+    protected void channelRead0(ChannelHandlerContext ctx, RobotLine line) {
+        robotClient.onLine(line);
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        // 异常处理
-        cause.printStackTrace();
+        log.warn("机器人连接异常：{}", cause.getMessage());
         ctx.close();
     }
 }
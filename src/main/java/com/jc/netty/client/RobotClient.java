@@ -0,0 +1,283 @@
+package com.jc.netty.client;
+
+import com.jc.netty.codec.RobotLine;
+import com.jc.netty.codec.RobotLineDecoder;
+import com.jc.utils.SampleRingBuffer;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.string.StringEncoder;
+import io.netty.util.concurrent.ScheduledFuture;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 机器人（Duco）长连接客户端
+ * <p>
+ * 整个应用只保持一条到机器人的TCP连接，断开后按指数退避自动重连。
+ * 命令按顺序发送，机器人按顺序逐行应答，应答依次完成对应命令的future；主动推送的消息（{@link RobotLine#isPush()}）
+ * 先分出去，不参与应答的对应。命令超时后它的应答可能迟到，之后收到的下一条应答丢弃，不错位给后面的命令。
+ * 未连接时命令先排队，连上后立即发送。所有状态只在同一个事件循环线程上访问。
+ */
+@Slf4j
+public class RobotClient {
+    /** 首次重连等待时间（毫秒） */
+    public static final long INITIAL_BACKOFF_MS = 200L;
+    /** 最长重连等待时间（毫秒） */
+    public static final long MAX_BACKOFF_MS = 30_000L;
+    /** 连接超时（毫秒） */
+    public static final int CONNECT_TIMEOUT_MS = 3_000;
+    /** 命令应答超时（毫秒） */
+    public static final long REPLY_TIMEOUT_MS = 10_000L;
+    /** 保留的命令往返时间样本数 */
+    public static final int ROUND_TRIP_SAMPLES = 1024;
+
+    private final String host;
+    private final int port;
+    private final EventLoop eventLoop;
+    private final Bootstrap bootstrap;
+    private final RobotLineListener unsolicitedListener;
+
+    /** 等待连接后发送的命令 */
+    private final ArrayDeque<PendingCommand> queued = new ArrayDeque<>();
+    /** 已发送、等待应答的命令 */
+    private final ArrayDeque<PendingCommand> inFlight = new ArrayDeque<>();
+    private Channel channel;
+    private long backoffMs = INITIAL_BACKOFF_MS;
+    /** 命令应答超时（毫秒） */
+    private long replyTimeoutMs = REPLY_TIMEOUT_MS;
+    /** 已超时、应答还可能迟到的命令数，收到应答时先抵消 */
+    private int lateReplies;
+    /** 命令发送到收到应答的时间（微秒），只在事件循环线程上写入 */
+    private final SampleRingBuffer roundTrips = new SampleRingBuffer(ROUND_TRIP_SAMPLES);
+    private volatile boolean running;
+
+    /**
+     * @param group               事件循环组，客户端固定使用其中一个事件循环
+     * @param host                机器人IP
+     * @param port                机器人端口
+     * @param unsolicitedListener 没有对应命令的消息（如程序状态推送）的处理
+     */
+    public RobotClient(EventLoopGroup group, String host, int port, RobotLineListener unsolicitedListener) {
+        this(group, NioSocketChannel.class, host, port, unsolicitedListener);
+    }
+
+    /**
+     * @param group               事件循环组，客户端固定使用其中一个事件循环
+     * @param channelClass        与事件循环组配套的连接通道类型，如epoll事件循环要用EpollSocketChannel
+     * @param host                机器人IP
+     * @param port                机器人端口
+     * @param unsolicitedListener 没有对应命令的消息（如程序状态推送）的处理
+     */
+    public RobotClient(EventLoopGroup group, Class<? extends Channel> channelClass, String host, int port,
+                       RobotLineListener unsolicitedListener) {
+        this.host = host;
+        this.port = port;
+        this.eventLoop = group.next();
+        this.unsolicitedListener = unsolicitedListener;
+        this.bootstrap = new Bootstrap()
+                .group(eventLoop)
+                .channel(channelClass)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MS)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    public void initChannel(SocketChannel ch) {
+                        ch.pipeline()
+                                .addLast("frameDecoder", new RobotLineDecoder())
+                                .addLast("stringEncoder", new StringEncoder(StandardCharsets.UTF_8))
+                                .addLast(new NettyClientHandler(RobotClient.this));
+                    }
+                });
+    }
+
+    /**
+     * 开始连接机器人
+     */
+    public void start() {
+        running = true;
+        eventLoop.execute(this::connect);
+    }
+
+    /**
+     * 断开连接并使所有未完成的命令失败
+     */
+    public void stop() {
+        running = false;
+        try {
+            eventLoop.execute(() -> {
+                if (channel != null) {
+                    channel.close();
+                }
+                failAll(queued, new IllegalStateException("机器人客户端已停止"));
+                failAll(inFlight, new IllegalStateException("机器人客户端已停止"));
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("事件循环已关闭");
+        }
+    }
+
+    public boolean isConnected() {
+        Channel ch = channel;
+        return ch != null && ch.isActive();
+    }
+
+    /**
+     * 命令往返时间样本，可在任意线程读取
+     *
+     * @return 样本值为微秒
+     */
+    public SampleRingBuffer getRoundTrips() {
+        return roundTrips;
+    }
+
+    /**
+     * 发送命令
+     *
+     * @param command 命令文本，如run(takeABowl.jspf)
+     * @return 机器人对该命令的应答，超时或断开连接以异常完成
+     */
+    public CompletableFuture<RobotLine> send(String command) {
+        PendingCommand pending = new PendingCommand(command);
+        try {
+            eventLoop.execute(() -> {
+                if (!running) {
+                    pending.future.completeExceptionally(new IllegalStateException("机器人客户端已停止"));
+                    return;
+                }
+                if (isConnected()) {
+                    write(pending);
+                } else {
+                    log.info("机器人未连接，命令排队：{}", command);
+                    queued.add(pending);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.future.completeExceptionally(e);
+        }
+        return pending.future;
+    }
+
+    /**
+     * 收到机器人的一行消息，推送交给监听器，应答依次对应最早发送的命令
+     */
+    void onLine(RobotLine line) {
+        if (line.isPush()) {
+            unsolicitedListener.onLine(line);
+            return;
+        }
+        if (lateReplies > 0) {
+            lateReplies--;
+            log.warn("丢弃超时命令的迟到应答：{}", line);
+            return;
+        }
+        PendingCommand pending = inFlight.poll();
+        if (pending == null) {
+            unsolicitedListener.onLine(line);
+            return;
+        }
+        pending.timeout.cancel(false);
+        roundTrips.add(System.currentTimeMillis(), (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - pending.sentAt)));
+        log.debug("机器人应答{}：{}", pending.command, line);
+        pending.future.complete(line);
+    }
+
+    private void connect() {
+        if (!running) {
+            return;
+        }
+        bootstrap.connect(host, port).addListener((ChannelFuture f) -> {
+            if (!f.isSuccess()) {
+                log.warn("连接机器人{}:{}失败：{}，{}ms后重连", host, port, f.cause().getMessage(), backoffMs);
+                scheduleReconnect();
+                return;
+            }
+            channel = f.channel();
+            backoffMs = INITIAL_BACKOFF_MS;
+            log.info("已连接机器人{}:{}", host, port);
+            channel.closeFuture().addListener(c -> onDisconnected());
+            PendingCommand pending;
+            while ((pending = queued.poll()) != null) {
+                write(pending);
+            }
+        });
+    }
+
+    private void onDisconnected() {
+        channel = null;
+        lateReplies = 0;
+        // 已发送的命令收不到应答了
+        failAll(inFlight, new IllegalStateException("机器人连接已断开"));
+        if (running) {
+            log.warn("机器人连接已断开，{}ms后重连", backoffMs);
+            scheduleReconnect();
+        }
+    }
+
+    private void scheduleReconnect() {
+        if (!running) {
+            return;
+        }
+        eventLoop.schedule(this::connect, backoffMs, TimeUnit.MILLISECONDS);
+        backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+    }
+
+    private void write(PendingCommand pending) {
+        inFlight.add(pending);
+        pending.timeout = eventLoop.schedule(() -> {
+            if (inFlight.remove(pending)) {
+                lateReplies++;
+                pending.future.completeExceptionally(new TimeoutException("机器人应答超时：" + pending.command));
+            }
+        }, replyTimeoutMs, TimeUnit.MILLISECONDS);
+        log.info("发送机器人命令：{}", pending.command);
+        pending.sentAt = System.nanoTime();
+        channel.writeAndFlush(pending.command);
+    }
+
+    private static void failAll(ArrayDeque<PendingCommand> commands, Exception e) {
+        PendingCommand pending;
+        while ((pending = commands.poll()) != null) {
+            if (pending.timeout != null) {
+                pending.timeout.cancel(false);
+            }
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 没有对应命令的机器人消息监听器
+     */
+    public interface RobotLineListener {
+        void onLine(RobotLine line);
+    }
+
+    /**
+     * 等待应答的命令
+     */
+    private static final class PendingCommand {
+        private final String command;
+        private final CompletableFuture<RobotLine> future = new CompletableFuture<>();
+        private ScheduledFuture<?> timeout;
+        private long sentAt;
+
+        PendingCommand(String command) {
+            this.command = command;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.jc.netty.codec;
+
+import com.jc.constants.Constants;
+import com.jc.utils.CRC16;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * Modbus RTU 命令帧编码
+ * <p>
+ * 步进电机命令均为06写单个寄存器，称重传感器读值为03读保持寄存器，帧直接写入池化ByteBuf并追加CRC；
+ * 每台电机的停机帧在类加载时预先编码为只读缓冲区
+ */
+public final class ModbusCommandEncoder {
+    /** 读保持寄存器功能码 */
+    public static final int FUNC_READ_HOLDING_REGISTERS = 0x03;
+    /** 写单个寄存器功能码 */
+    public static final int FUNC_WRITE_SINGLE_REGISTER = 0x06;
+    /** 写单个寄存器帧长度 */
+    public static final int WRITE_FRAME_LENGTH = 8;
+    /** 正转寄存器 */
+    public static final int REG_FORWARD = 0x0000;
+    /** 反转寄存器 */
+    public static final int REG_REVERSE = 0x0001;
+    /** 停机寄存器 */
+    public static final int REG_STOP = 0x0002;
+    /** 速度寄存器 */
+    public static final int REG_SPEED = 0x0005;
+    /** 脉冲数寄存器 */
+    public static final int REG_PULSES = 0x0007;
+
+    /** 停机帧，下标为电机编号 */
+    private static final ByteBuf[] STOP = new ByteBuf[Constants.MAX_MOTOR_NO + 1];
+
+    static {
+        for (int motorNumber = 1; motorNumber <= Constants.MAX_MOTOR_NO; motorNumber++) {
+            STOP[motorNumber] = share(writeSingleRegister(motorNumber, REG_STOP, 1));
+        }
+    }
+
+    private ModbusCommandEncoder() {
+    }
+
+    /**
+     * 停机命令
+     *
+     * @param motorNumber 步进电机编号，1-{@link Constants#MAX_MOTOR_NO}
+     * @return 共享只读帧的副本
+     */
+    public static ByteBuf stop(int motorNumber) {
+        return STOP[motorNumber].retainedDuplicate();
+    }
+
+    /**
+     * 脉冲数命令，0表示持续转动
+     *
+     * @param motorNumber    步进电机编号
+     * @param numberOfPulses 脉冲数量
+     * @return 命令帧
+     */
+    public static ByteBuf pulses(int motorNumber, int numberOfPulses) {
+        return writeSingleRegister(motorNumber, REG_PULSES, numberOfPulses);
+    }
+
+    /**
+     * 速度命令
+     *
+     * @param motorNumber 步进电机编号
+     * @param speed       速度
+     * @return 命令帧
+     */
+    public static ByteBuf speed(int motorNumber, int speed) {
+        return writeSingleRegister(motorNumber, REG_SPEED, speed);
+    }
+
+    /**
+     * 转动命令
+     *
+     * @param motorNumber        步进电机编号
+     * @param positiveOrNegative true为正转，false为反转
+     * @return 命令帧
+     */
+    public static ByteBuf rotation(int motorNumber, boolean positiveOrNegative) {
+        return writeSingleRegister(motorNumber, positiveOrNegative ? REG_FORWARD : REG_REVERSE, 1);
+    }
+
+    /**
+     * 03读保持寄存器：从站 03 寄存器高 寄存器低 数量高 数量低 CRC低 CRC高
+     *
+     * @param slave    从站地址
+     * @param register 起始寄存器地址
+     * @param quantity 寄存器数量
+     * @return 命令帧
+     */
+    public static ByteBuf readHoldingRegisters(int slave, int register, int quantity) {
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer(WRITE_FRAME_LENGTH);
+        int start = buf.writerIndex();
+        buf.writeByte(slave)
+                .writeByte(FUNC_READ_HOLDING_REGISTERS)
+                .writeShort(register)
+                .writeShort(quantity);
+        return CRC16.appendCrc(buf, start);
+    }
+
+    /**
+     * 将命令帧编码为可重复发送的共享只读帧，用于固定不变的轮询命令
+     *
+     * @param frame 命令帧，调用后释放
+     * @return 共享只读帧，发送时使用{@link ByteBuf#retainedDuplicate()}
+     */
+    public static ByteBuf share(ByteBuf frame) {
+        byte[] bytes = new byte[frame.readableBytes()];
+        frame.readBytes(bytes);
+        frame.release();
+        return ZhiqianCommandEncoder.precompile(bytes);
+    }
+
+    /**
+     * 06写单个寄存器：从站 06 寄存器高 寄存器低 值高 值低 CRC低 CRC高
+     *
+     * @param slave    从站地址
+     * @param register 寄存器地址
+     * @param value    寄存器值
+     * @return 命令帧
+     */
+    public static ByteBuf writeSingleRegister(int slave, int register, int value) {
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer(WRITE_FRAME_LENGTH);
+        int start = buf.writerIndex();
+        buf.writeByte(slave)
+                .writeByte(FUNC_WRITE_SINGLE_REGISTER)
+                .writeShort(register)
+                .writeShort(value);
+        return CRC16.appendCrc(buf, start);
+    }
+}
@@ -0,0 +1,89 @@
+package com.jc.netty.codec;
+
+import com.jc.utils.HexConvert;
+
+/**
+ * Modbus RTU 应答帧（485转网口模块转发的步进电机、称重传感器应答）
+ * 帧格式：从站地址 功能码 数据... CRC低 CRC高
+ * <p>
+ * 不可变对象，数据区为去掉地址、功能码和CRC后的部分
+ */
+public final class ModbusFrame {
+    /** 异常应答功能码标志位 */
+    public static final int EXCEPTION_FLAG = 0x80;
+
+    /** 从站地址 */
+    private final int slave;
+    /** 功能码 */
+    private final int function;
+    /** 数据区 */
+    private final byte[] data;
+
+    public ModbusFrame(int slave, int function, byte[] data) {
+        this.slave = slave;
+        this.function = function;
+        this.data = data;
+    }
+
+    public int getSlave() {
+        return slave;
+    }
+
+    public int getFunction() {
+        return function;
+    }
+
+    /**
+     * 是否为异常应答
+     *
+     * @return 功能码最高位为1时返回true
+     */
+    public boolean isException() {
+        return (function & EXCEPTION_FLAG) != 0;
+    }
+
+    /**
+     * 数据区长度
+     *
+     * @return 字节数
+     */
+    public int dataLength() {
+        return data.length;
+    }
+
+    /**
+     * 读取数据区无符号字节
+     *
+     * @param index 数据区下标
+     * @return 0-255
+     */
+    public int getUnsignedByte(int index) {
+        return data[index] & 0xFF;
+    }
+
+    /**
+     * 读取数据区大端无符号16位整数
+     *
+     * @param index 数据区下标
+     * @return 0-65535
+     */
+    public int getUnsignedShort(int index) {
+        return (data[index] & 0xFF) << 8 | data[index + 1] & 0xFF;
+    }
+
+    /**
+     * 读取数据区大端32位整数
+     *
+     * @param index 数据区下标
+     * @return 32位整数
+     */
+    public int getInt(int index) {
+        return getUnsignedShort(index) << 16 | getUnsignedShort(index + 2);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ModbusFrame[slave=%02X, func=%02X, data=%s]", slave, function,
+                HexConvert.toHexString(data, 0, data.length));
+    }
+}
@@ -0,0 +1,75 @@
+package com.jc.netty.codec;
+
+import com.jc.utils.CRC16;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * Modbus RTU 应答帧解码器
+ * 根据功能码推算帧长度完成组帧，CRC不正确的帧丢弃并重新同步，输出{@link ModbusFrame}
+ */
+@Slf4j
+public class ModbusRtuFrameDecoder extends ByteToMessageDecoder {
+    /** 最短帧：地址 + 功能码 + 异常码 + CRC */
+    public static final int MIN_FRAME_LENGTH = 5;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        if (in.readableBytes() < MIN_FRAME_LENGTH) {
+            return;
+        }
+        int start = in.readerIndex();
+        int function = in.getUnsignedByte(start + 1);
+        int length = frameLength(function, in.getUnsignedByte(start + 2));
+        if (length < 0) {
+            log.warn("未知的Modbus功能码：{}，丢弃1字节重新同步", Integer.toHexString(function));
+            in.skipBytes(1);
+            return;
+        }
+        if (in.readableBytes() < length) {
+            return;
+        }
+        if (!CRC16.check(in, start, length)) {
+            log.warn("Modbus帧CRC校验失败，丢弃1字节重新同步");
+            in.skipBytes(1);
+            return;
+        }
+        int slave = in.getUnsignedByte(start);
+        byte[] data = new byte[length - 4];
+        in.getBytes(start + 2, data);
+        in.skipBytes(length);
+        out.add(new ModbusFrame(slave, function, data));
+    }
+
+    /**
+     * 根据功能码推算应答帧长度
+     *
+     * @param function  功能码
+     * @param thirdByte 帧的第3个字节（读命令应答中为数据字节数）
+     * @return 帧长度，未知功能码返回-1
+     */
+    public static int frameLength(int function, int thirdByte) {
+        if ((function & ModbusFrame.EXCEPTION_FLAG) != 0) {
+            return MIN_FRAME_LENGTH;
+        }
+        switch (function) {
+            case 0x01:
+            case 0x02:
+            case 0x03:
+            case 0x04:
+                // 地址 + 功能码 + 字节数 + 数据 + CRC
+                return 5 + thirdByte;
+            case 0x05:
+            case 0x06:
+            case 0x0F:
+            case 0x10:
+                return 8;
+            default:
+                return -1;
+        }
+    }
+}
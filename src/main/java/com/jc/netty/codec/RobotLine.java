@@ -0,0 +1,40 @@
+package com.jc.netty.codec;
+
+/**
+ * 机器人（Duco）返回的一行文本
+ */
+public final class RobotLine {
+    /** 脚本完成推送前缀，如done(takeABowl.jspf) */
+    public static final String DONE_PREFIX = "done(";
+    /** 脚本出错推送前缀，如error(takeABowl.jspf) */
+    public static final String ERROR_PREFIX = "error(";
+    /** 程序状态推送前缀，如state:idle */
+    public static final String STATE_PREFIX = "state:";
+
+    /** 去掉行尾换行符后的文本 */
+    private final String text;
+
+    public RobotLine(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * 是否为机器人主动推送的消息，推送不是命令的应答
+     *
+     * @return 以done(、error(开头并以右括号结尾，或以state:开头时为true
+     */
+    public boolean isPush() {
+        String t = text.trim();
+        return ((t.startsWith(DONE_PREFIX) || t.startsWith(ERROR_PREFIX)) && t.endsWith(")"))
+                || t.startsWith(STATE_PREFIX);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
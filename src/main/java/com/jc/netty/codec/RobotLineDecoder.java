@@ -0,0 +1,41 @@
+package com.jc.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.ByteProcessor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 机器人文本行解码器
+ * 以换行符分帧，去掉行尾的\r\n，输出{@link RobotLine}，空行忽略
+ */
+@Slf4j
+public class RobotLineDecoder extends ByteToMessageDecoder {
+    /** 单行最大长度，超过后丢弃，防止异常数据撑爆缓冲区 */
+    public static final int MAX_LINE_LENGTH = 4096;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        int eol = in.forEachByte(ByteProcessor.FIND_LF);
+        if (eol < 0) {
+            if (in.readableBytes() > MAX_LINE_LENGTH) {
+                log.warn("机器人消息超过{}字节仍没有换行符，丢弃", MAX_LINE_LENGTH);
+                in.skipBytes(in.readableBytes());
+            }
+            return;
+        }
+        int start = in.readerIndex();
+        int end = eol;
+        if (end > start && in.getByte(end - 1) == '\r') {
+            end--;
+        }
+        in.readerIndex(eol + 1);
+        if (end > start) {
+            out.add(new RobotLine(in.toString(start, end - start, StandardCharsets.UTF_8)));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.jc.netty.codec;
+
+import com.jc.constants.Constants;
+import com.jc.utils.HexConvert;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+/**
+ * 智嵌自定义协议命令帧编码（IO模块、继电器模块）
+ * <p>
+ * 固定命令在类加载时预先编码为只读的池化缓冲区，每次发送返回retainedDuplicate()，不再重复解析字符串；
+ * 带参数的命令直接写入池化ByteBuf
+ */
+public final class ZhiqianCommandEncoder {
+    /** 模块地址 */
+    public static final int ADDRESS = 0x01;
+    /** 写全部继电器命令 */
+    public static final int CMD_WRITE_ALL = 0x57;
+    /** 全部继电器打开时的状态字节，每个字节表示4路 */
+    public static final int ALL_ON = 0x55;
+
+    private static final ByteBuf RESET = precompile(HexConvert.hexStringToBytes(Constants.RESET_COMMAND.replaceAll(" ", "")));
+    private static final ByteBuf CLOSE_ALL = precompile(writeAll(PooledByteBufAllocator.DEFAULT.directBuffer(ZhiqianFrameDecoder.LONG_FRAME_LENGTH), 0));
+    private static final ByteBuf OPEN_ALL = precompile(writeAll(PooledByteBufAllocator.DEFAULT.directBuffer(ZhiqianFrameDecoder.LONG_FRAME_LENGTH), -1));
+
+    private ZhiqianCommandEncoder() {
+    }
+
+    /**
+     * IO模块重置（读取状态）命令
+     *
+     * @return 共享只读帧的副本
+     */
+    public static ByteBuf reset() {
+        return RESET.retainedDuplicate();
+    }
+
+    /**
+     * 关闭所有继电器命令
+     *
+     * @return 共享只读帧的副本
+     */
+    public static ByteBuf closeAll() {
+        return CLOSE_ALL.retainedDuplicate();
+    }
+
+    /**
+     * 打开所有继电器命令
+     *
+     * @return 共享只读帧的副本
+     */
+    public static ByteBuf openAll() {
+        return OPEN_ALL.retainedDuplicate();
+    }
+
+    /**
+     * 写全部继电器命令：48 3A 01 57 8个状态字节 校验和 45 44，每个状态字节表示4路，01、04、10、40依次为第1到第4路
+     *
+     * @param mask 32路继电器的状态，第N路打开时第N-1位为1
+     * @return 命令帧
+     */
+    public static ByteBuf writeAll(int mask) {
+        return writeAll(ByteBufAllocator.DEFAULT.buffer(ZhiqianFrameDecoder.LONG_FRAME_LENGTH), mask);
+    }
+
+    /**
+     * 单路继电器开关命令：48 3A 01 70 编号 01/00 00 00 45 44
+     *
+     * @param no   继电器编号，1-32
+     * @param open true为打开，false为关闭
+     * @return 命令帧
+     */
+    public static ByteBuf relaySwitch(int no, boolean open) {
+        return relay(no, open ? 1 : 0, 0);
+    }
+
+    /**
+     * 单路继电器打开一段时间后自动关闭命令：48 3A 01 70 编号 01 时间高 时间低 45 44
+     *
+     * @param no      继电器编号，1-32
+     * @param seconds 延迟关闭时间（秒），1-65535
+     * @return 命令帧
+     */
+    public static ByteBuf relayTimedOpen(int no, int seconds) {
+        return relay(no, 1, seconds);
+    }
+
+    private static ByteBuf relay(int no, int state, int seconds) {
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer(ZhiqianFrameDecoder.SHORT_FRAME_LENGTH);
+        buf.writeShort(ZhiqianFrameDecoder.HEADER)
+                .writeByte(ADDRESS)
+                .writeByte(ZhiqianFrameDecoder.CMD_RELAY_SWITCH)
+                .writeByte(no)
+                .writeByte(state)
+                .writeShort(seconds)
+                .writeShort(ZhiqianFrameDecoder.TAIL);
+        return buf;
+    }
+
+    /**
+     * 写全部继电器命令直接写入buf，校验和边写边算
+     */
+    private static ByteBuf writeAll(ByteBuf buf, int mask) {
+        buf.writeShort(ZhiqianFrameDecoder.HEADER)
+                .writeByte(ADDRESS)
+                .writeByte(CMD_WRITE_ALL);
+        int sum = (ZhiqianFrameDecoder.HEADER >> 8) + (ZhiqianFrameDecoder.HEADER & 0xFF) + ADDRESS + CMD_WRITE_ALL;
+        for (int i = 0; i < 8; i++) {
+            int relays = mask >>> (i * 4);
+            // 每路的状态位间隔一位：第1路01、第2路04、第3路10、第4路40
+            int b = (relays & 0x1) | (relays & 0x2) << 1 | (relays & 0x4) << 2 | (relays & 0x8) << 3;
+            buf.writeByte(b);
+            sum += b;
+        }
+        return buf.writeByte(sum).writeShort(ZhiqianFrameDecoder.TAIL);
+    }
+
+    /**
+     * 预编码为只读、不可释放的池化直接缓冲区
+     */
+    static ByteBuf precompile(byte[] bytes) {
+        return precompile(PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length).writeBytes(bytes));
+    }
+
+    private static ByteBuf precompile(ByteBuf buf) {
+        return Unpooled.unreleasableBuffer(buf.asReadOnly());
+    }
+}
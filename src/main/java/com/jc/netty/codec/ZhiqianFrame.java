@@ -0,0 +1,57 @@
+package com.jc.netty.codec;
+
+import com.jc.utils.HexConvert;
+
+/**
+ * 智嵌自定义协议帧（IO模块、继电器模块）
+ * 帧格式：48 3A 地址 命令 数据... [校验和] 45 44
+ * <p>
+ * 不可变对象，数据区只能按下标读取，不对外暴露内部数组
+ */
+public final class ZhiqianFrame {
+    /** 设备地址 */
+    private final int address;
+    /** 命令码 */
+    private final int command;
+    /** 数据区（不含帧头、地址、命令、校验和及帧尾） */
+    private final byte[] data;
+
+    public ZhiqianFrame(int address, int command, byte[] data) {
+        this.address = address;
+        this.command = command;
+        this.data = data;
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    public int getCommand() {
+        return command;
+    }
+
+    /**
+     * 数据区长度
+     *
+     * @return 字节数
+     */
+    public int dataLength() {
+        return data.length;
+    }
+
+    /**
+     * 读取数据区指定下标的无符号字节
+     *
+     * @param index 数据区下标，从0开始
+     * @return 0-255
+     */
+    public int getData(int index) {
+        return data[index] & 0xFF;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ZhiqianFrame[addr=%02X, cmd=%02X, data=%s]", address, command,
+                HexConvert.toHexString(data, 0, data.length));
+    }
+}
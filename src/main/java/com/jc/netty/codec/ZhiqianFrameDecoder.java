@@ -0,0 +1,86 @@
+package com.jc.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * 智嵌自定义协议解码器
+ * 负责TCP拆包、粘包后的重新组帧，输出{@link ZhiqianFrame}
+ * <p>
+ * 帧长度由命令码决定：单路继电器命令(70/71)为10字节，其余为15字节（含校验和）
+ */
+@Slf4j
+public class ZhiqianFrameDecoder extends ByteToMessageDecoder {
+    /** 帧头 48 3A */
+    public static final int HEADER = 0x483A;
+    /** 帧尾 45 44 */
+    public static final int TAIL = 0x4544;
+    /** 单路继电器命令帧长度 */
+    public static final int SHORT_FRAME_LENGTH = 10;
+    /** 带校验和的标准帧长度 */
+    public static final int LONG_FRAME_LENGTH = 15;
+    /** 单路继电器控制命令 */
+    public static final int CMD_RELAY_SWITCH = 0x70;
+    /** 单路继电器控制应答 */
+    public static final int CMD_RELAY_SWITCH_ACK = 0x71;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        if (in.readableBytes() < SHORT_FRAME_LENGTH) {
+            return;
+        }
+        int start = in.readerIndex();
+        // 不是帧头，丢弃到下一个可能的帧头
+        if (in.getUnsignedShort(start) != HEADER) {
+            int next = in.indexOf(start + 1, in.writerIndex(), (byte) (HEADER >> 8));
+            in.readerIndex(next < 0 ? in.writerIndex() : next);
+            return;
+        }
+        int command = in.getUnsignedByte(start + 3);
+        int length = frameLength(command);
+        if (in.readableBytes() < length) {
+            return;
+        }
+        if (in.getUnsignedShort(start + length - 2) != TAIL || !checksumMatches(in, start, length)) {
+            log.warn("丢弃无效的智嵌协议帧，命令码：{}", Integer.toHexString(command));
+            in.skipBytes(1);
+            return;
+        }
+        int address = in.getUnsignedByte(start + 2);
+        // 数据区：去掉帧头2字节、地址、命令，以及帧尾2字节（长帧还要去掉校验和）
+        int dataLength = length - (length == LONG_FRAME_LENGTH ? 7 : 6);
+        byte[] data = new byte[dataLength];
+        in.getBytes(start + 4, data);
+        in.skipBytes(length);
+        out.add(new ZhiqianFrame(address, command, data));
+    }
+
+    /**
+     * 根据命令码获取帧长度
+     *
+     * @param command 命令码
+     * @return 帧长度
+     */
+    public static int frameLength(int command) {
+        return command == CMD_RELAY_SWITCH || command == CMD_RELAY_SWITCH_ACK ? SHORT_FRAME_LENGTH : LONG_FRAME_LENGTH;
+    }
+
+    /**
+     * 校验和：帧尾前一个字节等于其之前所有字节之和的低8位，短帧没有校验和
+     */
+    private static boolean checksumMatches(ByteBuf in, int start, int length) {
+        if (length != LONG_FRAME_LENGTH) {
+            return true;
+        }
+        int sum = 0;
+        int checksumIndex = start + length - 3;
+        for (int i = start; i < checksumIndex; i++) {
+            sum += in.getUnsignedByte(i);
+        }
+        return (sum & 0xFF) == in.getUnsignedByte(checksumIndex);
+    }
+}
@@ -0,0 +1,411 @@
+package com.jc.netty.journal;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.internal.PlatformDependent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 设备帧日志：收发的每一帧原始字节以二进制追加到内存映射的段文件中
+ * <p>
+ * 写入只是把帧头和字节复制到映射内存，没有格式化和对象分配，可以在生产环境一直开着；
+ * 记录的长度字段最后写入，进程崩溃时段中最后一条不完整的记录读取时被忽略。
+ * 追加不加锁，各线程用原子加法在当前段中占位；段写满时加锁换新段，旧段等正在写的记录写完后截断到实际长度，
+ * 换段时按总大小和保留时间删除最旧的段。
+ * 所有机器的设备共用一个日志，设备名称为 机器编号/设备，如 1/io
+ *
+ * @see JournalReader
+ */
+@Component
+@Slf4j
+public class FrameJournal {
+    /** 段文件名前缀，后接段开始时间（纳秒），按文件名排序即为时间顺序 */
+    public static final String SEGMENT_PREFIX = "frames-";
+    public static final String SEGMENT_SUFFIX = ".jnl";
+    /** 段文件头：魔数和版本 */
+    public static final int MAGIC = 0x4A4E4C31;
+    public static final int VERSION = 1;
+    public static final int SEGMENT_HEADER_LENGTH = 8;
+    /** 设备编号上限，设备编号占2个字节 */
+    public static final int MAX_DEVICES = 0xFFFF;
+
+    private static final long MB = 1024L * 1024L;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final long maxTotalBytes;
+    private final long maxAgeNanos;
+
+    /** 设备名称到编号 */
+    private final Map<String, Integer> deviceIds = new HashMap<>();
+    private final List<String> deviceNames = new ArrayList<>();
+    /** 每个段开头的设备登记记录的总长度 */
+    private volatile int deviceTableSize;
+    /** 当前系统时间（纳秒）与System.nanoTime()的差，记录时间不调用currentTimeMillis */
+    private long epochOffsetNanos;
+    /** 正在写的段，没有打开时为null */
+    private volatile Segment current;
+    /** 数据超过段大小、没有记录的帧数 */
+    private final AtomicLong skipped = new AtomicLong();
+
+    @Autowired
+    public FrameJournal(@Value("${journal.enabled:true}") boolean enabled,
+                        @Value("${journal.dir:journal}") String directory,
+                        @Value("${journal.segmentMb:64}") int segmentMb,
+                        @Value("${journal.maxTotalMb:1024}") long maxTotalMb,
+                        @Value("${journal.maxAgeHours:72}") long maxAgeHours) {
+        this(enabled, Paths.get(directory), (int) (segmentMb * MB), maxTotalMb * MB, TimeUnit.HOURS.toNanos(maxAgeHours));
+    }
+
+    /**
+     * @param enabled       为false时不记录
+     * @param directory     段文件目录
+     * @param segmentSize   段大小（字节）
+     * @param maxTotalBytes 所有段的总大小上限，超过时删除最旧的段
+     * @param maxAgeNanos   段的保留时间，结束时间早于此的段被删除
+     */
+    public FrameJournal(boolean enabled, Path directory, int segmentSize, long maxTotalBytes, long maxAgeNanos) {
+        if (segmentSize <= SEGMENT_HEADER_LENGTH + JournalRecord.HEADER_LENGTH) {
+            throw new IllegalArgumentException("段大小太小：" + segmentSize);
+        }
+        this.enabled = enabled;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxTotalBytes = maxTotalBytes;
+        this.maxAgeNanos = maxAgeNanos;
+    }
+
+    /**
+     * 打开新段开始记录，已有的段保留；不能创建目录或段文件时不记录，不影响设备通信
+     */
+    @PostConstruct
+    public synchronized void open() {
+        if (!enabled || current != null) {
+            return;
+        }
+        epochOffsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+            roll();
+        } catch (IOException e) {
+            log.error("设备帧日志打开失败，不记录设备帧：{}", directory.toAbsolutePath(), e);
+            return;
+        }
+        log.info("设备帧日志：{}，段大小{}MB", directory.toAbsolutePath(), segmentSize / MB);
+    }
+
+    /**
+     * 是否正在记录
+     */
+    public boolean isOpen() {
+        return current != null;
+    }
+
+    /**
+     * 停止记录，等正在写的记录写完后当前段截断到实际长度
+     */
+    @PreDestroy
+    public synchronized void close() {
+        Segment segment = current;
+        if (segment == null) {
+            return;
+        }
+        current = null;
+        retire(segment);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 取设备编号，新设备登记到当前段
+     *
+     * @param device 设备名称，如 1/io
+     * @return 设备编号
+     * @throws IllegalStateException 设备数超过{@link #MAX_DEVICES}
+     */
+    public synchronized int deviceId(String device) {
+        Integer id = deviceIds.get(device);
+        if (id != null) {
+            return id;
+        }
+        if (deviceNames.size() >= MAX_DEVICES) {
+            throw new IllegalStateException("帧日志设备数超过上限：" + device);
+        }
+        int newId = deviceNames.size();
+        int size = JournalRecord.HEADER_LENGTH + device.getBytes(StandardCharsets.UTF_8).length;
+        deviceIds.put(device, newId);
+        deviceNames.add(device);
+        deviceTableSize += size;
+        Segment segment = current;
+        if (segment != null) {
+            // 持有锁时段不会被换掉，不用登记为写入者
+            int position = segment.next.getAndAdd(size);
+            if (position + size <= segmentSize) {
+                writeDevice(segment, position, newId, device);
+            } else {
+                // 新段开头登记所有设备，包括这一个
+                segment.full(position);
+                rollFrom(segment);
+            }
+        }
+        return newId;
+    }
+
+    /**
+     * 追加一帧，不改变frame的读写下标
+     * <p>
+     * 不加锁：用原子加法在当前段中占位，各线程写各自的位置；只有段写满时换段才加锁。
+     * 并发追加时记录在段中的先后与时间戳的先后可能略有不同
+     *
+     * @param deviceId  {@link #deviceId}返回的设备编号
+     * @param direction {@link JournalRecord#IN}或{@link JournalRecord#OUT}
+     * @param frame     帧的原始字节
+     */
+    public void append(int deviceId, byte direction, ByteBuf frame) {
+        int length = frame.readableBytes();
+        if (length == 0) {
+            return;
+        }
+        int size = JournalRecord.HEADER_LENGTH + length;
+        if (size > segmentSize - SEGMENT_HEADER_LENGTH - deviceTableSize) {
+            skipped.incrementAndGet();
+            return;
+        }
+        for (; ; ) {
+            Segment segment = current;
+            if (segment == null) {
+                return;
+            }
+            // 先登记为写入者再检查是否已换段，换段时等写入者都写完才解除映射
+            segment.writers.incrementAndGet();
+            try {
+                if (segment.retired) {
+                    continue;
+                }
+                int position = segment.next.getAndAdd(size);
+                if (position + size <= segmentSize) {
+                    writeRecord(segment.buffer, position, deviceId, direction, frame, length);
+                    return;
+                }
+                segment.full(position);
+            } finally {
+                segment.writers.decrementAndGet();
+            }
+            if (!rollFrom(segment)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 数据超过段大小、没有记录的帧数
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * 按绝对位置写帧头，数据复制到映射内存，最后写长度；不改变映射内存的下标，多个线程可以同时写不同的位置
+     */
+    private void writeRecord(MappedByteBuffer buffer, int position, int deviceId, byte direction, ByteBuf frame, int length) {
+        buffer.putLong(position + JournalRecord.TIMESTAMP_OFFSET, epochOffsetNanos + System.nanoTime());
+        buffer.putShort(position + JournalRecord.DEVICE_OFFSET, (short) deviceId);
+        buffer.put(position + JournalRecord.DIRECTION_OFFSET, direction);
+        int at = position + JournalRecord.HEADER_LENGTH;
+        int from = frame.readerIndex();
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            buffer.putLong(at + i, frame.getLong(from + i));
+        }
+        for (; i < length; i++) {
+            buffer.put(at + i, frame.getByte(from + i));
+        }
+        buffer.putInt(position + JournalRecord.LENGTH_OFFSET, length);
+    }
+
+    /**
+     * 段写满时换段，其他线程已经换过时直接返回
+     *
+     * @param full 写满的段
+     * @return 可以继续写时返回true，换段失败或已停止记录时返回false
+     */
+    private synchronized boolean rollFrom(Segment full) {
+        if (current != full) {
+            return current != null;
+        }
+        try {
+            roll();
+            return true;
+        } catch (IOException e) {
+            log.error("帧日志换段失败，停止记录", e);
+            current = null;
+            retire(full);
+            return false;
+        }
+    }
+
+    /**
+     * 创建新段并登记所有设备，换下当前段，然后清理过期的段；调用时持有锁
+     */
+    private void roll() throws IOException {
+        long startNanos = epochOffsetNanos + System.nanoTime();
+        Path file = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, startNanos, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment;
+        try {
+            segment = new Segment(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        segment.buffer.putInt(0, MAGIC).putInt(Integer.BYTES, VERSION);
+        int position = SEGMENT_HEADER_LENGTH;
+        for (int id = 0; id < deviceNames.size(); id++) {
+            position = writeDevice(segment, position, id, deviceNames.get(id));
+        }
+        segment.next.set(position);
+        Segment previous = current;
+        current = segment;
+        if (previous != null) {
+            retire(previous);
+        }
+        purge(startNanos);
+    }
+
+    /**
+     * 在段中登记设备
+     *
+     * @return 登记记录之后的位置
+     */
+    private int writeDevice(Segment segment, int position, int id, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putLong(position + JournalRecord.TIMESTAMP_OFFSET, epochOffsetNanos + System.nanoTime());
+        buffer.putShort(position + JournalRecord.DEVICE_OFFSET, (short) id);
+        buffer.put(position + JournalRecord.DIRECTION_OFFSET, JournalRecord.DEVICE);
+        int at = position + JournalRecord.HEADER_LENGTH;
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(at + i, bytes[i]);
+        }
+        buffer.putInt(position + JournalRecord.LENGTH_OFFSET, bytes.length);
+        return at + bytes.length;
+    }
+
+    /**
+     * 换下的段：等正在写的记录写完，刷盘、解除映射并截断到实际长度；调用时持有锁，段已不是当前段
+     */
+    private void retire(Segment segment) {
+        segment.retired = true;
+        while (segment.writers.get() != 0) {
+            Thread.yield();
+        }
+        int used = Math.min(Math.min(segment.next.get(), segment.fullAt.get()), segmentSize);
+        segment.buffer.force();
+        PlatformDependent.freeDirectBuffer(segment.buffer);
+        try {
+            segment.channel.truncate(used);
+            segment.channel.close();
+        } catch (IOException e) {
+            log.warn("帧日志段关闭失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 按总大小和保留时间删除最旧的段，当前段不删除
+     *
+     * @param currentStartNanos 当前段的开始时间
+     */
+    private void purge(long currentStartNanos) {
+        List<Path> segments;
+        try {
+            segments = JournalReader.segments(directory);
+        } catch (IOException e) {
+            log.warn("列出帧日志段失败：{}", e.getMessage());
+            return;
+        }
+        long total = 0;
+        for (Path file : segments) {
+            total += sizeOf(file);
+        }
+        long expireBefore = currentStartNanos - maxAgeNanos;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            Path file = segments.get(i);
+            // 段的结束时间即下一段的开始时间
+            long endNanos = JournalReader.startNanos(segments.get(i + 1));
+            if (total <= maxTotalBytes && endNanos >= expireBefore) {
+                break;
+            }
+            long size = sizeOf(file);
+            try {
+                Files.delete(file);
+                total -= size;
+                log.info("删除帧日志段：{}", file.getFileName());
+            } catch (IOException e) {
+                log.warn("删除帧日志段{}失败：{}", file.getFileName(), e.getMessage());
+            }
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 一个段文件及其映射内存
+     */
+    private static final class Segment {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        /** 下一条记录的位置，写满后继续增长，可能超过段大小 */
+        private final AtomicInteger next = new AtomicInteger();
+        /** 第一条放不下的记录的位置，即段的实际长度 */
+        private final AtomicInteger fullAt = new AtomicInteger(Integer.MAX_VALUE);
+        /** 已登记、还没写完的写入者 */
+        private final AtomicInteger writers = new AtomicInteger();
+        /** 已换下，写入者要改写新段 */
+        private volatile boolean retired;
+
+        Segment(FileChannel channel, MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * 记下放不下的记录的位置
+         */
+        void full(int position) {
+            fullAt.accumulateAndGet(position, Math::min);
+        }
+    }
+}
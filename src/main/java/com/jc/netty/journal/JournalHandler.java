@@ -0,0 +1,40 @@
+package com.jc.netty.journal;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * 把通道收发的原始字节记录到帧日志，放在管道最前面：收到的是解码之前的字节，发出的是编码之后的字节。
+ * 每个通道一个实例
+ */
+public class JournalHandler extends ChannelDuplexHandler {
+    private final FrameJournal journal;
+    private final int deviceId;
+
+    /**
+     * @param journal 帧日志
+     * @param device  设备名称，如 1/io
+     */
+    public JournalHandler(FrameJournal journal, String device) {
+        this.journal = journal;
+        this.deviceId = journal.deviceId(device);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ByteBuf) {
+            journal.append(deviceId, JournalRecord.IN, (ByteBuf) msg);
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ByteBuf) {
+            journal.append(deviceId, JournalRecord.OUT, (ByteBuf) msg);
+        }
+        ctx.write(msg, promise);
+    }
+}
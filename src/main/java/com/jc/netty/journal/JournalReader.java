@@ -0,0 +1,132 @@
+package com.jc.netty.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 帧日志读取
+ * <p>
+ * 按时间顺序读取目录中的所有段（或单个段文件），设备登记记录只用于解析设备名称，不交给回调。
+ * 可以读取正在写入的日志，读到的是打开段时已写完的记录
+ */
+public final class JournalReader {
+    private final List<Path> files;
+
+    /**
+     * @param path 日志目录或单个段文件
+     * @throws IOException 不能列出目录
+     */
+    public JournalReader(Path path) throws IOException {
+        this.files = Files.isDirectory(path) ? segments(path) : Collections.singletonList(path);
+    }
+
+    /**
+     * 目录中的段文件，按开始时间排序
+     *
+     * @param directory 日志目录
+     * @return 段文件
+     * @throws IOException 不能列出目录
+     */
+    public static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                FrameJournal.SEGMENT_PREFIX + "*" + FrameJournal.SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                segments.add(file);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * 段的开始时间
+     *
+     * @param segment 段文件
+     * @return 自1970-01-01起的纳秒数
+     */
+    public static long startNanos(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(FrameJournal.SEGMENT_PREFIX.length(),
+                name.length() - FrameJournal.SEGMENT_SUFFIX.length()));
+    }
+
+    public List<Path> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * 按时间顺序读取所有帧记录
+     *
+     * @param consumer 每条记录的回调，记录对象只在回调中有效
+     * @throws IOException 读取段文件失败或段文件格式不对
+     */
+    public void read(Consumer<JournalRecord> consumer) throws IOException {
+        read(record -> true, consumer);
+    }
+
+    /**
+     * 按时间顺序读取满足条件的帧记录
+     *
+     * @param filter   过滤条件
+     * @param consumer 每条记录的回调，记录对象只在回调中有效
+     * @throws IOException 读取段文件失败或段文件格式不对
+     */
+    public void read(Predicate<JournalRecord> filter, Consumer<JournalRecord> consumer) throws IOException {
+        JournalRecord record = new JournalRecord();
+        for (Path file : files) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // 只读映射由GC解除，命令行工具不依赖Netty
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                readSegment(file, segment, record, filter, consumer);
+            }
+        }
+    }
+
+    private static void readSegment(Path file, ByteBuffer segment, JournalRecord record,
+                                    Predicate<JournalRecord> filter, Consumer<JournalRecord> consumer) throws IOException {
+        if (segment.limit() < FrameJournal.SEGMENT_HEADER_LENGTH || segment.getInt(0) != FrameJournal.MAGIC) {
+            throw new IOException("不是帧日志段：" + file);
+        }
+        if (segment.getInt(4) != FrameJournal.VERSION) {
+            throw new IOException("帧日志段版本不支持：" + file + "，版本" + segment.getInt(4));
+        }
+        Map<Integer, String> devices = new HashMap<>();
+        int position = FrameJournal.SEGMENT_HEADER_LENGTH;
+        while (position + JournalRecord.HEADER_LENGTH <= segment.limit()) {
+            int length = segment.getInt(position + JournalRecord.LENGTH_OFFSET);
+            if (length <= 0 || position + JournalRecord.HEADER_LENGTH + length > segment.limit()) {
+                break;
+            }
+            int deviceId = segment.getShort(position + JournalRecord.DEVICE_OFFSET) & 0xFFFF;
+            if (segment.get(position + JournalRecord.DIRECTION_OFFSET) == JournalRecord.DEVICE) {
+                byte[] name = new byte[length];
+                ByteBuffer source = segment.duplicate();
+                source.position(position + JournalRecord.HEADER_LENGTH);
+                source.get(name);
+                devices.put(deviceId, new String(name, StandardCharsets.UTF_8));
+            } else {
+                String device = devices.get(deviceId);
+                record.wrap(segment, position, device != null ? device : "#" + deviceId);
+                if (filter.test(record)) {
+                    consumer.accept(record);
+                }
+            }
+            position += JournalRecord.HEADER_LENGTH + length;
+        }
+    }
+}
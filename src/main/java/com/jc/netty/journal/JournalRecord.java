@@ -0,0 +1,140 @@
+package com.jc.netty.journal;
+
+import com.jc.utils.HexConvert;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+/**
+ * 帧日志中的一条记录
+ * <p>
+ * 记录格式（大端）：长度(4) 时间戳纳秒(8) 设备编号(2) 方向(1) 保留(1) 数据(长度)，长度为0表示段中没有更多记录。
+ * 读取时同一个对象依次指向每条记录，只在回调中有效，需要保留时用{@link #copyPayload()}复制数据
+ */
+public final class JournalRecord {
+    /** 记录头长度 */
+    public static final int HEADER_LENGTH = 16;
+    /** 收到的原始字节，帧解码之前 */
+    public static final byte IN = 0;
+    /** 发出的字节 */
+    public static final byte OUT = 1;
+    /** 设备编号登记，数据为UTF-8设备名称；每个段开头重新登记所有设备，段可以单独读取 */
+    public static final byte DEVICE = 2;
+
+    static final int LENGTH_OFFSET = 0;
+    static final int TIMESTAMP_OFFSET = 4;
+    static final int DEVICE_OFFSET = 12;
+    static final int DIRECTION_OFFSET = 14;
+
+    private ByteBuffer segment;
+    private int position;
+    private int length;
+    private long timestampNanos;
+    private int deviceId;
+    private byte direction;
+    private String device;
+
+    /**
+     * 指向段中的一条记录
+     */
+    void wrap(ByteBuffer segment, int position, String device) {
+        this.segment = segment;
+        this.position = position;
+        this.length = segment.getInt(position + LENGTH_OFFSET);
+        this.timestampNanos = segment.getLong(position + TIMESTAMP_OFFSET);
+        this.deviceId = segment.getShort(position + DEVICE_OFFSET) & 0xFFFF;
+        this.direction = segment.get(position + DIRECTION_OFFSET);
+        this.device = device;
+    }
+
+    /**
+     * 记录时间，自1970-01-01起的纳秒数
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public Instant getTimestamp() {
+        return Instant.ofEpochSecond(0, timestampNanos);
+    }
+
+    /**
+     * 段内的设备编号
+     */
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * 设备名称，格式为 机器编号/设备，如 1/io
+     */
+    public String getDevice() {
+        return device;
+    }
+
+    /**
+     * {@link #IN}、{@link #OUT}或{@link #DEVICE}
+     */
+    public byte getDirection() {
+        return direction;
+    }
+
+    /**
+     * 数据长度
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * 读取数据指定下标的无符号字节
+     *
+     * @param index 数据下标，从0开始
+     * @return 0-255
+     */
+    public int getByte(int index) {
+        return segment.get(position + HEADER_LENGTH + index) & 0xFF;
+    }
+
+    /**
+     * 复制数据
+     *
+     * @return 新数组
+     */
+    public byte[] copyPayload() {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = segment.duplicate();
+        source.position(position + HEADER_LENGTH);
+        source.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 数据的十六进制表示，字节间以空格分隔
+     */
+    public String toHex() {
+        byte[] bytes = copyPayload();
+        return HexConvert.toHexString(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 方向的名称：IN、OUT或DEVICE
+     */
+    public static String directionName(byte direction) {
+        switch (direction) {
+            case IN:
+                return "IN";
+            case OUT:
+                return "OUT";
+            case DEVICE:
+                return "DEVICE";
+            default:
+                return "UNKNOWN(" + direction + ")";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getTimestamp() + " " + device + " " + directionName(direction) + " " + toHex();
+    }
+}
@@ -0,0 +1,147 @@
+package com.jc.netty.journal;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * 帧日志命令行工具
+ * <pre>
+ * java -cp junchuang.jar -Dloader.main=com.jc.netty.journal.JournalTool org.springframework.boot.loader.PropertiesLauncher \
+ *     dump|csv|stats [--device 1/io] [--direction in|out] [--from 2024-06-10T08:00] [--to 2024-06-10T09:00] [--limit N] 日志目录或段文件
+ * </pre>
+ * dump逐行输出可读的记录，csv输出 时间戳纳秒,设备,方向,十六进制数据，stats按设备和方向统计帧数和字节数。
+ * --device以/结尾时为前缀，如 1/ 表示机器1的所有设备；时间为本地时间
+ */
+public final class JournalTool {
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSSSSS")
+            .withZone(ZoneId.systemDefault());
+
+    private JournalTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            usage();
+            System.exit(2);
+        }
+        String command = args[0];
+        Predicate<JournalRecord> filter = record -> true;
+        long limit = Long.MAX_VALUE;
+        Path path = null;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                path = Paths.get(arg);
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                usage();
+                System.exit(2);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--device":
+                    filter = filter.and(device(value));
+                    break;
+                case "--direction":
+                    byte direction = "out".equalsIgnoreCase(value) ? JournalRecord.OUT : JournalRecord.IN;
+                    filter = filter.and(record -> record.getDirection() == direction);
+                    break;
+                case "--from":
+                    long from = epochNanos(value);
+                    filter = filter.and(record -> record.getTimestampNanos() >= from);
+                    break;
+                case "--to":
+                    long to = epochNanos(value);
+                    filter = filter.and(record -> record.getTimestampNanos() < to);
+                    break;
+                case "--limit":
+                    limit = Long.parseLong(value);
+                    break;
+                default:
+                    usage();
+                    System.exit(2);
+            }
+        }
+        if (path == null) {
+            usage();
+            System.exit(2);
+        }
+        run(command, new JournalReader(path), filter, limit, System.out);
+    }
+
+    /**
+     * 执行命令
+     *
+     * @param command dump、csv或stats
+     * @param reader  日志
+     * @param filter  过滤条件
+     * @param limit   最多输出的记录数
+     * @param out     输出
+     * @throws IOException 读取日志失败
+     */
+    public static void run(String command, JournalReader reader, Predicate<JournalRecord> filter, long limit,
+                           PrintStream out) throws IOException {
+        long[] count = {0};
+        Predicate<JournalRecord> limited = filter.and(record -> count[0] < limit);
+        switch (command) {
+            case "dump":
+                reader.read(limited, record -> {
+                    count[0]++;
+                    out.println(TIME.format(record.getTimestamp()) + " " + record.getDevice() + " "
+                            + JournalRecord.directionName(record.getDirection()) + " " + record.toHex());
+                });
+                break;
+            case "csv":
+                out.println("timestamp_ns,device,direction,hex");
+                reader.read(limited, record -> {
+                    count[0]++;
+                    out.println(record.getTimestampNanos() + "," + record.getDevice() + ","
+                            + JournalRecord.directionName(record.getDirection()) + "," + record.toHex());
+                });
+                break;
+            case "stats":
+                Map<String, long[]> stats = new TreeMap<>();
+                reader.read(limited, record -> {
+                    count[0]++;
+                    long[] s = stats.computeIfAbsent(record.getDevice() + " "
+                            + JournalRecord.directionName(record.getDirection()), k -> new long[2]);
+                    s[0]++;
+                    s[1] += record.getLength();
+                });
+                out.println("设备 方向 帧数 字节数");
+                for (Map.Entry<String, long[]> entry : stats.entrySet()) {
+                    out.println(entry.getKey() + " " + entry.getValue()[0] + " " + entry.getValue()[1]);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("未知命令：" + command);
+        }
+    }
+
+    private static Predicate<JournalRecord> device(String value) {
+        if (value.endsWith("/")) {
+            return record -> record.getDevice().startsWith(value);
+        }
+        return record -> record.getDevice().equals(value);
+    }
+
+    private static long epochNanos(String localDateTime) {
+        Instant instant = LocalDateTime.parse(localDateTime).atZone(ZoneId.systemDefault()).toInstant();
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+
+    private static void usage() {
+        System.err.println("用法：JournalTool dump|csv|stats [--device 1/io] [--direction in|out] "
+                + "[--from 2024-06-10T08:00] [--to 2024-06-10T09:00] [--limit N] 日志目录或段文件");
+    }
+}
@@ -0,0 +1,231 @@
+package com.jc.netty.server;
+
+import com.jc.service.DeviceDriver;
+import com.jc.service.impl.DeviceMetrics;
+import com.jc.service.impl.MachineManager.Machine;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.RejectedExecutionHandlers;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备注册表
+ * <p>
+ * 按IP地址登记设备驱动和设备所属的机器：每台机器子容器中的{@link DeviceDriver}由
+ * {@link com.jc.service.impl.MachineManager}登记，ServiceLoader加载的驱动不属于任何机器。
+ * 连接建立时按远端地址解析一次驱动并保存为通道属性，之后每一帧直接从通道属性取驱动分发，
+ * 不再逐帧比较IP字符串。
+ * <p>
+ * 每个设备地址一个单线程执行器，按到达顺序执行{@link DeviceDriver#handle}，不占用事件循环线程，
+ * 一台设备处理慢或发得多只会让自己的队列变长，不会推迟其他设备的帧；队列有上限，满了丢弃新帧
+ */
+@Component
+@Slf4j
+public class DeviceRegistry {
+    /** 通道对应的设备驱动，未知设备没有该属性 */
+    public static final AttributeKey<DeviceDriver<?>> DRIVER = AttributeKey.valueOf("deviceDriver");
+    /** 通道所属的机器，不属于任何机器的设备没有该属性 */
+    public static final AttributeKey<Machine> MACHINE = AttributeKey.valueOf("machine");
+    /** 通道的帧处理执行器，未知设备没有该属性 */
+    public static final AttributeKey<DefaultEventExecutor> EXECUTOR = AttributeKey.valueOf("deviceExecutor");
+    /** 每台设备等待处理的帧数上限 */
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private final ConcurrentHashMap<InetAddress, Registration> registrations = new ConcurrentHashMap<>();
+    private final int queueSize;
+
+    @Autowired
+    public DeviceRegistry(@Value("${netty.handlerQueueSize:" + DEFAULT_QUEUE_SIZE + "}") int queueSize) {
+        this(Collections.emptyList(), queueSize);
+    }
+
+    /**
+     * @param drivers 不属于任何机器的设备驱动，ServiceLoader加载的驱动在它们之后登记
+     */
+    public DeviceRegistry(List<DeviceDriver<?>> drivers) {
+        this(drivers, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * @param drivers   不属于任何机器的设备驱动，ServiceLoader加载的驱动在它们之后登记
+     * @param queueSize 每台设备等待处理的帧数上限
+     */
+    public DeviceRegistry(List<DeviceDriver<?>> drivers, int queueSize) {
+        this.queueSize = queueSize;
+        for (DeviceDriver<?> driver : drivers) {
+            register(driver);
+        }
+        for (DeviceDriver<?> driver : ServiceLoader.load(DeviceDriver.class)) {
+            register(driver);
+        }
+    }
+
+    /**
+     * 登记不属于任何机器的设备驱动
+     *
+     * @param driver 设备驱动
+     * @throws IllegalStateException 地址无效或已登记给其他驱动
+     */
+    public void register(DeviceDriver<?> driver) {
+        register(driver, null);
+    }
+
+    /**
+     * 登记设备驱动
+     *
+     * @param driver  设备驱动
+     * @param machine 设备所属的机器，可以为null
+     * @throws IllegalStateException 地址无效或已登记给其他驱动
+     */
+    public void register(DeviceDriver<?> driver, Machine machine) {
+        for (String address : driver.addresses()) {
+            if (address == null || address.trim().isEmpty()) {
+                continue;
+            }
+            InetAddress inetAddress;
+            try {
+                inetAddress = InetAddress.getByName(address.trim());
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException("设备" + driver.name() + "的地址无效：" + address, e);
+            }
+            Registration previous = registrations.get(inetAddress);
+            if (previous != null) {
+                if (previous.driver != driver) {
+                    throw new IllegalStateException("设备地址" + address + "同时配置给了" + previous.name() + "和" + Registration.name(driver, machine));
+                }
+                continue;
+            }
+            // 机器按顺序启动、逐个登记，不会并发登记同一地址
+            Registration registration = new Registration(driver, machine, queueSize);
+            registrations.put(inetAddress, registration);
+            if (machine != null) {
+                machine.getBean(DeviceMetrics.class).handlerQueue(driver.name(), registration.executor);
+            }
+            log.info("登记设备{}：{}", registration.name(), inetAddress.getHostAddress());
+        }
+    }
+
+    /**
+     * 按地址查找设备驱动
+     *
+     * @param address 设备地址
+     * @return 设备驱动，未登记的地址返回null
+     */
+    public DeviceDriver<?> lookup(InetAddress address) {
+        Registration registration = registrations.get(address);
+        return registration != null ? registration.driver : null;
+    }
+
+    /**
+     * 按地址查找设备所属的机器
+     *
+     * @param address 设备地址
+     * @return 机器，未登记或不属于任何机器时返回null
+     */
+    public Machine machineOf(InetAddress address) {
+        Registration registration = registrations.get(address);
+        return registration != null ? registration.machine : null;
+    }
+
+    /**
+     * 解析通道远端地址对应的设备驱动和机器，并保存为通道属性
+     *
+     * @param channel 设备连接
+     * @return 设备驱动，未知设备返回null
+     */
+    public DeviceDriver<?> resolve(Channel channel) {
+        SocketAddress remote = channel.remoteAddress();
+        Registration registration = remote instanceof InetSocketAddress ? registrations.get(((InetSocketAddress) remote).getAddress()) : null;
+        if (registration == null) {
+            return null;
+        }
+        channel.attr(DRIVER).set(registration.driver);
+        channel.attr(EXECUTOR).set(registration.executor);
+        if (registration.machine != null) {
+            channel.attr(MACHINE).set(registration.machine);
+        }
+        return registration.driver;
+    }
+
+    /**
+     * 通道的设备驱动
+     *
+     * @param channel 设备连接
+     * @return 连接建立时解析的驱动，未知设备返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static DeviceDriver<Object> driverOf(Channel channel) {
+        return (DeviceDriver<Object>) channel.attr(DRIVER).get();
+    }
+
+    /**
+     * 通道所属的机器
+     *
+     * @param channel 设备连接
+     * @return 连接建立时解析的机器，不属于任何机器时返回null
+     */
+    public static Machine machineOf(Channel channel) {
+        return channel.attr(MACHINE).get();
+    }
+
+    /**
+     * 通道的帧处理执行器
+     *
+     * @param channel 设备连接
+     * @return 连接建立时解析的执行器，未知设备返回null
+     */
+    public static DefaultEventExecutor executorOf(Channel channel) {
+        return channel.attr(EXECUTOR).get();
+    }
+
+    /**
+     * 停止所有设备的帧处理执行器，已排队的帧处理完再退出
+     */
+    @PreDestroy
+    public void shutdown() {
+        for (Registration registration : registrations.values()) {
+            registration.executor.shutdownGracefully(0, 2, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 一个地址的登记信息
+     */
+    private static final class Registration {
+        private final DeviceDriver<?> driver;
+        private final Machine machine;
+        /** 该地址设备的帧处理执行器，第一次提交时才启动线程 */
+        private final DefaultEventExecutor executor;
+
+        Registration(DeviceDriver<?> driver, Machine machine, int queueSize) {
+            this.driver = driver;
+            this.machine = machine;
+            String threadName = machine != null ? "device-" + machine.getId() + "-" + driver.name() : "device-" + driver.name();
+            this.executor = new DefaultEventExecutor(null, new DefaultThreadFactory(threadName), queueSize, RejectedExecutionHandlers.reject());
+        }
+
+        String name() {
+            return name(driver, machine);
+        }
+
+        static String name(DeviceDriver<?> driver, Machine machine) {
+            return machine != null ? "机器" + machine.getId() + "的" + driver.name() : driver.name();
+        }
+    }
+}
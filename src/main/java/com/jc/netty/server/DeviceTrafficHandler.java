@@ -0,0 +1,62 @@
+package com.jc.netty.server;
+
+import com.jc.service.impl.DeviceMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * 设备通道流量统计，放在帧解码器之前
+ * <p>
+ * 统计收发字节数和发出的帧数；{@link #frameCounter()}放在解码器之后统计收到的帧数。
+ * 解码耗时为一次读事件经过解码器的总耗时减去解码器之后的处理耗时。
+ * 每个通道一个实例，只在通道的事件循环线程上使用
+ */
+public class DeviceTrafficHandler extends ChannelDuplexHandler {
+    private final DeviceMetrics.Traffic traffic;
+    /** 本次读事件中解码器之后的处理耗时（纳秒） */
+    private long downstreamNanos;
+
+    public DeviceTrafficHandler(DeviceMetrics.Traffic traffic) {
+        this.traffic = traffic;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        traffic.bytesIn(((ByteBuf) msg).readableBytes());
+        downstreamNanos = 0;
+        long start = System.nanoTime();
+        ctx.fireChannelRead(msg);
+        traffic.decoded(System.nanoTime() - start - downstreamNanos);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ByteBuf) {
+            traffic.frameOut(((ByteBuf) msg).readableBytes());
+        }
+        ctx.write(msg, promise);
+    }
+
+    /**
+     * 解码器之后的帧计数处理器
+     */
+    public ChannelHandler frameCounter() {
+        return new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                traffic.frameIn();
+                long start = System.nanoTime();
+                ctx.fireChannelRead(msg);
+                downstreamNanos += System.nanoTime() - start;
+            }
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package com.jc.netty.server;
+
+import com.jc.service.impl.MachineManager.Machine;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.AbstractEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按机器分配事件循环的worker线程组
+ * <p>
+ * 每台机器在启动时从本组分到一个固定的事件循环（{@link Machine#getEventLoop()}），
+ * 该机器所有设备的连接和机器人客户端都注册到这个事件循环上，一台机器的流量不会排在另一台机器的后面；
+ * 机器数超过线程数时按轮询顺序共用。不属于任何机器的连接仍按轮询分配。
+ * 实际的事件循环由{@link NettyTransport}创建，服务器和机器人客户端用同一种传输
+ */
+public class MachineEventLoopGroup extends AbstractEventExecutorGroup implements EventLoopGroup {
+    private final EventLoopGroup delegate;
+    private final NettyTransport transport;
+    private final DeviceRegistry deviceRegistry;
+
+    /**
+     * @param nThreads       线程数，0表示Netty默认值（CPU核数的2倍）
+     * @param transport      创建事件循环的传输
+     * @param deviceRegistry 按连接的远端地址查找所属机器
+     */
+    public MachineEventLoopGroup(int nThreads, NettyTransport transport, DeviceRegistry deviceRegistry) {
+        this.delegate = transport.newEventLoopGroup(nThreads, new DefaultThreadFactory("device-io"));
+        this.transport = transport;
+        this.deviceRegistry = deviceRegistry;
+    }
+
+    public NettyTransport getTransport() {
+        return transport;
+    }
+
+    @Override
+    public EventLoop next() {
+        return delegate.next();
+    }
+
+    @Override
+    public Iterator<EventExecutor> iterator() {
+        return delegate.iterator();
+    }
+
+    @Override
+    public ChannelFuture register(Channel channel) {
+        EventLoop loop = loopOf(channel);
+        return loop != null ? loop.register(channel) : delegate.register(channel);
+    }
+
+    @Override
+    public ChannelFuture register(ChannelPromise promise) {
+        EventLoop loop = loopOf(promise.channel());
+        return loop != null ? loop.register(promise) : delegate.register(promise);
+    }
+
+    @Deprecated
+    @Override
+    public ChannelFuture register(Channel channel, ChannelPromise promise) {
+        EventLoop loop = loopOf(channel);
+        return loop != null ? loop.register(channel, promise) : delegate.register(channel, promise);
+    }
+
+    /**
+     * 连接所属机器的事件循环，接受连接后、注册之前已能取到远端地址
+     */
+    private EventLoop loopOf(Channel channel) {
+        SocketAddress remote = channel.remoteAddress();
+        Machine machine = remote instanceof InetSocketAddress ? deviceRegistry.machineOf(((InetSocketAddress) remote).getAddress()) : null;
+        return machine != null ? machine.getEventLoop() : null;
+    }
+
+    @Override
+    public boolean isShuttingDown() {
+        return delegate.isShuttingDown();
+    }
+
+    @Override
+    public Future<?> shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit) {
+        return delegate.shutdownGracefully(quietPeriod, timeout, unit);
+    }
+
+    @Override
+    public Future<?> terminationFuture() {
+        return delegate.terminationFuture();
+    }
+
+    @Deprecated
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -1,13 +1,20 @@
 package com.jc.netty.server;
 
+import com.jc.netty.journal.FrameJournal;
+import com.jc.netty.journal.JournalHandler;
+import com.jc.service.DeviceDriver;
+import com.jc.service.impl.DeviceMetrics;
+import com.jc.service.impl.MachineManager;
+import com.jc.service.impl.MachineManager.Machine;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,6 +25,9 @@ import org.springframework.context.annotation.Configuration;
 /**
  * Netty 服务器配置类
  * 配置并启动 Netty 服务器
+ * <p>
+ * 设备和机器人的控制帧只有十几个字节，关闭Nagle算法（TCP_NODELAY）后立即发送，不等前一帧的ACK；
+ * 连接使用池化直接内存分配器，worker线程数默认等于机器数，每台机器一个事件循环，不做多余的线程切换
  */
 @Configuration
 @Slf4j
@@ -25,33 +35,99 @@ public class NettyServerConfig {
 
     @Value("${netty.port}")
     private int port;
+    /** 传输：auto（Linux上有epoll时用epoll）、epoll或nio */
+    @Value("${netty.transport:auto}")
+    private String transport;
+    /** worker线程数，0表示与机器数相同，每台机器独占一个线程 */
+    @Value("${netty.workerThreads:0}")
+    private int workerThreads;
+    /** 设备连接是否关闭Nagle算法 */
+    @Value("${netty.tcpNoDelay:true}")
+    private boolean tcpNoDelay;
+    @Value("${machines:1}")
+    private String[] machines;
+
+    /**
+     * 服务器和机器人客户端共用的传输
+     *
+     * @return 按netty.transport选择的传输，epoll不可用时为NIO
+     */
+    @Bean
+    public NettyTransport nettyTransport() {
+        NettyTransport selected = NettyTransport.select(transport);
+        log.info("Netty 传输：{}", selected);
+        return selected;
+    }
+
+    /**
+     * 设备连接的worker线程组，按机器分配事件循环
+     *
+     * @param nettyTransport 传输
+     * @param deviceRegistry 按客户端IP查找所属机器
+     * @return 线程组，容器关闭时停止
+     */
+    @Bean(destroyMethod = "shutdownGracefully")
+    public MachineEventLoopGroup workerGroup(NettyTransport nettyTransport, DeviceRegistry deviceRegistry) {
+        int threads = workerThreads > 0 ? workerThreads : machines.length;
+        log.info("Netty worker线程数：{}", threads);
+        return new MachineEventLoopGroup(threads, nettyTransport, deviceRegistry);
+    }
 
     /**
      * 配置并启动 Netty 服务器
      *
      * @param nettyServerHandler 处理客户端连接的处理器
+     * @param deviceRegistry     按客户端IP解析设备驱动和所属机器
+     * @param workerGroup        设备连接的worker线程组
+     * @param machineManager     所有机器启动、设备登记完成后才开始接受连接
+     * @param frameJournal       设备帧日志
      * @return 返回服务器的 ChannelFuture
      */
     @Bean
-    public ChannelFuture serverBootstrap(NettyServerHandler nettyServerHandler) {
-        // 创建bossGroup和workerGroup线程池
-        EventLoopGroup bossGroup = new NioEventLoopGroup();
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+    public ChannelFuture serverBootstrap(NettyServerHandler nettyServerHandler, DeviceRegistry deviceRegistry,
+                                         MachineEventLoopGroup workerGroup, MachineManager machineManager,
+                                         FrameJournal frameJournal) {
+        // 只监听一个端口，bossGroup一个线程就够了；workerGroup按机器分配事件循环
+        NettyTransport nettyTransport = workerGroup.getTransport();
+        EventLoopGroup bossGroup = nettyTransport.newEventLoopGroup(1, new DefaultThreadFactory("device-accept"));
 
         try {
             ServerBootstrap b = new ServerBootstrap();
             // 配置服务器参数
             b.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(nettyTransport.serverChannelClass())
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         public void initChannel(SocketChannel ch) {
+                            // 连接建立时按远端地址解析一次设备驱动和所属机器，保存为通道属性
+                            DeviceDriver<?> driver = deviceRegistry.resolve(ch);
+                            Machine machine = DeviceRegistry.machineOf(ch);
+                            // 帧日志在最前面，记录解码之前收到的和编码之后发出的原始字节
+                            if (frameJournal.isOpen()) {
+                                ch.pipeline().addLast("journal", new JournalHandler(frameJournal, journalName(ch, driver, machine)));
+                            }
+                            // 流量统计在解码器之前，统计原始字节，计入所属机器的指标
+                            DeviceTrafficHandler traffic = machine != null
+                                    ? new DeviceTrafficHandler(machine.getBean(DeviceMetrics.class).traffic(driver.name())) : null;
+                            if (traffic != null) {
+                                ch.pipeline().addLast("traffic", traffic);
+                            }
+                            // 添加设备协议的帧解码器
+                            ChannelHandler decoder = driver != null ? driver.newFrameDecoder() : null;
+                            if (decoder != null) {
+                                ch.pipeline().addLast("frameDecoder", decoder);
+                                if (traffic != null) {
+                                    ch.pipeline().addLast("frameCounter", traffic.frameCounter());
+                                }
+                            }
                             // 将自定义的处理器添加到通道的处理器链中
                             ch.pipeline().addLast(nettyServerHandler);
                         }
                     })
                     .option(ChannelOption.SO_BACKLOG, 128) // 设置队列大小
-                    .childOption(ChannelOption.SO_KEEPALIVE, true); // 保持长连接
+                    .childOption(ChannelOption.SO_KEEPALIVE, true) // 保持长连接
+                    .childOption(ChannelOption.TCP_NODELAY, tcpNoDelay) // 小帧立即发送
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
 
             // 绑定端口并启动服务器
             ChannelFuture f = b.bind(port).sync();
@@ -66,4 +142,14 @@ public class NettyServerConfig {
             return null;
         }
     }
+
+    /**
+     * 帧日志中的设备名称：机器编号/设备，不属于任何机器时为设备名称，未知设备为远端IP
+     */
+    private static String journalName(SocketChannel ch, DeviceDriver<?> driver, Machine machine) {
+        if (driver == null) {
+            return ch.remoteAddress().getAddress().getHostAddress();
+        }
+        return machine != null ? machine.getId() + "/" + driver.name() : driver.name();
+    }
 }
@@ -1,20 +1,29 @@
 package com.jc.netty.server;
 
+import com.jc.service.DeviceDriver;
+import com.jc.service.impl.DeviceMetrics;
+import com.jc.service.impl.MachineManager.Machine;
 import com.jc.utils.HexConvert;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.net.InetSocketAddress;
-import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Netty 服务器处理器
@@ -30,7 +39,14 @@ public class NettyServerHandler extends ChannelInboundHandlerAdapter {
     private static final Map<String, Channel> clientMap = new ConcurrentHashMap<>();
 
     @Autowired
-    private FicationProcessing ficationProcessing;
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("device.channels.connected", clientMap, Map::size)
+                .description("已连接的设备通道数")
+                .register(meterRegistry);
+    }
 
     /**
      * 客户端连接时调用
@@ -41,7 +57,7 @@ public class NettyServerHandler extends ChannelInboundHandlerAdapter {
     public void handlerAdded(ChannelHandlerContext ctx) {
         Channel channel = ctx.channel();
         InetSocketAddress clientAddress = (InetSocketAddress) channel.remoteAddress();
-        clientMap.put(clientAddress.getAddress().toString().replace("/", ""), channel);
+        clientMap.put(clientAddress.getAddress().getHostAddress(), channel);
         channels.add(channel);
         log.info("客户端连接成功，IP地址为：{}", clientAddress.getAddress().getHostAddress());
     }
@@ -55,45 +71,59 @@ public class NettyServerHandler extends ChannelInboundHandlerAdapter {
     public void handlerRemoved(ChannelHandlerContext ctx) {
         Channel channel = ctx.channel();
         InetSocketAddress clientAddress = (InetSocketAddress) channel.remoteAddress();
-        clientMap.remove(clientAddress.getAddress().toString().replace("/", ""));
+        clientMap.remove(clientAddress.getAddress().getHostAddress(), channel);
         channels.remove(channel);
         log.info("客户端断开连接，IP地址为：{}", clientAddress.getAddress().getHostAddress());
     }
 
     /**
      * 读取消息时调用
+     * 消息已由通道上的协议解码器组帧，交给连接建立时解析的设备驱动处理；未知设备收到的是原始ByteBuf。
+     * 驱动的快速处理在事件循环线程上执行，其余的排进设备自己的执行器，队列满时丢弃该帧
      *
      * @param ctx 通道处理器上下文
      * @param msg 消息对象
-     * @throws Exception 抛出异常
      */
     @Override
-    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        InetSocketAddress clientAddress = (InetSocketAddress) ctx.channel().remoteAddress();
-        String clientIp = clientAddress.getAddress().toString().replace("/", "");
-        if (msg instanceof ByteBuf) {
-            ByteBuf byteBuf = (ByteBuf) msg;
-            // 获取可读字节数
-            int readableBytes = byteBuf.readableBytes();
-            // 创建一个字节数组来存储可读的字节
-            byte[] bytes = new byte[readableBytes];
-            byteBuf.readBytes(bytes);
-            // 处理字符串
-            String s = HexConvert.BinaryToHexString(bytes);
-            boolean hexStringWithSpaces = isHexStringWithSpaces(s);
-            // 检查是否为16进制字符串
-            if (hexStringWithSpaces) {
-                String hexString = HexConvert.BinaryToHexString(bytes);
-                log.info("clientIp：{}发送的HEX字符:{}", clientIp, hexString);
-                ficationProcessing.classificationProcessing(clientIp, true, hexString);
-            } else {
-                String str = new String(bytes, StandardCharsets.UTF_8);
-                log.info("clientIp：{}发送的普通字符串：{}", clientIp, str);
-                ficationProcessing.classificationProcessing(clientIp, false, str);
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        DeviceDriver<Object> driver = DeviceRegistry.driverOf(ctx.channel());
+        if (driver == null) {
+            if (msg instanceof ByteBuf) {
+                log.error("未知设备{}发送的HEX字符:{}", ctx.channel().remoteAddress(), ByteBufUtil.hexDump((ByteBuf) msg));
             }
-            releaseBuffer(byteBuf);
-        } else {
-            super.channelRead(ctx, msg);
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        if (driver.handleOnEventLoop(msg)) {
+            return;
+        }
+        EventExecutor executor = DeviceRegistry.executorOf(ctx.channel());
+        if (executor == null) {
+            handle(ctx, driver, msg);
+            return;
+        }
+        try {
+            executor.execute(() -> handle(ctx, driver, msg));
+        } catch (RejectedExecutionException e) {
+            driver.onDropped(msg);
+            ReferenceCountUtil.release(msg);
+            Machine machine = DeviceRegistry.machineOf(ctx.channel());
+            if (machine != null) {
+                machine.getBean(DeviceMetrics.class).traffic(driver.name()).frameDropped();
+            }
+            log.debug("设备{}的处理队列已满，丢弃帧:{}", driver.name(), msg);
+        }
+    }
+
+    /**
+     * 交给设备驱动处理，异常与在事件循环线程上抛出时一样处理
+     */
+    private void handle(ChannelHandlerContext ctx, DeviceDriver<Object> driver, Object msg) {
+        log.debug("设备{}发送的帧:{}", driver.name(), msg);
+        try {
+            driver.handle(msg);
+        } catch (Exception e) {
+            exceptionCaught(ctx, e);
         }
     }
 
@@ -101,7 +131,7 @@ public class NettyServerHandler extends ChannelInboundHandlerAdapter {
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         if (cause instanceof java.net.SocketException && cause.getMessage().contains("Connection reset")) {
             InetSocketAddress clientAddress = (InetSocketAddress) ctx.channel().remoteAddress();
-            String clientIp = clientAddress.getAddress().toString().replace("/", "");
+            String clientIp = clientAddress.getAddress().getHostAddress();
             log.warn("客户端{}连接已重置：{}", clientIp, cause.getMessage());
         } else {
             log.error("未处理的异常：", cause);
@@ -111,64 +141,44 @@ public class NettyServerHandler extends ChannelInboundHandlerAdapter {
     }
 
     /**
-     * 判断字符串是否为16进制字符串
+     * 发送消息到指定客户端
      *
-     * @param str 待检查的字符串
-     * @return 如果字符串为16进制字符串则返回true，否则返回false
+     * @param clientIp 客户端IP地址
+     * @param message  消息内容
+     * @param hex      是否为16进制消息
      */
-    private boolean isHexStringWithSpaces(String str) {
-        // 检查字符串是否为空
-        if (str == null || str.isEmpty()) {
-            return false;
-        }
-        // 检查字符串中的每个字符是否为16进制字符或空格
-        for (char ch : str.toCharArray()) {
-            if (!((ch >= '0' && ch <= '9') ||
-                    (ch >= 'a' && ch <= 'f') ||
-                    (ch >= 'A' && ch <= 'F') ||
-                    ch == ' ')) {
-                return false;
-            }
-        }
-        return true;
+    public void sendMessageToClient(String clientIp, String message, Boolean hex) {
+        byte[] bytes = hex ? HexConvert.hexStringToBytes(message.replaceAll(" ", "")) : message.getBytes();
+        sendFrameToClient(clientIp, Unpooled.wrappedBuffer(bytes));
     }
 
     /**
-     * 发送消息到指定客户端
+     * 获取指定客户端的通道
      *
      * @param clientIp 客户端IP地址
-     * @param message  消息内容
-     * @param hex      是否为16进制消息
+     * @return 通道，未连接时返回null
      */
-    public void sendMessageToClient(String clientIp, String message, Boolean hex) {
-        for (Map.Entry<String, Channel> entry : clientMap.entrySet()) {
-            String address = entry.getKey();
-            if (address.equals(clientIp)) {
-                Channel channel = entry.getValue();
-                log.info("服务器发送指令：{}",message);
-                if (hex) {
-                    ByteBuf buff = Unpooled.buffer();
-                    buff.writeBytes(HexConvert.hexStringToBytes(message.replaceAll(" ", "")));
-                    channel.writeAndFlush(buff);
-                } else {
-                    ByteBuf buff = Unpooled.buffer();
-                    buff.writeBytes(message.getBytes());
-                    channel.writeAndFlush(buff);
-                }
-                return;
-            }
-        }
-        log.error("无法找到与 IP 地址 {} 相关联的通道！", clientIp);
+    public Channel getChannel(String clientIp) {
+        return clientMap.get(clientIp);
     }
 
     /**
-     * 释放ByteBuf资源
+     * 发送已编码的命令帧到指定客户端，发送完成后由Netty释放该帧
      *
-     * @param buffer ByteBuf对象
+     * @param clientIp 客户端IP地址
+     * @param frame    命令帧
+     * @return 发送结果，找不到通道时返回null
      */
-    private void releaseBuffer(ByteBuf buffer) {
-        if (buffer != null && buffer.refCnt() != 1) {
-            buffer.release(); // 释放 ByteBuf 资源
+    public ChannelFuture sendFrameToClient(String clientIp, ByteBuf frame) {
+        Channel channel = clientMap.get(clientIp);
+        if (channel == null) {
+            ReferenceCountUtil.release(frame);
+            log.error("无法找到与 IP 地址 {} 相关联的通道！", clientIp);
+            return null;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("服务器发送指令：{}", ByteBufUtil.hexDump(frame));
         }
+        return channel.writeAndFlush(frame);
     }
 }
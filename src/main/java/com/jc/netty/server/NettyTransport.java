@@ -0,0 +1,136 @@
+package com.jc.netty.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Netty传输层：事件循环组和通道类型必须配套使用
+ * <p>
+ * epoll是Linux原生传输，比NIO少一层选择器封装和系统调用，小帧的往返时间更短。
+ * 编译时不依赖netty-transport-native-epoll，以-Pepoll打包或把该jar放到classpath上即可启用，
+ * 取不到时回退为NIO
+ */
+@Slf4j
+public final class NettyTransport {
+    /** Linux上有epoll时用epoll，否则用NIO */
+    public static final String AUTO = "auto";
+    public static final String EPOLL = "epoll";
+    public static final String NIO = "nio";
+
+    private static final String EPOLL_PACKAGE = "io.netty.channel.epoll.";
+
+    private final String name;
+    private final Class<? extends EventLoopGroup> groupClass;
+    private final Class<? extends ServerChannel> serverChannelClass;
+    private final Class<? extends Channel> socketChannelClass;
+
+    private NettyTransport(String name, Class<? extends EventLoopGroup> groupClass,
+                           Class<? extends ServerChannel> serverChannelClass, Class<? extends Channel> socketChannelClass) {
+        this.name = name;
+        this.groupClass = groupClass;
+        this.serverChannelClass = serverChannelClass;
+        this.socketChannelClass = socketChannelClass;
+    }
+
+    /**
+     * NIO传输，所有平台都可用
+     */
+    public static NettyTransport nio() {
+        return new NettyTransport(NIO, NioEventLoopGroup.class, NioServerSocketChannel.class, NioSocketChannel.class);
+    }
+
+    /**
+     * 按配置选择传输
+     *
+     * @param mode {@link #AUTO}、{@link #EPOLL}或{@link #NIO}
+     * @return 传输，epoll不可用时回退为NIO
+     */
+    public static NettyTransport select(String mode) {
+        String value = mode == null ? AUTO : mode.trim().toLowerCase();
+        if (NIO.equals(value)) {
+            return nio();
+        }
+        if (!AUTO.equals(value) && !EPOLL.equals(value)) {
+            throw new IllegalArgumentException("未知的Netty传输：" + mode);
+        }
+        NettyTransport epoll = epoll();
+        if (epoll != null) {
+            return epoll;
+        }
+        if (EPOLL.equals(value)) {
+            log.warn("epoll不可用，使用NIO传输");
+        }
+        return nio();
+    }
+
+    /**
+     * epoll传输
+     *
+     * @return 不在Linux上或classpath上没有netty-transport-native-epoll时返回null
+     */
+    @SuppressWarnings("unchecked")
+    private static NettyTransport epoll() {
+        try {
+            Class<?> epoll = Class.forName(EPOLL_PACKAGE + "Epoll");
+            if (!(Boolean) epoll.getMethod("isAvailable").invoke(null)) {
+                Throwable cause = (Throwable) epoll.getMethod("unavailabilityCause").invoke(null);
+                log.info("epoll不可用：{}", cause != null ? cause.getMessage() : "未知原因");
+                return null;
+            }
+            return new NettyTransport(EPOLL,
+                    (Class<? extends EventLoopGroup>) Class.forName(EPOLL_PACKAGE + "EpollEventLoopGroup"),
+                    (Class<? extends ServerChannel>) Class.forName(EPOLL_PACKAGE + "EpollServerSocketChannel"),
+                    (Class<? extends Channel>) Class.forName(EPOLL_PACKAGE + "EpollSocketChannel"));
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            log.warn("加载epoll传输失败：{}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 创建事件循环组
+     *
+     * @param nThreads      线程数，0表示Netty默认值（CPU核数的2倍）
+     * @param threadFactory 线程工厂
+     * @return 事件循环组
+     */
+    public EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory) {
+        try {
+            return groupClass.getConstructor(int.class, ThreadFactory.class).newInstance(nThreads, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("无法创建" + name + "事件循环组", e);
+        }
+    }
+
+    /**
+     * 服务器监听通道类型
+     */
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return serverChannelClass;
+    }
+
+    /**
+     * 客户端连接通道类型
+     */
+    public Class<? extends Channel> socketChannelClass() {
+        return socketChannelClass;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
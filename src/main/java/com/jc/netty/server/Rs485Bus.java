@@ -0,0 +1,395 @@
+package com.jc.netty.server;
+
+import com.jc.netty.codec.ModbusCommandEncoder;
+import com.jc.netty.codec.ModbusFrame;
+import com.jc.utils.SampleRingBuffer;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 485总线事务管理
+ * <p>
+ * 485总线为半双工，同一时间只允许一个未应答的Modbus请求：请求在队列中排队，
+ * 应答按从站地址、功能码和内容匹配（06写寄存器的回显要与请求相同，03读寄存器的字节数要与请求的寄存器数对应，
+ * CRC已由解码器校验），超时重发有限次数，重发后才到达的上一次发送的应答不会被当作下一个请求的应答。
+ * 紧急请求（如停机）排在普通请求前面；普通请求超时时有紧急请求在等，先发紧急请求，普通请求回到队首等待重发。
+ * 应答超时和帧间静默时间都按实测往返时间自适应调整，不再固定睡眠。
+ * <p>
+ * 每个通道一个实例，所有状态只在通道的事件循环线程上访问
+ */
+@Slf4j
+public class Rs485Bus {
+    /** 超时后最多重发次数 */
+    public static final int MAX_RETRIES = 2;
+    /** 还没有往返时间样本时的应答超时（毫秒） */
+    public static final long INITIAL_TIMEOUT_MS = 200L;
+    /** 应答超时下限（毫秒） */
+    public static final long MIN_TIMEOUT_MS = 50L;
+    /** 应答超时上限（毫秒） */
+    public static final long MAX_TIMEOUT_MS = 1000L;
+    /** 帧间静默时间下限（纳秒），9600波特率下3.5个字符约4ms */
+    public static final long MIN_GAP_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+    /** 帧间静默时间上限（纳秒） */
+    public static final long MAX_GAP_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /** 每个功能码保留的往返时间样本数 */
+    public static final int ROUND_TRIP_SAMPLES = 1024;
+
+    private static final AttributeKey<Rs485Bus> BUS = AttributeKey.valueOf("rs485Bus");
+    private static final Listener NO_LISTENER = new Listener() {
+        @Override
+        public void onRoundTrip(int function, long rttNanos) {
+        }
+
+        @Override
+        public void onRetransmit(int function) {
+        }
+    };
+
+    private final Channel channel;
+    private final Listener listener;
+    /** 等待发送的请求 */
+    private final ArrayDeque<Transaction> queue = new ArrayDeque<>();
+    /** 等待发送的紧急请求，先于普通请求发送 */
+    private final ArrayDeque<Transaction> urgentQueue = new ArrayDeque<>();
+    /** 已发送、等待应答的请求 */
+    private Transaction current;
+    /** 等待帧间静默时间结束后发送 */
+    private ScheduledFuture<?> pendingSend;
+    /** 总线上最近一次应答或超时的时间（纳秒） */
+    private long lastActivity;
+    /** 平滑往返时间（纳秒），小于0表示还没有样本 */
+    private long smoothedRtt = -1;
+    /** 往返时间偏差（纳秒） */
+    private long rttVariation;
+    /** 往返时间样本（微秒），下标为功能码，收到该功能码的第一个应答时创建 */
+    private final SampleRingBuffer[] roundTrips = new SampleRingBuffer[ModbusFrame.EXCEPTION_FLAG];
+    /** 排队和等待应答的请求数，供其他线程读取 */
+    private volatile int depth;
+
+    private Rs485Bus(Channel channel, Listener listener) {
+        this.channel = channel;
+        this.listener = listener;
+        this.lastActivity = System.nanoTime() - MAX_GAP_NANOS;
+    }
+
+    /**
+     * 获取通道的总线实例，不存在时创建，通道关闭时未完成的请求全部失败
+     *
+     * @param channel 485转换器的通道
+     * @return 总线实例
+     */
+    public static Rs485Bus of(Channel channel) {
+        return of(channel, NO_LISTENER);
+    }
+
+    /**
+     * 获取通道的总线实例，不存在时以指定的监听器创建
+     *
+     * @param channel  485转换器的通道
+     * @param listener 总线事件监听器，只在创建实例时使用
+     * @return 总线实例
+     */
+    public static Rs485Bus of(Channel channel, Listener listener) {
+        Rs485Bus bus = channel.attr(BUS).get();
+        if (bus != null) {
+            return bus;
+        }
+        Rs485Bus created = new Rs485Bus(channel, listener);
+        bus = channel.attr(BUS).setIfAbsent(created);
+        if (bus != null) {
+            return bus;
+        }
+        channel.closeFuture().addListener(f -> created.failAll());
+        return created;
+    }
+
+    /**
+     * 发送Modbus请求并等待应答
+     *
+     * @param frame 请求帧，第1字节为从站地址，第2字节为功能码，完成后释放
+     * @return 匹配的应答帧，从站返回异常码或超时以异常完成
+     */
+    public CompletableFuture<ModbusFrame> request(ByteBuf frame) {
+        return request(frame, false);
+    }
+
+    /**
+     * 发送Modbus请求并等待应答
+     *
+     * @param frame  请求帧，第1字节为从站地址，第2字节为功能码，完成后释放
+     * @param urgent true时排在所有普通请求前面，用于停机等安全命令
+     * @return 匹配的应答帧，从站返回异常码或超时以异常完成
+     */
+    public CompletableFuture<ModbusFrame> request(ByteBuf frame, boolean urgent) {
+        Transaction transaction = new Transaction(frame, urgent);
+        if (channel.eventLoop().inEventLoop()) {
+            enqueue(transaction);
+        } else {
+            try {
+                channel.eventLoop().execute(() -> enqueue(transaction));
+            } catch (RejectedExecutionException e) {
+                transaction.fail(e);
+            }
+        }
+        return transaction.future;
+    }
+
+    /**
+     * 处理485转换器返回的应答，在通道的事件循环线程上调用
+     *
+     * @param reply 应答帧
+     */
+    public void onReply(ModbusFrame reply) {
+        Transaction transaction = current;
+        if (transaction == null || !transaction.matches(reply)) {
+            log.warn("丢弃不匹配或过期的485应答：{}", reply);
+            return;
+        }
+        long now = System.nanoTime();
+        transaction.timeout.cancel(false);
+        // 重发过的请求无法确定应答对应哪一次发送，不作为往返时间样本
+        if (transaction.attempts == 1) {
+            updateRtt(now - transaction.sentAt);
+            recordRoundTrip(transaction.function, now - transaction.sentAt);
+        }
+        current = null;
+        updateDepth();
+        lastActivity = now;
+        if (reply.isException()) {
+            transaction.fail(new IllegalStateException("从站" + reply.getSlave() + "返回异常码" + reply.getUnsignedByte(0)));
+        } else {
+            transaction.complete(reply);
+        }
+        sendNext();
+    }
+
+    /**
+     * 功能码的往返时间样本，可在任意线程读取
+     *
+     * @param function 功能码
+     * @return 样本值为微秒，还没有收到过该功能码的应答时返回null
+     */
+    public SampleRingBuffer roundTrips(int function) {
+        return function >= 0 && function < roundTrips.length ? roundTrips[function] : null;
+    }
+
+    /**
+     * 排队和等待应答的请求数，可在任意线程读取
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * 当前应答超时时间（毫秒）：平滑往返时间 + 4倍偏差
+     */
+    public long timeoutMillis() {
+        if (smoothedRtt < 0) {
+            return INITIAL_TIMEOUT_MS;
+        }
+        long timeout = TimeUnit.NANOSECONDS.toMillis(smoothedRtt + 4 * rttVariation);
+        return Math.min(MAX_TIMEOUT_MS, Math.max(MIN_TIMEOUT_MS, timeout));
+    }
+
+    /**
+     * 当前帧间静默时间（纳秒）
+     * 一次往返约为16个字符时间（8字节请求 + 8字节应答），3.5个字符的静默时间按往返时间的1/5估算
+     */
+    public long gapNanos() {
+        if (smoothedRtt < 0) {
+            return MIN_GAP_NANOS;
+        }
+        return Math.min(MAX_GAP_NANOS, Math.max(MIN_GAP_NANOS, smoothedRtt / 5));
+    }
+
+    private void enqueue(Transaction transaction) {
+        if (!channel.isActive()) {
+            transaction.fail(new IllegalStateException("485转换器连接已断开"));
+            return;
+        }
+        (transaction.urgent ? urgentQueue : queue).add(transaction);
+        updateDepth();
+        sendNext();
+    }
+
+    private void sendNext() {
+        if (current != null || pendingSend != null || queue.isEmpty() && urgentQueue.isEmpty()) {
+            return;
+        }
+        long wait = lastActivity + gapNanos() - System.nanoTime();
+        if (wait > 0) {
+            pendingSend = channel.eventLoop().schedule(() -> {
+                pendingSend = null;
+                sendNext();
+            }, wait, TimeUnit.NANOSECONDS);
+            return;
+        }
+        current = urgentQueue.isEmpty() ? queue.poll() : urgentQueue.poll();
+        transmit(current);
+    }
+
+    private void transmit(Transaction transaction) {
+        transaction.attempts++;
+        transaction.sentAt = System.nanoTime();
+        channel.writeAndFlush(transaction.frame.retainedDuplicate());
+        transaction.timeout = channel.eventLoop().schedule(() -> onTimeout(transaction), timeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void onTimeout(Transaction transaction) {
+        if (current != transaction) {
+            return;
+        }
+        lastActivity = System.nanoTime();
+        if (transaction.attempts <= MAX_RETRIES && !transaction.urgent && !urgentQueue.isEmpty()) {
+            // 紧急请求不等普通请求重发完
+            log.warn("从站{}功能码{}应答超时，先发送紧急请求", transaction.slave, transaction.function);
+            listener.onRetransmit(transaction.function);
+            current = null;
+            queue.addFirst(transaction);
+            sendNext();
+            return;
+        }
+        if (transaction.attempts <= MAX_RETRIES) {
+            log.warn("从站{}功能码{}应答超时，第{}次重发", transaction.slave, transaction.function, transaction.attempts);
+            listener.onRetransmit(transaction.function);
+            transmit(transaction);
+            return;
+        }
+        current = null;
+        updateDepth();
+        transaction.fail(new TimeoutException("从站" + transaction.slave + "应答超时，已发送" + transaction.attempts + "次"));
+        sendNext();
+    }
+
+    private void updateRtt(long rtt) {
+        if (smoothedRtt < 0) {
+            smoothedRtt = rtt;
+            rttVariation = rtt / 2;
+        } else {
+            rttVariation += (Math.abs(smoothedRtt - rtt) - rttVariation) / 4;
+            smoothedRtt += (rtt - smoothedRtt) / 8;
+        }
+    }
+
+    private void recordRoundTrip(int function, long rttNanos) {
+        if (function >= roundTrips.length) {
+            return;
+        }
+        listener.onRoundTrip(function, rttNanos);
+        SampleRingBuffer samples = roundTrips[function];
+        if (samples == null) {
+            samples = new SampleRingBuffer(ROUND_TRIP_SAMPLES);
+            roundTrips[function] = samples;
+        }
+        samples.add(System.currentTimeMillis(), (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(rttNanos)));
+    }
+
+    private void failAll() {
+        IllegalStateException e = new IllegalStateException("485转换器连接已断开");
+        if (pendingSend != null) {
+            pendingSend.cancel(false);
+            pendingSend = null;
+        }
+        if (current != null) {
+            current.timeout.cancel(false);
+            current.fail(e);
+            current = null;
+        }
+        Transaction transaction;
+        while ((transaction = urgentQueue.poll()) != null) {
+            transaction.fail(e);
+        }
+        while ((transaction = queue.poll()) != null) {
+            transaction.fail(e);
+        }
+        updateDepth();
+    }
+
+    private void updateDepth() {
+        depth = queue.size() + urgentQueue.size() + (current != null ? 1 : 0);
+    }
+
+    /**
+     * 总线事件监听器，在通道的事件循环线程上调用
+     */
+    public interface Listener {
+        /**
+         * 首次发送即收到应答的请求的往返时间
+         *
+         * @param function 功能码
+         * @param rttNanos 往返时间（纳秒）
+         */
+        void onRoundTrip(int function, long rttNanos);
+
+        /**
+         * 应答超时后重发
+         *
+         * @param function 功能码
+         */
+        void onRetransmit(int function);
+    }
+
+    /**
+     * 一次请求/应答事务
+     */
+    private static final class Transaction {
+        private final ByteBuf frame;
+        private final int slave;
+        private final int function;
+        /** 请求的第3到6字节：06为寄存器地址和值，03为起始地址和寄存器数 */
+        private final int body;
+        private final boolean urgent;
+        private final CompletableFuture<ModbusFrame> future = new CompletableFuture<>();
+        private int attempts;
+        private long sentAt;
+        private ScheduledFuture<?> timeout;
+
+        Transaction(ByteBuf frame, boolean urgent) {
+            this.frame = frame;
+            this.slave = frame.getUnsignedByte(frame.readerIndex());
+            this.function = frame.getUnsignedByte(frame.readerIndex() + 1);
+            this.body = frame.readableBytes() >= 6 ? frame.getInt(frame.readerIndex() + 2) : 0;
+            this.urgent = urgent;
+        }
+
+        /**
+         * 应答是否对应本请求：从站和功能码相同；06的回显与请求相同；03的字节数为寄存器数的2倍
+         */
+        boolean matches(ModbusFrame reply) {
+            if (reply.getSlave() != slave || (reply.getFunction() & ~ModbusFrame.EXCEPTION_FLAG) != function) {
+                return false;
+            }
+            if (reply.isException()) {
+                return true;
+            }
+            if (function == ModbusCommandEncoder.FUNC_WRITE_SINGLE_REGISTER) {
+                return reply.dataLength() == 4 && reply.getInt(0) == body;
+            }
+            if (function == ModbusCommandEncoder.FUNC_READ_HOLDING_REGISTERS) {
+                return reply.dataLength() >= 1 && reply.getUnsignedByte(0) == 2 * (body & 0xFFFF);
+            }
+            return true;
+        }
+
+        void complete(ModbusFrame reply) {
+            ReferenceCountUtil.release(frame);
+            future.complete(reply);
+        }
+
+        void fail(Throwable e) {
+            ReferenceCountUtil.release(frame);
+            future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.jc.service;
+
+import io.netty.channel.ChannelHandler;
+
+import java.util.Collection;
+
+/**
+ * 设备驱动接口
+ * 一类设备的地址、协议解码器和帧处理，由{@link com.jc.netty.server.DeviceRegistry}统一注册。
+ * 每台机器子容器中的实现自动发现并归属该机器；不在容器中的实现可通过META-INF/services/com.jc.service.DeviceDriver以ServiceLoader加载。
+ * 新增设备类型只需新增实现，不需要修改分发代码。
+ * {@link #handle}在每台设备自己的执行器线程上按帧到达的顺序调用，不在事件循环线程上
+ *
+ * @param <T> 设备协议解码后的帧类型，为ByteBuf时处理后要自行释放
+ */
+public interface DeviceDriver<T> extends DeviceHandler<T> {
+
+    /**
+     * 设备类型名称，用作日志和指标的device标签
+     *
+     * @return 名称，如io
+     */
+    String name();
+
+    /**
+     * 设备作为客户端连接服务器时的IP地址
+     *
+     * @return IP地址，一个驱动可以对应多台同类设备
+     */
+    Collection<String> addresses();
+
+    /**
+     * 创建帧解码器，每个连接一个
+     *
+     * @return 帧解码器，为null时直接收到原始ByteBuf
+     */
+    ChannelHandler newFrameDecoder();
+
+    /**
+     * 在通道的事件循环线程上先处理帧，之后才把帧排进设备的执行器交给{@link #handle}。
+     * 只用于必须立即响应的安全动作或必须在事件循环线程上完成的处理，不能有阻塞操作
+     *
+     * @param frame 解码器输出的帧
+     * @return true表示帧已处理完，不再交给{@link #handle}
+     */
+    default boolean handleOnEventLoop(T frame) {
+        return false;
+    }
+
+    /**
+     * {@link #handleOnEventLoop}之后设备的处理队列已满、帧被丢弃时在事件循环线程上调用，之后帧被释放
+     *
+     * @param frame 被丢弃的帧
+     */
+    default void onDropped(T frame) {
+    }
+}
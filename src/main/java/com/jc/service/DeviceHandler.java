@@ -3,14 +3,15 @@ package com.jc.service;
 /**
  * 设备处理器接口
  * 定义了处理设备消息的基本方法
+ *
+ * @param <T> 设备协议解码后的帧类型
  */
-public interface DeviceHandler {
+public interface DeviceHandler<T> {
 
     /**
      * 处理消息
      *
-     * @param message 消息内容
-     * @param isHex 是否为16进制消息
+     * @param frame 解码器输出的帧
      */
-    void handle(String message, boolean isHex);
+    void handle(T frame);
 }
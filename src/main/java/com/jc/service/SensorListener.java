@@ -0,0 +1,18 @@
+package com.jc.service;
+
+import com.jc.entity.SensorSnapshot;
+
+/**
+ * 传感器状态变化监听器
+ * 在IO模块的帧处理执行器线程上按帧的顺序回调，实现中不能有阻塞操作
+ */
+public interface SensorListener {
+
+    /**
+     * 订阅的条件由不满足变为满足时调用
+     *
+     * @param previous 变化前的状态
+     * @param current  变化后的状态
+     */
+    void onChange(SensorSnapshot previous, SensorSnapshot current);
+}
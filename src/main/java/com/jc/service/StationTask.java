@@ -0,0 +1,26 @@
+package com.jc.service;
+
+import com.jc.entity.Bowl;
+import com.jc.enums.Station;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 转盘工位作业
+ * 转盘停稳后，每个有碗的工位同时执行各自的作业，全部完成后转盘才转动
+ */
+public interface StationTask {
+
+    /**
+     * 作业所在工位
+     */
+    Station station();
+
+    /**
+     * 对工位上的碗执行作业，不能阻塞调用线程
+     *
+     * @param bowl 工位上的碗，放碗工位为刚放上的碗
+     * @return 作业完成时完成，失败以异常完成
+     */
+    CompletableFuture<Void> execute(Bowl bowl);
+}
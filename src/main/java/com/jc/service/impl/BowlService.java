@@ -1,17 +1,25 @@
 package com.jc.service.impl;
 
+import com.jc.config.MachineScoped;
 import com.jc.constants.Constants;
+import com.jc.entity.SensorSnapshot;
 import com.jc.enums.SignalLevel;
+import com.jc.netty.codec.ZhiqianCommandEncoder;
 import com.jc.netty.server.NettyServerHandler;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 碗控制服务实现类，负责碗的升降操作和状态检查
+ * <p>
+ * 升降操作不阻塞线程：启动电机后等待碗传感器信号，信号到达或超时都会停机
  */
 @Service
+@MachineScoped
 @Slf4j
 public class BowlService {
 
@@ -22,6 +30,8 @@ public class BowlService {
     private String ioIp;
     @Autowired
     private NettyServerHandler nettyServerHandler;
+    @Autowired
+    private DeviceMetrics deviceMetrics;
 
     @Autowired
     public BowlService(StepperMotorService stepperMotorService,
@@ -33,156 +43,107 @@ public class BowlService {
 
     /**
      * 重置碗
+     *
+     * @return 碗到位后完成，超时以异常完成
      */
-    public void bowlReset() {
-        // 获取传感器状态
-        String ioStatus = ioDeviceService.getIoStatus();
-        while (ioStatus.equals(Constants.NOT_INITIALIZED)) {
-            log.error("无法获取传感器的值！");
-            // 先重置传感器
-            nettyServerHandler.sendMessageToClient(ioIp, Constants.RESET_COMMAND, true);
-            try {
-                // 等待指定时间，确保传感器完成重置
-                Thread.sleep(Constants.SLEEP_TIME_MS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            // 重新获取传感器状态
-            ioStatus = ioDeviceService.getIoStatus();
-            if (ioStatus.equals(Constants.NOT_INITIALIZED)) {
-                log.error("没有发现传感器的值！");
-            }
-        }
-
-        // 解析传感器状态字符串
-        String[] split = ioStatus.split(",");
-        boolean bowlSensor = split[1].equals(SignalLevel.HIGH.getValue()); // 碗传感器状态
-        boolean lowerLimit = split[2].equals(SignalLevel.HIGH.getValue()); // 轨道最低极限点状态
-        boolean upperLimit = split[3].equals(SignalLevel.HIGH.getValue()); // 轨道最高极限点状态
+    public CompletableFuture<String> bowlReset() {
+        return deviceMetrics.timeMotion("bowlReset", () -> currentSensors().thenCompose(sensors -> {
+            boolean bowlSensor = sensors.isHigh(Constants.BOWL_SENSOR_PIN); // 碗传感器状态
+            boolean lowerLimit = sensors.isHigh(Constants.BOWL_LOWER_LIMIT_PIN); // 轨道最低极限点状态
+            boolean upperLimit = sensors.isHigh(Constants.BOWL_UPPER_LIMIT_PIN); // 轨道最高极限点状态
 
-        // 如果2为高电平4为低电平，直接降碗
-        if (bowlSensor && !lowerLimit) {
-            this.bowlDescent();
-            // 等待传感器2变为高电平，最多等待30秒
-            int count = 0;
-            while (bowlSensor) {
-                try {
-                    Thread.sleep(Constants.SLEEP_TIME_MS);
-                    count++;
-//                    if (count > 300) { // 30秒超时
-//                        log.error("碗升到位超时！");
-//                        return;
-//                    }
-                    ioStatus = ioDeviceService.getIoStatus();
-                    split = ioStatus.split(",");
-                    bowlSensor = split[1].equals(SignalLevel.HIGH.getValue());
-                    if (!bowlSensor) {
-                        stepperMotorService.stop(Constants.BOWL_CONTROLLER_NO);
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            // 如果2为高电平4为低电平，直接降碗，等待传感器2变为低电平
+            if (bowlSensor && !lowerLimit) {
+                return moveUntil(false, SignalLevel.LOW).thenApply(s -> {
+                    log.info("碗已经降到位！");
+                    return "ok";
+                });
             }
-            log.info("碗已经降到位！");
-            return;
-        }
-        // 如果2、4传感器都为低电平，直接升碗
-        if (!bowlSensor && !upperLimit) {
-            this.bowlRising();
-            // 等待传感器2变为高电平，最多等待30秒
-            int count = 0;
-            while (!bowlSensor) {
-                try {
-                    Thread.sleep(Constants.SLEEP_TIME_MS);
-                    count++;
-//                    if (count > 300) { // 30秒超时
-//                        log.error("碗升到位超时！");
-//                        return;
-//                    }
-                    ioStatus = ioDeviceService.getIoStatus();
-                    split = ioStatus.split(",");
-                    bowlSensor = split[1].equals(SignalLevel.HIGH.getValue());
-                    if (bowlSensor) {
-                        stepperMotorService.stop(Constants.BOWL_CONTROLLER_NO);
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            // 如果2、4传感器都为低电平，直接升碗，等待传感器2变为高电平
+            if (!bowlSensor && !upperLimit) {
+                return moveUntil(true, SignalLevel.HIGH).thenApply(s -> {
+                    log.info("碗已经升到位！");
+                    return "ok";
+                });
             }
-            log.info("碗已经升到位！");
-            return;
-        }
-
-        // 如果传感器2为低电平，说明碗还未升到位
-        log.error("碗未升到位，请检查传感器2状态！");
+            // 如果传感器2为低电平，说明碗还未升到位
+            log.error("碗未升到位，请检查传感器2状态！");
+            return CompletableFuture.completedFuture("碗未升到位，请检查传感器2状态");
+        }));
     }
 
     /**
-     * 连续出碗检查方法，用于检测碗是否已经升到位，并在需要时进行降碗操作直到碗低出传感器为止。
+     * 连续出碗检查方法，用于检测碗是否已经升到位，没有升到位时升碗直到碗到达传感器为止。
+     *
+     * @return 碗到位后完成，超时以异常完成
      */
-    public void continuousBowlCheck() {
-        // 获取传感器状态
-        String ioStatus = ioDeviceService.getIoStatus();
-        while (ioStatus.equals(Constants.NOT_INITIALIZED)) {
-            log.error("无法获取传感器的值！");
-            // 先重置传感器
-            nettyServerHandler.sendMessageToClient(ioIp, Constants.RESET_COMMAND, true);
-            try {
-                // 等待指定时间，确保传感器完成重置
-                Thread.sleep(Constants.SLEEP_TIME_MS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+    public CompletableFuture<String> continuousBowlCheck() {
+        return deviceMetrics.timeMotion("continuousBowlCheck", () -> currentSensors().thenCompose(sensors -> {
+            boolean bowlSensor = sensors.isHigh(Constants.BOWL_SENSOR_PIN); // 碗传感器状态
+            boolean upperLimit = sensors.isHigh(Constants.BOWL_UPPER_LIMIT_PIN); // 轨道最高极限点状态
+            //如果传感器无值到达了上限——没有碗了
+            if (!bowlSensor && upperLimit) {
+                log.error("没有碗了！");
+                return CompletableFuture.completedFuture("没有碗了");
             }
-            // 重新获取传感器状态
-            ioStatus = ioDeviceService.getIoStatus();
-            if (ioStatus.equals(Constants.NOT_INITIALIZED)) {
-                log.error("没有获取到传感器的值！");
-            }
-        }
-
-        // 解析传感器状态字符串
-        String[] split = ioStatus.split(",");
-        boolean bowlSensor = split[1].equals(SignalLevel.HIGH.getValue()); // 碗传感器状态
-        boolean lowerLimit = split[2].equals(SignalLevel.HIGH.getValue()); // 轨道最低极限点状态
-        boolean upperLimit = split[3].equals(SignalLevel.HIGH.getValue()); // 轨道最高极限点状态
-        //如果传感器无值到达了上限——没有碗了
-        if (!bowlSensor && upperLimit){
-            log.error("没有碗了！");
-            return;
-        }
-        if (!bowlSensor && !upperLimit) {
-            this.bowlRising();
-            // 等待传感器2变为高电平，最多等待30秒
-            int count = 0;
-            while (!bowlSensor) {
-                try {
-                    Thread.sleep(Constants.SLEEP_TIME_MS);
-                    count++;
-//                    if (count > 300) { // 30秒超时
-//                        log.error("碗升到位超时！");
-//                        return;
-//                    }
-                    ioStatus = ioDeviceService.getIoStatus();
-                    split = ioStatus.split(",");
-                    bowlSensor = split[1].equals(SignalLevel.HIGH.getValue());
-                    if (bowlSensor) {
-                        stepperMotorService.stop(Constants.BOWL_CONTROLLER_NO);
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            if (!bowlSensor) {
+                return moveUntil(true, SignalLevel.HIGH).thenApply(s -> {
+                    log.info("碗已经升到位！");
+                    return "ok";
+                });
             }
             log.info("碗已经升到位！");
-        }
-        log.info("碗已经升到位！");
+            return CompletableFuture.completedFuture("ok");
+        }));
     }
 
-    public String bowlRising() {
+    public CompletableFuture<String> bowlRising() {
         return stepperMotorService.startStepperMotor(Constants.BOWL_CONTROLLER_NO, false, 0);
     }
 
-    public String bowlDescent() {
+    public CompletableFuture<String> bowlDescent() {
         return stepperMotorService.startStepperMotor(Constants.BOWL_CONTROLLER_NO, true, 0);
     }
 
+    /**
+     * 升降碗直到碗传感器为指定电平，到位、超时或电机没有启动成功都停机
+     *
+     * @param rising true为升碗，false为降碗
+     * @param level  碗传感器目标电平
+     * @return 到位时的传感器状态
+     */
+    private CompletableFuture<SensorSnapshot> moveUntil(boolean rising, SignalLevel level) {
+        // 先开始等待再启动电机，保证不会漏掉信号
+        CompletableFuture<SensorSnapshot> arrived = ioDeviceService.awaitSignal(Constants.BOWL_SENSOR_PIN, level, Constants.SIGNAL_TIMEOUT_MS);
+        CompletableFuture<String> started = rising ? bowlRising() : bowlDescent();
+        // 电机没有启动成功时不再等到超时
+        started.thenAccept(result -> {
+            if (!StepperMotorService.SUCCESS.equals(result)) {
+                arrived.completeExceptionally(new IllegalStateException("碗步进电机启动失败：" + result));
+            }
+        });
+        return arrived.whenComplete((sensors, e) -> {
+            stepperMotorService.stop(Constants.BOWL_CONTROLLER_NO);
+            if (e != null) {
+                log.error("碗{}到位失败：{}", rising ? "升" : "降", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 获取传感器状态，还没有收到IO模块上报时先发送重置命令再等待上报
+     *
+     * @return 传感器状态
+     */
+    private CompletableFuture<SensorSnapshot> currentSensors() {
+        SensorSnapshot sensors = ioDeviceService.getSnapshot();
+        if (sensors.isInitialized()) {
+            return CompletableFuture.completedFuture(sensors);
+        }
+        log.error("无法获取传感器的值！");
+        deviceMetrics.ioReset();
+        CompletableFuture<SensorSnapshot> initialized = ioDeviceService.awaitInitialized(Constants.SIGNAL_TIMEOUT_MS);
+        nettyServerHandler.sendFrameToClient(ioIp, ZhiqianCommandEncoder.reset());
+        return initialized;
+    }
 }
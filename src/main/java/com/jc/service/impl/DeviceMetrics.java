@@ -0,0 +1,199 @@
+package com.jc.service.impl;
+
+import com.jc.config.MachineScoped;
+import com.jc.enums.DeviceRole;
+import com.jc.netty.server.Rs485Bus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 设备通讯和运动耗时指标，通过/actuator/prometheus导出
+ * <p>
+ * 帧路径上的计数器和计时器按设备类型预先创建，记录时不再查找注册表；
+ * 485总线的往返时间、重发和排队深度用于发现总线饱和，运动耗时用于发现机构变慢。
+ * 每台机器一份，所有指标带machine标签
+ */
+@Service
+@MachineScoped
+@Slf4j
+public class DeviceMetrics implements Rs485Bus.Listener {
+    /** 命令发送到应答的耗时 */
+    public static final String COMMAND_ACK = "device.command.ack";
+    /** 运动流程耗时 */
+    public static final String MOTION = "motion.duration";
+
+    private final MeterRegistry registry;
+    /** 所有指标共有的标签 */
+    private final Tags tags;
+    /** 流量指标，键为设备类型名称 */
+    private final ConcurrentHashMap<String, Traffic> traffic = new ConcurrentHashMap<>();
+    /** 命令应答计时器，下标为设备类型和命令码，第一次记录时创建 */
+    private final Timer[][] ackTimers = new Timer[DeviceRole.values().length][256];
+    private final Counter rs485Retransmits;
+    private final Counter ioResets;
+
+    @Autowired
+    public DeviceMetrics(MeterRegistry registry, @Value("${" + MachineManager.MACHINE_ID + "}") String machine) {
+        this.registry = registry;
+        this.tags = Tags.of("machine", machine);
+        for (DeviceRole role : DeviceRole.values()) {
+            traffic(role.getTag());
+        }
+        this.rs485Retransmits = Counter.builder("rs485.retransmits")
+                .description("485请求应答超时后的重发次数")
+                .tags(tags)
+                .register(registry);
+        this.ioResets = Counter.builder("io.reset.commands")
+                .description("没有传感器状态时发送的IO模块重置命令次数")
+                .tags(tags)
+                .register(registry);
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * 所有指标共有的标签，在其他地方注册本机器的指标时使用
+     */
+    public Tags getTags() {
+        return tags;
+    }
+
+    /**
+     * 设备类型的流量指标，在建立连接时获取，不在帧路径上查找
+     *
+     * @param device 设备类型名称，即{@link com.jc.service.DeviceDriver#name()}
+     */
+    public Traffic traffic(String device) {
+        return traffic.computeIfAbsent(device, d -> new Traffic(registry, tags, d));
+    }
+
+    /**
+     * 注册设备帧处理队列的深度，在登记设备时调用
+     *
+     * @param device   设备类型名称
+     * @param executor 设备的帧处理执行器
+     */
+    public void handlerQueue(String device, SingleThreadEventExecutor executor) {
+        Gauge.builder("device.handler.queue", executor, SingleThreadEventExecutor::pendingTasks)
+                .description("等待设备驱动处理的帧数")
+                .tags(tags)
+                .tag("device", device)
+                .register(registry);
+    }
+
+    /**
+     * 记录命令发送到应答的耗时
+     *
+     * @param role    设备类型
+     * @param command 命令码
+     * @param nanos   耗时（纳秒）
+     */
+    public void recordAck(DeviceRole role, int command, long nanos) {
+        Timer timer = ackTimers[role.ordinal()][command & 0xFF];
+        if (timer == null) {
+            timer = Timer.builder(COMMAND_ACK)
+                    .description("命令发送到收到应答的耗时")
+                    .tags(tags)
+                    .tag("device", role.getTag())
+                    .tag("command", String.format("%02X", command & 0xFF))
+                    .publishPercentileHistogram()
+                    .register(registry);
+            // 注册表对同名同标签返回同一个计时器，并发创建也没有问题
+            ackTimers[role.ordinal()][command & 0xFF] = timer;
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次IO模块重置命令
+     */
+    public void ioReset() {
+        ioResets.increment();
+    }
+
+    /**
+     * 统计运动流程的耗时，流程结果不是ok或异常结束时outcome标签为fail
+     *
+     * @param operation 流程名称，如bowlReset
+     * @param motion    启动流程
+     * @return 流程的结果
+     */
+    public CompletableFuture<String> timeMotion(String operation, Supplier<CompletableFuture<String>> motion) {
+        long start = System.nanoTime();
+        return motion.get().whenComplete((r, e) -> Timer.builder(MOTION)
+                .description("运动流程耗时")
+                .tags(tags)
+                .tag("operation", operation)
+                .tag("outcome", e == null && "ok".equals(r) ? "ok" : "fail")
+                .register(registry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void onRoundTrip(int function, long rttNanos) {
+        recordAck(DeviceRole.RS485, function, rttNanos);
+    }
+
+    @Override
+    public void onRetransmit(int function) {
+        rs485Retransmits.increment();
+    }
+
+    /**
+     * 一类设备的流量指标
+     */
+    public static final class Traffic {
+        private final Counter framesIn;
+        private final Counter framesOut;
+        private final Counter bytesIn;
+        private final Counter bytesOut;
+        private final Counter framesDropped;
+        private final Timer decode;
+
+        Traffic(MeterRegistry registry, Tags tags, String device) {
+            Tags deviceTags = tags.and("device", device);
+            framesIn = Counter.builder("device.frames.in").description("收到的帧数").tags(deviceTags).register(registry);
+            framesOut = Counter.builder("device.frames.out").description("发出的帧数").tags(deviceTags).register(registry);
+            bytesIn = Counter.builder("device.bytes.in").description("收到的字节数").baseUnit("bytes").tags(deviceTags).register(registry);
+            bytesOut = Counter.builder("device.bytes.out").description("发出的字节数").baseUnit("bytes").tags(deviceTags).register(registry);
+            framesDropped = Counter.builder("device.frames.dropped").description("处理队列已满而丢弃的帧数").tags(deviceTags).register(registry);
+            decode = Timer.builder("device.decode").description("一次读事件的组帧解码耗时").tags(deviceTags).register(registry);
+        }
+
+        public void frameIn() {
+            framesIn.increment();
+        }
+
+        public void bytesIn(int bytes) {
+            bytesIn.increment(bytes);
+        }
+
+        public void frameOut(int bytes) {
+            framesOut.increment();
+            bytesOut.increment(bytes);
+        }
+
+        public void frameDropped() {
+            framesDropped.increment();
+        }
+
+        public void decoded(long nanos) {
+            decode.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -1,24 +1,197 @@
 package com.jc.service.impl;
 
-import com.jc.service.DeviceHandler;
+import com.jc.config.MachineScoped;
+import com.jc.entity.RobotResult;
+import com.jc.entity.ScriptStats;
+import com.jc.enums.DeviceRole;
+import com.jc.netty.client.RobotClient;
+import com.jc.netty.codec.RobotLine;
+import com.jc.netty.codec.RobotLineDecoder;
+import com.jc.service.DeviceDriver;
+import io.netty.channel.ChannelHandler;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 机器人服务
+ * <p>
+ * 发送run(脚本)命令并跟踪脚本执行状态，脚本真正结束时完成返回的future。
+ * 机器人同一时间只执行一个脚本，后提交的脚本排在前一个结束之后发送。
+ * 脚本状态只看机器人主动推送的消息（{@link RobotLine#isPush()}），推送在{@link RobotClient}对应应答之前就分出来，
+ * 不会被当成run命令的应答。机器人消息格式见doc/robot.md，其中推送格式尚未在实机上确认
+ */
 @Service
+@MachineScoped
 @Slf4j
-public class DocuService implements DeviceHandler {
+public class DocuService implements DeviceDriver<RobotLine> {
+    /** 程序状态推送前缀 */
+    public static final String STATE_PREFIX = RobotLine.STATE_PREFIX;
+    /** 脚本空闲状态 */
+    public static final String STATE_IDLE = "idle";
+    /** 脚本出错状态 */
+    public static final String STATE_ERROR = "error";
+    /** 脚本完成消息前缀，如done(takeABowl.jspf) */
+    public static final String DONE_PREFIX = RobotLine.DONE_PREFIX;
+    /** 脚本出错消息前缀，如error(takeABowl.jspf) */
+    public static final String ERROR_PREFIX = RobotLine.ERROR_PREFIX;
+
+    @Lazy
+    @Autowired
+    private RobotClient robotClient;
+    @Autowired
+    private Timer timer;
+    @Value("${robot.scriptTimeoutMs:60000}")
+    private long scriptTimeoutMs;
+    /** 机器人主动连接服务器时的地址 */
+    @Value("${ducoIp}")
+    private String ducoIp;
+
+    /** 正在执行的脚本 */
+    private final AtomicReference<RunningScript> running = new AtomicReference<>();
+    /** 最后提交的脚本，下一个脚本在它结束后发送 */
+    private CompletableFuture<RobotResult> tail = CompletableFuture.completedFuture(null);
+    /** 每个脚本的耗时统计 */
+    private final ConcurrentHashMap<String, ScriptStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * 运行机器人脚本
+     *
+     * @param name 脚本名称，如takeABowl.jspf
+     * @return 脚本结束时完成，失败或超时时success为false
+     */
+    public synchronized CompletableFuture<RobotResult> runScript(String name) {
+        CompletableFuture<RobotResult> result = tail.handle((previous, e) -> null)
+                .thenCompose(ignored -> start(name));
+        tail = result;
+        return result;
+    }
+
+    /**
+     * 每个脚本的耗时统计
+     */
+    public Collection<ScriptStats> getScriptStats() {
+        return new ArrayList<>(stats.values());
+    }
+
+    @Override
+    public String name() {
+        return DeviceRole.ROBOT.getTag();
+    }
+
+    @Override
+    public Collection<String> addresses() {
+        return Collections.singletonList(ducoIp);
+    }
+
+    @Override
+    public ChannelHandler newFrameDecoder() {
+        return new RobotLineDecoder();
+    }
+
     /**
-     * 处理消息
+     * 处理机器人主动推送的消息，没有对应命令的应答只记录日志
      *
-     * @param message 消息内容
-     * @param isHex   是否为16进制消息
+     * @param frame 机器人返回的一行文本
      */
     @Override
-    public void handle(String message, boolean isHex) {
-        if (isHex) {
-            log.info("HEX消息: {}", message);
+    public void handle(RobotLine frame) {
+        String text = frame.getText().trim();
+        log.info("机器人消息: {}", text);
+        if (!frame.isPush()) {
+            return;
+        }
+        RunningScript script = running.get();
+        if (script == null) {
+            return;
+        }
+        if (text.startsWith(DONE_PREFIX) && text.endsWith(")")) {
+            String name = text.substring(DONE_PREFIX.length(), text.length() - 1);
+            if (name.equals(script.name)) {
+                finish(script, true, text);
+            }
+        } else if (text.startsWith(ERROR_PREFIX) && text.endsWith(")")) {
+            String name = text.substring(ERROR_PREFIX.length(), text.length() - 1);
+            if (name.equals(script.name)) {
+                finish(script, false, text);
+            }
+        } else if (text.startsWith(STATE_PREFIX)) {
+            String state = text.substring(STATE_PREFIX.length());
+            // 脚本没有发送完成消息时，以程序回到空闲为结束
+            if (STATE_IDLE.equalsIgnoreCase(state) && script.acknowledged) {
+                finish(script, true, text);
+            } else if (STATE_ERROR.equalsIgnoreCase(state)) {
+                finish(script, false, text);
+            }
+        }
+    }
+
+    private CompletableFuture<RobotResult> start(String name) {
+        RunningScript script = new RunningScript(name);
+        script.timeout = timer.newTimeout(t -> finish(script, false, "脚本执行超时" + scriptTimeoutMs + "ms"),
+                scriptTimeoutMs, TimeUnit.MILLISECONDS);
+        running.set(script);
+        log.info("机器人开始执行脚本：{}", name);
+        robotClient.send("run(" + name + ")").whenComplete((reply, e) -> {
+            if (e != null) {
+                finish(script, false, e.getMessage());
+            } else if (isRejected(reply.getText())) {
+                finish(script, false, reply.getText());
+            } else {
+                script.acknowledged = true;
+            }
+        });
+        return script.future;
+    }
+
+    private void finish(RunningScript script, boolean success, String message) {
+        if (!running.compareAndSet(script, null)) {
+            return;
+        }
+        script.timeout.cancel();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - script.startNanos);
+        RobotResult result = new RobotResult(script.name, success, message, elapsedMs);
+        stats.computeIfAbsent(script.name, ScriptStats::new).record(result);
+        if (success) {
+            log.info("机器人脚本{}执行完成，耗时{}ms", script.name, elapsedMs);
         } else {
-            log.info("普通消息: {}", message);
+            log.error("机器人脚本{}执行失败：{}，耗时{}ms", script.name, message, elapsedMs);
+        }
+        script.future.complete(result);
+    }
+
+    /**
+     * 机器人是否拒绝执行命令
+     */
+    private static boolean isRejected(String reply) {
+        String text = reply.trim().toLowerCase();
+        return text.equals("false") || text.startsWith("error") || text.startsWith("fail");
+    }
+
+    /**
+     * 正在执行的脚本
+     */
+    private static final class RunningScript {
+        private final String name;
+        private final long startNanos = System.nanoTime();
+        private final CompletableFuture<RobotResult> future = new CompletableFuture<>();
+        private volatile boolean acknowledged;
+        private Timeout timeout;
+
+        RunningScript(String name) {
+            this.name = name;
         }
     }
 }
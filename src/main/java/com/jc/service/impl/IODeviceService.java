@@ -1,106 +1,402 @@
 package com.jc.service.impl;
 
+import com.jc.config.MachineScoped;
 import com.jc.constants.Constants;
+import com.jc.entity.SensorSnapshot;
+import com.jc.enums.DeviceRole;
 import com.jc.enums.SignalLevel;
-import com.jc.service.DeviceHandler;
+import com.jc.netty.codec.ZhiqianFrame;
+import com.jc.netty.codec.ZhiqianFrameDecoder;
+import com.jc.service.DeviceDriver;
+import com.jc.service.SensorListener;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.netty.channel.ChannelHandler;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * IO设备处理类
- * 实现了DeviceHandler接口，提供了处理IO设备消息的功能
+ * 实现了DeviceDriver接口，提供了处理IO设备消息的功能
+ * <p>
+ * 32路传感器状态以位掩码保存在原子引用中，状态变化时在IO模块的执行器线程上通知订阅者；
+ * 等待信号返回CompletableFuture，超时由共享时间轮触发。
+ * 到达限位时的停机命令在事件循环线程上发出，不排在订阅者的处理后面；停机失败时每收到一帧重发，直到成功或离开限位。
+ * <p>
+ * IO模块在状态不变时也定时上报，与上一帧数据区完全相同的帧在事件循环线程上只刷新在线时间并计数，
+ * 不再排进执行器解析、通知和打日志
  */
 @Service
+@MachineScoped
 @Slf4j
-public class IODeviceService implements DeviceHandler {
+public class IODeviceService implements DeviceDriver<ZhiqianFrame> {
+    /** IO状态帧数据区长度，8个字节共32个引脚 */
+    private static final int IO_DATA_LENGTH = 8;
+    /** 碗轨道上下限位引脚 */
+    private static final int BOWL_LIMIT_MASK = SensorSnapshot.bit(Constants.BOWL_LOWER_LIMIT_PIN) | SensorSnapshot.bit(Constants.BOWL_UPPER_LIMIT_PIN);
+    /**
+     * 数据字节到4个引脚位的对照表
+     * 低4位：01为第1个引脚、04为第2个引脚；高4位：10为第3个引脚、40为第4个引脚
+     */
+    private static final int[] PIN_BITS = new int[256];
+
+    static {
+        for (int b = 0; b < PIN_BITS.length; b++) {
+            PIN_BITS[b] = (b & 0x01) | (b & 0x04) >> 1 | (b & 0x10) >> 2 | (b & 0x40) >> 3;
+        }
+    }
+
     @Lazy
     @Autowired
     private StepperMotorService stepperMotorService;
+    @Autowired
+    private Timer timer;
+    @Autowired
+    private DeviceMetrics deviceMetrics;
+    @Value("${IoIp}")
+    private String ioIp;
+
+    /** 当前传感器状态 */
+    private final AtomicReference<SensorSnapshot> snapshot = new AtomicReference<>(SensorSnapshot.NOT_INITIALIZED);
+    /** 最近一次收到状态帧的时间（毫秒），内容不变的帧也刷新 */
+    private volatile long lastFrameTime;
+    /** 与上一帧相同而未处理的状态帧数 */
+    private final LongAdder unchangedFrames = new LongAdder();
+    /** 状态变化订阅 */
+    private final CopyOnWriteArrayList<SensorSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    /** 事件循环线程上看到的上一帧状态，只在事件循环线程上访问 */
+    private int limitCheckedMask;
+    private boolean limitChecked;
+    /** 在限位上时最近一次的停机命令，离开限位时清除，只在事件循环线程上访问 */
+    private CompletableFuture<String> limitStop;
+    /** 上一个交给{@link #handle}的帧的命令码和数据区，只在事件循环线程上访问 */
+    private int lastCommand;
+    private long lastPayload;
+    private boolean lastPayloadValid;
+
+    /**
+     * 导出内容不变的帧数
+     */
+    @PostConstruct
+    public void registerMetrics() {
+        FunctionCounter.builder("io.frames.unchanged", unchangedFrames, LongAdder::sum)
+                .description("与上一帧相同、只刷新在线时间的IO状态帧数")
+                .tags(deviceMetrics.getTags())
+                .register(deviceMetrics.getRegistry());
+    }
+
+    /**
+     * 当前传感器状态
+     *
+     * @return 状态快照，未收到IO模块上报时为{@link SensorSnapshot#NOT_INITIALIZED}
+     */
+    public SensorSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * 引脚当前是否为高电平
+     *
+     * @param pin 引脚编号，从1开始
+     * @return 高电平返回true
+     */
+    public boolean isHigh(int pin) {
+        return snapshot.get().isHigh(pin);
+    }
+
+    public long getLastFrameTime() {
+        return lastFrameTime;
+    }
+
+    /**
+     * 与上一帧相同而未处理的状态帧数
+     */
+    public long getUnchangedFrames() {
+        return unchangedFrames.sum();
+    }
 
-    private String ioStatus;
+    /**
+     * 订阅引脚变为指定电平（上升沿或下降沿）
+     *
+     * @param pin      引脚编号，从1开始
+     * @param level    目标电平
+     * @param listener 监听器
+     * @return 订阅，可取消
+     */
+    public SensorSubscription onEdge(int pin, SignalLevel level, SensorListener listener) {
+        int bit = SensorSnapshot.bit(pin);
+        return onMatch(bit, level == SignalLevel.HIGH ? bit : 0, listener);
+    }
 
-    public IODeviceService() {
-        this.ioStatus = Constants.NOT_INITIALIZED;
+    /**
+     * 订阅所有状态变化
+     *
+     * @param listener 监听器
+     * @return 订阅，可取消
+     */
+    public SensorSubscription onChange(SensorListener listener) {
+        SensorSubscription subscription = new SensorSubscription(0, 0, true, listener);
+        subscriptions.add(subscription);
+        return subscription;
     }
 
-    public String getIoStatus() {
-        return ioStatus;
+    /**
+     * 订阅 (状态 &amp; mask) == value 由不满足变为满足
+     * 订阅前还没有收到过状态帧时，第一帧满足条件也会通知
+     *
+     * @param mask     关心的引脚位
+     * @param value    期望值
+     * @param listener 监听器
+     * @return 订阅，可取消
+     */
+    public SensorSubscription onMatch(int mask, int value, SensorListener listener) {
+        SensorSubscription subscription = new SensorSubscription(mask, value & mask, false, listener);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * 等待引脚处于指定电平，当前已是该电平时立即完成
+     *
+     * @param pin       引脚编号，从1开始
+     * @param level     目标电平
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 满足条件时的状态快照，超时以{@link TimeoutException}异常完成
+     */
+    public CompletableFuture<SensorSnapshot> awaitSignal(int pin, SignalLevel level, long timeoutMs) {
+        int bit = SensorSnapshot.bit(pin);
+        return await(bit, level == SignalLevel.HIGH ? bit : 0, true, timeoutMs, "引脚" + pin + "变为" + level);
+    }
+
+    /**
+     * 等待引脚下一次变为指定电平，当前已是该电平时要先离开再回到该电平
+     *
+     * @param pin       引脚编号，从1开始
+     * @param level     目标电平
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 满足条件时的状态快照，超时以{@link TimeoutException}异常完成
+     */
+    public CompletableFuture<SensorSnapshot> awaitEdge(int pin, SignalLevel level, long timeoutMs) {
+        int bit = SensorSnapshot.bit(pin);
+        return await(bit, level == SignalLevel.HIGH ? bit : 0, false, timeoutMs, "引脚" + pin + "跳变为" + level);
+    }
+
+    /**
+     * 等待收到IO模块的状态帧，已收到过时立即完成
+     *
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 状态快照，超时以{@link TimeoutException}异常完成
+     */
+    public CompletableFuture<SensorSnapshot> awaitInitialized(long timeoutMs) {
+        return await(0, 0, true, timeoutMs, "IO模块状态");
+    }
+
+    private CompletableFuture<SensorSnapshot> await(int mask, int value, boolean acceptCurrent, long timeoutMs, String description) {
+        CompletableFuture<SensorSnapshot> future = new CompletableFuture<>();
+        // 先订阅再检查当前状态，避免两者之间到达的帧被漏掉
+        SensorSubscription subscription = onMatch(mask, value, (previous, current) -> future.complete(current));
+        SensorSnapshot current = snapshot.get();
+        if (acceptCurrent && current.matches(mask, value)) {
+            subscription.cancel();
+            future.complete(current);
+            return future;
+        }
+        Timeout timeout = timer.newTimeout(t -> future.completeExceptionally(
+                new TimeoutException("等待" + description + "超时" + timeoutMs + "ms")), timeoutMs, TimeUnit.MILLISECONDS);
+        future.whenComplete((sensors, e) -> {
+            subscription.cancel();
+            timeout.cancel();
+        });
+        return future;
+    }
+
+    @Override
+    public String name() {
+        return DeviceRole.IO.getTag();
+    }
+
+    @Override
+    public Collection<String> addresses() {
+        return Collections.singletonList(ioIp);
+    }
+
+    @Override
+    public ChannelHandler newFrameDecoder() {
+        return new ZhiqianFrameDecoder();
+    }
+
+    /**
+     * 在事件循环线程上过滤内容不变的帧，并检查限位，状态变化且到达限位时立即停止碗步进电机
+     *
+     * @param frame IO模块上报的帧
+     * @return 与上一帧相同时为true，只刷新在线时间；否则为false，状态更新和订阅通知交给{@link #handle}
+     */
+    @Override
+    public boolean handleOnEventLoop(ZhiqianFrame frame) {
+        if (frame.dataLength() != IO_DATA_LENGTH) {
+            return false;
+        }
+        lastFrameTime = System.currentTimeMillis();
+        long payload = payload(frame);
+        if (lastPayloadValid && payload == lastPayload && frame.getCommand() == lastCommand) {
+            unchangedFrames.increment();
+            retryLimitStop();
+            return true;
+        }
+        lastPayloadValid = true;
+        lastPayload = payload;
+        lastCommand = frame.getCommand();
+        int mask = pins(frame);
+        if (!limitChecked || mask != limitCheckedMask) {
+            limitChecked = true;
+            limitCheckedMask = mask;
+            // 停机命令要经485总线排队，只在状态变化时发送，避免每帧都占用总线
+            sensorInstructionProcessing(mask);
+        } else {
+            retryLimitStop();
+        }
+        return false;
+    }
+
+    /**
+     * 仍在限位上而上一次停机命令失败时重发，总线重试用尽或485断开后不会停止尝试
+     */
+    private void retryLimitStop() {
+        CompletableFuture<String> stop = limitStop;
+        if (stop != null && stop.isDone() && !StepperMotorService.SUCCESS.equals(stop.join())) {
+            log.warn("限位点停机失败（{}），重发停机命令", stop.join());
+            limitStop = stepperMotorService.stop(Constants.BOWL_CONTROLLER_NO);
+        }
+    }
+
+    /**
+     * 处理队列已满丢弃了帧，下一帧即使相同也要处理，否则丢掉的变化会被后面相同的帧一直挡住
+     */
+    @Override
+    public void onDropped(ZhiqianFrame frame) {
+        lastPayloadValid = false;
     }
 
     /**
      * 处理消息
      *
-     * @param message 消息内容
-     * @param isHex   是否为16进制消息
+     * @param frame IO模块上报的帧，数据区8个字节，每个字节表示4个引脚
      */
     @Override
-    public void handle(String message, boolean isHex) {
-        if (isHex) {
-            log.info("HEX消息: {}", message);
-            // 查中间8位，从第6位开始查询
-            String[] split = message.split(" ");
-            // 将字符串分割为8个部分，每个部分4个字符
-            StringBuffer sb = new StringBuffer();
-            for (int i = 1; i <= 32; i++) {
-                if (i % 4 == 0) {
-                    // 解析高低电平
-                    heightOrLow(i - 3, i, split[3 + i / 4], sb);
+    public void handle(ZhiqianFrame frame) {
+        if (frame.dataLength() != IO_DATA_LENGTH) {
+            log.info("IO模块消息: {}", frame);
+            return;
+        }
+        int mask = pins(frame);
+        long now = System.currentTimeMillis();
+        SensorSnapshot previous = snapshot.get();
+        SensorSnapshot current = previous;
+        if (!previous.isInitialized() || previous.getMask() != mask) {
+            current = new SensorSnapshot(previous.getVersion() + 1, mask, now);
+            snapshot.set(current);
+        }
+        log.info("传感器的高低电平：{}", current);
+        if (current != previous) {
+            notifySubscribers(previous, current);
+        }
+    }
+
+    /**
+     * 解析高低电平
+     *
+     * @param frame IO状态帧
+     * @return 32个引脚的位掩码
+     */
+    private static int pins(ZhiqianFrame frame) {
+        int mask = 0;
+        for (int i = 0; i < IO_DATA_LENGTH; i++) {
+            mask |= PIN_BITS[frame.getData(i)] << (i * 4);
+        }
+        return mask;
+    }
+
+    /**
+     * 数据区的8个字节
+     */
+    private static long payload(ZhiqianFrame frame) {
+        long payload = 0;
+        for (int i = 0; i < IO_DATA_LENGTH; i++) {
+            payload = payload << 8 | frame.getData(i);
+        }
+        return payload;
+    }
+
+    /**
+     * 通知条件由不满足变为满足的订阅者
+     */
+    private void notifySubscribers(SensorSnapshot previous, SensorSnapshot current) {
+        for (SensorSubscription subscription : subscriptions) {
+            if (subscription.everyChange || !subscription.matches(previous) && subscription.matches(current)) {
+                try {
+                    subscription.listener.onChange(previous, current);
+                } catch (Exception e) {
+                    log.error("传感器监听器执行异常", e);
                 }
             }
-            log.info("传感器的高低电平：{}", sb);
-            // ioStatus赋值，以便其它类看到
-            this.ioStatus = sb.toString();
-            sensorInstructionProcessing(sb);
-        } else {
-            log.info("普通消息: {}", message);
         }
     }
 
     /**
      * 处理传感器指令
      *
-     * @param sb 传感器状态信息
+     * @param mask 引脚状态
      */
-    private void sensorInstructionProcessing(StringBuffer sb) {
-        String[] split = sb.toString().split(",");
+    private void sensorInstructionProcessing(int mask) {
         // 如果碗的极限传感器高电平，要停止碗步进电机
-        if (split[2].equals(SignalLevel.HIGH.getValue()) || split[3].equals(SignalLevel.HIGH.getValue())) {
+        if ((mask & BOWL_LIMIT_MASK) != 0) {
             log.info("到达限位点，停止碗升降的步进电机");
-            stepperMotorService.stop(Constants.BOWL_CONTROLLER_NO);
+            limitStop = stepperMotorService.stop(Constants.BOWL_CONTROLLER_NO);
+        } else {
+            limitStop = null;
         }
     }
 
     /**
-     * 解析引脚的高低电平
-     *
-     * @param startIo 启始引脚
-     * @param endIo   结束引脚
-     * @param hexStr  16进制字符串
-     * @param sb      保存解析结果的StringBuffer
-     * @return 解析后的StringBuffer
-     */
-    private StringBuffer heightOrLow(int startIo, int endIo, String hexStr, StringBuffer sb) {
-        // 检查 hexStr 是否为空或长度是否小于2
-        if (hexStr == null || hexStr.length() < 2) {
-            log.error("无效的 hexStr 输入");
-            return null;
-        }
-
-        // 提取 hexStr 的第一位和第二位字符
-        char firstChar = hexStr.charAt(0);
-        char secondChar = hexStr.charAt(1);
-
-        // 根据第二位字符判断 startIo 是否为高电平
-        sb.append((secondChar == '1' || secondChar == '5') ? SignalLevel.HIGH.getValue() : SignalLevel.LOW.getValue()).append(",");
-        // 根据第二位字符判断 startIo + 1 是否为高电平
-        sb.append((secondChar == '4' || secondChar == '5') ? SignalLevel.HIGH.getValue() : SignalLevel.LOW.getValue()).append(",");
-        // 根据第一位字符判断 startIo + 2 是否为高电平
-        sb.append((firstChar == '1' || firstChar == '5') ? SignalLevel.HIGH.getValue() : SignalLevel.LOW.getValue()).append(",");
-        // 根据第一位字符判断 endIo 是否为高电平
-        sb.append((firstChar == '4' || firstChar == '5') ? SignalLevel.HIGH.getValue() : SignalLevel.LOW.getValue()).append(",");
-
-        return sb;
+     * 传感器状态订阅
+     */
+    public class SensorSubscription {
+        private final int mask;
+        private final int value;
+        /** 任何变化都通知，不看条件 */
+        private final boolean everyChange;
+        private final SensorListener listener;
+
+        SensorSubscription(int mask, int value, boolean everyChange, SensorListener listener) {
+            this.mask = mask;
+            this.value = value;
+            this.everyChange = everyChange;
+            this.listener = listener;
+        }
+
+        boolean matches(SensorSnapshot sensors) {
+            return sensors.matches(mask, value);
+        }
+
+        /**
+         * 取消订阅
+         */
+        public void cancel() {
+            subscriptions.remove(this);
+        }
     }
 }
@@ -0,0 +1,173 @@
+package com.jc.service.impl;
+
+import com.jc.entity.Job;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 后台作业服务
+ * <p>
+ * 运动流程以{@link Job}提交后立即返回作业编号，流程本身是不阻塞线程的CompletableFuture链，
+ * 在设备执行器、时间轮和机器人客户端的线程上推进，不占用Tomcat线程。
+ * 同时执行的作业数有上限，超过时拒绝提交；已结束的作业保留最近的若干个供查询
+ */
+@Service
+@Slf4j
+public class JobService {
+    private final MachineManager machineManager;
+    /** 同时执行的作业数上限 */
+    private final int maxActive;
+    /** 保留的已结束作业数 */
+    private final int history;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    /** 已结束的作业编号，按结束顺序 */
+    private final ConcurrentLinkedQueue<String> finished = new ConcurrentLinkedQueue<>();
+
+    @Autowired
+    public JobService(MachineManager machineManager,
+                      @Value("${job.maxActive:64}") int maxActive,
+                      @Value("${job.history:100}") int history) {
+        this.machineManager = machineManager;
+        this.maxActive = maxActive;
+        this.history = history;
+    }
+
+    /**
+     * 提交作业
+     *
+     * @param machineId  机器编号，为null时为第一台机器
+     * @param operation  操作名称
+     * @param totalSteps 总步骤数
+     * @param work       启动流程，通过{@link Job#step}开始每个步骤
+     * @return 执行中的作业
+     * @throws MachineManager.MachineNotFoundException 机器编号不存在
+     * @throws TooManyJobsException                   执行中的作业已达上限
+     */
+    public Job submit(String machineId, String operation, int totalSteps, Function<Job, CompletableFuture<String>> work) {
+        String machine = machineManager.get(machineId).getId();
+        if (active.incrementAndGet() > maxActive) {
+            active.decrementAndGet();
+            throw new TooManyJobsException(maxActive);
+        }
+        Job job = new Job(String.valueOf(sequence.incrementAndGet()), machine, operation, totalSteps);
+        jobs.put(job.getId(), job);
+        log.info("机器{}作业{}开始：{}", machine, job.getId(), operation);
+        CompletableFuture<String> result;
+        try {
+            result = work.apply(job);
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        result.whenComplete((r, e) -> {
+            if (job.finish(r, e)) {
+                finished(job);
+            }
+        });
+        return job;
+    }
+
+    /**
+     * 按编号取作业
+     *
+     * @param id 作业编号
+     * @return 作业
+     * @throws JobNotFoundException 作业不存在或已不再保留
+     */
+    public Job get(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            throw new JobNotFoundException(id);
+        }
+        return job;
+    }
+
+    /**
+     * 作业列表，按编号排序
+     *
+     * @param machineId 机器编号，为null时为所有机器
+     * @return 执行中和保留的已结束作业
+     */
+    public List<Job> list(String machineId) {
+        List<Job> result = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            if (machineId == null || machineId.equals(job.getMachineId())) {
+                result.add(job);
+            }
+        }
+        result.sort((a, b) -> Long.compare(Long.parseLong(a.getId()), Long.parseLong(b.getId())));
+        return result;
+    }
+
+    /**
+     * 取消作业，已结束的作业不变
+     *
+     * @param id 作业编号
+     * @return 作业
+     * @throws JobNotFoundException 作业不存在或已不再保留
+     */
+    public Job cancel(String id) {
+        Job job = get(id);
+        if (job.cancel()) {
+            log.info("机器{}作业{}已取消：{}", job.getMachineId(), job.getId(), job.getOperation());
+            finished(job);
+        }
+        return job;
+    }
+
+    /**
+     * 执行中的作业数
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    private void finished(Job job) {
+        active.decrementAndGet();
+        log.info("机器{}作业{}结束：{}，{}", job.getMachineId(), job.getId(), job.getState(), job.getResult());
+        finished.add(job.getId());
+        while (finished.size() > history) {
+            String oldest = finished.poll();
+            if (oldest != null) {
+                jobs.remove(oldest);
+            }
+        }
+    }
+
+    /**
+     * 作业不存在，接口返回404
+     */
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public static class JobNotFoundException extends RuntimeException {
+        public JobNotFoundException(String id) {
+            super("作业" + id + "不存在");
+        }
+    }
+
+    /**
+     * 执行中的作业已达上限，接口返回429
+     */
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    public static class TooManyJobsException extends RuntimeException {
+        public TooManyJobsException(int maxActive) {
+            super("执行中的作业已达上限" + maxActive);
+        }
+    }
+}
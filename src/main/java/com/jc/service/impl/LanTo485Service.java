@@ -1,25 +1,149 @@
 package com.jc.service.impl;
 
-import com.jc.service.DeviceHandler;
+import com.jc.config.MachineScoped;
+import com.jc.enums.DeviceRole;
+import com.jc.netty.codec.ModbusFrame;
+import com.jc.netty.codec.ModbusRtuFrameDecoder;
+import com.jc.netty.server.NettyServerHandler;
+import com.jc.netty.server.Rs485Bus;
+import com.jc.service.DeviceDriver;
+import com.jc.utils.SampleRingBuffer;
+import io.micrometer.core.instrument.Gauge;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 网口485转换器服务
+ * 485总线上的Modbus请求都经过{@link Rs485Bus}排队发送，应答交给总线匹配
+ */
 @Service
+@MachineScoped
 @Slf4j
-public class LanTo485Service implements DeviceHandler {
+public class LanTo485Service implements DeviceDriver<ModbusFrame> {
+
+    @Value("${lanTo485}")
+    private String lanTo485;
+    @Lazy
+    @Autowired
+    private NettyServerHandler nettyServerHandler;
+    @Autowired
+    private DeviceMetrics deviceMetrics;
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("rs485.queue.depth", this, LanTo485Service::queueDepth)
+                .description("485总线上排队和等待应答的请求数")
+                .tags(deviceMetrics.getTags())
+                .register(deviceMetrics.getRegistry());
+    }
+
+    /**
+     * 485转换器是否已连接
+     *
+     * @return 已连接返回true
+     */
+    public boolean isConnected() {
+        Channel channel = nettyServerHandler.getChannel(lanTo485);
+        return channel != null && channel.isActive();
+    }
+
+    /**
+     * 发送Modbus请求并等待应答
+     *
+     * @param frame 请求帧，完成后释放
+     * @return 应答帧，485转换器未连接、从站返回异常码或超时以异常完成
+     */
+    public CompletableFuture<ModbusFrame> request(ByteBuf frame) {
+        return request(frame, false);
+    }
+
+    /**
+     * 发送Modbus请求并等待应答
+     *
+     * @param frame  请求帧，完成后释放
+     * @param urgent true时排在所有普通请求前面，用于停机
+     * @return 应答帧，485转换器未连接、从站返回异常码或超时以异常完成
+     */
+    public CompletableFuture<ModbusFrame> request(ByteBuf frame, boolean urgent) {
+        Channel channel = nettyServerHandler.getChannel(lanTo485);
+        if (channel == null) {
+            ReferenceCountUtil.release(frame);
+            log.error("无法找到与 IP 地址 {} 相关联的通道！", lanTo485);
+            CompletableFuture<ModbusFrame> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("485转换器未连接"));
+            return future;
+        }
+        return Rs485Bus.of(channel, deviceMetrics).request(frame, urgent);
+    }
+
+    /**
+     * 当前连接上某个功能码的请求往返时间
+     *
+     * @param function Modbus功能码
+     * @return 往返时间样本（微秒），未连接或还没有样本时返回null
+     */
+    public SampleRingBuffer roundTrips(int function) {
+        Channel channel = nettyServerHandler.getChannel(lanTo485);
+        return channel == null ? null : Rs485Bus.of(channel, deviceMetrics).roundTrips(function);
+    }
+
+    /**
+     * 485总线上排队和等待应答的请求数
+     *
+     * @return 未连接时返回0
+     */
+    public int queueDepth() {
+        Channel channel = nettyServerHandler.getChannel(lanTo485);
+        return channel == null ? 0 : Rs485Bus.of(channel, deviceMetrics).depth();
+    }
+
+    @Override
+    public String name() {
+        return DeviceRole.RS485.getTag();
+    }
+
+    @Override
+    public Collection<String> addresses() {
+        return Collections.singletonList(lanTo485);
+    }
+
+    @Override
+    public ChannelHandler newFrameDecoder() {
+        return new ModbusRtuFrameDecoder();
+    }
+
+    /**
+     * 总线状态只在485通道的事件循环线程上访问，应答直接在事件循环线程上交给总线匹配，不经过执行器
+     */
+    @Override
+    public boolean handleOnEventLoop(ModbusFrame frame) {
+        handle(frame);
+        return true;
+    }
+
     /**
      * 处理消息
      *
-     * @param message 消息内容
-     * @param isHex 是否为16进制消息
+     * @param frame 485模块转发的Modbus应答帧
      */
     @Override
-    public void handle(String message, boolean isHex) {
-        if (isHex) {
-            log.info("HEX消息: {}", message);
-        } else {
-            log.info("普通消息: {}", message);
-            // 在这里添加处理普通字符串消息的逻辑
+    public void handle(ModbusFrame frame) {
+        log.debug("HEX消息: {}", frame);
+        Channel channel = nettyServerHandler.getChannel(lanTo485);
+        if (channel != null) {
+            Rs485Bus.of(channel, deviceMetrics).onReply(frame);
         }
     }
 }
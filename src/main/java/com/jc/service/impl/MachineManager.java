@@ -0,0 +1,219 @@
+package com.jc.service.impl;
+
+import com.jc.config.MachineScoped;
+import com.jc.netty.server.DeviceRegistry;
+import com.jc.netty.server.MachineEventLoopGroup;
+import com.jc.service.DeviceDriver;
+import io.netty.channel.EventLoop;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ClassPathBeanDefinitionScanner;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 机器管理
+ * <p>
+ * 一台控制器可以同时带多台机器，机器编号由配置项machines给出（逗号分隔，默认只有一台机器1）。
+ * 每台机器一个子容器，容器中是标注了{@link MachineScoped}的bean：设备驱动、电机、转盘调度、时间轮、机器人客户端等，
+ * 各自保存本机器的状态；子容器的配置优先取machine.&lt;编号&gt;.&lt;配置项&gt;，没有时取全局配置，
+ * 所以只有一台机器时原来的配置不用改。每台机器的设备按地址登记到{@link DeviceRegistry}，
+ * 并固定使用worker线程组中的一个事件循环
+ */
+@Service
+@Slf4j
+public class MachineManager {
+    /** 子容器中当前机器编号的配置项 */
+    public static final String MACHINE_ID = "machine.id";
+    /** 机器专属配置的前缀，如machine.2.IoIp */
+    public static final String MACHINE_PREFIX = "machine.";
+    /** 扫描机器bean的包 */
+    private static final String BASE_PACKAGE = "com.jc";
+
+    private final ConfigurableApplicationContext parent;
+    private final DeviceRegistry deviceRegistry;
+    private final MachineEventLoopGroup workerGroup;
+    private final String[] ids;
+    /** 按编号，顺序与配置一致 */
+    private final Map<String, Machine> machines = new LinkedHashMap<>();
+
+    @Autowired
+    public MachineManager(ConfigurableApplicationContext parent,
+                          DeviceRegistry deviceRegistry,
+                          MachineEventLoopGroup workerGroup,
+                          @Value("${machines:1}") String[] ids) {
+        this.parent = parent;
+        this.deviceRegistry = deviceRegistry;
+        this.workerGroup = workerGroup;
+        this.ids = ids;
+    }
+
+    @PostConstruct
+    public void start() {
+        for (String id : ids) {
+            String machineId = id.trim();
+            if (machineId.isEmpty()) {
+                continue;
+            }
+            if (machines.containsKey(machineId)) {
+                throw new IllegalStateException("机器编号重复：" + machineId);
+            }
+            Machine machine = create(machineId, workerGroup.next());
+            machines.put(machineId, machine);
+            log.info("机器{}已启动，设备数：{}", machineId, machine.context.getBeanNamesForType(DeviceDriver.class).length);
+        }
+        if (machines.isEmpty()) {
+            throw new IllegalStateException("没有配置机器：machines");
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        List<Machine> started = new ArrayList<>(machines.values());
+        Collections.reverse(started);
+        for (Machine machine : started) {
+            machine.context.close();
+        }
+    }
+
+    /**
+     * 按编号取机器
+     *
+     * @param id 机器编号，为null时取第一台机器
+     * @return 机器
+     * @throws MachineNotFoundException 编号不存在
+     */
+    public Machine get(String id) {
+        Machine machine = id == null ? machines.values().iterator().next() : machines.get(id);
+        if (machine == null) {
+            throw new MachineNotFoundException(id);
+        }
+        return machine;
+    }
+
+    /**
+     * 取机器子容器中的bean
+     *
+     * @param id   机器编号，为null时取第一台机器
+     * @param type bean类型
+     * @return 该机器的bean
+     * @throws MachineNotFoundException 编号不存在
+     */
+    public <T> T getBean(String id, Class<T> type) {
+        return get(id).getBean(type);
+    }
+
+    /**
+     * 所有机器，顺序与配置一致
+     */
+    public Collection<Machine> getMachines() {
+        return Collections.unmodifiableCollection(machines.values());
+    }
+
+    /**
+     * 创建机器的子容器，并登记其中的设备驱动
+     */
+    private Machine create(String id, EventLoop eventLoop) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.setId(parent.getId() + "-machine-" + id);
+        context.setParent(parent);
+        context.getEnvironment().getPropertySources().addFirst(new MachinePropertySource(id, parent.getEnvironment()));
+        context.getBeanFactory().setConversionService(parent.getBeanFactory().getConversionService());
+        Machine machine = new Machine(id, eventLoop, context);
+        context.getBeanFactory().registerSingleton("machine", machine);
+        context.registerBean(PropertySourcesPlaceholderConfigurer.class);
+        ClassPathBeanDefinitionScanner scanner = new ClassPathBeanDefinitionScanner(context, false, context.getEnvironment());
+        scanner.addIncludeFilter(new AnnotationTypeFilter(MachineScoped.class));
+        scanner.scan(BASE_PACKAGE);
+        context.refresh();
+        for (DeviceDriver<?> driver : context.getBeansOfType(DeviceDriver.class).values()) {
+            deviceRegistry.register(driver, machine);
+        }
+        return machine;
+    }
+
+    /**
+     * 一台机器
+     */
+    public static final class Machine {
+        private final String id;
+        private final EventLoop eventLoop;
+        private final ConfigurableApplicationContext context;
+
+        Machine(String id, EventLoop eventLoop, ConfigurableApplicationContext context) {
+            this.id = id;
+            this.eventLoop = eventLoop;
+            this.context = context;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * 机器的设备连接和机器人客户端共用的事件循环
+         */
+        public EventLoop getEventLoop() {
+            return eventLoop;
+        }
+
+        /**
+         * 取机器子容器中的bean
+         */
+        public <T> T getBean(Class<T> type) {
+            return context.getBean(type);
+        }
+
+        @Override
+        public String toString() {
+            return "机器" + id;
+        }
+    }
+
+    /**
+     * 机器专属配置：machine.id为机器编号，其他配置项X取全局配置中的machine.&lt;编号&gt;.X
+     */
+    private static final class MachinePropertySource extends PropertySource<String> {
+        private final Environment global;
+
+        MachinePropertySource(String id, Environment global) {
+            super("machine-" + id, id);
+            this.global = global;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            if (MACHINE_ID.equals(name)) {
+                return getSource();
+            }
+            return global.getProperty(MACHINE_PREFIX + getSource() + "." + name);
+        }
+    }
+
+    /**
+     * 机器编号不存在，接口返回404
+     */
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public static class MachineNotFoundException extends RuntimeException {
+        public MachineNotFoundException(String id) {
+            super("机器" + id + "不存在");
+        }
+    }
+}
@@ -1,42 +1,320 @@
 package com.jc.service.impl;
 
+import com.jc.config.MachineScoped;
+import com.jc.enums.DeviceRole;
+import com.jc.netty.codec.ZhiqianCommandEncoder;
+import com.jc.netty.codec.ZhiqianFrame;
+import com.jc.netty.codec.ZhiqianFrameDecoder;
 import com.jc.netty.server.NettyServerHandler;
-import com.jc.service.DeviceHandler;
+import com.jc.service.DeviceDriver;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.util.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntUnaryOperator;
+
 /**
  * 继电器设备处理类
- * 实现了DeviceHandler接口，提供了继电器的打开、关闭及定时关闭功能
+ * 实现了DeviceDriver接口，提供了继电器的打开、关闭及定时关闭功能
+ * <p>
+ * 32路继电器的状态以模块的应答为准保存为位掩码，第N路对应第N-1位；定时打开的继电器到时由模块自行关闭，
+ * 这里用时间轮同时清除该位。
+ * <p>
+ * 单路开关请求先在relay.coalesceMs的窗口内收集，窗口结束时只涉及一路则发单路开关命令，
+ * 涉及多路则与当前状态（模块应答的状态叠加已发出未应答的命令）合并成一条写全部继电器命令；
+ * {@link #switchRelays}为显式的批量开关，立即发出
+ * <p>
+ * 写全部继电器命令会改写全部32路，只有当前连接上32路的状态都由模块应答过（收到过写全部的应答，或每路都收到过单路应答）
+ * 才能合并；重连（包括模块重启后重连）后状态未知，退回逐路发单路开关命令，直到状态重新确认
  */
 @Service
+@MachineScoped
 @Slf4j
-public class RelayDeviceService implements DeviceHandler {
+public class RelayDeviceService implements DeviceDriver<ZhiqianFrame> {
+    /** 写全部继电器的应答命令 */
+    public static final int CMD_WRITE_ALL_ACK = 0x54;
+    /** 超过该时间没有应答的命令不再等待（毫秒） */
+    public static final long ACK_TIMEOUT_MS = 5_000L;
+    /** 出汤阀门：第1、2路 */
+    private static final int[] SOUP_VALVES = {1, 2};
+    /** 出汤时间（秒） */
+    public static final int SOUP_SECONDS = 20;
 
     @Autowired
     private NettyServerHandler nettyServerHandler;
 
     @Value("${relayIp}")
     private String relayIp;
+    @Autowired
+    private DeviceMetrics deviceMetrics;
+    @Autowired
+    private Timer timer;
+    /** 单路开关请求的合并窗口（毫秒），0为不等待、立即发出 */
+    @Value("${relay.coalesceMs:5}")
+    private long coalesceMs;
+
+    /** 已发送、等待应答的命令 */
+    private final ConcurrentLinkedQueue<PendingAck> pendingAcks = new ConcurrentLinkedQueue<>();
+    /** 模块应答的继电器状态 */
+    private final AtomicInteger relayMask = new AtomicInteger();
+    /** 在{@link #knownChannel}上由模块应答确认过状态的继电器 */
+    private final AtomicInteger knownMask = new AtomicInteger();
+    /** 确认状态时的连接，与当前连接不同时之前确认的状态作废 */
+    private volatile Channel knownChannel;
+    /** 每路继电器的状态变化次数，定时关闭到时前状态又变过则不再清除 */
+    private final AtomicIntegerArray generations = new AtomicIntegerArray(32);
+    /** 状态变化监听 */
+    private final CopyOnWriteArrayList<Runnable> listeners = new CopyOnWriteArrayList<>();
+    /** 保护合并窗口内的请求，发送命令也在锁内，保证命令按合并的顺序发出 */
+    private final Object pendingLock = new Object();
+    /** 合并窗口内请求打开、关闭的继电器 */
+    private int pendingOpen;
+    private int pendingClose;
+    private boolean flushScheduled;
+
+    /**
+     * 继电器状态
+     *
+     * @return 位掩码，第N路打开时第N-1位为1
+     */
+    public int getRelayMask() {
+        return relayMask.get();
+    }
+
+    /**
+     * 订阅继电器状态变化，在继电器模块的执行器线程或时间轮线程上回调，不能有阻塞操作
+     *
+     * @param listener 监听器
+     */
+    public void onChange(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public String name() {
+        return DeviceRole.RELAY.getTag();
+    }
+
+    @Override
+    public Collection<String> addresses() {
+        return Collections.singletonList(relayIp);
+    }
+
+    @Override
+    public ChannelHandler newFrameDecoder() {
+        return new ZhiqianFrameDecoder();
+    }
 
     /**
      * 处理消息
      *
-     * @param message 消息内容
-     * @param isHex 是否为16进制消息
+     * @param frame 继电器模块的应答帧
      */
     @Override
-    public void handle(String message, boolean isHex) {
-        if (isHex) {
-            log.info("HEX消息: {}", message);
+    public void handle(ZhiqianFrame frame) {
+        log.debug("HEX消息: {}", frame);
+        // 先更新状态再移除等待应答的命令，合并时两者之间看到的状态不会少了这条命令
+        if (frame.getCommand() == ZhiqianFrameDecoder.CMD_RELAY_SWITCH_ACK) {
+            switched(frame);
+            int no = frame.getData(0);
+            if (no > 0 && no <= 32) {
+                known(1 << (no - 1));
+            }
+            acknowledge(ZhiqianFrameDecoder.CMD_RELAY_SWITCH, frame.getData(0));
+        } else if (frame.getCommand() == CMD_WRITE_ALL_ACK) {
+            int mask = 0;
+            for (int i = 0; i < frame.dataLength(); i++) {
+                // 每个字节表示4路，01、04、10、40依次为第1到第4路
+                int b = frame.getData(i);
+                mask |= ((b & 0x01) | (b & 0x04) >> 1 | (b & 0x10) >> 2 | (b & 0x40) >> 3) << (i * 4);
+            }
+            for (int i = 0; i < generations.length(); i++) {
+                generations.incrementAndGet(i);
+            }
+            int state = mask;
+            update(m -> state);
+            known(-1);
+            acknowledge(ZhiqianCommandEncoder.CMD_WRITE_ALL, -1);
+        }
+    }
+
+    /**
+     * 单路开关应答：继电器编号 开关 定时秒数高 定时秒数低
+     */
+    private void switched(ZhiqianFrame frame) {
+        int no = frame.getData(0);
+        if (no <= 0 || no > 32) {
+            return;
+        }
+        int bit = 1 << (no - 1);
+        boolean open = frame.getData(1) != 0;
+        int generation = generations.incrementAndGet(no - 1);
+        update(open ? m -> m | bit : m -> m & ~bit);
+        int seconds = frame.getData(2) << 8 | frame.getData(3);
+        if (open && seconds > 0) {
+            timer.newTimeout(t -> {
+                if (generations.get(no - 1) == generation) {
+                    update(m -> m & ~bit);
+                }
+            }, seconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 记下在当前连接上由模块应答确认的继电器
+     *
+     * @param bits 应答的继电器
+     */
+    private void known(int bits) {
+        Channel channel = nettyServerHandler.getChannel(relayIp);
+        if (channel != knownChannel) {
+            knownChannel = channel;
+            knownMask.set(0);
+        }
+        knownMask.getAndUpdate(m -> m | bits);
+    }
+
+    /**
+     * 当前连接上32路的状态是否都已确认，确认后才能用写全部继电器命令合并
+     */
+    private boolean stateKnown() {
+        Channel channel = nettyServerHandler.getChannel(relayIp);
+        return channel != null && channel == knownChannel && knownMask.get() == -1;
+    }
+
+    /**
+     * 更新继电器状态，有变化时通知监听器
+     */
+    private void update(IntUnaryOperator change) {
+        int previous = relayMask.getAndUpdate(change);
+        if (change.applyAsInt(previous) == previous) {
+            return;
+        }
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.error("继电器状态监听器执行异常", e);
+            }
+        }
+    }
+
+    /**
+     * 发送命令并记录发送时间，收到应答时统计往返耗时
+     *
+     * @param frame 命令帧
+     * @param set   命令打开的继电器
+     * @param clear 命令关闭的继电器
+     */
+    private void send(ByteBuf frame, int set, int clear) {
+        int command = frame.getUnsignedByte(frame.readerIndex() + 3);
+        int no = command == ZhiqianFrameDecoder.CMD_RELAY_SWITCH ? frame.getUnsignedByte(frame.readerIndex() + 4) : -1;
+        long sentAt = System.nanoTime();
+        if (nettyServerHandler.sendFrameToClient(relayIp, frame) != null) {
+            pendingAcks.add(new PendingAck(command, no, set, clear, sentAt));
+        }
+    }
+
+    /**
+     * 合并请求时的继电器状态：模块应答的状态，再按顺序叠加已发出、未应答的命令
+     */
+    private int shadowMask() {
+        int mask = relayMask.get();
+        for (PendingAck pending : pendingAcks) {
+            mask = mask & ~pending.clear | pending.set;
+        }
+        return mask;
+    }
+
+    /**
+     * 记下单路开关请求，合并窗口开始时安排在继电器通道的事件循环上发出
+     */
+    private void request(int open, int close) {
+        boolean schedule;
+        synchronized (pendingLock) {
+            merge(open, close);
+            schedule = !flushScheduled;
+            flushScheduled = true;
+        }
+        if (!schedule) {
+            return;
+        }
+        Channel channel = coalesceMs > 0 ? nettyServerHandler.getChannel(relayIp) : null;
+        if (channel != null) {
+            channel.eventLoop().schedule(this::flush, coalesceMs, TimeUnit.MILLISECONDS);
         } else {
-            log.info("普通消息: {}", message);
-            // 在这里添加处理普通字符串消息的逻辑
+            flush();
         }
     }
 
+    /**
+     * 后来的请求覆盖同一路先前的请求
+     */
+    private void merge(int open, int close) {
+        pendingOpen = pendingOpen & ~close | open;
+        pendingClose = pendingClose & ~open | close;
+    }
+
+    /**
+     * 发出合并窗口内的请求：只涉及一路或状态未确认时逐路发单路开关命令，否则发一条写全部继电器命令
+     */
+    private void flush() {
+        synchronized (pendingLock) {
+            int open = pendingOpen;
+            int close = pendingClose;
+            pendingOpen = 0;
+            pendingClose = 0;
+            flushScheduled = false;
+            int requested = open | close;
+            if (requested == 0) {
+                return;
+            }
+            if (Integer.bitCount(requested) == 1 || !stateKnown()) {
+                for (int bits = requested; bits != 0; bits &= bits - 1) {
+                    int bit = Integer.lowestOneBit(bits);
+                    boolean on = (open & bit) != 0;
+                    send(ZhiqianCommandEncoder.relaySwitch(Integer.numberOfTrailingZeros(bit) + 1, on),
+                            on ? bit : 0, on ? 0 : bit);
+                }
+            } else {
+                int target = shadowMask() & ~close | open;
+                send(ZhiqianCommandEncoder.writeAll(target), target, ~target);
+            }
+        }
+    }
+
+    /**
+     * 应答对应最早发送的同一命令（单路开关还要求继电器编号相同），顺带丢弃超时未应答的命令
+     */
+    private void acknowledge(int command, int no) {
+        long now = System.nanoTime();
+        long expired = now - TimeUnit.MILLISECONDS.toNanos(ACK_TIMEOUT_MS);
+        for (Iterator<PendingAck> it = pendingAcks.iterator(); it.hasNext(); ) {
+            PendingAck pending = it.next();
+            if (pending.sentAt < expired) {
+                it.remove();
+            } else if (pending.command == command && pending.no == no) {
+                it.remove();
+                deviceMetrics.recordAck(DeviceRole.RELAY, command, now - pending.sentAt);
+                return;
+            }
+        }
+        log.debug("继电器应答没有对应的命令：{}", Integer.toHexString(command));
+    }
+
     /**
      * 根据编号打开继电器
      *
@@ -47,18 +325,7 @@ public class RelayDeviceService implements DeviceHandler {
             log.error("编号{}继电器不存在！", no);
             return; // 添加return，防止继续执行
         }
-        // 将编号转换为16进制字符串
-        String hexString = Integer.toHexString(no).toUpperCase();
-        // 如果字符串长度不足两位，则在前面补0
-        if (hexString.length() < 2) {
-            hexString = "0" + hexString;
-        }
-        // 构造指令字符串
-        StringBuffer sb = new StringBuffer("48 3A 01 70 ");
-        sb.append(hexString);
-        sb.append(" 01 00 00 45 44");
-        // 发送指令
-        nettyServerHandler.sendMessageToClient(relayIp, sb.toString(), true);
+        request(1 << (no - 1), 0);
     }
 
     /**
@@ -71,81 +338,102 @@ public class RelayDeviceService implements DeviceHandler {
             log.error("编号{}继电器不存在！", no);
             return; // 添加return，防止继续执行
         }
-        // 将编号转换为16进制字符串
-        String hexString = Integer.toHexString(no).toUpperCase();
-        // 如果字符串长度不足两位，则在前面补0
-        if (hexString.length() < 2) {
-            hexString = "0" + hexString;
+        request(0, 1 << (no - 1));
+    }
+
+    /**
+     * 同时打开、关闭多路继电器，与合并窗口内还没发出的请求一起立即发出
+     *
+     * @param openMask  要打开的继电器，第N路为第N-1位
+     * @param closeMask 要关闭的继电器
+     */
+    public void switchRelays(int openMask, int closeMask) {
+        if ((openMask & closeMask) != 0) {
+            log.error("继电器{}不能同时打开和关闭", Integer.toBinaryString(openMask & closeMask));
+            return;
+        }
+        synchronized (pendingLock) {
+            merge(openMask, closeMask);
         }
-        // 构造指令字符串
-        StringBuffer sb = new StringBuffer("48 3A 01 70 ");
-        sb.append(hexString);
-        sb.append(" 00 00 00 45 44");
-        // 发送指令
-        nettyServerHandler.sendMessageToClient(relayIp, sb.toString(), true);
+        flush();
     }
 
     /**
      * 继电器打开一段时间后自动关闭
      *
      * @param no 继电器编号，范围为1-32
-     * @param second 延迟关闭的时间，单位为秒，范围为1-177777
+     * @param second 延迟关闭的时间，单位为秒，范围为1-65535
      */
     public void openClose(int no, int second) {
         if (no <= 0 || no > 32) {
             log.error("编号{}继电器不存在！", no);
             return; // 添加return，防止继续执行
         }
-        if (second <= 0 || second > 177777) {
-            log.error("时间值不能限定", second);
+        if (second <= 0 || second > 0xFFFF) {
+            log.error("时间值{}超出范围", second);
             return; // 添加return，防止继续执行
         }
-        // 将编号转换为16进制字符串
-        String hexString = Integer.toHexString(no).toUpperCase();
-        // 如果字符串长度不足两位，则在前面补0
-        if (hexString.length() < 2) {
-            hexString = "0" + hexString;
+        // 先发出窗口内的请求，保持命令的先后顺序
+        flush();
+        synchronized (pendingLock) {
+            send(ZhiqianCommandEncoder.relayTimedOpen(no, second), 1 << (no - 1), 0);
         }
-        // 构造指令字符串
-        StringBuffer sb = new StringBuffer("48 3A 01 70 ");
-        sb.append(hexString);
-        sb.append(" 01 ");
-        // 将时间转换为16进制字符串
-        String hexTime = String.format("%04X", second).toUpperCase();
-        sb.append(hexTime);
-        sb.append(" 45 44");
-        // 发送指令
-        nettyServerHandler.sendMessageToClient(relayIp, sb.toString(), true);
     }
 
     /**
      * 关闭所有继电器
      */
     public void closeAll() {
-        // 发送关闭所有继电器的指令
-        nettyServerHandler.sendMessageToClient(relayIp, "48 3A 01 57 00 00 00 00 00 00 00 00 DA 45 44", true);
+        // 窗口内还没发出的请求作废
+        synchronized (pendingLock) {
+            pendingOpen = 0;
+            pendingClose = 0;
+            send(ZhiqianCommandEncoder.closeAll(), 0, -1);
+        }
     }
 
     /**
      * 打开所有继电器
      */
     public void openAll() {
-        // 发送打开所有继电器的指令
-        nettyServerHandler.sendMessageToClient(relayIp, "48 3A 01 57 55 55 55 55 55 55 55 55 82 45 44", true);
+        synchronized (pendingLock) {
+            pendingOpen = 0;
+            pendingClose = 0;
+            send(ZhiqianCommandEncoder.openAll(), -1, 0);
+        }
     }
 
     /**
-     * 出汤
-     * @return
+     * 出汤：第1、2路阀门各用一条定时打开命令，连续发出，到时由模块自行关闭
+     * <p>
+     * 不用写全部继电器命令合并成一帧：那样关闭要靠服务端到时再发，服务端或连接出问题时阀门不会关
+     *
+     * @return ok
      */
-    public String dispenseSoup(){
-        openClose(1,20);
-        try {
-            Thread.sleep(50L);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+    public String dispenseSoup() {
+        for (int no : SOUP_VALVES) {
+            openClose(no, SOUP_SECONDS);
         }
-        openClose(2,20);
         return "ok";
     }
+
+    /**
+     * 等待应答的命令
+     */
+    private static final class PendingAck {
+        private final int command;
+        private final int no;
+        /** 命令打开、关闭的继电器 */
+        private final int set;
+        private final int clear;
+        private final long sentAt;
+
+        PendingAck(int command, int no, int set, int clear, long sentAt) {
+            this.command = command;
+            this.no = no;
+            this.set = set;
+            this.clear = clear;
+            this.sentAt = sentAt;
+        }
+    }
 }
@@ -0,0 +1,364 @@
+package com.jc.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.jc.service.impl.MachineManager.Machine;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 机器状态推送（Server-Sent Events）
+ * <p>
+ * 传感器、继电器、工位上的碗和订单进度变化时只在对应位置做标记，不在设备线程上序列化或发送；
+ * 每隔push.intervalMs（界面的一帧）把这段时间内变化过的部分各序列化一次，合并成一个增量发给所有客户端，
+ * 同一帧内的多次变化只发最新值。每个客户端同时只有一次发送，发送慢的客户端在发送期间的增量合并到下一次，
+ * 不会为它积压消息。一次发送超过push.writeTimeoutMs的客户端被移除，并中断占用的发送线程，
+ * 不让卡住的连接占满发送线程池、拖慢其他客户端
+ */
+@Service
+@Slf4j
+public class StatePushService {
+    /** 事件名称 */
+    public static final String EVENT = "state";
+    public static final String SENSORS = "sensors";
+    public static final String RELAYS = "relays";
+    public static final String STATIONS = "stations";
+    public static final String ORDERS = "orders";
+    private static final String[] PARTS = {SENSORS, RELAYS, STATIONS, ORDERS};
+    private static final int ALL = (1 << PARTS.length) - 1;
+
+    private final MachineManager machineManager;
+    /** 事件数据每行都要以data:开头，不能缩进换行 */
+    private final ObjectWriter writer;
+    private final long intervalMs;
+    private final long heartbeatMs;
+    private final long writeTimeoutMs;
+    private final ScheduledExecutorService ticker;
+    private final ExecutorService senders;
+    /** 按机器编号 */
+    private final Map<String, Feed> feeds = new ConcurrentHashMap<>();
+
+    @Autowired
+    public StatePushService(MachineManager machineManager, ObjectMapper objectMapper,
+                            @Value("${push.intervalMs:100}") long intervalMs,
+                            @Value("${push.heartbeatMs:15000}") long heartbeatMs,
+                            @Value("${push.writeTimeoutMs:5000}") long writeTimeoutMs,
+                            @Value("${push.senderThreads:4}") int senderThreads) {
+        this.machineManager = machineManager;
+        this.writer = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.intervalMs = intervalMs;
+        this.heartbeatMs = heartbeatMs;
+        this.writeTimeoutMs = writeTimeoutMs;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("state-push", true));
+        this.senders = Executors.newFixedThreadPool(senderThreads, new DefaultThreadFactory("state-push-send", true));
+    }
+
+    @PostConstruct
+    public void start() {
+        for (Machine machine : machineManager.getMachines()) {
+            feeds.put(machine.getId(), new Feed(machine));
+        }
+        ticker.scheduleAtFixedRate(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        senders.shutdownNow();
+        for (Feed feed : feeds.values()) {
+            for (Client client : feed.clients) {
+                client.emitter.complete();
+            }
+        }
+    }
+
+    /**
+     * 订阅机器状态，连接后先收到一次完整状态，之后只收到变化的部分
+     *
+     * @param machineId 机器编号，为null时为第一台机器
+     * @return 事件流
+     * @throws MachineManager.MachineNotFoundException 机器编号不存在
+     */
+    public SseEmitter subscribe(String machineId) {
+        // 不设超时，断开的客户端在下一次发送或心跳失败时移除
+        return subscribe(machineId, new SseEmitter(0L));
+    }
+
+    /**
+     * 用给定的事件流订阅机器状态
+     */
+    SseEmitter subscribe(String machineId, SseEmitter emitter) {
+        Feed feed = feeds.get(machineManager.get(machineId).getId());
+        Client client = new Client(feed, emitter);
+        client.emitter.onCompletion(() -> feed.clients.remove(client));
+        client.emitter.onTimeout(() -> feed.clients.remove(client));
+        client.emitter.onError(e -> feed.clients.remove(client));
+        feed.clients.add(client);
+        client.offer(feed.read(ALL));
+        log.info("机器{}状态推送客户端连接，当前{}个", feed.machine.getId(), feed.clients.size());
+        return client.emitter;
+    }
+
+    /**
+     * 订阅机器状态的客户端数
+     */
+    public int getClientCount() {
+        int count = 0;
+        for (Feed feed : feeds.values()) {
+            count += feed.clients.size();
+        }
+        return count;
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (Feed feed : feeds.values()) {
+            try {
+                int dirty = feed.dirty.getAndSet(0);
+                Map<String, String> delta = dirty != 0 && !feed.clients.isEmpty() ? feed.read(dirty) : null;
+                for (Client client : feed.clients) {
+                    long started = client.sendStarted;
+                    if (started != 0 && now - started > writeTimeoutMs) {
+                        client.evict();
+                    } else if (delta != null) {
+                        client.offer(delta);
+                    } else if (now - client.lastSent > heartbeatMs) {
+                        client.heartbeat();
+                    }
+                }
+            } catch (Exception e) {
+                log.error("机器{}状态推送异常", feed.machine.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * 一台机器的状态源和客户端
+     */
+    private final class Feed {
+        private final Machine machine;
+        private final IODeviceService ioDeviceService;
+        private final RelayDeviceService relayDeviceService;
+        private final TurntableScheduler turntableScheduler;
+        /** 变化过的部分，第i位对应PARTS[i] */
+        private final AtomicInteger dirty = new AtomicInteger();
+        private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
+
+        Feed(Machine machine) {
+            this.machine = machine;
+            this.ioDeviceService = machine.getBean(IODeviceService.class);
+            this.relayDeviceService = machine.getBean(RelayDeviceService.class);
+            this.turntableScheduler = machine.getBean(TurntableScheduler.class);
+            ioDeviceService.onChange((previous, current) -> mark(SENSORS));
+            relayDeviceService.onChange(() -> mark(RELAYS));
+            turntableScheduler.onChange(() -> {
+                mark(STATIONS);
+                mark(ORDERS);
+            });
+        }
+
+        private void mark(String part) {
+            int bit = 1 << indexOf(part);
+            dirty.getAndUpdate(d -> d | bit);
+        }
+
+        /**
+         * 读取并序列化变化过的部分
+         */
+        Map<String, String> read(int parts) {
+            Map<String, String> delta = new LinkedHashMap<>();
+            for (int i = 0; i < PARTS.length; i++) {
+                if ((parts & 1 << i) != 0) {
+                    delta.put(PARTS[i], json(value(PARTS[i])));
+                }
+            }
+            return delta;
+        }
+
+        private Object value(String part) {
+            switch (part) {
+                case SENSORS:
+                    return ioDeviceService.getSnapshot();
+                case RELAYS:
+                    return relayDeviceService.getRelayMask();
+                case STATIONS:
+                    return turntableScheduler.getBowls();
+                default:
+                    Map<String, Object> orders = new LinkedHashMap<>();
+                    orders.put("pending", turntableScheduler.getPendingCount());
+                    orders.put("served", turntableScheduler.getServed().count());
+                    orders.put("running", turntableScheduler.isRunning());
+                    orders.put("fault", turntableScheduler.getFault());
+                    return orders;
+            }
+        }
+    }
+
+    private static int indexOf(String part) {
+        for (int i = 0; i < PARTS.length; i++) {
+            if (PARTS[i].equals(part)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(part);
+    }
+
+    private String json(Object value) {
+        try {
+            return writer.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("状态序列化失败", e);
+        }
+    }
+
+    /**
+     * 一个订阅的客户端，同时只有一次发送
+     */
+    private final class Client {
+        private final Feed feed;
+        private final SseEmitter emitter;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        /** 还没有发出的增量，发送期间到来的增量合并在这里 */
+        private Map<String, String> pending = new LinkedHashMap<>();
+        private boolean heartbeat;
+        private volatile long lastSent = System.currentTimeMillis();
+        /** 正在进行的发送的开始时间，没有发送时为0 */
+        private volatile long sendStarted;
+        /** 正在发送的线程，只在持有本对象的锁时访问 */
+        private Thread sender;
+        private volatile boolean evicted;
+
+        Client(Feed feed, SseEmitter emitter) {
+            this.feed = feed;
+            this.emitter = emitter;
+        }
+
+        void offer(Map<String, String> delta) {
+            synchronized (this) {
+                pending.putAll(delta);
+            }
+            schedule();
+        }
+
+        void heartbeat() {
+            synchronized (this) {
+                heartbeat = true;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (!evicted && sending.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RuntimeException e) {
+                    sending.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                Map<String, String> delta;
+                boolean ping;
+                synchronized (this) {
+                    if (pending.isEmpty() && !heartbeat) {
+                        sending.set(false);
+                        return;
+                    }
+                    delta = pending;
+                    ping = heartbeat;
+                    pending = new LinkedHashMap<>();
+                    heartbeat = false;
+                }
+                try {
+                    beginSend();
+                    if (!delta.isEmpty()) {
+                        emitter.send(SseEmitter.event().name(EVENT).data(toJson(delta)));
+                    } else if (ping) {
+                        emitter.send(SseEmitter.event().comment("keepalive"));
+                    }
+                    lastSent = System.currentTimeMillis();
+                } catch (IOException | IllegalStateException e) {
+                    log.info("机器{}状态推送客户端断开：{}", feed.machine.getId(), e.getMessage());
+                    feed.clients.remove(this);
+                    emitter.completeWithError(e);
+                    sending.set(false);
+                    return;
+                } finally {
+                    endSend();
+                }
+                if (evicted) {
+                    emitter.completeWithError(new IOException("发送超时"));
+                    sending.set(false);
+                    return;
+                }
+            }
+        }
+
+        private synchronized void beginSend() {
+            sender = Thread.currentThread();
+            sendStarted = System.currentTimeMillis();
+        }
+
+        /**
+         * 发送结束，清除移除时可能留下的中断标记，发送线程还要给其他客户端用
+         */
+        private synchronized void endSend() {
+            sender = null;
+            sendStarted = 0;
+            Thread.interrupted();
+        }
+
+        /**
+         * 发送超时：不再给它发送，中断阻塞在写上的发送线程；
+         * 事件流在发送线程上结束，不在这里调用，事件流的方法与阻塞的发送用同一把锁
+         */
+        void evict() {
+            evicted = true;
+            if (!feed.clients.remove(this)) {
+                return;
+            }
+            log.warn("机器{}状态推送客户端发送超过{}ms，移除", feed.machine.getId(), writeTimeoutMs);
+            synchronized (this) {
+                if (sender != null) {
+                    sender.interrupt();
+                }
+            }
+        }
+
+        /**
+         * 各部分已是JSON，直接拼成一个对象
+         */
+        private String toJson(Map<String, String> delta) {
+            StringBuilder sb = new StringBuilder(256).append('{');
+            for (Map.Entry<String, String> part : delta.entrySet()) {
+                if (sb.length() > 1) {
+                    sb.append(',');
+                }
+                sb.append('"').append(part.getKey()).append("\":").append(part.getValue());
+            }
+            return sb.append('}').toString();
+        }
+    }
+}
@@ -1,63 +1,67 @@
 package com.jc.service.impl;
 
+import com.jc.config.MachineScoped;
 import com.jc.constants.Constants;
-import com.jc.netty.server.NettyServerHandler;
-import com.jc.utils.CRC16;
+import com.jc.netty.codec.ModbusCommandEncoder;
+import com.jc.netty.codec.ModbusFrame;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 /**
  * 步进电机服务实现类，负责控制步进电机的操作，如启动、停止和速度调整
+ * <p>
+ * 命令经485总线发送，返回的结果在收到从站应答后完成
  */
 @Service
+@MachineScoped
 @Slf4j
 public class StepperMotorService {
+    /** 从站应答了命令时的操作结果 */
+    public static final String SUCCESS = "操作成功";
 
-    private final NettyServerHandler nettyServerHandler;
-    private final String lanTo485;
-
-    @Value("${IoIp}")
-    private String ioIp;
+    private final LanTo485Service lanTo485Service;
 
-    public StepperMotorService(NettyServerHandler nettyServerHandler, @Value("${lanTo485}") String lanTo485) {
-        this.nettyServerHandler = nettyServerHandler;
-        this.lanTo485 = lanTo485;
+    public StepperMotorService(LanTo485Service lanTo485Service) {
+        this.lanTo485Service = lanTo485Service;
     }
 
     /**
-     * 启动步进电机
+     * 启动步进电机：先写脉冲数，应答后再写转动方向
      *
      * @param motorNumber        步进电机编号
      * @param positiveOrNegative 步进电机转动方向，true表示正转，false表示反转
      * @param numberOfPulses     脉冲数量
      * @return 操作结果
      */
-    public String startStepperMotor(int motorNumber, boolean positiveOrNegative, int numberOfPulses) {
+    public CompletableFuture<String> startStepperMotor(int motorNumber, boolean positiveOrNegative, int numberOfPulses) {
         if (motorNumber <= 0 || motorNumber > Constants.MAX_MOTOR_NO) {
             log.error("编号{}步进电机不存在！", motorNumber);
-            return "编号" + motorNumber + "步进电机不存在";
+            return CompletableFuture.completedFuture("编号" + motorNumber + "步进电机不存在");
         }
 
-        sendPulseCommand(motorNumber, numberOfPulses);
-        sendRotationCommand(motorNumber, positiveOrNegative);
-        return "操作成功";
+        log.info("步进电机{}启动，正转：{}，脉冲数：{}", motorNumber, positiveOrNegative, numberOfPulses);
+        return result(motorNumber, lanTo485Service.request(ModbusCommandEncoder.pulses(motorNumber, numberOfPulses))
+                .thenCompose(reply -> lanTo485Service.request(ModbusCommandEncoder.rotation(motorNumber, positiveOrNegative))));
     }
 
     /**
      * 停止步进电机
      *
      * @param motorNumber 步进电机编号
+     * @return 操作结果
      */
-    public void stop(int motorNumber) {
+    public CompletableFuture<String> stop(int motorNumber) {
         if (motorNumber <= 0 || motorNumber > Constants.MAX_MOTOR_NO) {
             log.error("编号{}步进电机不存在！", motorNumber);
-            return;
+            return CompletableFuture.completedFuture("编号" + motorNumber + "步进电机不存在");
         }
 
-        String command = buildStopCommand(motorNumber);
-        log.info("步进电机停机指令：{}", command);
-        nettyServerHandler.sendMessageToClient(lanTo485, command, true);
+        log.info("步进电机{}停机", motorNumber);
+        // 停机排在称重轮询等普通请求前面
+        return result(motorNumber, lanTo485Service.request(ModbusCommandEncoder.stop(motorNumber), true));
     }
 
     /**
@@ -67,117 +71,31 @@ public class StepperMotorService {
      * @param speed       步进电机速度
      * @return 操作结果
      */
-    public String modificationSpeed(int motorNumber, int speed) {
+    public CompletableFuture<String> modificationSpeed(int motorNumber, int speed) {
         if (motorNumber <= 0 || motorNumber > Constants.MAX_MOTOR_NO) {
             log.error("编号{}步进电机不存在！", motorNumber);
-            return "步进电机编号不存在";
+            return CompletableFuture.completedFuture("步进电机编号不存在");
         }
         if (speed >= Constants.MAX_SPEED) {
             log.error("设置速度：{}超过最大速度500了", speed);
-            return "设置速度超过最大速度500了";
-        }
-
-        String command = buildSpeedCommand(motorNumber, speed);
-        log.info("步进电机速度指令：{}", command);
-        nettyServerHandler.sendMessageToClient(lanTo485, command, true);
-        return "操作成功";
-    }
-
-    /**
-     * 发送脉冲指令
-     *
-     * @param motorNumber    步进电机编号
-     * @param numberOfPulses 脉冲数量
-     */
-    private void sendPulseCommand(int motorNumber, int numberOfPulses) {
-        String command = buildPulseCommand(motorNumber, numberOfPulses);
-        log.info("脉冲指令：{}", command);
-        nettyServerHandler.sendMessageToClient(lanTo485, command, true);
-        try {
-            Thread.sleep(50);
-        } catch (InterruptedException e) {
-            log.error("执行脉冲指令时发生InterruptedException", e);
-            Thread.currentThread().interrupt();
+            return CompletableFuture.completedFuture("设置速度超过最大速度500了");
         }
-    }
-
-    /**
-     * 构建脉冲指令
-     *
-     * @param motorNumber    步进电机编号
-     * @param numberOfPulses 脉冲数量
-     * @return 脉冲指令
-     */
-    private String buildPulseCommand(int motorNumber, int numberOfPulses) {
-        String motorHex = formatMotorNumber(motorNumber);
-        String pulseHex = String.format("%04X", numberOfPulses).toUpperCase();
-        String commandWithoutCRC = motorHex + "060007" + pulseHex;
-        String crc = CRC16.getModbusrtuString(commandWithoutCRC);
-        return commandWithoutCRC + crc;
-    }
-
-    /**
-     * 发送转动指令
-     *
-     * @param motorNumber        步进电机编号
-     * @param positiveOrNegative 转动方向
-     */
-    private void sendRotationCommand(int motorNumber, boolean positiveOrNegative) {
-        String command = buildRotationCommand(motorNumber, positiveOrNegative);
-        log.info("步进电机转动指令：{}", command);
-        nettyServerHandler.sendMessageToClient(lanTo485, command, true);
-    }
-
-    /**
-     * 构建转动指令
-     *
-     * @param motorNumber        步进电机编号
-     * @param positiveOrNegative 转动方向
-     * @return 转动指令
-     */
-    private String buildRotationCommand(int motorNumber, boolean positiveOrNegative) {
-        String motorHex = formatMotorNumber(motorNumber);
-        String directionHex = positiveOrNegative ? "00" : "01";
-        String commandWithoutCRC = motorHex + "0600" + directionHex + "0001";
-        String crc = CRC16.getModbusrtuString(commandWithoutCRC);
-        return commandWithoutCRC + crc;
-    }
-
-    /**
-     * 构建速度指令
-     *
-     * @param motorNumber 步进电机编号
-     * @param speed       速度
-     * @return 速度指令
-     */
-    private String buildSpeedCommand(int motorNumber, int speed) {
-        String motorHex = formatMotorNumber(motorNumber);
-        String speedHex = String.format("%04X", speed).toUpperCase();
-        String commandWithoutCRC = motorHex + "060005" + speedHex;
-        String crc = CRC16.getModbusrtuString(commandWithoutCRC);
-        return commandWithoutCRC + crc;
-    }
 
-    /**
-     * 格式化步进电机编号
-     *
-     * @param motorNumber 步进电机编号
-     * @return 格式化后的步进电机编号
-     */
-    private String formatMotorNumber(int motorNumber) {
-        return String.format("%02X", motorNumber).toUpperCase();
+        log.info("步进电机{}速度：{}", motorNumber, speed);
+        return result(motorNumber, lanTo485Service.request(ModbusCommandEncoder.speed(motorNumber, speed)));
     }
 
     /**
-     * 构建停止指令
-     *
-     * @param motorNumber 步进电机编号
-     * @return 停止指令
+     * 把从站应答转换为操作结果
      */
-    private String buildStopCommand(int motorNumber) {
-        String motorHex = formatMotorNumber(motorNumber);
-        String commandWithoutCRC = motorHex + "0600020001";
-        String crc = CRC16.getModbusrtuString(commandWithoutCRC);
-        return commandWithoutCRC + crc;
+    private static CompletableFuture<String> result(int motorNumber, CompletableFuture<ModbusFrame> reply) {
+        return reply.handle((frame, e) -> {
+            if (e == null) {
+                return SUCCESS;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.error("步进电机{}命令失败：{}", motorNumber, cause.getMessage());
+            return "操作失败：" + cause.getMessage();
+        });
     }
 }
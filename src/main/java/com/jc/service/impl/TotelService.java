@@ -0,0 +1,135 @@
+package com.jc.service.impl;
+
+import com.jc.config.MachineScoped;
+import com.jc.constants.Constants;
+import com.jc.entity.Job;
+import com.jc.entity.RobotResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 整机流程服务：重置、取碗、放碗，以及碗和转盘的单项运动
+ * <p>
+ * 每个流程作为{@link Job}执行，步骤和进度记录在作业中；取消时停止流程用到的电机
+ */
+@Service
+@MachineScoped
+@Slf4j
+public class TotelService {
+    public static final int RESET_STEPS = 3;
+    public static final int TAKE_BOWL_STEPS = 2;
+
+    private final DocuService docuService;
+    private final BowlService bowlService;
+    private final TurntableService turntableService;
+    private final StepperMotorService stepperMotorService;
+
+    @Autowired
+    public TotelService(DocuService docuService, BowlService bowlService,
+                        TurntableService turntableService, StepperMotorService stepperMotorService) {
+        this.docuService = docuService;
+        this.bowlService = bowlService;
+        this.turntableService = turntableService;
+        this.stepperMotorService = stepperMotorService;
+    }
+
+    /**
+     * 整机重置：机器人重置与转盘、碗重置同时进行，转盘重置后碗重置
+     *
+     * @param job 作业
+     * @return 流程结果，ok或失败原因
+     */
+    public CompletableFuture<String> reset(Job job) {
+        stopOnCancel(job, Constants.TURNTABLE_CONTROLLER_NO, Constants.BOWL_CONTROLLER_NO);
+        CompletableFuture<String> robot = job.step("机器人重置", () -> docuService.runScript("reset.jspf"))
+                .thenApply(TotelService::toMessage);
+        CompletableFuture<String> devices = job.step("转盘重置", turntableService::turntableReset)
+                .thenCompose(r -> {
+                    log.info("转盘重置");
+                    return job.step("碗重置", bowlService::bowlReset);
+                })
+                .thenApply(r -> {
+                    log.info("碗重置");
+                    return r;
+                });
+        return robot.thenCombine(devices, (r, d) -> "ok".equals(r) ? d : r);
+    }
+
+    /**
+     * 取碗：升碗到位后机器人取碗，取碗脚本结束后完成
+     *
+     * @param job 作业
+     * @return 流程结果，ok或失败原因
+     */
+    public CompletableFuture<String> takeBowl(Job job) {
+        // TODO: 2024/6/12 判断是否回原点、碗的状态、
+        stopOnCancel(job, Constants.BOWL_CONTROLLER_NO);
+        return job.step("升碗", bowlService::continuousBowlCheck)
+                .thenCompose(r -> {
+                    if (!"ok".equals(r)) {
+                        return CompletableFuture.completedFuture(r);
+                    }
+                    return job.step("机器人取碗", () -> docuService.runScript("takeABowl.jspf")).thenApply(TotelService::toMessage);
+                });
+    }
+
+    /**
+     * 放碗：机器人放碗脚本结束后完成
+     *
+     * @param job 作业
+     * @return 流程结果，ok或失败原因
+     */
+    public CompletableFuture<String> putBowl(Job job) {
+        return job.step("机器人放碗", () -> docuService.runScript("putBowl.jspf")).thenApply(TotelService::toMessage);
+    }
+
+    /**
+     * 碗重置
+     */
+    public CompletableFuture<String> bowlReset(Job job) {
+        stopOnCancel(job, Constants.BOWL_CONTROLLER_NO);
+        return job.step("碗重置", bowlService::bowlReset);
+    }
+
+    /**
+     * 连续出碗检查
+     */
+    public CompletableFuture<String> continuousBowlCheck(Job job) {
+        stopOnCancel(job, Constants.BOWL_CONTROLLER_NO);
+        return job.step("升碗", bowlService::continuousBowlCheck);
+    }
+
+    /**
+     * 转盘回原点
+     */
+    public CompletableFuture<String> turntableReset(Job job) {
+        stopOnCancel(job, Constants.TURNTABLE_CONTROLLER_NO);
+        return job.step("转盘重置", turntableService::turntableReset);
+    }
+
+    /**
+     * 转盘回原点后再转半圈
+     */
+    public CompletableFuture<String> feeding(Job job) {
+        stopOnCancel(job, Constants.TURNTABLE_CONTROLLER_NO);
+        return job.step("送料", turntableService::feeding);
+    }
+
+    /**
+     * 作业取消时停止电机，机器人脚本不能中途停止，执行完当前脚本为止
+     */
+    private void stopOnCancel(Job job, int... motorNumbers) {
+        job.onCancel(() -> {
+            for (int motorNumber : motorNumbers) {
+                stepperMotorService.stop(motorNumber);
+            }
+        });
+    }
+
+    private static String toMessage(RobotResult result) {
+        return result.isSuccess() ? "ok" : result.getMessage();
+    }
+}
@@ -0,0 +1,289 @@
+package com.jc.service.impl;
+
+import com.jc.config.MachineScoped;
+import com.jc.entity.Bowl;
+import com.jc.entity.Order;
+import com.jc.enums.Station;
+import com.jc.service.StationTask;
+import com.jc.utils.SampleRingBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 转盘流水线调度
+ * <p>
+ * 转盘上同时可以有多碗，每次转盘停稳后，所有有碗的工位同时执行各自的作业，
+ * 放碗工位在有待做订单时放上新碗；全部作业完成后转盘前进。
+ * 稳态下每转一个工位出一碗；负载低时一次连续转过没有作业的工位，中间不停车。
+ * 作业失败时流水线暂停，排除故障后调用{@link #resume()}继续。
+ */
+@Service
+@MachineScoped
+@Slf4j
+public class TurntableScheduler {
+    /** 保留的出碗记录数 */
+    public static final int SERVED_SAMPLES = 1024;
+
+    private final TurntableService turntableService;
+    /** 每个工位的作业，没有作业的工位直接视为完成 */
+    private final EnumMap<Station, StationTask> tasks = new EnumMap<>(Station.class);
+
+    /** 每个工位上的碗，下标为工位序号 */
+    private final Bowl[] bowls = new Bowl[Station.count()];
+    /** 待做的订单 */
+    private final ArrayDeque<Bowl> pending = new ArrayDeque<>();
+    private long nextBowlId = 1;
+    /** 流水线是否在运转 */
+    private boolean running;
+    /** 暂停原因，为null表示没有故障 */
+    private String fault;
+    /** 出碗记录：取碗时间和从下单到取碗的用时（毫秒），在对象锁内写入 */
+    private final SampleRingBuffer served = new SampleRingBuffer(SERVED_SAMPLES);
+    /** 工位、订单队列或运转状态变化的监听 */
+    private final CopyOnWriteArrayList<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public TurntableScheduler(TurntableService turntableService, List<StationTask> stationTasks) {
+        this.turntableService = turntableService;
+        for (StationTask task : stationTasks) {
+            tasks.put(task.station(), task);
+        }
+    }
+
+    /**
+     * 提交订单
+     *
+     * @param order 订单
+     * @return 这碗取下后完成
+     */
+    public CompletableFuture<Bowl> submit(Order order) {
+        Bowl bowl;
+        synchronized (this) {
+            bowl = new Bowl(nextBowlId++, order);
+            pending.add(bowl);
+            log.info("订单{}排队，前面还有{}碗", bowl.getId(), pending.size() - 1);
+        }
+        changed();
+        kick();
+        return bowl.getDone();
+    }
+
+    /**
+     * 故障排除后继续运转
+     */
+    public void resume() {
+        synchronized (this) {
+            if (fault == null) {
+                return;
+            }
+            log.info("转盘流水线从故障中恢复：{}", fault);
+            fault = null;
+        }
+        changed();
+        kick();
+    }
+
+    /**
+     * 订阅工位上的碗、订单队列、运转和故障状态的变化，在推进流水线的线程上回调，不能有阻塞操作
+     *
+     * @param listener 监听器
+     */
+    public void onChange(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 工位上是否有碗
+     *
+     * @param station 工位
+     */
+    public synchronized boolean isThereABowlInPlace(Station station) {
+        return bowls[station.index()] != null;
+    }
+
+    /**
+     * 当前每个工位上的碗，没有碗的工位为null
+     */
+    public synchronized Bowl[] getBowls() {
+        return bowls.clone();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public synchronized String getFault() {
+        return fault;
+    }
+
+    /**
+     * 出碗记录，可在任意线程读取
+     *
+     * @return 时间戳为取碗时间，值为从下单到取碗的用时（毫秒）
+     */
+    public SampleRingBuffer getServed() {
+        return served;
+    }
+
+    /**
+     * 有碗或有待做订单时开始运转
+     */
+    private void kick() {
+        synchronized (this) {
+            if (running || fault != null || (isEmpty() && pending.isEmpty())) {
+                return;
+            }
+            running = true;
+        }
+        runStations();
+    }
+
+    /**
+     * 所有有碗的工位同时执行作业
+     */
+    private void runStations() {
+        List<CompletableFuture<Void>> work = new ArrayList<>();
+        synchronized (this) {
+            if (bowls[Station.PLACE_BOWL.index()] == null && !pending.isEmpty()) {
+                Bowl placed = pending.poll();
+                placed.placed();
+                bowls[Station.PLACE_BOWL.index()] = placed;
+            }
+            for (Station station : Station.values()) {
+                Bowl bowl = bowls[station.index()];
+                if (bowl != null && !bowl.isCompleted(station)) {
+                    work.add(execute(station, bowl));
+                }
+            }
+        }
+        changed();
+        CompletableFuture.allOf(work.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((r, e) -> {
+                    if (e != null) {
+                        pause("工位作业失败：" + unwrap(e).getMessage());
+                    } else {
+                        advance();
+                    }
+                });
+    }
+
+    private CompletableFuture<Void> execute(Station station, Bowl bowl) {
+        StationTask task = tasks.get(station);
+        if (task == null) {
+            bowl.complete(station);
+            return CompletableFuture.completedFuture(null);
+        }
+        log.info("工位[{}]开始处理第{}碗", station.getDescription(), bowl.getId());
+        return task.execute(bowl).thenRun(() -> {
+            bowl.complete(station);
+            log.info("工位[{}]完成第{}碗", station.getDescription(), bowl.getId());
+            changed();
+        });
+    }
+
+    /**
+     * 取下取碗工位的碗，转盘前进到最近一个有碗要作业的位置
+     */
+    private void advance() {
+        synchronized (this) {
+            Bowl finished = bowls[Station.PICKUP.index()];
+            if (finished != null) {
+                bowls[Station.PICKUP.index()] = null;
+                long now = System.currentTimeMillis();
+                long elapsedMs = now - finished.getOrderedAt();
+                served.add(now, (int) Math.min(Integer.MAX_VALUE, elapsedMs));
+                log.info("第{}碗完成，从下单用时{}ms，其中在转盘上{}ms", finished.getId(), elapsedMs, now - finished.getPlacedAt());
+                finished.getDone().complete(finished);
+            }
+            if (isEmpty() && pending.isEmpty()) {
+                running = false;
+                changed();
+                return;
+            }
+        }
+        changed();
+        int stations = stationsToAdvance();
+        turntableService.runTurntable(stations).whenComplete((r, e) -> {
+            if (e != null || !"ok".equals(r)) {
+                pause("转盘转动失败：" + (e != null ? unwrap(e).getMessage() : r));
+                return;
+            }
+            synchronized (this) {
+                System.arraycopy(bowls, 0, bowls, stations, bowls.length - stations);
+                Arrays.fill(bowls, 0, stations, null);
+            }
+            changed();
+            runStations();
+        });
+    }
+
+    /**
+     * 计算转盘可以连续前进的工位数：任何一碗到达有作业的工位、或有订单要放碗时就要停下
+     */
+    synchronized int stationsToAdvance() {
+        if (!pending.isEmpty()) {
+            return 1;
+        }
+        int stations = Station.count();
+        for (int i = 0; i < bowls.length; i++) {
+            if (bowls[i] == null) {
+                continue;
+            }
+            int next = i + 1;
+            // 取碗工位是最后一个工位，碗必须在那里停下
+            while (next < Station.PICKUP.index() && !needsWork(Station.values()[next], bowls[i])) {
+                next++;
+            }
+            stations = Math.min(stations, next - i);
+        }
+        return stations;
+    }
+
+    private boolean needsWork(Station station, Bowl bowl) {
+        return tasks.containsKey(station) && !bowl.isCompleted(station);
+    }
+
+    private synchronized void pause(String reason) {
+        log.error("转盘流水线暂停，{}", reason);
+        fault = reason;
+        running = false;
+        changed();
+    }
+
+    private void changed() {
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.error("流水线状态监听器执行异常", e);
+            }
+        }
+    }
+
+    private boolean isEmpty() {
+        for (Bowl bowl : bowls) {
+            if (bowl != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
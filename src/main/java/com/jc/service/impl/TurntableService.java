@@ -1,17 +1,26 @@
 package com.jc.service.impl;
 
+import com.jc.config.MachineScoped;
 import com.jc.constants.Constants;
+import com.jc.entity.SensorSnapshot;
 import com.jc.enums.SignalLevel;
+import com.jc.netty.codec.ZhiqianCommandEncoder;
 import com.jc.netty.server.NettyServerHandler;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 /**
  * 转台步进电机控制器
+ * <p>
+ * 转动操作不阻塞线程：启动电机后等待原点或工位传感器信号，超时或电机没有启动成功时停机
  */
 @Service
+@MachineScoped
 @Slf4j
 public class TurntableService {
     private final NettyServerHandler nettyServerHandler;
@@ -20,6 +29,8 @@ public class TurntableService {
     @Value("${IoIp}")
     private String ioIp;
     private final StepperMotorService stepperMotorService;
+    @Autowired
+    private DeviceMetrics deviceMetrics;
 
     @Autowired
     public TurntableService(NettyServerHandler nettyServerHandler,
@@ -32,180 +43,133 @@ public class TurntableService {
     }
 
     /**
-     * 碗回原点
+     * 转盘回原点
      *
-     * @return
+     * @return 到达原点后完成，超时以异常完成
      */
-    public String turntableReset() {
-        // 获取传感器状态
-        String ioStatus = ioDeviceService.getIoStatus();
-        while (ioStatus.equals(Constants.NOT_INITIALIZED)) {
-            log.error("无法获取传感器的值！");
-            // 先重置传感器
-            nettyServerHandler.sendMessageToClient(ioIp, Constants.RESET_COMMAND, true);
-            try {
-                // 等待指定时间，确保传感器完成重置
-                Thread.sleep(Constants.SLEEP_TIME_MS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            // 重新获取传感器状态
-            ioStatus = ioDeviceService.getIoStatus();
-            if (ioStatus.equals(Constants.NOT_INITIALIZED)) {
-                log.error("没有发现传感器的值！");
+    public CompletableFuture<String> turntableReset() {
+        return deviceMetrics.timeMotion("turntableReset", () -> currentSensors().thenCompose(sensors -> {
+            if (sensors.isHigh(Constants.TURNTABLE_ORIGIN_PIN)) {
+                log.info("转盘已经在原点位置！");
+                return CompletableFuture.completedFuture("ok");
             }
-        }
-        if (ioStatus.split(",")[0].equals(SignalLevel.HIGH)) {
-            log.info("转盘已经在原点位置！");
-            return "ok";
-        }
-        if (ioStatus.split(",")[0].equals(SignalLevel.LOW.getValue())) {
             //发送转动转盘指令至到为高电平
-            stepperMotorService.startStepperMotor(3, true, 0);
-            Boolean flag = true;
-            while (flag) {
-                String newIoStatus = ioDeviceService.getIoStatus().split(",")[0];
-                if (newIoStatus.equals(SignalLevel.HIGH.getValue())) {
-                    stepperMotorService.stop(3);
-                    flag = false;
-                }
-                try {
-                    Thread.sleep(Constants.SLEEP_TIME_MS);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-        return "ok";
+            return rotateUntil(Constants.TURNTABLE_ORIGIN_PIN, false).thenApply(s -> {
+                stepperMotorService.stop(Constants.TURNTABLE_CONTROLLER_NO);
+                log.info("转盘已经回到原点！");
+                return "ok";
+            });
+        }));
     }
 
-    public String feeding() {
+    /**
+     * 转盘回原点后再转半圈
+     *
+     * @return 发出转半圈命令后完成，超时以异常完成
+     */
+    public CompletableFuture<String> feeding() {
         //先复位
-        String ioStatus = ioDeviceService.getIoStatus();
-        while (ioStatus.equals(Constants.NOT_INITIALIZED)) {
-            // 先重置传感器
-            nettyServerHandler.sendMessageToClient(ioIp, Constants.RESET_COMMAND, true);
-            try {
-                // 等待指定时间，确保传感器完成重置
-                Thread.sleep(Constants.SLEEP_TIME_MS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            // 重新获取传感器状态
-            ioStatus = ioDeviceService.getIoStatus();
-            if (ioStatus.equals(Constants.NOT_INITIALIZED)) {
-                log.error("没有发现传感器的值！");
+        return currentSensors().thenCompose(sensors -> {
+            if (sensors.isHigh(Constants.TURNTABLE_ORIGIN_PIN)) {
+                stepperMotorService.startStepperMotor(Constants.TURNTABLE_CONTROLLER_NO, true, 1600);
+                return CompletableFuture.completedFuture("ok");
             }
-        }
-        if (ioStatus.split(",")[0].equals(SignalLevel.HIGH.getValue())) {
-            stepperMotorService.startStepperMotor(3, true, 1600);
-            return "ok";
-        }
-        if (ioStatus.split(",")[0].equals(SignalLevel.LOW.getValue())) {
             //发送转动转盘指令至到为高电平
-            stepperMotorService.startStepperMotor(3, true, 0);
-            Boolean flag = true;
-            while (flag) {
-                String newIoStatus = ioDeviceService.getIoStatus().split(",")[0];
-                if (newIoStatus.equals(SignalLevel.HIGH.getValue())) {
-                    //步进电机转半圈
-                    stepperMotorService.startStepperMotor(3, true, 1600);
-                    flag = false;
-                }
-                try {
-                    Thread.sleep(Constants.SLEEP_TIME_MS);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-        return "ok";
+            return rotateUntil(Constants.TURNTABLE_ORIGIN_PIN, false).thenApply(s -> {
+                //步进电机转半圈
+                stepperMotorService.startStepperMotor(Constants.TURNTABLE_CONTROLLER_NO, true, 1600);
+                return "ok";
+            });
+        });
     }
 
     /**
-     * 转盘6个工位功能分工，从原点开始
-     * 第一个工位放置碗
-     * 第二个工位待用;
-     * 第三个工位为放牛肉和菜
-     * 第四个工位为加蒸汽工位
-     * 第五个工位为加汤和调料工位
-     * 第六个工位为出汤工位
-     * <p>
-     * 检查每个工位功能当前状态，
-     * 如果完成所有状态则运行到下一工位
-     * 单独完成下一个的功能
+     * 转盘转一个工位，工位作业的调度见{@link TurntableScheduler}
+     *
+     * @return 到达下一个工位后完成，超时以异常完成
      */
-    //记录每个工位状态——第二个状态为空值直接为true
-    private boolean[] stationStatus = {false, true, false, false, false, false};
-    //每个位置是否有碗
-    private boolean[] isThereABowlInPlace = {false, false, false, false, false, false};
-    //当前原点对应第工位数
-    private int originStation = 0;
-
-
-    public boolean checkStationStatus() {
-        for (boolean status : stationStatus) {
-            if (!status) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    public String reset() {
-        stationStatus = new boolean[]{false, true, false, false, false, false};
-        isThereABowlInPlace = new boolean[]{false, false, false, false, false, false};
-        originStation = 0;
-        return "ok";
+    public CompletableFuture<String> runTurntable() {
+        return runTurntable(1);
     }
 
     /**
-     * 转盘转一个工位
+     * 转盘连续转过多个工位，中间工位不停车
+     * 电机持续转动，数工位传感器的上升沿，到第stations个工位时停机
      *
-     * @return
+     * @param stations 前进的工位数，至少为1
+     * @return 到达目标工位后完成，任一工位超时以异常完成
      */
-    public String runTurntable() {
-        //当所有状态为true时转动
-        if (!checkStationStatus()) {
-            return "还有没有完成的工位！";
+    public CompletableFuture<String> runTurntable(int stations) {
+        if (stations < 1) {
+            throw new IllegalArgumentException("前进工位数必须大于0：" + stations);
         }
-        stepperMotorService.startStepperMotor(3, true, 0);
-        Boolean flag = true;
-        while (flag) {
-            String newIoStatus = ioDeviceService.getIoStatus().split(",")[4];
-            if (newIoStatus.equals(SignalLevel.HIGH.getValue())) {
-                originStation = +1;
-                //如果
-                if (!checkStationStatus()) {
-                    //步进电机转半圈
-                    stepperMotorService.stop(3);
-                    flag = false;
-                }
-            }
-            try {
-                Thread.sleep(Constants.SLEEP_TIME_MS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        // 当前停在工位上时工位传感器为高电平，要等下一次变为高电平
+        CompletableFuture<SensorSnapshot> first = ioDeviceService.awaitEdge(Constants.TURNTABLE_STATION_PIN, SignalLevel.HIGH, Constants.SIGNAL_TIMEOUT_MS);
+        failIfNotStarted(stepperMotorService.startStepperMotor(Constants.TURNTABLE_CONTROLLER_NO, true, 0), first);
+        CompletableFuture<SensorSnapshot> arrived = first;
+        for (int i = 1; i < stations; i++) {
+            // 在上一个上升沿的回调里订阅下一个上升沿，不会漏掉也不会重复计数
+            arrived = arrived.thenCompose(s -> ioDeviceService.awaitEdge(Constants.TURNTABLE_STATION_PIN, SignalLevel.HIGH, Constants.SIGNAL_TIMEOUT_MS));
         }
-        return "ok";
+        return arrived.handle((s, e) -> {
+            stepperMotorService.stop(Constants.TURNTABLE_CONTROLLER_NO);
+            if (e != null) {
+                log.error("转盘前进{}个工位失败：{}", stations, e.getMessage());
+                throw new CompletionException(e.getCause() != null ? e.getCause() : e);
+            }
+            return "ok";
+        });
     }
 
     /**
-     * 第一个工位：如果放碗了
+     * 持续转动转盘直到引脚变为高电平，超时停机
+     *
+     * @param pin      传感器引脚
+     * @param nextEdge true表示等待下一次变为高电平，false表示已是高电平时立即完成
+     * @return 到位时的传感器状态
      */
-    public String first() {
-        isThereABowlInPlace[0] = true;
-        stationStatus[0] = true;
-        return "ok";
+    private CompletableFuture<SensorSnapshot> rotateUntil(int pin, boolean nextEdge) {
+        // 先开始等待再启动电机，保证不会漏掉信号
+        CompletableFuture<SensorSnapshot> arrived = nextEdge
+                ? ioDeviceService.awaitEdge(pin, SignalLevel.HIGH, Constants.SIGNAL_TIMEOUT_MS)
+                : ioDeviceService.awaitSignal(pin, SignalLevel.HIGH, Constants.SIGNAL_TIMEOUT_MS);
+        failIfNotStarted(stepperMotorService.startStepperMotor(Constants.TURNTABLE_CONTROLLER_NO, true, 0), arrived);
+        return arrived.whenComplete((sensors, e) -> {
+            if (e != null) {
+                stepperMotorService.stop(Constants.TURNTABLE_CONTROLLER_NO);
+                log.error("转盘等待传感器{}失败：{}", pin, e.getMessage());
+            }
+        });
     }
 
     /**
-     * 第三个工作
+     * 电机没有启动成功时等待立即以异常完成，不再等到超时
+     *
+     * @param started 启动电机的操作结果
+     * @param arrived 等待传感器信号的future
      */
-    public String three() throws InterruptedException {
-        Thread.sleep(5000l);
-        return "ok";
+    private static void failIfNotStarted(CompletableFuture<String> started, CompletableFuture<SensorSnapshot> arrived) {
+        started.thenAccept(result -> {
+            if (!StepperMotorService.SUCCESS.equals(result)) {
+                arrived.completeExceptionally(new IllegalStateException("转盘步进电机启动失败：" + result));
+            }
+        });
     }
 
+    /**
+     * 获取传感器状态，还没有收到IO模块上报时先发送重置命令再等待上报
+     *
+     * @return 传感器状态
+     */
+    private CompletableFuture<SensorSnapshot> currentSensors() {
+        SensorSnapshot sensors = ioDeviceService.getSnapshot();
+        if (sensors.isInitialized()) {
+            return CompletableFuture.completedFuture(sensors);
+        }
+        log.error("无法获取传感器的值！");
+        deviceMetrics.ioReset();
+        CompletableFuture<SensorSnapshot> initialized = ioDeviceService.awaitInitialized(Constants.SIGNAL_TIMEOUT_MS);
+        nettyServerHandler.sendFrameToClient(ioIp, ZhiqianCommandEncoder.reset());
+        return initialized;
+    }
 }
@@ -1,25 +1,262 @@
 package com.jc.service.impl;
 
+import com.jc.config.MachineScoped;
+import com.jc.constants.Constants;
+import com.jc.entity.WeightReading;
+import com.jc.entity.WeightWindow;
+import com.jc.netty.codec.ModbusCommandEncoder;
+import com.jc.netty.codec.ModbusFrame;
 import com.jc.service.DeviceHandler;
+import com.jc.utils.SampleRingBuffer;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * 称重传感器轮询服务
+ * <p>
+ * 按固定周期经485总线读取每个秤的保持寄存器0x9C40（01 03 9C 40 00 02），
+ * 应答直接按字节解码为整数，带时间戳保存在每个秤的环形缓冲区中。
+ * <p>
+ * 秤与步进电机驱动器在同一条485总线上，必须显式配置秤的从站地址，且不能与电机的地址（1到{@link Constants#MAX_MOTOR_NO}）相同；
+ * 没有配置时不轮询
+ */
 @Service
+@MachineScoped
 @Slf4j
-public class Weighing implements DeviceHandler {
+public class Weighing implements DeviceHandler<ModbusFrame> {
+    /** 重量寄存器 */
+    public static final int REG_WEIGHT = 0x9C40;
+    /** 重量寄存器数量，32位重量 */
+    public static final int WEIGHT_REGISTERS = 2;
+    /** Modbus从站地址上限 */
+    public static final int MAX_SLAVE = 247;
+    /** 读值缩小100倍为千克 */
+    public static final double RAW_PER_KG = 100.0;
 
-    @Value("${lanTo485}")
-    private String lanTo485;
+    private final LanTo485Service lanTo485Service;
+    private final Timer timer;
+    /** 秤的从站地址 */
+    private final int[] slaves;
+    /** 轮询周期（毫秒） */
+    private final long pollIntervalMs;
+    /** 每个秤，按从站地址 */
+    private final Map<Integer, Scale> scales = new LinkedHashMap<>();
+    private volatile Timeout pollTimeout;
+    private volatile boolean running;
 
+    @Autowired
+    public Weighing(LanTo485Service lanTo485Service,
+                    Timer timer,
+                    @Value("${weighing.slaves:}") int[] slaves,
+                    @Value("${weighing.pollIntervalMs:100}") long pollIntervalMs,
+                    @Value("${weighing.bufferSize:1024}") int bufferSize) {
+        for (int slave : slaves) {
+            if (slave <= Constants.MAX_MOTOR_NO || slave > MAX_SLAVE) {
+                throw new IllegalArgumentException("秤的从站地址" + slave + "无效：应为" + (Constants.MAX_MOTOR_NO + 1)
+                        + "到" + MAX_SLAVE + "，1到" + Constants.MAX_MOTOR_NO + "为步进电机");
+            }
+        }
+        this.lanTo485Service = lanTo485Service;
+        this.timer = timer;
+        this.slaves = slaves.clone();
+        this.pollIntervalMs = pollIntervalMs;
+        for (int slave : slaves) {
+            scales.put(slave, new Scale(slave, bufferSize));
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (slaves.length == 0) {
+            log.info("没有配置秤的从站地址（weighing.slaves），不轮询称重传感器");
+            return;
+        }
+        running = true;
+        pollTimeout = timer.newTimeout(t -> poll(), pollIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("称重传感器轮询已启动，从站：{}，周期：{}ms", Arrays.toString(slaves), pollIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Timeout timeout = pollTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * 向每个秤发送一次读值请求，上一次请求还没有应答的秤跳过本轮
+     */
+    private void poll() {
+        if (!running) {
+            return;
+        }
+        try {
+            if (lanTo485Service.isConnected()) {
+                for (Scale scale : scales.values()) {
+                    if (scale.inFlight.compareAndSet(false, true)) {
+                        lanTo485Service.request(scale.readRequest.retainedDuplicate())
+                                .whenComplete((reply, e) -> {
+                                    scale.inFlight.set(false);
+                                    if (e != null) {
+                                        log.warn("读取秤{}重量失败：{}", scale.slave, e.getMessage());
+                                    } else {
+                                        handle(reply);
+                                    }
+                                });
+                    }
+                }
+            }
+        } finally {
+            if (running) {
+                pollTimeout = timer.newTimeout(t -> poll(), pollIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * 处理消息
+     *
+     * @param frame 称重传感器的Modbus应答帧：字节数 + 4字节大端重量
+     */
     @Override
-    public void handle(String message, boolean isHex) {
-        if (isHex) {
-            log.info("HEX消息: {}", message);
-        } else {
-            log.info("普通消息: {}", message);
-            // 在这里添加处理普通字符串消息的逻辑
+    public void handle(ModbusFrame frame) {
+        Scale scale = scales.get(frame.getSlave());
+        if (scale == null || frame.dataLength() < 1 + WEIGHT_REGISTERS * 2) {
+            log.warn("未知的称重应答：{}", frame);
+            return;
+        }
+        scale.samples.add(System.currentTimeMillis(), frame.getInt(1));
+    }
+
+    /**
+     * 当前重量
+     *
+     * @param slave 秤的从站地址
+     * @return 最新读值，还没有读值时返回null
+     */
+    public WeightReading current(int slave) {
+        SampleRingBuffer samples = samples(slave);
+        if (samples.count() == 0) {
+            return null;
+        }
+        return new WeightReading(slave, samples.latestValue() / RAW_PER_KG, samples.latestTimestamp());
+    }
+
+    /**
+     * 窗口内重量变化率，按最小二乘拟合
+     *
+     * @param slave    秤的从站地址
+     * @param windowMs 窗口长度（毫秒）
+     * @return 千克/秒，样本不足两个时返回0
+     */
+    public double rate(int slave, long windowMs) {
+        WeightWindow window = window(slave, windowMs);
+        long[] t = window.getTimestamps();
+        double[] w = window.getWeights();
+        int n = t.length;
+        if (n < 2) {
+            return 0;
+        }
+        double meanT = 0;
+        double meanW = 0;
+        for (int i = 0; i < n; i++) {
+            meanT += t[i] - t[0];
+            meanW += w[i];
+        }
+        meanT /= n;
+        meanW /= n;
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < n; i++) {
+            double dt = t[i] - t[0] - meanT;
+            covariance += dt * (w[i] - meanW);
+            variance += dt * dt;
+        }
+        return variance == 0 ? 0 : covariance / variance * 1000;
+    }
+
+    /**
+     * 窗口内的读值
+     *
+     * @param slave    秤的从站地址
+     * @param windowMs 窗口长度（毫秒），从最新读值往前算
+     * @return 按时间从旧到新的读值
+     */
+    public WeightWindow window(int slave, long windowMs) {
+        SampleRingBuffer samples = samples(slave);
+        long[] timestamps = new long[samples.capacity()];
+        int[] values = new int[samples.capacity()];
+        int n = samples.copySince(samples.latestTimestamp() - windowMs, timestamps, values);
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            weights[i] = values[i] / RAW_PER_KG;
+        }
+        return new WeightWindow(slave, Arrays.copyOf(timestamps, n), weights);
+    }
+
+    /**
+     * 第一个配置的秤，查询不指定从站地址时使用
+     *
+     * @return 从站地址
+     * @throws ScaleNotFoundException 没有配置秤
+     */
+    public int firstSlave() {
+        if (slaves.length == 0) {
+            throw new ScaleNotFoundException("没有配置秤（weighing.slaves）");
+        }
+        return slaves[0];
+    }
+
+    private SampleRingBuffer samples(int slave) {
+        Scale scale = scales.get(slave);
+        if (scale == null) {
+            throw new ScaleNotFoundException("秤" + slave + "不存在");
+        }
+        return scale.samples;
+    }
+
+    /**
+     * 秤不存在，接口返回404
+     */
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public static class ScaleNotFoundException extends RuntimeException {
+        public ScaleNotFoundException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 一个秤的轮询状态
+     */
+    private static final class Scale {
+        private final int slave;
+        /** 读值请求，每次发送共享同一帧 */
+        private final ByteBuf readRequest;
+        private final SampleRingBuffer samples;
+        /** 是否有未应答的读值请求 */
+        private final AtomicBoolean inFlight = new AtomicBoolean();
+
+        Scale(int slave, int bufferSize) {
+            this.slave = slave;
+            this.readRequest = ModbusCommandEncoder.share(ModbusCommandEncoder.readHoldingRegisters(slave, REG_WEIGHT, WEIGHT_REGISTERS));
+            this.samples = new SampleRingBuffer(bufferSize);
         }
     }
 }
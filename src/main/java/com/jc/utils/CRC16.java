@@ -1,28 +1,150 @@
 package com.jc.utils;
 
+import io.netty.buffer.ByteBuf;
+
 /**
  * @author:hejz 75412985@qq.com
  * @create: 2023-01-01 09:59
  * @Description: utils.CRC16
  */
 public class CRC16 {
+    /** CRC初始值 */
+    public static final int INITIAL = 0xFFFF;
+    /** Modbus CRC16 多项式（0x8005 的反转） */
+    private static final int POLYNOMIAL = 0xA001;
+    /** 查表法的表，类加载时生成一次 */
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    /**
+     * 增量计算：在已有CRC上追加一个字节，流式解码时可逐字节调用
+     *
+     * @param crc 当前CRC，首次为{@link #INITIAL}
+     * @param b   字节
+     * @return 新的CRC
+     */
+    public static int update(int crc, int b) {
+        return (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+    }
+
+    /**
+     * 增量计算：在已有CRC上追加字节数组的一段
+     *
+     * @param crc    当前CRC，首次为{@link #INITIAL}
+     * @param data   数据
+     * @param offset 起始下标
+     * @param length 长度
+     * @return 新的CRC
+     */
+    public static int update(int crc, byte[] data, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    /**
+     * 增量计算：在已有CRC上追加ByteBuf的一段，不改变读写下标，不复制数据
+     *
+     * @param crc    当前CRC，首次为{@link #INITIAL}
+     * @param buf    数据
+     * @param index  起始下标
+     * @param length 长度
+     * @return 新的CRC
+     */
+    public static int update(int crc, ByteBuf buf, int index, int length) {
+        if (buf.hasArray()) {
+            return update(crc, buf.array(), buf.arrayOffset() + index, length);
+        }
+        for (int i = index, end = index + length; i < end; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ buf.getByte(i)) & 0xFF];
+        }
+        return crc;
+    }
+
+    /**
+     * 计算字节数组一段的Modbus CRC16
+     *
+     * @param data   数据
+     * @param offset 起始下标
+     * @param length 长度
+     * @return CRC值，低字节先发送
+     */
+    public static int crc16(byte[] data, int offset, int length) {
+        return update(INITIAL, data, offset, length);
+    }
+
+    /**
+     * 直接在ByteBuf上计算Modbus CRC16，不复制数据
+     *
+     * @param buf    数据
+     * @param index  起始下标
+     * @param length 长度
+     * @return CRC值，低字节先发送
+     */
+    public static int crc16(ByteBuf buf, int index, int length) {
+        return update(INITIAL, buf, index, length);
+    }
+
+    /**
+     * 校验一帧Modbus RTU数据，最后两个字节为CRC（低字节在前）
+     *
+     * @param frame  帧数据
+     * @param offset 帧起始下标
+     * @param length 帧长度（含CRC）
+     * @return 校验通过返回true
+     */
+    public static boolean check(byte[] frame, int offset, int length) {
+        if (length < 4) {
+            return false;
+        }
+        int end = offset + length;
+        int received = (frame[end - 2] & 0xFF) | (frame[end - 1] & 0xFF) << 8;
+        return crc16(frame, offset, length - 2) == received;
+    }
+
+    /**
+     * 校验ByteBuf中的一帧Modbus RTU数据，最后两个字节为CRC（低字节在前）
+     *
+     * @param buf    数据
+     * @param index  帧起始下标
+     * @param length 帧长度（含CRC）
+     * @return 校验通过返回true
+     */
+    public static boolean check(ByteBuf buf, int index, int length) {
+        if (length < 4) {
+            return false;
+        }
+        return crc16(buf, index, length - 2) == buf.getUnsignedShortLE(index + length - 2);
+    }
+
+    /**
+     * 计算从fromIndex到写下标之间数据的CRC，并以低字节在前追加到ByteBuf末尾
+     *
+     * @param buf       正在编码的帧
+     * @param fromIndex 帧起始下标
+     * @return 传入的ByteBuf
+     */
+    public static ByteBuf appendCrc(ByteBuf buf, int fromIndex) {
+        return buf.writeShortLE(crc16(buf, fromIndex, buf.writerIndex() - fromIndex));
+    }
+
     /**
      * 验证 Modbus RTU 数据的 CRC16 校验码
      * @param data 待验证的数据
      * @return 如果校验通过，返回 true；否则返回 false
      */
     public static boolean validateCRC(byte[] data) {
-        // 如果数据不满足最小长度要求，直接返回 false
-        if (data.length < 4) {
-            return false;
-        }
-        String hexString = HexConvert.BinaryToHexString(data).replaceAll(" ","");
-        String crc=hexString.substring(hexString.length()-4);
-        String str=hexString.substring(0,hexString.length()-4);
-        byte[] bytes = HexConvert.hexStringToBytes(str);
-        String crc3 = getCRC3(bytes);
-        // 返回 CRC 校验结果
-        return crc.equals(crc3);
+        return check(data, 0, data.length);
     }
 
     /**
@@ -47,134 +169,32 @@ public class CRC16 {
      * @return 加入modbusrtu验证后的数据转为byte[]
      */
     public static byte[] getModbusrtuData(String hexString){
-        String crc3 = getCRC3(HexConvert.hexStringToBytes(hexString));
-        return HexConvert.hexStringToBytes(hexString+crc3);
+        byte[] data = HexConvert.hexStringToBytes(hexString);
+        byte[] result = new byte[data.length + 2];
+        System.arraycopy(data, 0, result, 0, data.length);
+        int crc = crc16(data, 0, data.length);
+        result[data.length] = (byte) crc;
+        result[data.length + 1] = (byte) (crc >>> 8);
+        return result;
     }
+
     /**
-     * 16进制字符串生成modbus类型的byte[]
+     * 16进制字符串计算modbus验证码
      * @param hexString HEX进制字符串——未加入modbusrtu验证前
-     * @return 加入modbusrtu验证后的数据转为byte[]
+     * @return 验证码的HEX字符串，低字节在前
      */
     public static String getModbusrtuString(String hexString){
-        String crc3 = getCRC3(HexConvert.hexStringToBytes(hexString));
-        return crc3;
-    }
-
-    /**
-     * 计算CRC16校验码
-     *
-     * @param bytes
-     * @return
-     */
-    public static String getCRC(byte[] bytes) {
-        int CRC = 0x0000ffff;
-        int POLYNOMIAL = 0x0000a001;
-
-        int i, j;
-        for (i = 0; i < bytes.length; i++) {
-            CRC ^= ((int) bytes[i] & 0x000000ff);
-            for (j = 0; j < 8; j++) {
-                if ((CRC & 0x00000001) != 0) {
-                    CRC >>= 1;
-                    CRC ^= POLYNOMIAL;
-                } else {
-                    CRC >>= 1;
-                }
-            }
-        }
-        return Integer.toHexString(CRC);
-    }
-
-    public static String getCRC2(byte[] bytes) {
-//        ModBus 通信协议的 CRC ( 冗余循环校验码含2个字节, 即 16 位二进制数。
-//        CRC 码由发送设备计算, 放置于所发送信息帧的尾部。
-//        接收信息设备再重新计算所接收信息 (除 CRC 之外的部分）的 CRC,
-//        比较计算得到的 CRC 是否与接收到CRC相符, 如果两者不相符, 则认为数据出错。
-//
-//        1) 预置 1 个 16 位的寄存器为十六进制FFFF(即全为 1) , 称此寄存器为 CRC寄存器。
-//        2) 把第一个 8 位二进制数据 (通信信息帧的第一个字节) 与 16 位的 CRC寄存器的低 8 位相异或, 把结果放于 CRC寄存器。
-//        3) 把 CRC 寄存器的内容右移一位( 朝低位)用 0 填补最高位, 并检查右移后的移出位。
-//        4) 如果移出位为 0, 重复第 3 步 ( 再次右移一位); 如果移出位为 1, CRC 寄存器与多项式A001 ( 1010 0000 0000 0001) 进行异或。
-//        5) 重复步骤 3 和步骤 4, 直到右移 8 次,这样整个8位数据全部进行了处理。
-//        6) 重复步骤 2 到步骤 5, 进行通信信息帧下一个字节的处理。
-//        7) 将该通信信息帧所有字节按上述步骤计算完成后,得到的16位CRC寄存器的高、低字节进行交换。
-//        8) 最后得到的 CRC寄存器内容即为 CRC码。
-
-        int CRC = 0x0000ffff;
-        int POLYNOMIAL = 0x0000a001;
-
-        int i, j;
-        for (i = 0; i < bytes.length; i++) {
-            CRC ^= (int) bytes[i];
-            for (j = 0; j < 8; j++) {
-                if ((CRC & 0x00000001) == 1) {
-                    CRC >>= 1;
-                    CRC ^= POLYNOMIAL;
-                } else {
-                    CRC >>= 1;
-                }
-            }
-        }
-        //高低位转换，看情况使用（譬如本人这次对led彩屏的通讯开发就规定校验码高位在前低位在后，也就不需要转换高低位)
-        //CRC = ( (CRC & 0x0000FF00) >> 8) | ( (CRC & 0x000000FF ) << 8);
-        return Integer.toHexString(CRC);
+        return getCRC3(HexConvert.hexStringToBytes(hexString));
     }
 
     /**
      * 查表法计算CRC16校验
      *
      * @param data 需要计算的字节数组
+     * @return 验证码的HEX字符串，低字节在前，与Modbus调试工具显示一致
      */
     public static String getCRC3(byte[] data) {
-        byte[] crc16_h = {
-                (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40,
-                (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41,
-                (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41,
-                (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40,
-                (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41,
-                (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40,
-                (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40,
-                (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41,
-                (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41,
-                (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40,
-                (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40,
-                (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41,
-                (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40,
-                (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41,
-                (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41,
-                (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x01, (byte) 0xC0, (byte) 0x80, (byte) 0x41, (byte) 0x00, (byte) 0xC1, (byte) 0x81, (byte) 0x40
-        };
-
-        byte[] crc16_l = {
-                (byte) 0x00, (byte) 0xC0, (byte) 0xC1, (byte) 0x01, (byte) 0xC3, (byte) 0x03, (byte) 0x02, (byte) 0xC2, (byte) 0xC6, (byte) 0x06, (byte) 0x07, (byte) 0xC7, (byte) 0x05, (byte) 0xC5, (byte) 0xC4, (byte) 0x04,
-                (byte) 0xCC, (byte) 0x0C, (byte) 0x0D, (byte) 0xCD, (byte) 0x0F, (byte) 0xCF, (byte) 0xCE, (byte) 0x0E, (byte) 0x0A, (byte) 0xCA, (byte) 0xCB, (byte) 0x0B, (byte) 0xC9, (byte) 0x09, (byte) 0x08, (byte) 0xC8,
-                (byte) 0xD8, (byte) 0x18, (byte) 0x19, (byte) 0xD9, (byte) 0x1B, (byte) 0xDB, (byte) 0xDA, (byte) 0x1A, (byte) 0x1E, (byte) 0xDE, (byte) 0xDF, (byte) 0x1F, (byte) 0xDD, (byte) 0x1D, (byte) 0x1C, (byte) 0xDC,
-                (byte) 0x14, (byte) 0xD4, (byte) 0xD5, (byte) 0x15, (byte) 0xD7, (byte) 0x17, (byte) 0x16, (byte) 0xD6, (byte) 0xD2, (byte) 0x12, (byte) 0x13, (byte) 0xD3, (byte) 0x11, (byte) 0xD1, (byte) 0xD0, (byte) 0x10,
-                (byte) 0xF0, (byte) 0x30, (byte) 0x31, (byte) 0xF1, (byte) 0x33, (byte) 0xF3, (byte) 0xF2, (byte) 0x32, (byte) 0x36, (byte) 0xF6, (byte) 0xF7, (byte) 0x37, (byte) 0xF5, (byte) 0x35, (byte) 0x34, (byte) 0xF4,
-                (byte) 0x3C, (byte) 0xFC, (byte) 0xFD, (byte) 0x3D, (byte) 0xFF, (byte) 0x3F, (byte) 0x3E, (byte) 0xFE, (byte) 0xFA, (byte) 0x3A, (byte) 0x3B, (byte) 0xFB, (byte) 0x39, (byte) 0xF9, (byte) 0xF8, (byte) 0x38,
-                (byte) 0x28, (byte) 0xE8, (byte) 0xE9, (byte) 0x29, (byte) 0xEB, (byte) 0x2B, (byte) 0x2A, (byte) 0xEA, (byte) 0xEE, (byte) 0x2E, (byte) 0x2F, (byte) 0xEF, (byte) 0x2D, (byte) 0xED, (byte) 0xEC, (byte) 0x2C,
-                (byte) 0xE4, (byte) 0x24, (byte) 0x25, (byte) 0xE5, (byte) 0x27, (byte) 0xE7, (byte) 0xE6, (byte) 0x26, (byte) 0x22, (byte) 0xE2, (byte) 0xE3, (byte) 0x23, (byte) 0xE1, (byte) 0x21, (byte) 0x20, (byte) 0xE0,
-                (byte) 0xA0, (byte) 0x60, (byte) 0x61, (byte) 0xA1, (byte) 0x63, (byte) 0xA3, (byte) 0xA2, (byte) 0x62, (byte) 0x66, (byte) 0xA6, (byte) 0xA7, (byte) 0x67, (byte) 0xA5, (byte) 0x65, (byte) 0x64, (byte) 0xA4,
-                (byte) 0x6C, (byte) 0xAC, (byte) 0xAD, (byte) 0x6D, (byte) 0xAF, (byte) 0x6F, (byte) 0x6E, (byte) 0xAE, (byte) 0xAA, (byte) 0x6A, (byte) 0x6B, (byte) 0xAB, (byte) 0x69, (byte) 0xA9, (byte) 0xA8, (byte) 0x68,
-                (byte) 0x78, (byte) 0xB8, (byte) 0xB9, (byte) 0x79, (byte) 0xBB, (byte) 0x7B, (byte) 0x7A, (byte) 0xBA, (byte) 0xBE, (byte) 0x7E, (byte) 0x7F, (byte) 0xBF, (byte) 0x7D, (byte) 0xBD, (byte) 0xBC, (byte) 0x7C,
-                (byte) 0xB4, (byte) 0x74, (byte) 0x75, (byte) 0xB5, (byte) 0x77, (byte) 0xB7, (byte) 0xB6, (byte) 0x76, (byte) 0x72, (byte) 0xB2, (byte) 0xB3, (byte) 0x73, (byte) 0xB1, (byte) 0x71, (byte) 0x70, (byte) 0xB0,
-                (byte) 0x50, (byte) 0x90, (byte) 0x91, (byte) 0x51, (byte) 0x93, (byte) 0x53, (byte) 0x52, (byte) 0x92, (byte) 0x96, (byte) 0x56, (byte) 0x57, (byte) 0x97, (byte) 0x55, (byte) 0x95, (byte) 0x94, (byte) 0x54,
-                (byte) 0x9C, (byte) 0x5C, (byte) 0x5D, (byte) 0x9D, (byte) 0x5F, (byte) 0x9F, (byte) 0x9E, (byte) 0x5E, (byte) 0x5A, (byte) 0x9A, (byte) 0x9B, (byte) 0x5B, (byte) 0x99, (byte) 0x59, (byte) 0x58, (byte) 0x98,
-                (byte) 0x88, (byte) 0x48, (byte) 0x49, (byte) 0x89, (byte) 0x4B, (byte) 0x8B, (byte) 0x8A, (byte) 0x4A, (byte) 0x4E, (byte) 0x8E, (byte) 0x8F, (byte) 0x4F, (byte) 0x8D, (byte) 0x4D, (byte) 0x4C, (byte) 0x8C,
-                (byte) 0x44, (byte) 0x84, (byte) 0x85, (byte) 0x45, (byte) 0x87, (byte) 0x47, (byte) 0x46, (byte) 0x86, (byte) 0x82, (byte) 0x42, (byte) 0x43, (byte) 0x83, (byte) 0x41, (byte) 0x81, (byte) 0x80, (byte) 0x40
-        };
-
-        int crc = 0x0000ffff;
-        int ucCRCHi = 0x00ff;
-        int ucCRCLo = 0x00ff;
-        int iIndex;
-        for (int i = 0; i < data.length; ++i) {
-            iIndex = (ucCRCLo ^ data[i]) & 0x00ff;
-            ucCRCLo = ucCRCHi ^ crc16_h[iIndex];
-            ucCRCHi = crc16_l[iIndex];
-        }
-
-        crc = ((ucCRCHi & 0x00ff) << 8) | (ucCRCLo & 0x00ff) & 0xffff;
+        int crc = crc16(data, 0, data.length);
         //高低位互换，输出符合相关工具对Modbus CRC16的运算
         crc = ( (crc & 0xFF00) >> 8) | ( (crc & 0x00FF ) << 8);
         return String.format("%04X", crc);
@@ -183,24 +203,11 @@ public class CRC16 {
     public static void main(String[] args) {
         //字符串转16进制byte数组_79FC
         //0203020200FD24
-        int i=20;
-//        String hexString = Integer.toHexString(i);
-//        System.out.println("hex=="+hexString);
-//        String str16 = encode("0203020200");
         byte[] bytes1 = HexConvert.hexStringToBytes("020302020A");
         System.out.println("得到modbus验证值："+getCRC3(bytes1));
 
-//        byte[] bytes = str16.getBytes();
-//        System.out.println("str16:" + str16);
-
-//        System.out.println("str16:" + str16);
-//
-//        System.out.println(getCRC(bytes));
-//        System.out.println(getCRC2(bytes));
-//        System.out.println(getCRC3(bytes));
-
         // 示例数据，假设已经从 Modbus RTU 设备读取到的数据
-        byte[] data = HexConvert.hexStringToBytes("48 3A 01 41 01 00 00 00 00 00 00 00 C5 45 44 ".replaceAll(" ",""));
+        byte[] data = HexConvert.hexStringToBytes("01 03 04 00 00 06 13 B8 5E".replaceAll(" ",""));
         // 验证数据的 CRC16 校验码
         System.out.println("有用的hex字符串数据："+getData(data));
         boolean isValid = validateCRC(data);
@@ -4,6 +4,7 @@ package com.jc.utils;
  * Created by hejz on 2018/4/17.
  */
 public class HexConvert {
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 
 public static String  convertStringToHex(String str){
 
@@ -96,6 +97,30 @@ public static String  convertStringToHex(String str){
     return result;
 }
 
+    /**
+     * 将字节数组指定区间转换为以空格分隔的大写16进制字符串，如"48 3A 01"
+     * @param bytes 字节数组
+     * @param offset 起始下标
+     * @param length 长度
+     * @return 16进制字符串
+     */
+    public static String toHexString(byte[] bytes, int offset, int length) {
+        if (length <= 0) {
+            return "";
+        }
+        char[] chars = new char[length * 3 - 1];
+        for (int i = 0; i < length; i++) {
+            int b = bytes[offset + i] & 0xFF;
+            int pos = i * 3;
+            chars[pos] = HEX_DIGITS[b >>> 4];
+            chars[pos + 1] = HEX_DIGITS[b & 0x0F];
+            if (pos + 2 < chars.length) {
+                chars[pos + 2] = ' ';
+            }
+        }
+        return new String(chars);
+    }
+
     /**
      * 16进制字符串转字符串
      * @param hexStr
@@ -0,0 +1,104 @@
+package com.jc.utils;
+
+/**
+ * 定长采样环形缓冲区
+ * <p>
+ * 时间戳和采样值分别保存在long[]和int[]中，写入不分配对象。
+ * 只允许一个线程写入；读取可在任意线程进行，读到被覆盖的旧样本会被丢弃。
+ */
+public class SampleRingBuffer {
+    private final long[] timestamps;
+    private final int[] values;
+    /** 已写入的样本总数，发布写入的内存屏障 */
+    private volatile long count;
+
+    /**
+     * @param capacity 保留的样本数量
+     */
+    public SampleRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("容量必须大于0：" + capacity);
+        }
+        this.timestamps = new long[capacity];
+        this.values = new int[capacity];
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    /**
+     * 已写入的样本总数（含已被覆盖的）
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * 写入一个样本，只能由写线程调用
+     *
+     * @param timestamp 采样时间（毫秒）
+     * @param value     采样值
+     */
+    public void add(long timestamp, int value) {
+        long n = count;
+        int index = (int) (n % values.length);
+        timestamps[index] = timestamp;
+        values[index] = value;
+        count = n + 1;
+    }
+
+    /**
+     * 最新样本的时间，没有样本时返回0
+     */
+    public long latestTimestamp() {
+        long n = count;
+        return n == 0 ? 0L : timestamps[(int) ((n - 1) % values.length)];
+    }
+
+    /**
+     * 最新样本的值，没有样本时返回0
+     */
+    public int latestValue() {
+        long n = count;
+        return n == 0 ? 0 : values[(int) ((n - 1) % values.length)];
+    }
+
+    /**
+     * 复制不早于指定时间的样本，按时间从旧到新写入目标数组
+     *
+     * @param since         起始时间（毫秒，包含）
+     * @param outTimestamps 时间戳目标数组
+     * @param outValues     采样值目标数组
+     * @return 复制的样本数，不超过目标数组长度，超出时保留最新的样本
+     */
+    public int copySince(long since, long[] outTimestamps, int[] outValues) {
+        int max = Math.min(Math.min(outTimestamps.length, outValues.length), values.length);
+        long end = count;
+        long start = end;
+        // 从最新的样本往前找到起始位置
+        while (start > 0 && end - start < max) {
+            int index = (int) ((start - 1) % values.length);
+            if (timestamps[index] < since) {
+                break;
+            }
+            start--;
+        }
+        int n = 0;
+        for (long i = start; i < end; i++) {
+            int index = (int) (i % values.length);
+            outTimestamps[n] = timestamps[index];
+            outValues[n] = values[index];
+            n++;
+        }
+        // 复制期间被写线程覆盖的样本不可信，丢弃
+        long overwritten = count - values.length - start;
+        if (overwritten > 0) {
+            int drop = (int) Math.min(overwritten, n);
+            System.arraycopy(outTimestamps, drop, outTimestamps, 0, n - drop);
+            System.arraycopy(outValues, drop, outValues, 0, n - drop);
+            n -= drop;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,194 @@
+package com.jc.simulator;
+
+import com.jc.enums.DeviceRole;
+import com.jc.netty.journal.JournalReader;
+import com.jc.netty.journal.JournalRecord;
+import com.jc.utils.HexConvert;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 录制的设备流量，用于{@link ReplayDriver}回放
+ * <p>
+ * 来源为帧日志（doc/journal.md）或原来的十六进制日志行：
+ * 收到的帧为“clientIp：&lt;IP&gt;发送的HEX字符:&lt;十六进制&gt;”，发出的命令为“服务器发送指令：&lt;十六进制&gt;”，
+ * 日志行不带发往的设备，发出的命令按协议归到设备类型未知（{@link Frame#role}为null）
+ */
+final class Capture {
+    /** 日志行开头的时间 */
+    private static final Pattern LOG_TIME = Pattern.compile("^(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3})");
+    private static final Pattern LOG_IN = Pattern.compile("clientIp：([0-9.]+)发送的HEX字符:\\s*([0-9A-Fa-f ]+)$");
+    private static final Pattern LOG_OUT = Pattern.compile("服务器发送指令：\\s*([0-9A-Fa-f ]+)$");
+    private static final DateTimeFormatter LOG_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    /**
+     * 一条录制的帧
+     */
+    static final class Frame {
+        /** 自1970-01-01起的纳秒数 */
+        final long timestampNanos;
+        /** 录制时的机器编号 */
+        final String machine;
+        /** 设备类型标签，如io，发出的命令不知道设备时为null */
+        final String role;
+        /** true为设备发给服务器，false为服务器发给设备 */
+        final boolean inbound;
+        final byte[] bytes;
+
+        Frame(long timestampNanos, String machine, String role, boolean inbound, byte[] bytes) {
+            this.timestampNanos = timestampNanos;
+            this.machine = machine;
+            this.role = role;
+            this.inbound = inbound;
+            this.bytes = bytes;
+        }
+    }
+
+    private final List<Frame> frames;
+
+    private Capture(List<Frame> frames) {
+        this.frames = frames;
+    }
+
+    List<Frame> getFrames() {
+        return Collections.unmodifiableList(frames);
+    }
+
+    /**
+     * 录制中出现的机器编号，按编号排序
+     */
+    List<String> machines() {
+        TreeSet<String> machines = new TreeSet<>();
+        for (Frame frame : frames) {
+            machines.add(frame.machine);
+        }
+        return new ArrayList<>(machines);
+    }
+
+    /**
+     * 只保留时间段内的帧
+     *
+     * @param fromNanos 开始时间（含），自1970-01-01起的纳秒数
+     * @param toNanos   结束时间（不含）
+     */
+    Capture window(long fromNanos, long toNanos) {
+        List<Frame> selected = new ArrayList<>();
+        for (Frame frame : frames) {
+            if (frame.timestampNanos >= fromNanos && frame.timestampNanos < toNanos) {
+                selected.add(frame);
+            }
+        }
+        return new Capture(selected);
+    }
+
+    /**
+     * 读取文件：目录或.jnl文件按帧日志读取，其余按日志文本读取
+     *
+     * @param path    帧日志目录、段文件或日志文件
+     * @param logIps  日志文本中设备IP到设备类型标签
+     * @return 按时间排序的录制
+     * @throws IOException 读取失败
+     */
+    static Capture load(Path path, Map<String, String> logIps) throws IOException {
+        if (Files.isDirectory(path) || path.getFileName().toString().endsWith(".jnl")) {
+            return fromJournal(path);
+        }
+        return fromLog(path, logIps);
+    }
+
+    /**
+     * 读取帧日志，只取属于某台机器的设备（名称为 机器编号/设备）
+     */
+    static Capture fromJournal(Path path) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        new JournalReader(path).read(record -> record.getDevice().indexOf('/') > 0, record -> {
+            String device = record.getDevice();
+            int slash = device.indexOf('/');
+            frames.add(new Frame(record.getTimestampNanos(), device.substring(0, slash), device.substring(slash + 1),
+                    record.getDirection() == JournalRecord.IN, record.copyPayload()));
+        });
+        return new Capture(frames);
+    }
+
+    /**
+     * 解析日志文本，录制算作机器1；不在logIps中的设备忽略
+     *
+     * @param path   日志文件
+     * @param logIps 设备IP到设备类型标签
+     */
+    static Capture fromLog(Path path, Map<String, String> logIps) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher time = LOG_TIME.matcher(line);
+                if (!time.find()) {
+                    continue;
+                }
+                Matcher in = LOG_IN.matcher(line);
+                if (in.find()) {
+                    String role = logIps.get(in.group(1));
+                    byte[] bytes = bytes(in.group(2));
+                    if (role != null && bytes.length > 0) {
+                        frames.add(new Frame(nanos(time.group(1)), "1", role, true, bytes));
+                    }
+                    continue;
+                }
+                Matcher out = LOG_OUT.matcher(line);
+                if (out.find() && bytes(out.group(1)).length > 0) {
+                    frames.add(new Frame(nanos(time.group(1)), "1", null, false, bytes(out.group(1))));
+                }
+            }
+        }
+        return new Capture(frames);
+    }
+
+    /**
+     * 日志文本中设备IP的默认对照，与application.properties一致
+     */
+    static Map<String, String> defaultLogIps() {
+        Map<String, String> ips = new LinkedHashMap<>();
+        ips.put("192.168.1.3", DeviceRole.IO.getTag());
+        ips.put("192.168.1.4", DeviceRole.RELAY.getTag());
+        ips.put("192.168.1.5", DeviceRole.RS485.getTag());
+        return ips;
+    }
+
+    /**
+     * 本地时间转为纳秒数
+     *
+     * @param localDateTime 如2024-06-10T08:00
+     * @return 自1970-01-01起的纳秒数
+     */
+    static long epochNanos(String localDateTime) {
+        Instant instant = LocalDateTime.parse(localDateTime).atZone(ZoneId.systemDefault()).toInstant();
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+
+    private static long nanos(String time) {
+        long millis = LocalDateTime.parse(time, LOG_TIME_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static byte[] bytes(String hex) {
+        byte[] bytes = HexConvert.hexStringToBytes(hex.replace(" ", ""));
+        return bytes != null ? bytes : new byte[0];
+    }
+}
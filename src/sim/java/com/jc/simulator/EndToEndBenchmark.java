@@ -0,0 +1,442 @@
+package com.jc.simulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.jc.Application;
+import com.jc.constants.Constants;
+import com.jc.controller.OrderController;
+import com.jc.controller.TotelController;
+import com.jc.entity.Order;
+import com.jc.netty.client.RobotClient;
+import com.jc.netty.codec.ModbusCommandEncoder;
+import com.jc.service.impl.IODeviceService;
+import com.jc.service.impl.LanTo485Service;
+import com.jc.service.impl.MachineManager;
+import com.jc.service.impl.TurntableScheduler;
+import com.jc.utils.SampleRingBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 端到端吞吐量和延迟基准
+ * <p>
+ * 在同一进程内启动设备模拟器和sim配置的应用，先逐个测TotelController的重置、取碗、放碗流程，
+ * 再通过OrderController.submitOrder下单并等全部出碗。模拟多台机器（sim.machines）时每台机器各下同样多的订单，
+ * 总吞吐量应随机器数线性增长。结果写成JSON报告，用于版本之间对比
+ * 和估算一台控制器能带几台机器，运行方式和报告字段见doc/simulator.md。
+ * <p>
+ * 参数通过系统属性传入：bench.*为基准参数，sim.*为模拟器参数（见{@link SimulatorConfig}），
+ * 其余如turntable.meatMs直接覆盖应用配置
+ */
+@Slf4j
+public class EndToEndBenchmark {
+    /** 每台机器的订单数 */
+    private static final int ORDERS = Integer.getInteger("bench.orders", 20);
+    /** 下单间隔（毫秒），0表示一次全部提交 */
+    private static final long ARRIVAL_MS = Long.getLong("bench.arrivalMs", 0L);
+    /** 每个流程的测量次数 */
+    private static final int FLOW_RUNS = Integer.getInteger("bench.flowRuns", 5);
+    /** 等待全部出碗的最长时间（毫秒） */
+    private static final long TIMEOUT_MS = Long.getLong("bench.timeoutMs", 600_000L);
+    /** 等待设备全部连接的最长时间（毫秒） */
+    private static final long CONNECT_TIMEOUT_MS = Long.getLong("bench.connectTimeoutMs", 30_000L);
+    /** 报告文件 */
+    private static final String REPORT = System.getProperty("bench.report", "target/e2e-report.json");
+
+    public static void main(String[] args) throws Exception {
+        SimulatorConfig config = SimulatorConfig.fromSystemProperties();
+        // 碗架要够整个基准取用，升降行程随之加长
+        if (System.getProperty("sim.bowls") == null) {
+            config.bowls = ORDERS + FLOW_RUNS + 10;
+        }
+        config.liftTravel = Math.max(config.liftTravel, config.bowlSensorAt + (config.bowls + 1) * config.bowlHeight);
+
+        int exitCode;
+        try (SimulatorFarm farm = new SimulatorFarm(config).start()) {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                    .profiles("sim")
+                    .properties(defaultProperties(config))
+                    .run(args);
+            try {
+                exitCode = run(context, farm) ? 0 : 1;
+            } finally {
+                context.close();
+            }
+        }
+        // Netty服务器的线程不受Spring管理，直接退出
+        System.exit(exitCode);
+    }
+
+    /**
+     * 应用配置的默认值，系统属性优先
+     */
+    static Map<String, Object> defaultProperties(SimulatorConfig config) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", 0);
+        properties.put("netty.port", config.serverPort);
+        properties.put("ducoIp", config.ducoIp);
+        properties.put("ducoPort", config.ducoPort);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, config.machines); i++) {
+            String id = machineId(i);
+            SimulatorConfig machine = config.forMachine(i);
+            ids.add(id);
+            properties.put(MachineManager.MACHINE_PREFIX + id + ".IoIp", machine.ioIp);
+            properties.put(MachineManager.MACHINE_PREFIX + id + ".relayIp", machine.relayIp);
+            properties.put(MachineManager.MACHINE_PREFIX + id + ".lanTo485", machine.lanTo485);
+            properties.put(MachineManager.MACHINE_PREFIX + id + ".ducoIp", machine.ducoIp);
+        }
+        properties.put("machines", String.join(",", ids));
+        properties.put("turntable.meatMs", 1000);
+        properties.put("turntable.steamMs", 1000);
+        properties.put("turntable.seasoningMs", 1000);
+        return properties;
+    }
+
+    /**
+     * 第index台模拟机器在应用中的编号，从1开始
+     */
+    static String machineId(int index) {
+        return String.valueOf(index + 1);
+    }
+
+    private static boolean run(ConfigurableApplicationContext context, SimulatorFarm farm) throws Exception {
+        TotelController totel = context.getBean(TotelController.class);
+        OrderController orders = context.getBean(OrderController.class);
+        MachineManager machineManager = context.getBean(MachineManager.class);
+        int machineCount = farm.getMachines().size();
+        String first = machineId(0);
+
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+        while (!farm.isConnected() || !allConnected(machineManager, machineCount)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("设备在" + CONNECT_TIMEOUT_MS + "ms内没有全部连接");
+            }
+            Thread.sleep(50);
+        }
+        for (int i = 0; i < machineCount; i++) {
+            machineManager.getBean(machineId(i), IODeviceService.class).awaitInitialized(Constants.SIGNAL_TIMEOUT_MS).get();
+        }
+        log.info("{}台机器的设备已全部连接，开始基准", machineCount);
+
+        long benchmarkStart = System.currentTimeMillis();
+        Map<String, Object> flows = new LinkedHashMap<>();
+        // 所有机器同时重置，取碗、放碗只在第一台机器上测
+        flows.put("reset", flow(1, () -> {
+            List<CompletableFuture<String>> resets = new ArrayList<>();
+            for (int i = 0; i < machineCount; i++) {
+                resets.add(totel.reset(machineId(i)).getBody().getFuture());
+            }
+            return resets.stream().map(CompletableFuture::join).filter(r -> !"ok".equals(r)).findFirst().orElse("ok");
+        }));
+        flows.put("takeBowl", flow(FLOW_RUNS, () -> totel.takeBowl(first).getBody().getFuture().join()));
+        flows.put("putBowl", flow(FLOW_RUNS, () -> totel.putBowl(first).getBody().getFuture().join()));
+
+        TurntableScheduler[] schedulers = new TurntableScheduler[machineCount];
+        long[] servedBefore = new long[machineCount];
+        for (int i = 0; i < machineCount; i++) {
+            schedulers[i] = machineManager.getBean(machineId(i), TurntableScheduler.class);
+            servedBefore[i] = schedulers[i].getServed().count();
+        }
+        ThreadUsage usage = new ThreadUsage();
+        long ordersStart = System.currentTimeMillis();
+        for (int n = 0; n < ORDERS; n++) {
+            for (int i = 0; i < machineCount; i++) {
+                orders.submitOrder(machineId(i), new Order());
+            }
+            if (ARRIVAL_MS > 0) {
+                Thread.sleep(ARRIVAL_MS);
+            }
+        }
+        long ordersDeadline = ordersStart + TIMEOUT_MS;
+        while (served(schedulers, servedBefore) < (long) ORDERS * machineCount && fault(schedulers) == null
+                && System.currentTimeMillis() < ordersDeadline) {
+            Thread.sleep(20);
+        }
+        long elapsedMs = System.currentTimeMillis() - ordersStart;
+        long served = served(schedulers, servedBefore);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", Instant.ofEpochMilli(benchmarkStart).toString());
+        report.put("environment", environment());
+        report.put("parameters", parameters(farm.getConfig()));
+        Map<String, Object> throughput = new LinkedHashMap<>();
+        throughput.put("machines", machineCount);
+        throughput.put("orders", ORDERS * machineCount);
+        throughput.put("served", served);
+        throughput.put("elapsedMs", elapsedMs);
+        double bowlsPerHour = elapsedMs > 0 ? served * 3_600_000.0 / elapsedMs : 0;
+        throughput.put("bowlsPerHour", bowlsPerHour);
+        throughput.put("bowlsPerHourPerMachine", bowlsPerHour / machineCount);
+        report.put("throughput", throughput);
+        List<int[]> allServed = new ArrayList<>();
+        List<Map<String, Object>> machines = new ArrayList<>();
+        for (int i = 0; i < machineCount; i++) {
+            String id = machineId(i);
+            LanTo485Service lanTo485Service = machineManager.getBean(id, LanTo485Service.class);
+            RobotClient robotClient = machineManager.getBean(id, RobotClient.class);
+            Map<String, Object> machine = new LinkedHashMap<>();
+            machine.put("id", id);
+            machine.put("served", schedulers[i].getServed().count() - servedBefore[i]);
+            int[] orderToServe = values(schedulers[i].getServed(), ordersStart);
+            allServed.add(orderToServe);
+            machine.put("orderToServeMs", stats(orderToServe, orderToServe.length));
+            Map<String, Object> roundTrips = new LinkedHashMap<>();
+            roundTrips.put("modbusWriteRegister", samples(lanTo485Service.roundTrips(ModbusCommandEncoder.FUNC_WRITE_SINGLE_REGISTER), benchmarkStart));
+            roundTrips.put("modbusReadWeight", samples(lanTo485Service.roundTrips(ModbusCommandEncoder.FUNC_READ_HOLDING_REGISTERS), benchmarkStart));
+            roundTrips.put("robotCommand", samples(robotClient.getRoundTrips(), benchmarkStart));
+            machine.put("roundTripMicros", roundTrips);
+            machine.put("link", link(farm.getMachines().get(i)));
+            machine.put("fault", schedulers[i].getFault());
+            machines.add(machine);
+        }
+        int[] merged = allServed.stream().flatMapToInt(Arrays::stream).toArray();
+        report.put("orderToServeMs", stats(merged, merged.length));
+        report.put("flowsMs", flows);
+        report.put("machines", machines);
+        report.put("threads", usage.report(elapsedMs));
+        report.put("fault", fault(schedulers));
+
+        File file = new File(REPORT);
+        write(file, report);
+        log.info("端到端基准完成：{}台机器{}碗/{}ms，报告已写入{}", machineCount, served, elapsedMs, file.getAbsolutePath());
+        return served == (long) ORDERS * machineCount;
+    }
+
+    private static boolean allConnected(MachineManager machineManager, int machineCount) {
+        for (int i = 0; i < machineCount; i++) {
+            String id = machineId(i);
+            if (!machineManager.getBean(id, RobotClient.class).isConnected()
+                    || !machineManager.getBean(id, LanTo485Service.class).isConnected()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long served(TurntableScheduler[] schedulers, long[] servedBefore) {
+        long served = 0;
+        for (int i = 0; i < schedulers.length; i++) {
+            served += schedulers[i].getServed().count() - servedBefore[i];
+        }
+        return served;
+    }
+
+    private static String fault(TurntableScheduler[] schedulers) {
+        for (TurntableScheduler scheduler : schedulers) {
+            if (scheduler.getFault() != null) {
+                return scheduler.getFault();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 依次执行流程若干次，统计每次的用时（毫秒）
+     */
+    private static Map<String, Object> flow(int runs, Supplier<String> flow) {
+        int[] elapsed = new int[runs];
+        int failures = 0;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            String result = flow.get();
+            elapsed[i] = (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (!"ok".equals(result)) {
+                failures++;
+                log.warn("流程执行失败：{}", result);
+            }
+        }
+        Map<String, Object> stats = stats(elapsed, runs);
+        stats.put("failures", failures);
+        return stats;
+    }
+
+    /**
+     * 环形缓冲区中不早于指定时间的样本的统计
+     */
+    private static Map<String, Object> samples(SampleRingBuffer buffer, long since) {
+        int[] values = values(buffer, since);
+        return stats(values, values.length);
+    }
+
+    /**
+     * 环形缓冲区中不早于指定时间的样本值
+     */
+    private static int[] values(SampleRingBuffer buffer, long since) {
+        if (buffer == null) {
+            return new int[0];
+        }
+        long[] timestamps = new long[buffer.capacity()];
+        int[] values = new int[buffer.capacity()];
+        int n = buffer.copySince(since, timestamps, values);
+        return Arrays.copyOf(values, n);
+    }
+
+    /**
+     * 样本数、最小、平均、p50/p90/p99（最近秩法）和最大值
+     */
+    static Map<String, Object> stats(int[] values, int n) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", n);
+        if (n == 0) {
+            return stats;
+        }
+        int[] sorted = Arrays.copyOf(values, n);
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (int v : sorted) {
+            sum += v;
+        }
+        stats.put("min", sorted[0]);
+        stats.put("mean", (double) sum / n);
+        stats.put("p50", percentile(sorted, 50));
+        stats.put("p90", percentile(sorted, 90));
+        stats.put("p99", percentile(sorted, 99));
+        stats.put("max", sorted[n - 1]);
+        return stats;
+    }
+
+    private static int percentile(int[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    static Map<String, Object> environment() {
+        Map<String, Object> environment = new LinkedHashMap<>();
+        environment.put("java", System.getProperty("java.version"));
+        environment.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version"));
+        environment.put("cpus", Runtime.getRuntime().availableProcessors());
+        environment.put("maxHeapMb", Runtime.getRuntime().maxMemory() / (1024 * 1024));
+        return environment;
+    }
+
+    private static Map<String, Object> parameters(SimulatorConfig config) {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("orders", ORDERS);
+        parameters.put("arrivalMs", ARRIVAL_MS);
+        parameters.put("flowRuns", FLOW_RUNS);
+        Map<String, Object> simulator = new TreeMap<>();
+        for (java.lang.reflect.Field field : SimulatorConfig.class.getFields()) {
+            try {
+                simulator.put(field.getName(), field.get(config));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        parameters.put("simulator", simulator);
+        return parameters;
+    }
+
+    private static Map<String, Object> link(SimulatedMachine machine) {
+        Map<String, Object> link = new LinkedHashMap<>();
+        link.put("ioBoard", link(machine.getIoBoard().getLink()));
+        link.put("relayBoard", link(machine.getRelayBoard().getLink()));
+        link.put("gateway", link(machine.getGateway().getLink()));
+        return link;
+    }
+
+    private static Map<String, Object> link(LinkConditions conditions) {
+        Map<String, Object> link = new LinkedHashMap<>();
+        link.put("sent", conditions.getSent());
+        link.put("dropped", conditions.getDropped());
+        link.put("split", conditions.getSplit());
+        return link;
+    }
+
+    static void write(File file, Map<String, Object> report) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("无法创建目录：" + dir);
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, report);
+    }
+
+    /**
+     * 各线程组在下单阶段的CPU占用
+     * <p>
+     * 线程名中的数字替换为#后归为一组，如nioEventLoopGroup-3-1归入nioEventLoopGroup-#-#；
+     * 占用率为CPU时间除以墙钟时间，1.0表示占满一个核。simulator组是模拟器自身的开销
+     */
+    private static final class ThreadUsage {
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private final Map<Long, Long> startCpu = new HashMap<>();
+        private final long processStart;
+
+        ThreadUsage() {
+            if (threads.isThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled()) {
+                threads.setThreadCpuTimeEnabled(true);
+            }
+            for (long id : threads.getAllThreadIds()) {
+                startCpu.put(id, Math.max(0, threads.getThreadCpuTime(id)));
+            }
+            processStart = processCpuNanos();
+        }
+
+        Map<String, Object> report(long wallMs) {
+            Map<String, long[]> groups = new TreeMap<>();
+            for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+                if (info == null) {
+                    continue;
+                }
+                long cpu = threads.getThreadCpuTime(info.getThreadId());
+                if (cpu < 0) {
+                    continue;
+                }
+                long delta = cpu - startCpu.getOrDefault(info.getThreadId(), 0L);
+                long[] group = groups.computeIfAbsent(info.getThreadName().replaceAll("\\d+", "#"), k -> new long[3]);
+                group[0]++;
+                group[1] += delta;
+                group[2] = Math.max(group[2], delta);
+            }
+            double wallNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, wallMs));
+            Map<String, Object> byGroup = new LinkedHashMap<>();
+            for (Map.Entry<String, long[]> entry : groups.entrySet()) {
+                long[] group = entry.getValue();
+                if (group[1] == 0) {
+                    continue;
+                }
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("threads", group[0]);
+                stats.put("cpuMs", TimeUnit.NANOSECONDS.toMillis(group[1]));
+                stats.put("utilisation", group[1] / wallNanos);
+                stats.put("busiestThreadUtilisation", group[2] / wallNanos);
+                byGroup.put(entry.getKey(), stats);
+            }
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("wallMs", wallMs);
+            long processCpu = processCpuNanos();
+            if (processCpu >= 0 && processStart >= 0) {
+                report.put("processCpuMs", TimeUnit.NANOSECONDS.toMillis(processCpu - processStart));
+                report.put("processUtilisation", (processCpu - processStart) / wallNanos);
+            }
+            report.put("groups", byGroup);
+            return report;
+        }
+
+        private static long processCpuNanos() {
+            java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            if (os instanceof com.sun.management.OperatingSystemMXBean) {
+                return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+            }
+            return -1;
+        }
+    }
+}
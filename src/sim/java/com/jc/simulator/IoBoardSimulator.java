@@ -0,0 +1,74 @@
+package com.jc.simulator;
+
+import com.jc.netty.codec.ZhiqianFrame;
+import com.jc.netty.codec.ZhiqianFrameDecoder;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.EventLoopGroup;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IO模块模拟器
+ * <p>
+ * 引脚变化时立即上报41状态帧，另按ioReportIntervalMs定时上报；收到52重置命令时回报当前状态
+ */
+@Slf4j
+public class IoBoardSimulator extends SimulatedDevice<ZhiqianFrame> {
+    /** 状态上报命令 */
+    public static final int CMD_STATUS = 0x41;
+    /** 重置（读取状态）命令 */
+    public static final int CMD_RESET = 0x52;
+
+    private final MachineModel model;
+
+    public IoBoardSimulator(SimulatorConfig config, MachineModel model) {
+        super(config, "IO模块", config.ioIp, ZhiqianFrame.class);
+        this.model = model;
+    }
+
+    @Override
+    public void start(EventLoopGroup group) {
+        super.start(group);
+        model.onPinsChanged(this::report);
+        group.scheduleAtFixedRate(() -> report(model.getPins()),
+                config.ioReportIntervalMs, config.ioReportIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected ChannelHandler newFrameDecoder() {
+        return new ZhiqianFrameDecoder();
+    }
+
+    @Override
+    protected void onFrame(ZhiqianFrame frame) {
+        if (frame.getCommand() == CMD_RESET) {
+            report(model.getPins());
+        } else {
+            log.warn("IO模块收到未知命令：{}", frame);
+        }
+    }
+
+    @Override
+    protected void onConnected() {
+        report(model.getPins());
+    }
+
+    private void report(int pins) {
+        send(statusFrame(pins));
+    }
+
+    /**
+     * 41状态帧，每个数据字节表示4个引脚：01、04、10、40依次为第1到第4个
+     *
+     * @param pins 引脚位掩码，第n个引脚为第n-1位
+     */
+    public static byte[] statusFrame(int pins) {
+        byte[] data = new byte[8];
+        for (int i = 0; i < data.length; i++) {
+            int nibble = pins >>> (i * 4) & 0x0F;
+            data[i] = (byte) ((nibble & 0x01) | (nibble & 0x02) << 1 | (nibble & 0x04) << 2 | (nibble & 0x08) << 3);
+        }
+        return SimFrames.zhiqian(CMD_STATUS, data);
+    }
+}
@@ -0,0 +1,81 @@
+package com.jc.simulator;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 链路条件：对模拟设备发出的每一帧注入延迟、抖动、拆包和丢帧
+ * <p>
+ * 每个设备一个实例，只在该设备通道的事件循环线程上使用；
+ * 抖动不会让帧乱序，后一帧的发送时间不早于前一帧，和真实TCP一致
+ */
+@Slf4j
+public class LinkConditions {
+    private final SimulatorConfig config;
+    /** 上一帧的计划发送时间（纳秒） */
+    private long lastDueNanos;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong split = new AtomicLong();
+
+    public LinkConditions(SimulatorConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * 按链路条件发送一帧
+     *
+     * @param channel 设备通道
+     * @param frame   帧字节
+     */
+    public void send(Channel channel, byte[] frame) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (config.dropProbability > 0 && random.nextDouble() < config.dropProbability) {
+            dropped.incrementAndGet();
+            log.debug("模拟丢帧，{}字节", frame.length);
+            return;
+        }
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(config.latencyMs)
+                + (config.jitterMs > 0 ? random.nextLong(TimeUnit.MILLISECONDS.toNanos(config.jitterMs) + 1) : 0);
+        long now = System.nanoTime();
+        long due = Math.max(now + delayNanos, lastDueNanos);
+        lastDueNanos = due;
+        sent.incrementAndGet();
+        if (frame.length > 1 && config.splitProbability > 0 && random.nextDouble() < config.splitProbability) {
+            // 拆成两段，第二段晚1毫秒到达，验证服务端的重新组帧
+            split.incrementAndGet();
+            int cut = 1 + random.nextInt(frame.length - 1);
+            write(channel, Unpooled.wrappedBuffer(frame, 0, cut), due - now);
+            lastDueNanos = due + TimeUnit.MILLISECONDS.toNanos(1);
+            write(channel, Unpooled.wrappedBuffer(frame, cut, frame.length - cut), lastDueNanos - now);
+        } else {
+            write(channel, Unpooled.wrappedBuffer(frame), due - now);
+        }
+    }
+
+    private static void write(Channel channel, Object msg, long delayNanos) {
+        if (delayNanos <= 0) {
+            channel.writeAndFlush(msg);
+        } else {
+            channel.eventLoop().schedule(() -> channel.writeAndFlush(msg), delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getSplit() {
+        return split.get();
+    }
+}
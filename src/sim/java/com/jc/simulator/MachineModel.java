@@ -0,0 +1,241 @@
+package com.jc.simulator;
+
+import com.jc.constants.Constants;
+import com.jc.entity.SensorSnapshot;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * 机器运动模型：步进电机、碗升降轨道、转盘和秤
+ * <p>
+ * 485转换器模拟器写寄存器驱动电机，模型按固定步长推进电机位置并换算出传感器引脚，
+ * 引脚变化时通知IO模块模拟器上报；机器人执行取碗脚本时碗架上少一个碗。
+ * 所有状态由对象锁保护
+ */
+@Slf4j
+public class MachineModel {
+    private final SimulatorConfig config;
+    /** 电机，下标为电机编号 */
+    private final Motor[] motors = new Motor[Constants.MAX_MOTOR_NO + 1];
+    /** 已取走的碗数 */
+    private int bowlsTaken;
+    /** 当前引脚状态 */
+    private int pins;
+    private final CopyOnWriteArrayList<IntConsumer> pinListeners = new CopyOnWriteArrayList<>();
+    private ScheduledFuture<?> ticker;
+    private long lastTickNanos;
+
+    public MachineModel(SimulatorConfig config) {
+        this.config = config;
+        for (int i = 1; i < motors.length; i++) {
+            motors[i] = new Motor(config.defaultSpeed);
+        }
+        pins = computePins();
+    }
+
+    /**
+     * 在指定线程上按固定步长推进模型
+     */
+    public synchronized void start(EventExecutor executor) {
+        lastTickNanos = System.nanoTime();
+        ticker = executor.scheduleAtFixedRate(this::tick, config.tickMs, config.tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (ticker != null) {
+            ticker.cancel(false);
+        }
+    }
+
+    /**
+     * 订阅引脚变化，参数为变化后的引脚位掩码
+     */
+    public void onPinsChanged(IntConsumer listener) {
+        pinListeners.add(listener);
+    }
+
+    public synchronized int getPins() {
+        return pins;
+    }
+
+    /**
+     * 写电机寄存器，寄存器含义和{@link com.jc.netty.codec.ModbusCommandEncoder}一致
+     *
+     * @param motorNumber 电机编号
+     * @param register    寄存器地址
+     * @param value       寄存器值
+     * @return 电机不存在或寄存器未知时返回false
+     */
+    public boolean writeRegister(int motorNumber, int register, int value) {
+        if (motorNumber <= 0 || motorNumber >= motors.length) {
+            return false;
+        }
+        synchronized (this) {
+            Motor motor = motors[motorNumber];
+            switch (register) {
+                case 0x0000:
+                    motor.start(1);
+                    break;
+                case 0x0001:
+                    motor.start(-1);
+                    break;
+                case 0x0002:
+                    motor.direction = 0;
+                    break;
+                case 0x0005:
+                    motor.speed = value;
+                    break;
+                case 0x0007:
+                    motor.pulses = value;
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 电机是否在转动
+     */
+    public synchronized boolean isRunning(int motorNumber) {
+        return motors[motorNumber].direction != 0;
+    }
+
+    /**
+     * 电机当前位置（脉冲），正转增加
+     */
+    public synchronized double getPosition(int motorNumber) {
+        return motors[motorNumber].position;
+    }
+
+    /**
+     * 机器人取走最上面的碗
+     */
+    public void takeBowl() {
+        synchronized (this) {
+            if (bowlsTaken < config.bowls) {
+                bowlsTaken++;
+            }
+        }
+        updatePins();
+    }
+
+    /**
+     * 秤的读值，在配置值上叠加±2的噪声
+     *
+     * @param slave 从站地址
+     * @return 原始读值（0.01千克）
+     */
+    public int weight(int slave) {
+        return config.weight + ThreadLocalRandom.current().nextInt(-2, 3);
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        synchronized (this) {
+            double seconds = (now - lastTickNanos) / 1e9;
+            lastTickNanos = now;
+            for (int i = 1; i < motors.length; i++) {
+                motors[i].advance(seconds * motors[i].speed * config.pulsesPerSecondPerSpeed);
+            }
+            // 升降轨道有机械限位，到限位后电机堵转
+            Motor lift = motors[Constants.BOWL_CONTROLLER_NO];
+            lift.position = Math.max(-config.liftTravel, Math.min(0, lift.position));
+        }
+        updatePins();
+    }
+
+    private void updatePins() {
+        int changed;
+        synchronized (this) {
+            int current = computePins();
+            if (current == pins) {
+                return;
+            }
+            pins = current;
+            changed = current;
+        }
+        for (IntConsumer listener : pinListeners) {
+            listener.accept(changed);
+        }
+    }
+
+    /**
+     * 由电机位置换算引脚状态
+     */
+    private int computePins() {
+        int mask = 0;
+        double turntable = motors[Constants.TURNTABLE_CONTROLLER_NO].position;
+        int revolution = config.turntablePulsesPerStation * 6;
+        if (near(turntable, revolution)) {
+            mask |= SensorSnapshot.bit(Constants.TURNTABLE_ORIGIN_PIN);
+        }
+        if (near(turntable, config.turntablePulsesPerStation)) {
+            mask |= SensorSnapshot.bit(Constants.TURNTABLE_STATION_PIN);
+        }
+        // 升碗为反转，升降高度取电机位置的相反数
+        double lift = -motors[Constants.BOWL_CONTROLLER_NO].position;
+        if (bowlsTaken < config.bowls && lift - bowlsTaken * config.bowlHeight >= config.bowlSensorAt) {
+            mask |= SensorSnapshot.bit(Constants.BOWL_SENSOR_PIN);
+        }
+        if (lift <= 0) {
+            mask |= SensorSnapshot.bit(Constants.BOWL_LOWER_LIMIT_PIN);
+        }
+        if (lift >= config.liftTravel) {
+            mask |= SensorSnapshot.bit(Constants.BOWL_UPPER_LIMIT_PIN);
+        }
+        return mask;
+    }
+
+    /**
+     * 位置是否在周期点前后stationSensorWidth个脉冲内
+     */
+    private boolean near(double position, int period) {
+        double offset = position - Math.floor(position / period) * period;
+        return offset <= config.stationSensorWidth || period - offset <= config.stationSensorWidth;
+    }
+
+    /**
+     * 步进电机
+     */
+    private static class Motor {
+        int speed;
+        /** 脉冲数寄存器，0表示持续转动 */
+        int pulses;
+        /** 1正转，-1反转，0停止 */
+        int direction;
+        /** 本次启动还剩的脉冲数，持续转动时无意义 */
+        double remaining;
+        double position;
+
+        Motor(int speed) {
+            this.speed = speed;
+        }
+
+        void start(int direction) {
+            this.direction = direction;
+            this.remaining = pulses;
+        }
+
+        void advance(double steps) {
+            if (direction == 0) {
+                return;
+            }
+            if (pulses > 0) {
+                steps = Math.min(steps, remaining);
+                remaining -= steps;
+            }
+            position += direction * steps;
+            if (pulses > 0 && remaining <= 0) {
+                direction = 0;
+            }
+        }
+    }
+}
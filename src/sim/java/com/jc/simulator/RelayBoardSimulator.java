@@ -0,0 +1,66 @@
+package com.jc.simulator;
+
+import com.jc.netty.codec.ZhiqianCommandEncoder;
+import com.jc.netty.codec.ZhiqianFrame;
+import com.jc.netty.codec.ZhiqianFrameDecoder;
+import com.jc.service.impl.RelayDeviceService;
+import io.netty.channel.ChannelHandler;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 继电器模块模拟器
+ * <p>
+ * 70单路开关命令回71应答，数据相同；57写全部继电器命令回54应答，数据相同并带校验和
+ */
+@Slf4j
+public class RelayBoardSimulator extends SimulatedDevice<ZhiqianFrame> {
+    /** 32路继电器状态，第n路为第n-1位 */
+    private volatile int relays;
+
+    public RelayBoardSimulator(SimulatorConfig config) {
+        super(config, "继电器模块", config.relayIp, ZhiqianFrame.class);
+    }
+
+    public int getRelays() {
+        return relays;
+    }
+
+    @Override
+    protected ChannelHandler newFrameDecoder() {
+        return new ZhiqianFrameDecoder();
+    }
+
+    @Override
+    protected void onFrame(ZhiqianFrame frame) {
+        if (frame.getCommand() == ZhiqianFrameDecoder.CMD_RELAY_SWITCH) {
+            int no = frame.getData(0);
+            if (no >= 1 && no <= 32) {
+                relays = frame.getData(1) != 0 ? relays | 1 << (no - 1) : relays & ~(1 << (no - 1));
+            }
+            byte[] ack = new byte[ZhiqianFrameDecoder.SHORT_FRAME_LENGTH];
+            ack[0] = (byte) (ZhiqianFrameDecoder.HEADER >> 8);
+            ack[1] = (byte) ZhiqianFrameDecoder.HEADER;
+            ack[2] = ZhiqianCommandEncoder.ADDRESS;
+            ack[3] = ZhiqianFrameDecoder.CMD_RELAY_SWITCH_ACK;
+            for (int i = 0; i < 4; i++) {
+                ack[4 + i] = (byte) frame.getData(i);
+            }
+            ack[8] = (byte) (ZhiqianFrameDecoder.TAIL >> 8);
+            ack[9] = (byte) ZhiqianFrameDecoder.TAIL;
+            send(ack);
+        } else if (frame.getCommand() == ZhiqianCommandEncoder.CMD_WRITE_ALL) {
+            byte[] data = new byte[8];
+            int state = 0;
+            for (int i = 0; i < data.length; i++) {
+                int b = frame.getData(i);
+                data[i] = (byte) b;
+                // 每个字节表示4路，01、04、10、40依次为第1到第4路
+                state |= ((b & 0x01) | (b & 0x04) >> 1 | (b & 0x10) >> 2 | (b & 0x40) >> 3) << (i * 4);
+            }
+            relays = state;
+            send(SimFrames.zhiqian(RelayDeviceService.CMD_WRITE_ALL_ACK, data));
+        } else {
+            log.warn("继电器模块收到未知命令：{}", frame);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.jc.simulator;
+
+import com.jc.enums.DeviceRole;
+import com.jc.netty.codec.ModbusCommandEncoder;
+import com.jc.netty.codec.ZhiqianFrameDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.FixedLengthFrameDecoder;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 回放录制流量的设备：按录制的字节发给服务器，记录服务器发来的命令
+ * <p>
+ * 命令按与模拟器相同的方式组帧（IO、继电器为智嵌帧，485为8字节请求），
+ * 录制中发出的字节用同样的方式组帧后比较，不受TCP拆包合包影响。
+ * <p>
+ * 485是一问一答，应答只在有请求等待时才被接受，所以不按时间发出录制的应答，
+ * 而是收到请求时回复录制中同一请求之后的应答（见{@link #script}）
+ */
+class ReplayDevice extends SimulatedDevice<Object> {
+    private final String role;
+    private final String localIp;
+    /** 服务器发来的命令，按到达顺序 */
+    private final List<String> observed = new ArrayList<>();
+    /** 一问一答的设备：请求到录制的应答，按录制顺序 */
+    private final Map<String, Deque<byte[]>> replies = new HashMap<>();
+    /** 录制中的应答用完后重复最后一个，如周期轮询比录制时多了几次 */
+    private final Map<String, byte[]> lastReplies = new HashMap<>();
+    private final AtomicInteger answered = new AtomicInteger();
+    private final AtomicInteger repeated = new AtomicInteger();
+    private final AtomicInteger unanswered = new AtomicInteger();
+
+    /**
+     * @param config  模拟器参数，链路延迟应为0
+     * @param role    设备类型标签
+     * @param localIp 该设备在被测服务器配置中的地址
+     */
+    ReplayDevice(SimulatorConfig config, String name, String role, String localIp) {
+        super(config, name, localIp, Object.class);
+        this.role = role;
+        this.localIp = localIp;
+    }
+
+    String getRole() {
+        return role;
+    }
+
+    String getLocalIp() {
+        return localIp;
+    }
+
+    /**
+     * 发送录制的字节
+     */
+    void replay(byte[] bytes) {
+        send(bytes);
+    }
+
+    /**
+     * 一问一答的设备：录制的应答
+     *
+     * @param request 请求，与{@link #commands}的格式相同
+     * @param reply   应答的字节
+     */
+    void script(String request, byte[] reply) {
+        synchronized (replies) {
+            replies.computeIfAbsent(request, k -> new ArrayDeque<>()).add(reply);
+        }
+    }
+
+    /**
+     * 等待已调用{@link #replay}的字节写出
+     */
+    void sync() {
+        Channel ch = getChannel();
+        if (ch != null) {
+            ch.eventLoop().submit(() -> {
+            }).syncUninterruptibly();
+        }
+    }
+
+    /**
+     * 应答统计：按录制回复、重复最后一个应答、没有录制的应答
+     */
+    Map<String, Object> replyStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("answered", answered.get());
+        stats.put("repeated", repeated.get());
+        stats.put("unanswered", unanswered.get());
+        return stats;
+    }
+
+    /**
+     * 服务器发来的命令
+     */
+    List<String> getObserved() {
+        synchronized (observed) {
+            return new ArrayList<>(observed);
+        }
+    }
+
+    /**
+     * 清除已记录的命令
+     */
+    void clearObserved() {
+        synchronized (observed) {
+            observed.clear();
+        }
+    }
+
+    @Override
+    protected ChannelHandler newFrameDecoder() {
+        return decoder(role, null);
+    }
+
+    @Override
+    protected void onFrame(Object frame) {
+        String command = canonical(frame);
+        synchronized (observed) {
+            observed.add(command);
+        }
+        if (isRequestResponse(role)) {
+            answer(command);
+        }
+    }
+
+    private void answer(String request) {
+        byte[] reply;
+        synchronized (replies) {
+            Deque<byte[]> queue = replies.get(request);
+            reply = queue != null ? queue.poll() : null;
+            if (reply != null) {
+                lastReplies.put(request, reply);
+                answered.incrementAndGet();
+            } else {
+                reply = lastReplies.get(request);
+                (reply != null ? repeated : unanswered).incrementAndGet();
+            }
+        }
+        if (reply != null) {
+            send(reply);
+        }
+    }
+
+    /**
+     * 设备是否一问一答
+     *
+     * @param role  设备类型标签，为null时按帧头判断
+     * @param bytes 设备类型未知时的一段字节
+     */
+    static boolean isRequestResponse(String role, byte[] bytes) {
+        return role != null ? isRequestResponse(role) : !isZhiqian(bytes);
+    }
+
+    private static boolean isRequestResponse(String role) {
+        return DeviceRole.RS485.getTag().equals(role);
+    }
+
+    private static boolean isZhiqian(byte[] bytes) {
+        return bytes.length >= 2 && ((bytes[0] & 0xFF) << 8 | bytes[1] & 0xFF) == ZhiqianFrameDecoder.HEADER;
+    }
+
+    /**
+     * 录制中发出的字节组帧为命令
+     *
+     * @param role  设备类型标签，为null时按帧头判断协议
+     * @param bytes 一次发出的字节
+     * @return 命令，与{@link #getObserved()}的格式相同
+     */
+    static List<String> commands(String role, byte[] bytes) {
+        EmbeddedChannel channel = new EmbeddedChannel(decoder(role, bytes));
+        channel.writeInbound(Unpooled.wrappedBuffer(bytes));
+        List<String> commands = new ArrayList<>();
+        Object frame;
+        while ((frame = channel.readInbound()) != null) {
+            commands.add(canonical(frame));
+            ReferenceCountUtil.release(frame);
+        }
+        channel.finishAndReleaseAll();
+        return commands;
+    }
+
+    private static ChannelHandler decoder(String role, byte[] sample) {
+        return !isRequestResponse(role, sample) ? new ZhiqianFrameDecoder() : new FixedLengthFrameDecoder(ModbusCommandEncoder.WRITE_FRAME_LENGTH);
+    }
+
+    private static String canonical(Object frame) {
+        return frame instanceof ByteBuf ? ByteBufUtil.hexDump((ByteBuf) frame).toUpperCase() : String.valueOf(frame);
+    }
+}
@@ -0,0 +1,448 @@
+package com.jc.simulator;
+
+import com.jc.Application;
+import com.jc.enums.DeviceRole;
+import com.jc.netty.server.NettyServerHandler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 录制流量的确定性回放
+ * <p>
+ * 在同一进程内以sim配置启动应用，每个录制的设备从模拟器配置的回环地址连接服务器，
+ * 把录制中设备发来的字节按原速、N倍速或尽快发出，经过真实的 解码器 → NettyServerHandler → 设备驱动 路径
+ * （485一问一答，由设备收到请求时回复录制的应答）；
+ * 之后把服务器发给各设备的命令和录制中发出的命令比较，并统计解码、分发的吞吐量。结果写成JSON报告，
+ * 有不一致时退出码为1，可以用生产环境的录制做回归测试。运行方式和报告字段见doc/replay.md。
+ * <p>
+ * 参数通过系统属性传入：replay.*为回放参数，sim.*为模拟器参数（见{@link SimulatorConfig}，链路延迟默认为0），
+ * 其余直接覆盖应用配置
+ */
+@Slf4j
+public class ReplayDriver {
+    /** 录制：帧日志目录、段文件或日志文件 */
+    private static final String CAPTURE = System.getProperty("replay.capture");
+    /** 只回放此时间之后的录制，本地时间，如2024-06-10T08:00 */
+    private static final String FROM = System.getProperty("replay.from");
+    /** 只回放此时间之前的录制 */
+    private static final String TO = System.getProperty("replay.to");
+    /** 回放速度倍数，1为原速，0为尽快 */
+    private static final double SPEED = Double.parseDouble(System.getProperty("replay.speed", "1"));
+    /** 发完后等待服务器发出剩余命令的时间（毫秒） */
+    private static final long SETTLE_MS = Long.getLong("replay.settleMs", 2000L);
+    /** 不参与比较的命令，逗号分隔，命令中包含其中之一即忽略，如秤的周期轮询039C40 */
+    private static final List<String> IGNORE = patterns(System.getProperty("replay.ignore", ""));
+    /** 日志文本中设备IP到设备类型，如192.168.1.3=io,192.168.1.4=relay,192.168.1.5=rs485 */
+    private static final String LOG_IPS = System.getProperty("replay.logIps");
+    /** 等待设备全部连接的最长时间（毫秒） */
+    private static final long CONNECT_TIMEOUT_MS = Long.getLong("replay.connectTimeoutMs", 30_000L);
+    /** 报告文件 */
+    private static final String REPORT = System.getProperty("replay.report", "target/replay-report.json");
+    /** 报告中每台设备最多列出的不一致命令种数 */
+    private static final int MAX_LISTED = 20;
+    /** 服务器处理完的判定：队列为空且收到的帧数连续这么多毫秒不变 */
+    private static final long IDLE_MS = 50;
+
+    public static void main(String[] args) throws Exception {
+        if (CAPTURE == null) {
+            log.error("缺少录制文件：-Dreplay.capture=<帧日志目录、段文件或日志文件>");
+            System.exit(2);
+        }
+        Capture capture = Capture.load(Paths.get(CAPTURE), logIps())
+                .window(FROM != null ? Capture.epochNanos(FROM) : Long.MIN_VALUE, TO != null ? Capture.epochNanos(TO) : Long.MAX_VALUE);
+        List<String> recordedMachines = capture.machines();
+        if (recordedMachines.isEmpty()) {
+            log.error("录制中没有设备流量：{}", CAPTURE);
+            System.exit(2);
+        }
+        SimulatorConfig config = SimulatorConfig.fromSystemProperties();
+        if (System.getProperty("sim.latencyMs") == null) {
+            config.latencyMs = 0;
+        }
+        if (System.getProperty("sim.jitterMs") == null) {
+            config.jitterMs = 0;
+        }
+        config.machines = recordedMachines.size();
+
+        // 录制中的第i台机器回放为应用中的第i台机器，使用模拟器第i台机器的地址
+        Map<String, ReplayDevice> devices = new LinkedHashMap<>();
+        for (int i = 0; i < recordedMachines.size(); i++) {
+            String machine = recordedMachines.get(i);
+            SimulatorConfig machineConfig = config.forMachine(i);
+            for (Capture.Frame frame : capture.getFrames()) {
+                if (frame.machine.equals(machine) && frame.role != null && !devices.containsKey(key(machine, frame.role))) {
+                    String ip = localIp(machineConfig, frame.role);
+                    if (ip != null) {
+                        devices.put(key(machine, frame.role), new ReplayDevice(machineConfig, "回放" + key(machine, frame.role), frame.role, ip));
+                    }
+                }
+            }
+        }
+
+        script(capture, devices);
+
+        EventLoopGroup group = new NioEventLoopGroup(2, new DefaultThreadFactory("replay"));
+        int exitCode;
+        try {
+            for (ReplayDevice device : devices.values()) {
+                device.start(group);
+            }
+            Map<String, Object> properties = EndToEndBenchmark.defaultProperties(config);
+            properties.put("journal.enabled", false);
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                    .profiles("sim")
+                    .properties(properties)
+                    .run(args);
+            try {
+                exitCode = run(context, capture, recordedMachines, devices) ? 0 : 1;
+            } finally {
+                context.close();
+            }
+        } finally {
+            for (ReplayDevice device : devices.values()) {
+                device.stop();
+            }
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+        // Netty服务器的线程不受Spring管理，直接退出
+        System.exit(exitCode);
+    }
+
+    private static boolean run(ConfigurableApplicationContext context, Capture capture, List<String> recordedMachines,
+                               Map<String, ReplayDevice> devices) throws Exception {
+        NettyServerHandler server = context.getBean(NettyServerHandler.class);
+        MeterRegistry registry = context.getBean(MeterRegistry.class);
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+        while (!allConnected(server, devices)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("回放设备在" + CONNECT_TIMEOUT_MS + "ms内没有全部连接");
+            }
+            Thread.sleep(50);
+        }
+        // 连接后应用自己发出的命令（如IO模块重置）不算在回放结果里
+        for (ReplayDevice device : devices.values()) {
+            device.clearObserved();
+        }
+        log.info("{}个回放设备已连接，开始回放{}，速度：{}", devices.size(), CAPTURE, SPEED > 0 ? SPEED + "倍" : "尽快");
+
+        long startedAt = System.currentTimeMillis();
+        double framesBefore = sum(registry, "device.frames.in");
+        double droppedBefore = sum(registry, "device.frames.dropped");
+        List<Capture.Frame> inbound = new ArrayList<>();
+        for (Capture.Frame frame : capture.getFrames()) {
+            if (frame.inbound && devices.containsKey(key(frame.machine, frame.role))
+                    && !ReplayDevice.isRequestResponse(frame.role, frame.bytes)) {
+                inbound.add(frame);
+            }
+        }
+        long bytes = 0;
+        long start = System.nanoTime();
+        long base = inbound.isEmpty() ? 0 : inbound.get(0).timestampNanos;
+        for (Capture.Frame frame : inbound) {
+            if (SPEED > 0) {
+                long due = start + (long) ((frame.timestampNanos - base) / SPEED);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            devices.get(key(frame.machine, frame.role)).replay(frame.bytes);
+            bytes += frame.bytes.length;
+        }
+        for (ReplayDevice device : devices.values()) {
+            device.sync();
+        }
+        long sentNanos = System.nanoTime() - start;
+        long processedNanos = awaitIdle(registry) - start;
+        double frames = sum(registry, "device.frames.in") - framesBefore;
+        Thread.sleep(SETTLE_MS);
+
+        Map<String, Object> throughput = new LinkedHashMap<>();
+        throughput.put("records", inbound.size());
+        throughput.put("bytes", bytes);
+        throughput.put("framesDecoded", (long) frames);
+        throughput.put("framesDropped", (long) (sum(registry, "device.frames.dropped") - droppedBefore));
+        throughput.put("recordedMs", inbound.isEmpty() ? 0 : TimeUnit.NANOSECONDS.toMillis(inbound.get(inbound.size() - 1).timestampNanos - base));
+        throughput.put("sendMs", TimeUnit.NANOSECONDS.toMillis(sentNanos));
+        throughput.put("processMs", TimeUnit.NANOSECONDS.toMillis(processedNanos));
+        throughput.put("framesPerSecond", processedNanos > 0 ? frames * 1e9 / processedNanos : 0);
+
+        List<Map<String, Object>> results = compare(capture, recordedMachines, devices);
+        boolean passed = true;
+        for (Map<String, Object> result : results) {
+            passed &= (Boolean) result.get("passed");
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", Instant.ofEpochMilli(startedAt).toString());
+        report.put("environment", EndToEndBenchmark.environment());
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("capture", CAPTURE);
+        parameters.put("from", FROM);
+        parameters.put("to", TO);
+        parameters.put("speed", SPEED);
+        parameters.put("settleMs", SETTLE_MS);
+        parameters.put("ignore", IGNORE);
+        parameters.put("machines", recordedMachines);
+        report.put("parameters", parameters);
+        report.put("inbound", throughput);
+        report.put("devices", results);
+        report.put("passed", passed);
+        File file = new File(REPORT);
+        EndToEndBenchmark.write(file, report);
+        log.info("回放完成：{}条记录，解码{}帧，处理{}ms，{}，报告已写入{}", inbound.size(), (long) frames,
+                TimeUnit.NANOSECONDS.toMillis(processedNanos), passed ? "命令一致" : "命令不一致", file.getAbsolutePath());
+        return passed;
+    }
+
+    /**
+     * 一问一答的设备：录制中每个请求之后、下一个请求之前收到的字节作为该请求的应答
+     */
+    private static void script(Capture capture, Map<String, ReplayDevice> devices) {
+        Map<String, String> pending = new HashMap<>();
+        Map<String, ByteArrayOutputStream> replies = new HashMap<>();
+        for (Capture.Frame frame : capture.getFrames()) {
+            if (!ReplayDevice.isRequestResponse(frame.role, frame.bytes)) {
+                continue;
+            }
+            // 日志文本中发出的命令不带设备，一问一答的只有485
+            String key = key(frame.machine, frame.role != null ? frame.role : DeviceRole.RS485.getTag());
+            ReplayDevice device = devices.get(key);
+            if (device == null) {
+                continue;
+            }
+            if (frame.inbound) {
+                ByteArrayOutputStream reply = replies.get(key);
+                if (reply != null) {
+                    reply.write(frame.bytes, 0, frame.bytes.length);
+                }
+                continue;
+            }
+            flush(device, pending.remove(key), replies.remove(key));
+            List<String> commands = ReplayDevice.commands(DeviceRole.RS485.getTag(), frame.bytes);
+            if (!commands.isEmpty()) {
+                pending.put(key, commands.get(commands.size() - 1));
+                replies.put(key, new ByteArrayOutputStream());
+            }
+        }
+        for (Map.Entry<String, String> entry : pending.entrySet()) {
+            flush(devices.get(entry.getKey()), entry.getValue(), replies.get(entry.getKey()));
+        }
+    }
+
+    private static void flush(ReplayDevice device, String request, ByteArrayOutputStream reply) {
+        if (request != null && reply.size() > 0) {
+            device.script(request, reply.toByteArray());
+        }
+    }
+
+    /**
+     * 按设备比较录制中发出的命令和回放时服务器发出的命令
+     * <p>
+     * 比较命令的种类和次数；知道设备时还给出按顺序第一个不同的位置。录制中不知道设备的命令（日志文本）
+     * 与该机器所有设备收到的命令合并比较
+     */
+    private static List<Map<String, Object>> compare(Capture capture, List<String> recordedMachines,
+                                                     Map<String, ReplayDevice> devices) {
+        Map<String, List<String>> expected = new LinkedHashMap<>();
+        for (String key : devices.keySet()) {
+            expected.put(key, new ArrayList<>());
+        }
+        // 与回放时清除连接后的命令对应，录制中每台机器第一条收到的帧之前发出的命令不参与比较
+        Map<String, Long> firstInbound = new HashMap<>();
+        for (Capture.Frame frame : capture.getFrames()) {
+            if (frame.inbound) {
+                firstInbound.putIfAbsent(frame.machine, frame.timestampNanos);
+            }
+        }
+        for (Capture.Frame frame : capture.getFrames()) {
+            if (frame.inbound || frame.timestampNanos < firstInbound.getOrDefault(frame.machine, Long.MAX_VALUE)) {
+                continue;
+            }
+            String key = frame.role != null ? key(frame.machine, frame.role) : key(frame.machine, "*");
+            if (frame.role != null && !devices.containsKey(key)) {
+                continue;
+            }
+            for (String command : ReplayDevice.commands(frame.role, frame.bytes)) {
+                if (!isIgnored(command)) {
+                    expected.computeIfAbsent(key, k -> new ArrayList<>()).add(command);
+                }
+            }
+        }
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : expected.entrySet()) {
+            String key = entry.getKey();
+            List<String> observed = new ArrayList<>();
+            ReplayDevice device = devices.get(key);
+            if (device != null) {
+                observed.addAll(device.getObserved());
+            } else {
+                String machine = key.substring(0, key.indexOf('/'));
+                for (Map.Entry<String, ReplayDevice> d : devices.entrySet()) {
+                    if (d.getKey().startsWith(machine + "/")) {
+                        observed.addAll(d.getValue().getObserved());
+                    }
+                }
+            }
+            observed.removeIf(ReplayDriver::isIgnored);
+            Map<String, Object> result = compare(key, entry.getValue(), observed, device != null);
+            if (device != null && ReplayDevice.isRequestResponse(device.getRole(), null)) {
+                result.put("replies", device.replyStats());
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static Map<String, Object> compare(String device, List<String> expected, List<String> observed, boolean ordered) {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (String command : expected) {
+            counts.merge(command, 1, Integer::sum);
+        }
+        for (String command : observed) {
+            counts.merge(command, -1, Integer::sum);
+        }
+        Map<String, Integer> missing = new LinkedHashMap<>();
+        Map<String, Integer> unexpected = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            if (count.getValue() > 0 && missing.size() < MAX_LISTED) {
+                missing.put(count.getKey(), count.getValue());
+            } else if (count.getValue() < 0 && unexpected.size() < MAX_LISTED) {
+                unexpected.put(count.getKey(), -count.getValue());
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("device", device);
+        result.put("expected", expected.size());
+        result.put("observed", observed.size());
+        result.put("missing", missing);
+        result.put("unexpected", unexpected);
+        if (ordered) {
+            for (int i = 0; i < Math.max(expected.size(), observed.size()); i++) {
+                String e = i < expected.size() ? expected.get(i) : null;
+                String o = i < observed.size() ? observed.get(i) : null;
+                if (e == null || !e.equals(o)) {
+                    Map<String, Object> divergence = new LinkedHashMap<>();
+                    divergence.put("index", i);
+                    divergence.put("expected", e);
+                    divergence.put("observed", o);
+                    result.put("firstDivergence", divergence);
+                    break;
+                }
+            }
+        }
+        result.put("passed", missing.isEmpty() && unexpected.isEmpty());
+        return result;
+    }
+
+    private static boolean allConnected(NettyServerHandler server, Map<String, ReplayDevice> devices) {
+        for (ReplayDevice device : devices.values()) {
+            if (!device.isConnected() || server.getChannel(device.getLocalIp()) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 等待服务器处理完收到的帧
+     *
+     * @return 最后一次收到帧数变化的时间（System.nanoTime()）
+     */
+    private static long awaitIdle(MeterRegistry registry) throws InterruptedException {
+        double frames = sum(registry, "device.frames.in");
+        long changedAt = System.nanoTime();
+        while (sum(registry, "device.handler.queue") > 0
+                || System.nanoTime() - changedAt < TimeUnit.MILLISECONDS.toNanos(IDLE_MS)) {
+            Thread.sleep(1);
+            double now = sum(registry, "device.frames.in");
+            if (now != frames) {
+                frames = now;
+                changedAt = System.nanoTime();
+            }
+        }
+        return changedAt;
+    }
+
+    /**
+     * 所有机器、设备的同名计数器或仪表之和
+     */
+    private static double sum(MeterRegistry registry, String name) {
+        double sum = 0;
+        for (Counter counter : registry.find(name).counters()) {
+            sum += counter.count();
+        }
+        for (Gauge gauge : registry.find(name).gauges()) {
+            sum += gauge.value();
+        }
+        return sum;
+    }
+
+    private static String key(String machine, String role) {
+        return machine + "/" + role;
+    }
+
+    private static String localIp(SimulatorConfig config, String role) {
+        if (DeviceRole.IO.getTag().equals(role)) {
+            return config.ioIp;
+        }
+        if (DeviceRole.RELAY.getTag().equals(role)) {
+            return config.relayIp;
+        }
+        if (DeviceRole.RS485.getTag().equals(role)) {
+            return config.lanTo485;
+        }
+        return null;
+    }
+
+    private static Map<String, String> logIps() {
+        if (LOG_IPS == null) {
+            return Capture.defaultLogIps();
+        }
+        Map<String, String> ips = new LinkedHashMap<>();
+        for (String pair : LOG_IPS.split(",")) {
+            String[] parts = pair.split("=");
+            ips.put(parts[0].trim(), parts[1].trim());
+        }
+        return ips;
+    }
+
+    private static List<String> patterns(String value) {
+        List<String> patterns = new ArrayList<>();
+        for (String pattern : value.split(",")) {
+            if (!pattern.trim().isEmpty()) {
+                patterns.add(pattern.trim());
+            }
+        }
+        return patterns;
+    }
+
+    private static boolean isIgnored(String command) {
+        for (String pattern : IGNORE) {
+            if (command.contains(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
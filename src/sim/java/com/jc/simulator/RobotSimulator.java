@@ -0,0 +1,115 @@
+package com.jc.simulator;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.DelimiterBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Duco机器人模拟器，在ducoIp:ducoPort监听
+ * <p>
+ * 命令为run(脚本名)，不带换行，以右括号分帧；每条命令先回一行ok，
+ * 经过scriptMs后推送done(脚本名)。脚本按收到的顺序依次执行
+ */
+@Slf4j
+public class RobotSimulator {
+    /** 命令最大长度 */
+    private static final int MAX_COMMAND_LENGTH = 1024;
+    private static final String RUN_PREFIX = "run(";
+
+    private final SimulatorConfig config;
+    private final MachineModel model;
+    private final AtomicLong scripts = new AtomicLong();
+    private Channel serverChannel;
+
+    public RobotSimulator(SimulatorConfig config, MachineModel model) {
+        this.config = config;
+        this.model = model;
+    }
+
+    /**
+     * 开始监听
+     *
+     * @param group 事件循环组
+     */
+    public void start(EventLoopGroup group) throws InterruptedException {
+        serverChannel = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(
+                                new DelimiterBasedFrameDecoder(MAX_COMMAND_LENGTH, false, Unpooled.wrappedBuffer(new byte[]{')'})),
+                                new StringDecoder(StandardCharsets.UTF_8),
+                                new RobotSession());
+                        log.info("机器人模拟器接受连接：{}", ch.remoteAddress());
+                    }
+                })
+                .bind(new InetSocketAddress(config.ducoIp, config.ducoPort))
+                .sync()
+                .channel();
+        log.info("机器人模拟器已在{}:{}监听", config.ducoIp, config.ducoPort);
+    }
+
+    public void stop() {
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+    }
+
+    /**
+     * 已执行完成的脚本数
+     */
+    public long getScripts() {
+        return scripts.get();
+    }
+
+    private static byte[] line(String text) {
+        return (text + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 一个机器人连接，只在其事件循环线程上使用
+     */
+    private class RobotSession extends SimpleChannelInboundHandler<String> {
+        private final LinkConditions link = new LinkConditions(config);
+        /** 上一个脚本的结束时间（纳秒） */
+        private long busyUntil;
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, String text) {
+            String command = text.trim();
+            Channel channel = ctx.channel();
+            if (!command.startsWith(RUN_PREFIX) || !command.endsWith(")")) {
+                log.warn("机器人收到未知命令：{}", command);
+                link.send(channel, line("error"));
+                return;
+            }
+            String script = command.substring(RUN_PREFIX.length(), command.length() - 1);
+            link.send(channel, line("ok"));
+            long now = System.nanoTime();
+            busyUntil = Math.max(busyUntil, now) + TimeUnit.MILLISECONDS.toNanos(config.scriptMs);
+            channel.eventLoop().schedule(() -> {
+                if (script.equals(config.takeBowlScript)) {
+                    model.takeBowl();
+                }
+                scripts.incrementAndGet();
+                link.send(channel, line("done(" + script + ")"));
+            }, busyUntil - now, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.jc.simulator;
+
+import com.jc.netty.codec.ModbusCommandEncoder;
+import com.jc.service.impl.Weighing;
+import com.jc.utils.CRC16;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandler;
+import io.netty.handler.codec.FixedLengthFrameDecoder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 网口485转换器模拟器，模拟其后的步进电机驱动器和称重传感器
+ * <p>
+ * 服务器发出的请求都是8字节：06写单个寄存器原样回显并驱动电机模型；
+ * 03读称重寄存器回 从站 03 04 读值[4] CRC。CRC错误的请求不应答，和真实从站一致
+ */
+@Slf4j
+public class Rs485GatewaySimulator extends SimulatedDevice<ByteBuf> {
+    private final MachineModel model;
+
+    public Rs485GatewaySimulator(SimulatorConfig config, MachineModel model) {
+        super(config, "485转换器", config.lanTo485, ByteBuf.class);
+        this.model = model;
+    }
+
+    @Override
+    protected ChannelHandler newFrameDecoder() {
+        return new FixedLengthFrameDecoder(ModbusCommandEncoder.WRITE_FRAME_LENGTH);
+    }
+
+    @Override
+    protected void onFrame(ByteBuf in) {
+        byte[] request = ByteBufUtil.getBytes(in);
+        if (!CRC16.check(request, 0, request.length)) {
+            log.warn("485请求CRC错误：{}", ByteBufUtil.hexDump(request));
+            return;
+        }
+        int slave = request[0] & 0xFF;
+        int function = request[1] & 0xFF;
+        int register = (request[2] & 0xFF) << 8 | request[3] & 0xFF;
+        int value = (request[4] & 0xFF) << 8 | request[5] & 0xFF;
+        if (function == ModbusCommandEncoder.FUNC_WRITE_SINGLE_REGISTER) {
+            if (model.writeRegister(slave, register, value)) {
+                send(request);
+            } else {
+                send(exception(slave, function, 0x02));
+            }
+        } else if (function == ModbusCommandEncoder.FUNC_READ_HOLDING_REGISTERS && register == Weighing.REG_WEIGHT) {
+            int weight = model.weight(slave);
+            send(SimFrames.modbus((byte) slave, (byte) function, (byte) 4,
+                    (byte) (weight >> 24), (byte) (weight >> 16), (byte) (weight >> 8), (byte) weight));
+        } else {
+            send(exception(slave, function, 0x01));
+        }
+    }
+
+    /**
+     * 异常应答：从站 功能码|80 异常码 CRC
+     */
+    private static byte[] exception(int slave, int function, int code) {
+        return SimFrames.modbus((byte) slave, (byte) (function | 0x80), (byte) code);
+    }
+}
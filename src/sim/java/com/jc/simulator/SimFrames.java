@@ -0,0 +1,51 @@
+package com.jc.simulator;
+
+import com.jc.netty.codec.ZhiqianCommandEncoder;
+import com.jc.netty.codec.ZhiqianFrameDecoder;
+import com.jc.utils.CRC16;
+
+/**
+ * 模拟设备上行帧的编码
+ */
+final class SimFrames {
+
+    private SimFrames() {
+    }
+
+    /**
+     * 智嵌协议15字节帧：48 3A 地址 命令 数据[8] 校验和 45 44
+     *
+     * @param command 命令码
+     * @param data    8个数据字节
+     */
+    static byte[] zhiqian(int command, byte[] data) {
+        byte[] frame = new byte[ZhiqianFrameDecoder.LONG_FRAME_LENGTH];
+        frame[0] = (byte) (ZhiqianFrameDecoder.HEADER >> 8);
+        frame[1] = (byte) ZhiqianFrameDecoder.HEADER;
+        frame[2] = ZhiqianCommandEncoder.ADDRESS;
+        frame[3] = (byte) command;
+        System.arraycopy(data, 0, frame, 4, 8);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += frame[i] & 0xFF;
+        }
+        frame[12] = (byte) sum;
+        frame[13] = (byte) (ZhiqianFrameDecoder.TAIL >> 8);
+        frame[14] = (byte) ZhiqianFrameDecoder.TAIL;
+        return frame;
+    }
+
+    /**
+     * Modbus RTU帧，在给定字节后追加CRC（低字节在前）
+     *
+     * @param body 地址、功能码和数据
+     */
+    static byte[] modbus(byte... body) {
+        byte[] frame = new byte[body.length + 2];
+        System.arraycopy(body, 0, frame, 0, body.length);
+        int crc = CRC16.crc16(body, 0, body.length);
+        frame[body.length] = (byte) crc;
+        frame[body.length + 1] = (byte) (crc >> 8);
+        return frame;
+    }
+}
@@ -0,0 +1,158 @@
+package com.jc.simulator;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 作为客户端连接被测服务器的模拟设备
+ * <p>
+ * 从指定的回环地址发起连接，服务器据此识别设备类型；连接失败或断开后每秒重连一次
+ *
+ * @param <T> 解码后的命令类型
+ */
+@Slf4j
+public abstract class SimulatedDevice<T> {
+    /** 重连间隔（毫秒） */
+    private static final long RECONNECT_DELAY_MS = 1000;
+
+    protected final SimulatorConfig config;
+    protected final LinkConditions link;
+    private final String name;
+    private final String localIp;
+    private final Class<T> frameType;
+    private EventLoopGroup group;
+    private volatile Channel channel;
+    private volatile boolean running;
+
+    protected SimulatedDevice(SimulatorConfig config, String name, String localIp, Class<T> frameType) {
+        this.config = config;
+        this.link = new LinkConditions(config);
+        this.name = name;
+        this.localIp = localIp;
+        this.frameType = frameType;
+    }
+
+    /**
+     * 开始连接服务器
+     *
+     * @param group 事件循环组
+     */
+    public void start(EventLoopGroup group) {
+        this.group = group;
+        this.running = true;
+        connect();
+    }
+
+    public void stop() {
+        running = false;
+        Channel ch = channel;
+        if (ch != null) {
+            ch.close();
+        }
+    }
+
+    public boolean isConnected() {
+        Channel ch = channel;
+        return ch != null && ch.isActive();
+    }
+
+    /**
+     * 当前连接，未连接时为null
+     */
+    protected Channel getChannel() {
+        return channel;
+    }
+
+    public LinkConditions getLink() {
+        return link;
+    }
+
+    private void connect() {
+        if (!running) {
+            return;
+        }
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(newFrameDecoder(), new SimpleChannelInboundHandler<T>(frameType) {
+                            @Override
+                            protected void channelRead0(ChannelHandlerContext ctx, T frame) {
+                                onFrame(frame);
+                            }
+
+                            @Override
+                            public void channelInactive(ChannelHandlerContext ctx) {
+                                log.info("{}与服务器断开", name);
+                                scheduleReconnect();
+                            }
+                        });
+                    }
+                });
+        InetSocketAddress remote = new InetSocketAddress(config.serverHost, config.serverPort);
+        ChannelFuture future = bootstrap.connect(remote, new InetSocketAddress(localIp, 0));
+        future.addListener((ChannelFuture f) -> {
+            if (f.isSuccess()) {
+                channel = f.channel();
+                log.info("{}已从{}连接到服务器{}", name, localIp, remote);
+                onConnected();
+            } else {
+                log.debug("{}连接服务器失败：{}", name, f.cause().getMessage());
+                scheduleReconnect();
+            }
+        });
+    }
+
+    private void scheduleReconnect() {
+        if (running) {
+            group.schedule(this::connect, RECONNECT_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 按链路条件发送一帧，未连接时丢弃
+     */
+    protected void send(byte[] frame) {
+        Channel ch = channel;
+        if (ch == null || !ch.isActive()) {
+            return;
+        }
+        if (ch.eventLoop().inEventLoop()) {
+            link.send(ch, frame);
+        } else {
+            ch.eventLoop().execute(() -> link.send(ch, frame));
+        }
+    }
+
+    /**
+     * 服务器发来的命令的帧解码器
+     */
+    protected abstract ChannelHandler newFrameDecoder();
+
+    /**
+     * 处理服务器发来的命令
+     */
+    protected abstract void onFrame(T frame);
+
+    /**
+     * 连接建立后调用
+     */
+    protected void onConnected() {
+    }
+}
@@ -0,0 +1,78 @@
+package com.jc.simulator;
+
+import io.netty.channel.EventLoopGroup;
+
+/**
+ * 一台模拟机器：IO模块、继电器模块、485转换器（电机和秤）以及Duco机器人，共用一个机器运动模型
+ */
+public class SimulatedMachine implements AutoCloseable {
+    private final SimulatorConfig config;
+    private final MachineModel model;
+    private final IoBoardSimulator ioBoard;
+    private final RelayBoardSimulator relayBoard;
+    private final Rs485GatewaySimulator gateway;
+    private final RobotSimulator robot;
+
+    /**
+     * @param config 本机器的参数，见{@link SimulatorConfig#forMachine(int)}
+     */
+    public SimulatedMachine(SimulatorConfig config) {
+        this.config = config;
+        this.model = new MachineModel(config);
+        this.ioBoard = new IoBoardSimulator(config, model);
+        this.relayBoard = new RelayBoardSimulator(config);
+        this.gateway = new Rs485GatewaySimulator(config, model);
+        this.robot = new RobotSimulator(config, model);
+    }
+
+    /**
+     * 启动所有模拟设备，机器人先开始监听，模块连接失败时自动重连
+     */
+    public void start(EventLoopGroup group) throws InterruptedException {
+        robot.start(group);
+        model.start(group.next());
+        ioBoard.start(group);
+        relayBoard.start(group);
+        gateway.start(group);
+    }
+
+    /**
+     * 三个模块是否都已连接服务器
+     */
+    public boolean isConnected() {
+        return ioBoard.isConnected() && relayBoard.isConnected() && gateway.isConnected();
+    }
+
+    public SimulatorConfig getConfig() {
+        return config;
+    }
+
+    public MachineModel getModel() {
+        return model;
+    }
+
+    public IoBoardSimulator getIoBoard() {
+        return ioBoard;
+    }
+
+    public RelayBoardSimulator getRelayBoard() {
+        return relayBoard;
+    }
+
+    public Rs485GatewaySimulator getGateway() {
+        return gateway;
+    }
+
+    public RobotSimulator getRobot() {
+        return robot;
+    }
+
+    @Override
+    public void close() {
+        ioBoard.stop();
+        relayBoard.stop();
+        gateway.stop();
+        robot.stop();
+        model.stop();
+    }
+}
@@ -0,0 +1,115 @@
+package com.jc.simulator;
+
+/**
+ * 模拟器参数，默认值可通过同名系统属性（前缀sim.）覆盖，如-Dsim.latencyMs=5
+ */
+public class SimulatorConfig {
+    /** 被测服务器地址 */
+    public String serverHost = "127.0.0.1";
+    /** 被测服务器端口，对应netty.port */
+    public int serverPort = 5555;
+    /** IO模块的回环地址，对应IoIp */
+    public String ioIp = "127.0.0.3";
+    /** 继电器模块的回环地址，对应relayIp */
+    public String relayIp = "127.0.0.4";
+    /** 485转换器的回环地址，对应lanTo485 */
+    public String lanTo485 = "127.0.0.5";
+    /** 机器人监听的回环地址，对应ducoIp */
+    public String ducoIp = "127.0.0.10";
+    /** 机器人监听端口，对应ducoPort */
+    public int ducoPort = 2000;
+    /** 模拟的机器数，第k台机器（从0开始）的地址第三段加k，如127.0.1.3 */
+    public int machines = 1;
+
+    /** 每帧的固定延迟（毫秒） */
+    public long latencyMs = 2;
+    /** 延迟抖动上限（毫秒），在0到该值之间均匀分布 */
+    public long jitterMs = 1;
+    /** 一帧拆成两段发送的概率 */
+    public double splitProbability = 0;
+    /** 丢弃应答帧的概率 */
+    public double dropProbability = 0;
+
+    /** IO模块定时上报周期（毫秒），状态变化时立即上报 */
+    public long ioReportIntervalMs = 500;
+    /** 电机运动模型的步长（毫秒） */
+    public long tickMs = 5;
+    /** 速度寄存器每1个单位对应的每秒脉冲数 */
+    public int pulsesPerSecondPerSpeed = 20;
+    /** 速度寄存器默认值 */
+    public int defaultSpeed = 100;
+    /** 转盘相邻工位之间的脉冲数 */
+    public int turntablePulsesPerStation = 800;
+    /** 工位传感器在工位前后各多少脉冲内为高电平 */
+    public int stationSensorWidth = 40;
+    /** 碗升降轨道总行程（脉冲） */
+    public int liftTravel = 6000;
+    /** 最上面的碗到达碗传感器时的升降位置（脉冲），每取走一个碗增加一个碗高 */
+    public int bowlSensorAt = 1000;
+    /** 一个碗的高度（脉冲） */
+    public int bowlHeight = 200;
+    /** 碗架上的碗数 */
+    public int bowls = 20;
+    /** 机器人脚本执行时间（毫秒） */
+    public long scriptMs = 1500;
+    /** 取碗脚本名，执行完成时碗架上少一个碗 */
+    public String takeBowlScript = "takeABowl.jspf";
+    /** 秤的读值（0.01千克） */
+    public int weight = 1250;
+
+    /**
+     * 第index台机器的参数：四个设备地址的第三段加index，其余参数相同
+     *
+     * @param index 机器序号，从0开始
+     */
+    public SimulatorConfig forMachine(int index) {
+        SimulatorConfig config = new SimulatorConfig();
+        try {
+            for (java.lang.reflect.Field field : SimulatorConfig.class.getFields()) {
+                field.set(config, field.get(this));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        config.machines = 1;
+        config.ioIp = offset(ioIp, index);
+        config.relayIp = offset(relayIp, index);
+        config.lanTo485 = offset(lanTo485, index);
+        config.ducoIp = offset(ducoIp, index);
+        return config;
+    }
+
+    private static String offset(String ip, int index) {
+        String[] parts = ip.split("\\.");
+        parts[2] = String.valueOf(Integer.parseInt(parts[2]) + index);
+        return String.join(".", parts);
+    }
+
+    /**
+     * 读取系统属性覆盖默认值
+     */
+    public static SimulatorConfig fromSystemProperties() {
+        SimulatorConfig config = new SimulatorConfig();
+        for (java.lang.reflect.Field field : SimulatorConfig.class.getFields()) {
+            String value = System.getProperty("sim." + field.getName());
+            if (value == null) {
+                continue;
+            }
+            try {
+                Class<?> type = field.getType();
+                if (type == int.class) {
+                    field.setInt(config, Integer.parseInt(value));
+                } else if (type == long.class) {
+                    field.setLong(config, Long.parseLong(value));
+                } else if (type == double.class) {
+                    field.setDouble(config, Double.parseDouble(value));
+                } else {
+                    field.set(config, value);
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return config;
+    }
+}
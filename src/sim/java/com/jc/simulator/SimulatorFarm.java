@@ -0,0 +1,85 @@
+package com.jc.simulator;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 设备模拟器集群：一台或多台{@link SimulatedMachine}
+ * <p>
+ * 每台机器的三个模块各自从不同的回环地址连接被测服务器，机器人在ducoIp:ducoPort监听；
+ * 第k台机器的地址第三段加k。服务器以sim配置（application-sim.properties）启动后即可联调，
+ * 不需要真实设备。启动方式见doc/simulator.md
+ */
+@Slf4j
+public class SimulatorFarm implements AutoCloseable {
+    /** 每台模拟机器的线程数 */
+    private static final int THREADS_PER_MACHINE = 2;
+
+    private final SimulatorConfig config;
+    private final List<SimulatedMachine> machines = new ArrayList<>();
+    private EventLoopGroup group;
+
+    public SimulatorFarm(SimulatorConfig config) {
+        this.config = config;
+        for (int i = 0; i < Math.max(1, config.machines); i++) {
+            machines.add(new SimulatedMachine(config.forMachine(i)));
+        }
+    }
+
+    /**
+     * 启动所有模拟机器
+     */
+    public SimulatorFarm start() throws InterruptedException {
+        group = new NioEventLoopGroup(THREADS_PER_MACHINE * machines.size(), new DefaultThreadFactory("simulator"));
+        for (SimulatedMachine machine : machines) {
+            machine.start(group);
+        }
+        return this;
+    }
+
+    /**
+     * 所有机器的模块是否都已连接服务器
+     */
+    public boolean isConnected() {
+        for (SimulatedMachine machine : machines) {
+            if (!machine.isConnected()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public SimulatorConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * 所有模拟机器，第k台的地址第三段加k
+     */
+    public List<SimulatedMachine> getMachines() {
+        return Collections.unmodifiableList(machines);
+    }
+
+    @Override
+    public void close() {
+        for (SimulatedMachine machine : machines) {
+            machine.close();
+        }
+        if (group != null) {
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        SimulatorFarm farm = new SimulatorFarm(SimulatorConfig.fromSystemProperties()).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(farm::close, "simulator-shutdown"));
+        log.info("设备模拟器已启动，{}台机器，连接{}:{}", farm.machines.size(), farm.config.serverHost, farm.config.serverPort);
+        Thread.currentThread().join();
+    }
+}
@@ -3,7 +3,7 @@ package com.jc.junchuang;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "journal.enabled=false")
 class JunchuangApplicationTests {
 
     @Test
@@ -0,0 +1,115 @@
+package com.jc.netty.client;
+
+import com.jc.netty.codec.RobotLine;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RobotClientTest {
+
+    private final NioEventLoopGroup group = new NioEventLoopGroup(1);
+
+    @AfterEach
+    void tearDown() {
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 读取一个命令（以右括号结尾）并应答一行
+     */
+    private static String readCommand(BufferedReader in) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0) {
+            sb.append((char) c);
+            if (c == ')') {
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void queuesUntilConnectedAndReconnectsAfterDrop() throws Exception {
+        LinkedBlockingQueue<RobotLine> unsolicited = new LinkedBlockingQueue<>();
+        try (ServerSocket server = new ServerSocket(0)) {
+            RobotClient client = new RobotClient(group, "127.0.0.1", server.getLocalPort(), unsolicited::add);
+            client.start();
+            CompletableFuture<RobotLine> first = client.send("run(reset.jspf)");
+
+            try (Socket robot = server.accept()) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(robot.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream out = robot.getOutputStream();
+                assertEquals("run(reset.jspf)", readCommand(in));
+                out.write("ok\r\nstate:idle\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                assertEquals("ok", first.get(5, TimeUnit.SECONDS).getText());
+                assertEquals("state:idle", unsolicited.poll(5, TimeUnit.SECONDS).getText());
+
+                CompletableFuture<RobotLine> lost = client.send("run(takeABowl.jspf)");
+                assertEquals("run(takeABowl.jspf)", readCommand(in));
+                robot.close();
+                assertThrows(Exception.class, () -> lost.get(5, TimeUnit.SECONDS));
+            }
+
+            // 断开后自动重连，复用同一个客户端
+            try (Socket robot = server.accept()) {
+                CompletableFuture<RobotLine> again = client.send("run(putBowl.jspf)");
+                BufferedReader in = new BufferedReader(new InputStreamReader(robot.getInputStream(), StandardCharsets.UTF_8));
+                assertEquals("run(putBowl.jspf)", readCommand(in));
+                robot.getOutputStream().write("ok\n".getBytes(StandardCharsets.UTF_8));
+                assertEquals("ok", again.get(5, TimeUnit.SECONDS).getText());
+            }
+            client.stop();
+        }
+    }
+
+    @Test
+    void pushLinesAndLateRepliesDoNotShiftReplies() throws Exception {
+        LinkedBlockingQueue<RobotLine> unsolicited = new LinkedBlockingQueue<>();
+        try (ServerSocket server = new ServerSocket(0)) {
+            RobotClient client = new RobotClient(group, "127.0.0.1", server.getLocalPort(), unsolicited::add);
+            ReflectionTestUtils.setField(client, "replyTimeoutMs", 200L);
+            client.start();
+
+            try (Socket robot = server.accept()) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(robot.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream out = robot.getOutputStream();
+
+                // 应答前到达的推送不占用命令的应答
+                CompletableFuture<RobotLine> first = client.send("run(takeABowl.jspf)");
+                assertEquals("run(takeABowl.jspf)", readCommand(in));
+                out.write("done(reset.jspf)\nstate:idle\ntrue\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                assertEquals("true", first.get(5, TimeUnit.SECONDS).getText());
+                assertEquals("done(reset.jspf)", unsolicited.poll(5, TimeUnit.SECONDS).getText());
+                assertEquals("state:idle", unsolicited.poll(5, TimeUnit.SECONDS).getText());
+
+                // 超时命令的迟到应答丢弃，下一条应答给后面的命令
+                CompletableFuture<RobotLine> timedOut = client.send("run(putBowl.jspf)");
+                assertEquals("run(putBowl.jspf)", readCommand(in));
+                assertThrows(Exception.class, () -> timedOut.get(5, TimeUnit.SECONDS));
+                CompletableFuture<RobotLine> next = client.send("run(reset.jspf)");
+                assertEquals("run(reset.jspf)", readCommand(in));
+                out.write("late\nok\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                assertEquals("ok", next.get(5, TimeUnit.SECONDS).getText());
+                assertNull(unsolicited.poll());
+            }
+            client.stop();
+        }
+    }
+}
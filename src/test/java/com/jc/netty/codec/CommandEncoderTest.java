@@ -0,0 +1,49 @@
+package com.jc.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandEncoderTest {
+
+    private static String hex(ByteBuf buf) {
+        try {
+            return ByteBufUtil.hexDump(buf).toUpperCase();
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    void relayFramesMatchDocumentedProtocol() {
+        assertEquals("483A01520000000000000000D54544", hex(ZhiqianCommandEncoder.reset()));
+        assertEquals("483A01570000000000000000DA4544", hex(ZhiqianCommandEncoder.closeAll()));
+        assertEquals("483A01575555555555555555824544", hex(ZhiqianCommandEncoder.openAll()));
+        assertEquals("483A0170010100004544", hex(ZhiqianCommandEncoder.relaySwitch(1, true)));
+        assertEquals("483A0170200000004544", hex(ZhiqianCommandEncoder.relaySwitch(32, false)));
+        assertEquals("483A0170020100144544", hex(ZhiqianCommandEncoder.relayTimedOpen(2, 20)));
+        // 第1、2路和第32路：01|04、40
+        assertEquals("483A015705000000000000401F4544", hex(ZhiqianCommandEncoder.writeAll(0x80000003)));
+        assertEquals("483A01575555555555555555824544", hex(ZhiqianCommandEncoder.writeAll(-1)));
+    }
+
+    @Test
+    void sharedFramesCanBeSentRepeatedly() {
+        ByteBuf first = ZhiqianCommandEncoder.closeAll();
+        first.skipBytes(first.readableBytes());
+        assertFalse(first.release());
+        assertEquals(15, ZhiqianCommandEncoder.closeAll().readableBytes());
+        assertTrue(ZhiqianCommandEncoder.closeAll().isReadOnly());
+    }
+
+    @Test
+    void stepperFramesCarryModbusCrc() {
+        assertEquals("020600020001E9F9", hex(ModbusCommandEncoder.stop(2)));
+        assertEquals("0306000706403BB9", hex(ModbusCommandEncoder.pulses(3, 1600)));
+        assertEquals("03060000000149E8", hex(ModbusCommandEncoder.rotation(3, true)));
+        assertEquals("02060001000119F9", hex(ModbusCommandEncoder.rotation(2, false)));
+        assertEquals("01039C400002EB8F", hex(ModbusCommandEncoder.readHoldingRegisters(1, 0x9C40, 2)));
+    }
+}
@@ -0,0 +1,85 @@
+package com.jc.netty.codec;
+
+import com.jc.utils.HexConvert;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameDecoderTest {
+
+    private static byte[] hex(String s) {
+        return HexConvert.hexStringToBytes(s.replaceAll(" ", ""));
+    }
+
+    @Test
+    void zhiqianFramesAreReassembledAcrossSplitAndCoalescedPackets() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ZhiqianFrameDecoder());
+        byte[] status = hex("48 3A 01 41 05 00 00 00 00 00 00 00 C9 45 44");
+        byte[] relayAck = hex("48 3A 01 71 01 01 00 00 45 44");
+
+        // 一帧拆成两段
+        channel.writeInbound(Unpooled.wrappedBuffer(status, 0, 6));
+        assertNull(channel.readInbound());
+        channel.writeInbound(Unpooled.wrappedBuffer(status, 6, status.length - 6));
+        ZhiqianFrame frame = channel.readInbound();
+        assertEquals(0x41, frame.getCommand());
+        assertEquals(8, frame.dataLength());
+        assertEquals(0x05, frame.getData(0));
+
+        // 垃圾字节 + 两帧粘包
+        channel.writeInbound(Unpooled.wrappedBuffer(hex("00 FF"), relayAck, status));
+        ZhiqianFrame ack = channel.readInbound();
+        assertEquals(0x71, ack.getCommand());
+        assertEquals(4, ack.dataLength());
+        assertNotNull(channel.readInbound());
+        assertNull(channel.readInbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void zhiqianFrameWithBadChecksumIsDropped() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ZhiqianFrameDecoder());
+        channel.writeInbound(Unpooled.wrappedBuffer(hex("48 3A 01 41 05 00 00 00 00 00 00 00 00 45 44")));
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    void modbusReplyIsFramedByFunctionCodeAndCrcChecked() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ModbusRtuFrameDecoder());
+        byte[] weight = hex("01 03 04 00 00 06 13 B8 5E");
+        byte[] echo = hex("02 06 00 02 00 01 E9 F9");
+        channel.writeInbound(Unpooled.wrappedBuffer(weight, 0, 3));
+        assertNull(channel.readInbound());
+        channel.writeInbound(Unpooled.wrappedBuffer(Unpooled.wrappedBuffer(weight, 3, weight.length - 3),
+                Unpooled.wrappedBuffer(echo)));
+
+        ModbusFrame reading = channel.readInbound();
+        assertEquals(1, reading.getSlave());
+        assertEquals(0x03, reading.getFunction());
+        assertEquals(4, reading.getUnsignedByte(0));
+        assertEquals(0x0613, reading.getInt(1));
+
+        ModbusFrame write = channel.readInbound();
+        assertEquals(2, write.getSlave());
+        assertEquals(0x06, write.getFunction());
+        assertEquals(0x0002, write.getUnsignedShort(0));
+
+        weight[weight.length - 1] ^= 0x01;
+        channel.writeInbound(Unpooled.wrappedBuffer(weight));
+        assertNull(channel.readInbound());
+    }
+
+    @Test
+    void robotLinesAreSplitOnNewline() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RobotLineDecoder());
+        channel.writeInbound(Unpooled.copiedBuffer("ok\r\nru", StandardCharsets.UTF_8));
+        channel.writeInbound(Unpooled.copiedBuffer("nning\n\n", StandardCharsets.UTF_8));
+        assertEquals("ok", channel.<RobotLine>readInbound().getText());
+        assertEquals("running", channel.<RobotLine>readInbound().getText());
+        assertNull(channel.readInbound());
+    }
+}
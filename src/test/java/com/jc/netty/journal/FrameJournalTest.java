@@ -0,0 +1,115 @@
+package com.jc.netty.journal;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void framesAreReadBackInOrderAcrossSegments() throws Exception {
+        FrameJournal journal = new FrameJournal(true, dir, 256, Long.MAX_VALUE, TimeUnit.HOURS.toNanos(1));
+        journal.open();
+        int io = journal.deviceId("1/io");
+        int relay = journal.deviceId("1/relay");
+        for (int i = 0; i < 50; i++) {
+            ByteBuf frame = Unpooled.wrappedBuffer(new byte[]{0x48, 0x3A, 0x01, (byte) i, 0x45, 0x44});
+            journal.append(i % 2 == 0 ? io : relay, i % 3 == 0 ? JournalRecord.OUT : JournalRecord.IN, frame);
+            assertEquals(0, frame.readerIndex());
+        }
+        journal.close();
+
+        JournalReader reader = new JournalReader(dir);
+        assertTrue(reader.getFiles().size() > 1, "应换过段");
+        List<String> records = new ArrayList<>();
+        long[] last = {0};
+        reader.read(record -> {
+            assertTrue(record.getTimestampNanos() >= last[0]);
+            last[0] = record.getTimestampNanos();
+            records.add(record.getDevice() + " " + JournalRecord.directionName(record.getDirection()) + " " + record.toHex());
+        });
+        assertEquals(50, records.size());
+        assertEquals("1/io OUT 48 3A 01 00 45 44", records.get(0));
+        assertEquals("1/relay IN 48 3A 01 31 45 44", records.get(49));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JournalTool.run("stats", reader, record -> record.getDevice().equals("1/io"), Long.MAX_VALUE, new PrintStream(out, true, "UTF-8"));
+        String stats = out.toString("UTF-8");
+        assertTrue(stats.contains("1/io IN 16 96"), stats);
+        assertTrue(stats.contains("1/io OUT 9 54"), stats);
+    }
+
+    @Test
+    void oldestSegmentsAreDeletedOverTotalSize() throws Exception {
+        FrameJournal journal = new FrameJournal(true, dir, 256, 1024, TimeUnit.HOURS.toNanos(1));
+        journal.open();
+        int io = journal.deviceId("1/io");
+        for (int i = 0; i < 200; i++) {
+            journal.append(io, JournalRecord.IN, Unpooled.wrappedBuffer(new byte[]{(byte) i, 1, 2, 3, 4, 5, 6, 7}));
+        }
+        journal.close();
+
+        List<Path> segments = JournalReader.segments(dir);
+        // 换段时当前段还是满的256字节，其余段已截断到实际长度
+        assertTrue(segments.size() <= 1024 / 200 + 1, "保留的段数：" + segments.size());
+        int[] first = {-1};
+        new JournalReader(dir).read(record -> {
+            if (first[0] < 0) {
+                first[0] = record.getByte(0);
+            }
+        });
+        assertTrue(first[0] > 0, "最旧的记录应已删除");
+    }
+
+    @Test
+    void concurrentAppendsAreAllRecordedAcrossSegments() throws Exception {
+        FrameJournal journal = new FrameJournal(true, dir, 1024, Long.MAX_VALUE, TimeUnit.HOURS.toNanos(1));
+        journal.open();
+        int threads = 4;
+        int frames = 2000;
+        int[] ids = new int[threads];
+        for (int t = 0; t < threads; t++) {
+            ids[t] = journal.deviceId("1/dev" + t);
+        }
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = ids[t];
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < frames; i++) {
+                    journal.append(id, JournalRecord.IN, Unpooled.wrappedBuffer(new byte[]{
+                            (byte) (i >> 8), (byte) i, 1, 2, 3, 4, 5, 6, 7, 8, 9}));
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        journal.close();
+
+        // 每个设备的帧都在，且按追加的顺序
+        int[] next = new int[threads];
+        new JournalReader(dir).read(record -> {
+            int t = Integer.parseInt(record.getDevice().substring("1/dev".length()));
+            assertEquals(next[t]++, (record.getByte(0) & 0xFF) << 8 | record.getByte(1) & 0xFF);
+            assertEquals(11, record.getLength());
+        });
+        for (int t = 0; t < threads; t++) {
+            assertEquals(frames, next[t]);
+        }
+        assertEquals(0, journal.getSkipped());
+    }
+}
@@ -0,0 +1,171 @@
+package com.jc.netty.server;
+
+import com.jc.service.DeviceDriver;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceRegistryTest {
+
+    private static DeviceDriver<Object> driver(String name, String... addresses) {
+        return new DeviceDriver<Object>() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Collection<String> addresses() {
+                return Arrays.asList(addresses);
+            }
+
+            @Override
+            public ChannelHandler newFrameDecoder() {
+                return null;
+            }
+
+            @Override
+            public void handle(Object msg) {
+            }
+        };
+    }
+
+    @Test
+    void resolvesDriverByRemoteAddressOnce() throws Exception {
+        DeviceDriver<Object> io = driver("io", "192.168.1.3", "");
+        DeviceRegistry registry = new DeviceRegistry(Collections.singletonList(io));
+        assertSame(io, registry.lookup(InetAddress.getByName("192.168.1.3")));
+
+        EmbeddedChannel channel = new EmbeddedChannel() {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return new InetSocketAddress("192.168.1.3", 50000);
+            }
+        };
+        assertSame(io, registry.resolve(channel));
+        assertSame(io, DeviceRegistry.driverOf(channel));
+
+        EmbeddedChannel unknown = new EmbeddedChannel();
+        assertNull(registry.resolve(unknown));
+        assertNull(DeviceRegistry.driverOf(unknown));
+    }
+
+    private static EmbeddedChannel deviceChannel(String ip, ChannelHandler... handlers) {
+        return new EmbeddedChannel(handlers) {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return new InetSocketAddress(ip, 50000);
+            }
+        };
+    }
+
+    @Test
+    void slowDeviceDoesNotDelayOtherDevices() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<Object> slowHandled = new LinkedBlockingQueue<>();
+        BlockingQueue<Object> fastHandled = new LinkedBlockingQueue<>();
+        List<Object> onEventLoop = new CopyOnWriteArrayList<>();
+        DeviceDriver<Object> slow = new ForwardingDriver(driver("io", "192.168.1.3")) {
+            @Override
+            public void handle(Object frame) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                slowHandled.add(frame);
+            }
+        };
+        DeviceDriver<Object> fast = new ForwardingDriver(driver("relay", "192.168.1.4")) {
+            @Override
+            public boolean handleOnEventLoop(Object frame) {
+                onEventLoop.add(frame);
+                return "stop".equals(frame);
+            }
+
+            @Override
+            public void handle(Object frame) {
+                fastHandled.add(frame);
+            }
+        };
+        DeviceRegistry registry = new DeviceRegistry(Arrays.asList(slow, fast), 16);
+        NettyServerHandler handler = new NettyServerHandler();
+        EmbeddedChannel slowChannel = deviceChannel("192.168.1.3", handler);
+        EmbeddedChannel fastChannel = deviceChannel("192.168.1.4", handler);
+        registry.resolve(slowChannel);
+        registry.resolve(fastChannel);
+        try {
+            slowChannel.writeInbound("first");
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // 执行器队列最少16个，满了之后的帧被丢弃
+            for (int i = 0; i < 17; i++) {
+                slowChannel.writeInbound(i);
+            }
+
+            fastChannel.writeInbound("a", "stop", "b");
+            assertEquals(Arrays.asList("a", "stop", "b"), onEventLoop);
+            assertEquals("a", fastHandled.poll(5, TimeUnit.SECONDS));
+            assertEquals("b", fastHandled.poll(5, TimeUnit.SECONDS));
+            assertTrue(slowHandled.isEmpty());
+
+            release.countDown();
+            assertEquals("first", slowHandled.poll(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 16; i++) {
+                assertEquals(i, slowHandled.poll(5, TimeUnit.SECONDS));
+            }
+            assertNull(slowHandled.poll(100, TimeUnit.MILLISECONDS));
+        } finally {
+            release.countDown();
+            registry.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsAddressClaimedByTwoDrivers() {
+        assertThrows(IllegalStateException.class, () -> new DeviceRegistry(Arrays.asList(
+                driver("io", "192.168.1.3"), driver("relay", "192.168.1.3"))));
+    }
+
+    /**
+     * 名称和地址取自另一个驱动，只覆盖帧处理
+     */
+    private abstract static class ForwardingDriver implements DeviceDriver<Object> {
+        private final DeviceDriver<Object> delegate;
+
+        ForwardingDriver(DeviceDriver<Object> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String name() {
+            return delegate.name();
+        }
+
+        @Override
+        public Collection<String> addresses() {
+            return delegate.addresses();
+        }
+
+        @Override
+        public ChannelHandler newFrameDecoder() {
+            return null;
+        }
+    }
+}
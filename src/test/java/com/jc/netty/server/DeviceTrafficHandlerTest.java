@@ -0,0 +1,43 @@
+package com.jc.netty.server;
+
+import com.jc.enums.DeviceRole;
+import com.jc.netty.codec.ZhiqianCommandEncoder;
+import com.jc.netty.codec.ZhiqianFrame;
+import com.jc.netty.codec.ZhiqianFrameDecoder;
+import com.jc.service.impl.DeviceMetrics;
+import com.jc.utils.HexConvert;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceTrafficHandlerTest {
+
+    @Test
+    void countsBytesFramesAndDecodeTimeByDevice() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DeviceMetrics metrics = new DeviceMetrics(registry, "1");
+        DeviceTrafficHandler traffic = new DeviceTrafficHandler(metrics.traffic(DeviceRole.IO.getTag()));
+        EmbeddedChannel channel = new EmbeddedChannel(traffic, new ZhiqianFrameDecoder(), traffic.frameCounter());
+
+        // 一帧分两次到达
+        byte[] frame = HexConvert.hexStringToBytes("483A01410500000000000000C94544");
+        channel.writeInbound(Unpooled.wrappedBuffer(frame, 0, 6));
+        assertNull(channel.readInbound());
+        channel.writeInbound(Unpooled.wrappedBuffer(frame, 6, frame.length - 6));
+        assertTrue(channel.readInbound() instanceof ZhiqianFrame);
+
+        assertEquals(15, registry.get("device.bytes.in").tags("machine", "1", "device", "io").counter().count());
+        assertEquals(1, registry.get("device.frames.in").tag("device", "io").counter().count());
+        assertEquals(2, registry.get("device.decode").tag("device", "io").timer().count());
+
+        channel.writeOutbound(ZhiqianCommandEncoder.reset());
+        channel.releaseOutbound();
+        assertEquals(1, registry.get("device.frames.out").tag("device", "io").counter().count());
+        assertEquals(15, registry.get("device.bytes.out").tag("device", "io").counter().count());
+        assertEquals(0, registry.get("device.frames.in").tag("device", "relay").counter().count());
+        channel.finishAndReleaseAll();
+    }
+}
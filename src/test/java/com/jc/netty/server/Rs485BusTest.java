@@ -0,0 +1,143 @@
+package com.jc.netty.server;
+
+import com.jc.netty.codec.ModbusCommandEncoder;
+import com.jc.netty.codec.ModbusFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Rs485BusTest {
+
+    private static String sent(EmbeddedChannel channel) {
+        ByteBuf buf = channel.readOutbound();
+        if (buf == null) {
+            return null;
+        }
+        try {
+            return ByteBufUtil.hexDump(buf).toUpperCase();
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static ModbusFrame echo(int slave, int register, int value) {
+        return new ModbusFrame(slave, ModbusCommandEncoder.FUNC_WRITE_SINGLE_REGISTER,
+                new byte[]{(byte) (register >> 8), (byte) register, (byte) (value >> 8), (byte) value});
+    }
+
+    @Test
+    void oneOutstandingRequestAndRepliesMatchedBySlave() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        Rs485Bus bus = Rs485Bus.of(channel);
+        assertSame(bus, Rs485Bus.of(channel));
+
+        CompletableFuture<ModbusFrame> stop = bus.request(ModbusCommandEncoder.stop(2));
+        CompletableFuture<ModbusFrame> pulses = bus.request(ModbusCommandEncoder.pulses(3, 1600));
+        assertEquals("020600020001E9F9", sent(channel));
+        // 第二个请求要等第一个应答
+        assertNull(sent(channel));
+
+        // 其他从站的应答不匹配
+        bus.onReply(echo(3, 0x0002, 1));
+        assertFalse(stop.isDone());
+        bus.onReply(echo(2, 0x0002, 1));
+        assertEquals(2, stop.get().getSlave());
+        assertEquals(1, bus.roundTrips(ModbusCommandEncoder.FUNC_WRITE_SINGLE_REGISTER).count());
+        assertNull(bus.roundTrips(ModbusCommandEncoder.FUNC_READ_HOLDING_REGISTERS));
+
+        // 帧间静默时间后发送下一个请求
+        Thread.sleep(30);
+        channel.runScheduledPendingTasks();
+        assertEquals("0306000706403BB9", sent(channel));
+        bus.onReply(new ModbusFrame(3, 0x86, new byte[]{0x02}));
+        ExecutionException e = assertThrows(ExecutionException.class, pulses::get);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertTrue(bus.timeoutMillis() >= Rs485Bus.MIN_TIMEOUT_MS);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void timeoutRetransmitsThenFails() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        Rs485Bus bus = Rs485Bus.of(channel);
+        CompletableFuture<ModbusFrame> stop = bus.request(ModbusCommandEncoder.stop(1));
+        for (int attempt = 0; attempt <= Rs485Bus.MAX_RETRIES; attempt++) {
+            assertNotNull(sent(channel));
+            assertFalse(stop.isDone());
+            Thread.sleep(Rs485Bus.INITIAL_TIMEOUT_MS + 20);
+            channel.runScheduledPendingTasks();
+        }
+        assertNull(sent(channel));
+        ExecutionException e = assertThrows(ExecutionException.class, stop::get);
+        assertTrue(e.getCause() instanceof TimeoutException);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void staleReplyToEarlierRequestIsDiscarded() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        Rs485Bus bus = Rs485Bus.of(channel);
+        CompletableFuture<ModbusFrame> pulses = bus.request(ModbusCommandEncoder.pulses(2, 1600));
+        assertEquals("0206000706403A68", sent(channel));
+
+        // 同一从站上一条写寄存器命令迟到的回显，寄存器和值不同
+        bus.onReply(echo(2, 0x0002, 1));
+        assertFalse(pulses.isDone());
+        // 读寄存器的字节数与请求不符
+        bus.onReply(new ModbusFrame(2, ModbusCommandEncoder.FUNC_READ_HOLDING_REGISTERS, new byte[]{2, 0, 0}));
+        assertFalse(pulses.isDone());
+        bus.onReply(echo(2, 0x0007, 1600));
+        assertEquals(1600, pulses.get().getUnsignedShort(2));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void urgentRequestGoesAheadOfQueuedAndRetryingRequests() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        Rs485Bus bus = Rs485Bus.of(channel);
+        CompletableFuture<ModbusFrame> read = bus.request(ModbusCommandEncoder.readHoldingRegisters(1, 0x9C40, 2));
+        CompletableFuture<ModbusFrame> queued = bus.request(ModbusCommandEncoder.pulses(3, 1600));
+        CompletableFuture<ModbusFrame> stop = bus.request(ModbusCommandEncoder.stop(2), true);
+        assertEquals("01039C400002EB8F", sent(channel));
+
+        // 读称重超时，不再重发而是先发停机
+        Thread.sleep(Rs485Bus.INITIAL_TIMEOUT_MS + 20);
+        channel.runScheduledPendingTasks();
+        Thread.sleep(30);
+        channel.runScheduledPendingTasks();
+        assertEquals("020600020001E9F9", sent(channel));
+        bus.onReply(echo(2, 0x0002, 1));
+        assertTrue(stop.isDone());
+
+        // 之后重发读称重，再发排队的请求
+        Thread.sleep(30);
+        channel.runScheduledPendingTasks();
+        assertEquals("01039C400002EB8F", sent(channel));
+        bus.onReply(new ModbusFrame(1, ModbusCommandEncoder.FUNC_READ_HOLDING_REGISTERS, new byte[]{4, 0, 0, 0, 1}));
+        assertTrue(read.isDone());
+        Thread.sleep(30);
+        channel.runScheduledPendingTasks();
+        assertEquals("0306000706403BB9", sent(channel));
+        assertFalse(queued.isDone());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void closingChannelFailsPendingRequests() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        Rs485Bus bus = Rs485Bus.of(channel);
+        CompletableFuture<ModbusFrame> first = bus.request(ModbusCommandEncoder.stop(1));
+        CompletableFuture<ModbusFrame> second = bus.request(ModbusCommandEncoder.stop(2));
+        channel.finishAndReleaseAll();
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        assertTrue(bus.request(ModbusCommandEncoder.stop(3)).isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,72 @@
+package com.jc.service.impl;
+
+import com.jc.entity.RobotResult;
+import com.jc.netty.client.RobotClient;
+import com.jc.netty.codec.RobotLine;
+import io.netty.util.HashedWheelTimer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class DocuServiceTest {
+
+    private HashedWheelTimer timer;
+    private RobotClient robotClient;
+    private DocuService docuService;
+
+    @BeforeEach
+    void setUp() {
+        timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+        robotClient = mock(RobotClient.class);
+        when(robotClient.send(anyString())).thenReturn(CompletableFuture.completedFuture(new RobotLine("ok")));
+        docuService = new DocuService();
+        ReflectionTestUtils.setField(docuService, "robotClient", robotClient);
+        ReflectionTestUtils.setField(docuService, "timer", timer);
+        ReflectionTestUtils.setField(docuService, "scriptTimeoutMs", 200L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    void scriptsRunOneAfterAnotherAndFinishOnCompletionMessage() throws Exception {
+        CompletableFuture<RobotResult> take = docuService.runScript("takeABowl.jspf");
+        CompletableFuture<RobotResult> put = docuService.runScript("putBowl.jspf");
+        verify(robotClient).send("run(takeABowl.jspf)");
+        verify(robotClient, never()).send("run(putBowl.jspf)");
+
+        // 其他脚本的完成消息不影响当前脚本
+        docuService.handle(new RobotLine("done(putBowl.jspf)"));
+        assertFalse(take.isDone());
+        docuService.handle(new RobotLine("done(takeABowl.jspf)"));
+        assertTrue(take.get().isSuccess());
+        verify(robotClient).send("run(putBowl.jspf)");
+
+        docuService.handle(new RobotLine("state:idle"));
+        RobotResult result = put.get();
+        assertTrue(result.isSuccess());
+        assertEquals("putBowl.jspf", result.getScript());
+        assertEquals(2, docuService.getScriptStats().size());
+    }
+
+    @Test
+    void rejectedOrTimedOutScriptsFail() throws Exception {
+        when(robotClient.send("run(missing.jspf)")).thenReturn(CompletableFuture.completedFuture(new RobotLine("error: no such file")));
+        RobotResult rejected = docuService.runScript("missing.jspf").get();
+        assertFalse(rejected.isSuccess());
+
+        RobotResult timedOut = docuService.runScript("reset.jspf").get(5, TimeUnit.SECONDS);
+        assertFalse(timedOut.isSuccess());
+        assertTrue(timedOut.getElapsedMs() >= 200);
+    }
+}
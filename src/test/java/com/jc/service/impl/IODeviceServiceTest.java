@@ -0,0 +1,159 @@
+package com.jc.service.impl;
+
+import com.jc.constants.Constants;
+import com.jc.entity.SensorSnapshot;
+import com.jc.enums.SignalLevel;
+import com.jc.netty.codec.ZhiqianFrame;
+import io.netty.util.HashedWheelTimer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class IODeviceServiceTest {
+
+    private HashedWheelTimer timer;
+    private IODeviceService service;
+
+    @BeforeEach
+    void setUp() {
+        timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+        service = new IODeviceService();
+        ReflectionTestUtils.setField(service, "timer", timer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        timer.stop();
+    }
+
+    private static ZhiqianFrame ioFrame(int... data) {
+        byte[] bytes = new byte[8];
+        for (int i = 0; i < data.length; i++) {
+            bytes[i] = (byte) data[i];
+        }
+        return new ZhiqianFrame(1, 0x49, bytes);
+    }
+
+    @Test
+    void decodesPinsIntoBitmask() {
+        assertFalse(service.getSnapshot().isInitialized());
+        assertEquals("2", service.getSnapshot().toString());
+
+        // 第1、2引脚及第5引脚高电平
+        service.handle(ioFrame(0x05, 0x01));
+        SensorSnapshot sensors = service.getSnapshot();
+        assertEquals(1, sensors.getVersion());
+        assertEquals(0x13, sensors.getMask());
+        assertTrue(service.isHigh(Constants.TURNTABLE_ORIGIN_PIN));
+        assertTrue(service.isHigh(Constants.BOWL_SENSOR_PIN));
+        assertTrue(service.isHigh(Constants.TURNTABLE_STATION_PIN));
+        assertFalse(service.isHigh(Constants.BOWL_UPPER_LIMIT_PIN));
+        assertTrue(sensors.toString().startsWith("1,1,0,0,1,0"));
+
+        // 状态没变化不产生新快照
+        service.handle(ioFrame(0x05, 0x01));
+        assertSame(sensors, service.getSnapshot());
+    }
+
+    @Test
+    void unchangedFramesOnlyRefreshLiveness() {
+        assertFalse(service.handleOnEventLoop(ioFrame(0x05, 0x01)));
+        service.handle(ioFrame(0x05, 0x01));
+        SensorSnapshot sensors = service.getSnapshot();
+
+        // 相同的帧不再交给handle，只刷新在线时间并计数
+        assertTrue(service.handleOnEventLoop(ioFrame(0x05, 0x01)));
+        assertTrue(service.handleOnEventLoop(ioFrame(0x05, 0x01)));
+        assertEquals(2, service.getUnchangedFrames());
+        assertTrue(service.getLastFrameTime() > 0);
+        assertSame(sensors, service.getSnapshot());
+
+        // 数据区变化或命令码不同都要处理
+        assertFalse(service.handleOnEventLoop(ioFrame(0x01, 0x01)));
+        assertFalse(service.handleOnEventLoop(new ZhiqianFrame(1, 0x41, new byte[8])));
+        assertFalse(service.handleOnEventLoop(ioFrame()));
+
+        // 变化的帧被丢弃后，后面相同的帧要重新处理
+        assertFalse(service.handleOnEventLoop(ioFrame(0x04)));
+        service.onDropped(ioFrame(0x04));
+        assertFalse(service.handleOnEventLoop(ioFrame(0x04)));
+        assertTrue(service.handleOnEventLoop(ioFrame(0x04)));
+        assertEquals(3, service.getUnchangedFrames());
+    }
+
+    @Test
+    void failedLimitStopIsRetriedWhileOnLimit() {
+        StepperMotorService stepperMotorService = mock(StepperMotorService.class);
+        ReflectionTestUtils.setField(service, "stepperMotorService", stepperMotorService);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        when(stepperMotorService.stop(Constants.BOWL_CONTROLLER_NO))
+                .thenReturn(pending)
+                .thenReturn(CompletableFuture.completedFuture(StepperMotorService.SUCCESS));
+
+        // 下限位（第3引脚）为高
+        service.handleOnEventLoop(ioFrame(0x10));
+        verify(stepperMotorService, times(1)).stop(Constants.BOWL_CONTROLLER_NO);
+        // 停机还在进行中不重发
+        service.handleOnEventLoop(ioFrame(0x10));
+        verify(stepperMotorService, times(1)).stop(Constants.BOWL_CONTROLLER_NO);
+
+        // 失败后下一帧重发，成功后不再发送
+        pending.complete("操作失败：从站2应答超时");
+        service.handleOnEventLoop(ioFrame(0x10));
+        verify(stepperMotorService, times(2)).stop(Constants.BOWL_CONTROLLER_NO);
+        service.handleOnEventLoop(ioFrame(0x10));
+        verify(stepperMotorService, times(2)).stop(Constants.BOWL_CONTROLLER_NO);
+
+        // 离开限位后不再重发
+        service.handleOnEventLoop(ioFrame(0x00));
+        service.handleOnEventLoop(ioFrame(0x00));
+        verify(stepperMotorService, times(2)).stop(Constants.BOWL_CONTROLLER_NO);
+    }
+
+    @Test
+    void edgeSubscriptionFiresOnlyOnTransition() {
+        AtomicInteger rising = new AtomicInteger();
+        IODeviceService.SensorSubscription subscription =
+                service.onEdge(Constants.TURNTABLE_STATION_PIN, SignalLevel.HIGH, (previous, current) -> rising.incrementAndGet());
+
+        service.handle(ioFrame(0x00));
+        service.handle(ioFrame(0x00, 0x01));
+        service.handle(ioFrame(0x01, 0x01));
+        assertEquals(1, rising.get());
+
+        service.handle(ioFrame(0x00));
+        subscription.cancel();
+        service.handle(ioFrame(0x00, 0x01));
+        assertEquals(1, rising.get());
+    }
+
+    @Test
+    void awaitSignalCompletesFromFrameOrTimesOut() throws Exception {
+        CompletableFuture<SensorSnapshot> initialized = service.awaitInitialized(1000);
+        assertFalse(initialized.isDone());
+        service.handle(ioFrame(0x01));
+        assertTrue(initialized.isDone());
+
+        // 已是高电平立即完成，等待跳变则要先离开
+        assertTrue(service.awaitSignal(Constants.TURNTABLE_ORIGIN_PIN, SignalLevel.HIGH, 1000).isDone());
+        CompletableFuture<SensorSnapshot> edge = service.awaitEdge(Constants.TURNTABLE_ORIGIN_PIN, SignalLevel.HIGH, 1000);
+        service.handle(ioFrame(0x00));
+        assertFalse(edge.isDone());
+        service.handle(ioFrame(0x01));
+        assertTrue(edge.get().isHigh(Constants.TURNTABLE_ORIGIN_PIN));
+
+        CompletableFuture<SensorSnapshot> bowl = service.awaitSignal(Constants.BOWL_SENSOR_PIN, SignalLevel.HIGH, 50);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> bowl.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof TimeoutException);
+    }
+}
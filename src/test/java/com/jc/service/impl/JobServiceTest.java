@@ -0,0 +1,100 @@
+package com.jc.service.impl;
+
+import com.jc.entity.Job;
+import com.jc.enums.JobState;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class JobServiceTest {
+
+    private static JobService jobService(int maxActive, int history) {
+        MachineManager machineManager = mock(MachineManager.class);
+        when(machineManager.get(any())).thenReturn(new MachineManager.Machine("1", null, null));
+        return new JobService(machineManager, maxActive, history);
+    }
+
+    @Test
+    void tracksStepsAndResult() {
+        JobService jobService = jobService(4, 10);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        Job job = jobService.submit(null, "takeBowl", 2,
+                j -> j.step("升碗", () -> first).thenCompose(r -> j.step("机器人取碗", () -> second)));
+
+        assertEquals("1", job.getMachineId());
+        assertEquals(JobState.RUNNING, job.getState());
+        assertEquals("升碗", job.getStep());
+        assertEquals(0, job.getCompletedSteps());
+        assertEquals(1, jobService.getActive());
+
+        first.complete("ok");
+        assertEquals("机器人取碗", job.getStep());
+        assertEquals(1, job.getCompletedSteps());
+        second.complete("ok");
+        assertEquals(JobState.SUCCEEDED, job.getState());
+        assertEquals(2, job.getCompletedSteps());
+        assertEquals("ok", job.getFuture().join());
+        assertEquals(0, jobService.getActive());
+        assertSame(job, jobService.get(job.getId()));
+
+        Job failed = jobService.submit(null, "bowlReset", 1, j -> j.step("碗重置", () -> CompletableFuture.completedFuture("没有碗了")));
+        assertEquals(JobState.FAILED, failed.getState());
+        assertEquals("没有碗了", failed.getFuture().join());
+    }
+
+    @Test
+    void cancelStopsBeforeNextStepAndRunsCancelActions() {
+        JobService jobService = jobService(4, 10);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        AtomicInteger stops = new AtomicInteger();
+        AtomicInteger secondStarted = new AtomicInteger();
+        CompletableFuture<?>[] next = new CompletableFuture<?>[1];
+        Job job = jobService.submit(null, "reset", 2, j -> {
+            j.onCancel(stops::incrementAndGet);
+            CompletableFuture<String> flow = j.step("转盘重置", () -> first).thenCompose(r -> j.step("碗重置", () -> {
+                secondStarted.incrementAndGet();
+                return CompletableFuture.completedFuture("ok");
+            }));
+            next[0] = flow;
+            return flow;
+        });
+
+        assertSame(job, jobService.cancel(job.getId()));
+        assertEquals(JobState.CANCELLED, job.getState());
+        assertEquals(1, stops.get());
+        assertEquals(Job.CANCELLED_MESSAGE, job.getFuture().join());
+        assertEquals(0, jobService.getActive());
+
+        // 正在执行的步骤结束后不再开始下一步，结果不覆盖取消状态
+        first.complete("ok");
+        assertEquals(0, secondStarted.get());
+        assertTrue(next[0].isCompletedExceptionally());
+        CompletionException e = assertThrows(CompletionException.class, next[0]::join);
+        assertTrue(e.getCause() instanceof CancellationException);
+        assertEquals(JobState.CANCELLED, job.getState());
+        jobService.cancel(job.getId());
+        assertEquals(1, stops.get());
+    }
+
+    @Test
+    void rejectsBeyondActiveLimitAndForgetsOldJobs() {
+        JobService jobService = jobService(1, 1);
+        CompletableFuture<String> running = new CompletableFuture<>();
+        Job first = jobService.submit(null, "reset", 1, j -> running);
+        assertThrows(JobService.TooManyJobsException.class, () -> jobService.submit(null, "reset", 1, j -> running));
+        running.complete("ok");
+
+        Job second = jobService.submit(null, "reset", 1, j -> CompletableFuture.completedFuture("ok"));
+        assertEquals(JobState.SUCCEEDED, second.getState());
+        assertThrows(JobService.JobNotFoundException.class, () -> jobService.get(first.getId()));
+        assertEquals(1, jobService.list(null).size());
+    }
+}
@@ -0,0 +1,132 @@
+package com.jc.service.impl;
+
+import com.jc.netty.codec.ZhiqianFrame;
+import com.jc.netty.server.NettyServerHandler;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RelayDeviceServiceTest {
+
+    private EmbeddedChannel channel;
+    private RelayDeviceService service;
+
+    @BeforeEach
+    void setUp() {
+        channel = new EmbeddedChannel();
+        NettyServerHandler server = mock(NettyServerHandler.class);
+        when(server.getChannel(anyString())).thenReturn(channel);
+        when(server.sendFrameToClient(anyString(), any(ByteBuf.class)))
+                .thenAnswer(invocation -> channel.writeAndFlush(invocation.getArgument(1)));
+        service = new RelayDeviceService();
+        ReflectionTestUtils.setField(service, "nettyServerHandler", server);
+        ReflectionTestUtils.setField(service, "relayIp", "");
+        ReflectionTestUtils.setField(service, "coalesceMs", 20L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    private String sent() {
+        ByteBuf frame = channel.readOutbound();
+        if (frame == null) {
+            return null;
+        }
+        try {
+            return ByteBufUtil.hexDump(frame).toUpperCase();
+        } finally {
+            frame.release();
+        }
+    }
+
+    private void flushWindow() throws InterruptedException {
+        Thread.sleep(30);
+        channel.runScheduledPendingTasks();
+    }
+
+    @Test
+    void requestsInWindowBecomeOneMaskFrame() throws InterruptedException {
+        // 写全部的应答确认了全部32路的状态，之后第3路由模块应答为打开
+        service.handle(new ZhiqianFrame(1, RelayDeviceService.CMD_WRITE_ALL_ACK, new byte[8]));
+        service.handle(new ZhiqianFrame(1, 0x71, new byte[]{3, 1, 0, 0}));
+
+        service.relayOpening(1);
+        service.relayOpening(2);
+        service.relayClosing(5);
+        assertNull(sent());
+        flushWindow();
+        // 第1、2、3路打开：01|04|10
+        assertEquals("483A01571500000000000000EF4544", sent());
+        assertNull(sent());
+
+        // 还没应答的命令也算在状态里，窗口内只有一路时仍发单路命令
+        service.relayClosing(2);
+        flushWindow();
+        assertEquals("483A0170020000004544", sent());
+        // 第3、5路打开：10、01
+        service.switchRelays(0b10000, 0b1);
+        assertEquals("483A01571001000000000000EB4544", sent());
+    }
+
+    @Test
+    void laterRequestForSameRelayWins() throws InterruptedException {
+        service.relayOpening(4);
+        service.relayClosing(4);
+        flushWindow();
+        assertEquals("483A0170040000004544", sent());
+        assertNull(sent());
+    }
+
+    @Test
+    void soupValvesUseBoardTimedFrames() {
+        service.dispenseSoup();
+        // 第1、2路各打开20秒，由模块到时关闭
+        assertEquals("483A0170010100144544", sent());
+        assertEquals("483A0170020100144544", sent());
+        assertNull(sent());
+    }
+
+    @Test
+    void unknownStateFallsBackToSingleFramesUntilResynced() throws InterruptedException {
+        // 只有单路应答，其余各路状态未知，不能用写全部命令
+        service.handle(new ZhiqianFrame(1, 0x71, new byte[]{3, 1, 0, 0}));
+        service.relayOpening(1);
+        service.relayClosing(2);
+        flushWindow();
+        assertEquals("483A0170010100004544", sent());
+        assertEquals("483A0170020000004544", sent());
+        assertNull(sent());
+
+        // 写全部的应答确认状态后合并
+        service.handle(new ZhiqianFrame(1, RelayDeviceService.CMD_WRITE_ALL_ACK, new byte[8]));
+        service.relayOpening(1);
+        service.relayOpening(2);
+        flushWindow();
+        assertEquals("483A01570500000000000000DF4544", sent());
+
+        // 重连后确认的状态作废
+        EmbeddedChannel reconnected = new EmbeddedChannel();
+        NettyServerHandler server = (NettyServerHandler) ReflectionTestUtils.getField(service, "nettyServerHandler");
+        when(server.getChannel(anyString())).thenReturn(reconnected);
+        when(server.sendFrameToClient(anyString(), any(ByteBuf.class)))
+                .thenAnswer(invocation -> reconnected.writeAndFlush(invocation.getArgument(1)));
+        channel.finishAndReleaseAll();
+        channel = reconnected;
+        service.relayOpening(5);
+        service.relayOpening(6);
+        flushWindow();
+        assertEquals("483A0170050100004544", sent());
+        assertEquals("483A0170060100004544", sent());
+        assertNull(sent());
+    }
+}
@@ -0,0 +1,144 @@
+package com.jc.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jc.service.impl.MachineManager.Machine;
+import com.jc.utils.SampleRingBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class StatePushServiceTest {
+
+    private StatePushService service;
+    private Runnable relaysChanged;
+    private Runnable stationsChanged;
+
+    @BeforeEach
+    void setUp() {
+        IODeviceService ioDeviceService = mock(IODeviceService.class);
+        RelayDeviceService relayDeviceService = mock(RelayDeviceService.class);
+        TurntableScheduler turntableScheduler = mock(TurntableScheduler.class);
+        when(turntableScheduler.getServed()).thenReturn(new SampleRingBuffer(1));
+        ConfigurableApplicationContext context = mock(ConfigurableApplicationContext.class);
+        when(context.getBean(IODeviceService.class)).thenReturn(ioDeviceService);
+        when(context.getBean(RelayDeviceService.class)).thenReturn(relayDeviceService);
+        when(context.getBean(TurntableScheduler.class)).thenReturn(turntableScheduler);
+        Machine machine = new Machine("1", null, context);
+        MachineManager machineManager = mock(MachineManager.class);
+        when(machineManager.getMachines()).thenReturn(Collections.singletonList(machine));
+        when(machineManager.get(any())).thenReturn(machine);
+
+        // 不让定时器触发，测试中手动推进一帧；只有一个发送线程
+        service = new StatePushService(machineManager, new ObjectMapper(), TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(1), 1000, 1);
+        service.start();
+        ArgumentCaptor<Runnable> relays = ArgumentCaptor.forClass(Runnable.class);
+        verify(relayDeviceService).onChange(relays.capture());
+        relaysChanged = relays.getValue();
+        ArgumentCaptor<Runnable> stations = ArgumentCaptor.forClass(Runnable.class);
+        verify(turntableScheduler).onChange(stations.capture());
+        stationsChanged = stations.getValue();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    private void tick() {
+        ReflectionTestUtils.invokeMethod(service, "tick");
+    }
+
+    @Test
+    void changesDuringASendAreMergedIntoOneDelta() throws Exception {
+        RecordingEmitter client = new RecordingEmitter();
+        client.block = new CountDownLatch(1);
+        service.subscribe("1", client);
+        // 第一次是完整状态，发送卡住期间的两帧变化合并成一次
+        assertTrue(client.events.poll(5, TimeUnit.SECONDS).contains("\"sensors\""));
+        relaysChanged.run();
+        tick();
+        stationsChanged.run();
+        relaysChanged.run();
+        tick();
+        client.block.countDown();
+
+        String delta = client.events.poll(5, TimeUnit.SECONDS);
+        assertTrue(delta.contains("\"relays\":0"), delta);
+        assertTrue(delta.contains("\"stations\""), delta);
+        assertTrue(delta.contains("\"orders\""), delta);
+        assertFalse(delta.contains("\"sensors\""), delta);
+        assertNull(client.events.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void stuckClientIsEvictedWithoutStarvingOthers() throws Exception {
+        RecordingEmitter stuck = new RecordingEmitter();
+        stuck.block = new CountDownLatch(1);
+        service.subscribe("1", stuck);
+        assertNotNull(stuck.events.poll(5, TimeUnit.SECONDS));
+        RecordingEmitter fast = new RecordingEmitter();
+        service.subscribe("1", fast);
+        assertEquals(2, service.getClientCount());
+
+        // 唯一的发送线程卡在stuck上，超过写超时后移除stuck并中断发送线程
+        Thread.sleep(1100);
+        tick();
+        assertEquals(1, service.getClientCount());
+        assertTrue(stuck.failed.await(5, TimeUnit.SECONDS));
+        assertNotNull(fast.events.poll(5, TimeUnit.SECONDS));
+
+        relaysChanged.run();
+        tick();
+        assertTrue(fast.events.poll(5, TimeUnit.SECONDS).contains("\"relays\""));
+        assertNull(stuck.events.poll());
+    }
+
+    /**
+     * 记录发出的事件，block不为null时第一次发送阻塞到放行或被中断
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private final LinkedBlockingQueue<String> events = new LinkedBlockingQueue<>();
+        private final CountDownLatch failed = new CountDownLatch(1);
+        private volatile CountDownLatch block;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+                sb.append(data.getData());
+            }
+            CountDownLatch latch = block;
+            if (latch != null) {
+                events.add(sb.toString());
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new IOException("写入被中断");
+                }
+                block = null;
+                return;
+            }
+            events.add(sb.toString());
+        }
+
+        @Override
+        public synchronized void completeWithError(Throwable ex) {
+            failed.countDown();
+        }
+    }
+}
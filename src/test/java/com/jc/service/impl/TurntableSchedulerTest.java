@@ -0,0 +1,100 @@
+package com.jc.service.impl;
+
+import com.jc.entity.Bowl;
+import com.jc.entity.Order;
+import com.jc.enums.Station;
+import com.jc.service.StationTask;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class TurntableSchedulerTest {
+
+    /**
+     * 作业完成时机由测试控制的工位
+     */
+    private static class ManualTask implements StationTask {
+        private final Station station;
+        private final ArrayDeque<CompletableFuture<Void>> running = new ArrayDeque<>();
+
+        ManualTask(Station station) {
+            this.station = station;
+        }
+
+        @Override
+        public Station station() {
+            return station;
+        }
+
+        @Override
+        public CompletableFuture<Void> execute(Bowl bowl) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            running.add(future);
+            return future;
+        }
+
+        void finishNext() {
+            running.poll().complete(null);
+        }
+    }
+
+    @Test
+    void bowlsFollowEachOtherOneStationApart() {
+        TurntableService turntableService = mock(TurntableService.class);
+        when(turntableService.runTurntable(anyInt())).thenReturn(CompletableFuture.completedFuture("ok"));
+        ManualTask place = new ManualTask(Station.PLACE_BOWL);
+        ManualTask pickup = new ManualTask(Station.PICKUP);
+        TurntableScheduler scheduler = new TurntableScheduler(turntableService, Arrays.asList(place, pickup));
+
+        CompletableFuture<Bowl> first = scheduler.submit(new Order());
+        CompletableFuture<Bowl> second = scheduler.submit(new Order());
+        assertTrue(scheduler.isThereABowlInPlace(Station.PLACE_BOWL));
+        assertEquals(1, scheduler.getPendingCount());
+
+        // 第一碗放好后转盘前进，第二碗紧跟着进入放碗工位
+        place.finishNext();
+        assertTrue(scheduler.isThereABowlInPlace(Station.IDLE));
+        assertTrue(scheduler.isThereABowlInPlace(Station.PLACE_BOWL));
+        place.finishNext();
+
+        // 中间工位没有作业，一次转4个工位：第一碗到取碗工位，第二碗在上一个工位
+        assertTrue(scheduler.isThereABowlInPlace(Station.PICKUP));
+        assertTrue(scheduler.isThereABowlInPlace(Station.SEASONING));
+        verify(turntableService).runTurntable(4);
+        pickup.finishNext();
+        assertEquals(1, first.join().getId());
+        pickup.finishNext();
+        assertEquals(2, second.join().getId());
+
+        // 两碗共转了6个工位、停了3次，转盘空了以后停止
+        verify(turntableService, times(2)).runTurntable(1);
+        verify(turntableService, times(3)).runTurntable(anyInt());
+        assertFalse(scheduler.isRunning());
+    }
+
+    @Test
+    void failedTaskPausesUntilResumed() {
+        TurntableService turntableService = mock(TurntableService.class);
+        when(turntableService.runTurntable(anyInt())).thenReturn(CompletableFuture.completedFuture("ok"));
+        ManualTask place = new ManualTask(Station.PLACE_BOWL);
+        TurntableScheduler scheduler = new TurntableScheduler(turntableService, Arrays.asList(place));
+
+        CompletableFuture<Bowl> bowl = scheduler.submit(new Order());
+        place.running.poll().completeExceptionally(new IllegalStateException("没有碗了"));
+        assertNotNull(scheduler.getFault());
+        assertFalse(scheduler.isRunning());
+        verify(turntableService, never()).runTurntable(anyInt());
+
+        // 恢复后重新执行未完成的作业，其余工位没有作业，一次转到取碗工位
+        scheduler.resume();
+        place.finishNext();
+        assertTrue(bowl.isDone());
+        verify(turntableService).runTurntable(5);
+    }
+}
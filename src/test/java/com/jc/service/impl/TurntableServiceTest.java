@@ -0,0 +1,72 @@
+package com.jc.service.impl;
+
+import com.jc.constants.Constants;
+import com.jc.netty.codec.ZhiqianFrame;
+import com.jc.netty.server.NettyServerHandler;
+import io.netty.util.HashedWheelTimer;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TurntableServiceTest {
+
+    /** 工位传感器（第5个引脚）电平 */
+    private static ZhiqianFrame stationSensor(boolean high) {
+        return new ZhiqianFrame(1, 0x41, new byte[]{0, (byte) (high ? 0x01 : 0x00), 0, 0, 0, 0, 0, 0});
+    }
+
+    @Test
+    void multiStationMoveCountsEdgesWithoutStopping() {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+        try {
+            IODeviceService ioDeviceService = new IODeviceService();
+            ReflectionTestUtils.setField(ioDeviceService, "timer", timer);
+            StepperMotorService stepperMotorService = mock(StepperMotorService.class);
+            when(stepperMotorService.startStepperMotor(anyInt(), anyBoolean(), anyInt())).thenReturn(CompletableFuture.completedFuture("操作成功"));
+            when(stepperMotorService.stop(anyInt())).thenReturn(CompletableFuture.completedFuture("操作成功"));
+            TurntableService turntableService = new TurntableService(mock(NettyServerHandler.class), ioDeviceService, "", stepperMotorService);
+
+            // 停在工位上
+            ioDeviceService.handle(stationSensor(true));
+            CompletableFuture<String> move = turntableService.runTurntable(3);
+            verify(stepperMotorService).startStepperMotor(Constants.TURNTABLE_CONTROLLER_NO, true, 0);
+            for (int i = 0; i < 3; i++) {
+                assertFalse(move.isDone());
+                ioDeviceService.handle(stationSensor(false));
+                ioDeviceService.handle(stationSensor(true));
+            }
+            assertEquals("ok", move.join());
+            // 中间工位不停车，只在最后停一次
+            verify(stepperMotorService, times(1)).stop(Constants.TURNTABLE_CONTROLLER_NO);
+            verify(stepperMotorService, times(1)).startStepperMotor(anyInt(), anyBoolean(), anyInt());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    void failedMotorStartFailsTheMoveWithoutWaitingForTimeout() {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+        try {
+            IODeviceService ioDeviceService = new IODeviceService();
+            ReflectionTestUtils.setField(ioDeviceService, "timer", timer);
+            StepperMotorService stepperMotorService = mock(StepperMotorService.class);
+            when(stepperMotorService.startStepperMotor(anyInt(), anyBoolean(), anyInt())).thenReturn(CompletableFuture.completedFuture("操作失败：从站1应答超时"));
+            when(stepperMotorService.stop(anyInt())).thenReturn(CompletableFuture.completedFuture("操作成功"));
+            TurntableService turntableService = new TurntableService(mock(NettyServerHandler.class), ioDeviceService, "", stepperMotorService);
+
+            ioDeviceService.handle(stationSensor(true));
+            CompletableFuture<String> move = turntableService.runTurntable(2);
+            assertTrue(move.isCompletedExceptionally());
+            verify(stepperMotorService).stop(Constants.TURNTABLE_CONTROLLER_NO);
+        } finally {
+            timer.stop();
+        }
+    }
+}
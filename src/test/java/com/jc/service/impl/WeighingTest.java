@@ -0,0 +1,33 @@
+package com.jc.service.impl;
+
+import com.jc.constants.Constants;
+import io.netty.util.HashedWheelTimer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class WeighingTest {
+
+    @Test
+    void scaleAddressesMustNotCollideWithMotors() {
+        HashedWheelTimer timer = new HashedWheelTimer();
+        try {
+            LanTo485Service lanTo485Service = mock(LanTo485Service.class);
+            assertThrows(IllegalArgumentException.class,
+                    () -> new Weighing(lanTo485Service, timer, new int[]{Constants.MAX_MOTOR_NO + 1, 1}, 100, 16));
+            assertThrows(IllegalArgumentException.class, () -> new Weighing(lanTo485Service, timer, new int[]{248}, 100, 16));
+
+            // 没有配置秤时不轮询
+            Weighing weighing = new Weighing(lanTo485Service, timer, new int[0], 100, 16);
+            weighing.start();
+            verifyNoInteractions(lanTo485Service);
+            weighing.stop();
+            assertThrows(Weighing.ScaleNotFoundException.class, weighing::firstSlave);
+            assertThrows(Weighing.ScaleNotFoundException.class, () -> weighing.current(1));
+            assertNotNull(new Weighing(lanTo485Service, timer, new int[]{Constants.MAX_MOTOR_NO + 1}, 100, 16));
+        } finally {
+            timer.stop();
+        }
+    }
+}
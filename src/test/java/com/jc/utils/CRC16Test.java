@@ -0,0 +1,48 @@
+package com.jc.utils;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CRC16Test {
+
+    private static final byte[] WEIGHT_REPLY = HexConvert.hexStringToBytes("01030400000613B85E");
+
+    @Test
+    void arrayBufferAndIncrementalResultsAgree() {
+        int expected = 0x5EB8;
+        assertEquals(expected, CRC16.crc16(WEIGHT_REPLY, 0, 7));
+
+        ByteBuf direct = Unpooled.directBuffer().writeBytes(WEIGHT_REPLY);
+        assertEquals(expected, CRC16.crc16(direct, 0, 7));
+        direct.release();
+
+        int crc = CRC16.INITIAL;
+        for (int i = 0; i < 3; i++) {
+            crc = CRC16.update(crc, WEIGHT_REPLY[i]);
+        }
+        assertEquals(expected, CRC16.update(crc, WEIGHT_REPLY, 3, 4));
+    }
+
+    @Test
+    void checkAndAppendUseLowByteFirst() {
+        assertTrue(CRC16.check(WEIGHT_REPLY, 0, WEIGHT_REPLY.length));
+        assertTrue(CRC16.validateCRC(WEIGHT_REPLY));
+        assertFalse(CRC16.check(WEIGHT_REPLY, 0, WEIGHT_REPLY.length - 1));
+
+        ByteBuf buf = Unpooled.buffer().writeByte(0xFF).writeBytes(WEIGHT_REPLY, 0, 7);
+        CRC16.appendCrc(buf, 1);
+        assertTrue(CRC16.check(buf, 1, 9));
+        assertEquals(0xB8, buf.getUnsignedByte(8));
+        buf.release();
+    }
+
+    @Test
+    void legacyHexStringMatchesEngine() {
+        assertEquals("B85E", CRC16.getCRC3(HexConvert.hexStringToBytes("01030400000613")));
+        assertEquals("B85E", CRC16.getModbusrtuString("01030400000613"));
+        assertArrayEquals(WEIGHT_REPLY, CRC16.getModbusrtuData("01030400000613"));
+    }
+}
@@ -0,0 +1,36 @@
+package com.jc.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampleRingBufferTest {
+
+    @Test
+    void keepsLatestSamplesAndCopiesWindowInOrder() {
+        SampleRingBuffer ring = new SampleRingBuffer(4);
+        assertEquals(0, ring.latestValue());
+        for (int i = 1; i <= 6; i++) {
+            ring.add(i * 100L, i);
+        }
+        assertEquals(6, ring.count());
+        assertEquals(6, ring.latestValue());
+        assertEquals(600L, ring.latestTimestamp());
+
+        long[] timestamps = new long[8];
+        int[] values = new int[8];
+        // 只保留了最新4个样本
+        assertEquals(4, ring.copySince(0, timestamps, values));
+        assertArrayEquals(new int[]{3, 4, 5, 6}, Arrays.copyOf(values, 4));
+
+        assertEquals(2, ring.copySince(500, timestamps, values));
+        assertEquals(500L, timestamps[0]);
+        assertEquals(6, values[1]);
+
+        // 目标数组放不下时保留最新的
+        assertEquals(2, ring.copySince(0, new long[2], values));
+        assertEquals(5, values[0]);
+    }
+}